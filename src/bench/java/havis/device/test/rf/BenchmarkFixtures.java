@@ -0,0 +1,128 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.tag.Filter;
+import havis.device.rf.tag.operation.LockOperation;
+import havis.device.rf.tag.operation.LockOperation.Field;
+import havis.device.rf.tag.operation.LockOperation.Privilege;
+import havis.device.rf.tag.operation.ReadOperation;
+import havis.device.rf.tag.operation.TagOperation;
+import havis.device.rf.tag.operation.WriteOperation;
+
+/**
+ * Tags, filters and operations shared by the benchmarks
+ */
+final class BenchmarkFixtures {
+
+	static final String EPC_TEMPLATE = "000030003034257bf4000000nnnnnnnn";
+	static final int ANTENNA_COUNT = 4;
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Creates the tags. Each tag is seen by two of the antennas and has a user
+	 * bank of four words.
+	 * 
+	 * @param tagCount
+	 *            the number of tags
+	 * @return the tag source
+	 */
+	static SyntheticTagSource createSource(int tagCount) {
+		int[] antennas = new int[ANTENNA_COUNT];
+		for (int i = 0; i < antennas.length; i++)
+			antennas[i] = i + 1;
+		return new SyntheticTagSource(0, tagCount, EPC_TEMPLATE, "e28011052000xxxxxxxxxxxx", "0000000000000000",
+				"0000000000000000", antennas, 2, -70, -30);
+	}
+
+	/**
+	 * @return the IDs of all antennas
+	 */
+	static List<Short> createAntennas() {
+		List<Short> antennas = new ArrayList<>();
+		for (short antenna = 1; antenna <= ANTENNA_COUNT; antenna++)
+			antennas.add(antenna);
+		return antennas;
+	}
+
+	/**
+	 * Creates filters on the fixed words of the EPC, so each filter matches
+	 * all tags and all filters are evaluated for each tag.
+	 * 
+	 * @param count
+	 *            the number of filters
+	 * @return the filters
+	 */
+	static List<Filter> createFilters(int count) {
+		List<Filter> filters = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int word = 2 + i % 4;
+			Filter filter = new Filter();
+			filter.setBank(RFUtils.BANK_EPC);
+			filter.setBitOffset((short) (word * 16));
+			filter.setBitLength((short) 16);
+			filter.setData(RFUtils.hexToBytes(EPC_TEMPLATE.substring(word * 4, word * 4 + 4)));
+			filter.setMask(RFUtils.hexToBytes("ffff"));
+			filter.setMatch(true);
+			filters.add(filter);
+		}
+		return filters;
+	}
+
+	/**
+	 * Creates the operations of an operation mix. The mix is a comma separated
+	 * list of <b>read</b>, <b>write</b> and <b>lock</b>. Each operation
+	 * succeeds and leaves the tag unchanged when it is repeated.
+	 * 
+	 * @param mix
+	 *            the operation mix
+	 * @return the operations
+	 */
+	static List<TagOperation> createOperations(String mix) {
+		List<TagOperation> operations = new ArrayList<>();
+		for (String name : mix.split(",")) {
+			switch (name.trim()) {
+			case "read":
+				operations.add(createReadOperation());
+				break;
+			case "write":
+				operations.add(createWriteOperation());
+				break;
+			case "lock":
+				operations.add(createLockOperation());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown operation '" + name + "'");
+			}
+			operations.get(operations.size() - 1).setOperationId(String.valueOf(operations.size()));
+		}
+		return operations;
+	}
+
+	static ReadOperation createReadOperation() {
+		ReadOperation rdOp = new ReadOperation();
+		rdOp.setBank(RFUtils.BANK_EPC);
+		rdOp.setOffset((short) 2);
+		rdOp.setLength((short) 6);
+		return rdOp;
+	}
+
+	static WriteOperation createWriteOperation() {
+		WriteOperation wrOp = new WriteOperation();
+		wrOp.setBank(RFUtils.BANK_USR);
+		wrOp.setOffset((short) 1);
+		wrOp.setData(RFUtils.hexToBytes("abcd"));
+		return wrOp;
+	}
+
+	static LockOperation createLockOperation() {
+		LockOperation lOp = new LockOperation();
+		lOp.setField(Field.USER_MEMORY);
+		lOp.setPrivilege(Privilege.UNLOCK);
+		return lOp;
+	}
+}
@@ -0,0 +1,77 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import havis.device.rf.exception.ConnectionException;
+import havis.device.rf.exception.ImplementationException;
+import havis.device.rf.exception.ParameterException;
+import havis.device.rf.tag.Filter;
+import havis.device.rf.tag.TagDataList;
+import havis.device.rf.tag.operation.TagOperation;
+
+/**
+ * Benchmarks a full execution of the stub hardware manager, i.e. an inventory
+ * round followed by the operations on each tag found. The inventory rounds
+ * are not delayed by a timing model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dhavis.device.test.rf.timingModel=" + ZeroDelayTimingModel.NAME)
+public class ExecuteBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	int tagCount;
+
+	@Param({ "0", "1", "4" })
+	int filterCount;
+
+	@Param({ "read", "read,write", "read,write,lock" })
+	String operationMix;
+
+	@Param({ "false", "true" })
+	boolean parallelExecution;
+
+	private StubHardwareManager manager;
+	private List<Short> antennas;
+	private List<Filter> filters;
+	private List<TagOperation> operations;
+
+	@Setup
+	public void setup() throws ConnectionException, ImplementationException {
+		StubHardwareManager.setHardwareMgmt(new InMemoryHardwareMgmt(BenchmarkFixtures.createSource(tagCount),
+				BenchmarkFixtures.ANTENNA_COUNT));
+		manager = new StubHardwareManager();
+		manager.setParallelExecution(parallelExecution);
+		manager.openConnection();
+		antennas = BenchmarkFixtures.createAntennas();
+		filters = BenchmarkFixtures.createFilters(filterCount);
+		operations = BenchmarkFixtures.createOperations(operationMix);
+	}
+
+	@TearDown
+	public void tearDown() throws ConnectionException {
+		manager.closeConnection();
+	}
+
+	@Benchmark
+	public TagDataList execute() throws ImplementationException, ParameterException {
+		return manager.execute(antennas, filters, operations, null);
+	}
+}
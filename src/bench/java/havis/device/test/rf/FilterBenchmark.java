@@ -0,0 +1,130 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.RequestCreateTagType;
+import havis.device.test.hardware.RequestCreateTagsType;
+
+/**
+ * Benchmarks the filters applied to each tag of an inventory round and the
+ * inventory rounds at different transmit powers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Population {
+
+		@Param({ "100", "1000", "10000" })
+		int tagCount;
+
+		@Param({ "0", "1", "4" })
+		int filterCount;
+
+		StubHardwareApi api;
+		List<RequestCreateTagType> tags;
+		AntennaSet antennas;
+		List<Filter> filters;
+		RssiFilter rssiFilter;
+
+		@Setup
+		public void setup() {
+			SyntheticTagSource source = BenchmarkFixtures.createSource(tagCount);
+			api = new StubHardwareApi(new InMemoryHardwareMgmt(source, BenchmarkFixtures.ANTENNA_COUNT));
+			tags = new ArrayList<>();
+			for (int i = 0; i < source.size(); i++)
+				tags.add(source.getTag(i));
+			antennas = AntennaSet.of(BenchmarkFixtures.createAntennas());
+			filters = BenchmarkFixtures.createFilters(filterCount);
+			rssiFilter = new RssiFilter();
+		}
+	}
+
+	/* a single filter on a single bank, independent of the population */
+	@State(Scope.Benchmark)
+	public static class Bank {
+
+		StubHardwareApi api;
+		Filter filter;
+		String data;
+
+		@Setup
+		public void setup() {
+			SyntheticTagSource source = BenchmarkFixtures.createSource(1);
+			api = new StubHardwareApi(new InMemoryHardwareMgmt(source, BenchmarkFixtures.ANTENNA_COUNT));
+			filter = BenchmarkFixtures.createFilters(1).get(0);
+			data = TagMemory.toHex(new TagMemory(source.getTag(0)).getBank(RFUtils.BANK_EPC));
+		}
+	}
+
+	/* inventory rounds at a transmit power, 0 for all tags visible */
+	@State(Scope.Benchmark)
+	public static class Power {
+
+		@Param({ "1000", "10000" })
+		int tagCount;
+
+		@Param({ "0", "27", "20", "15" })
+		short transmitPower;
+
+		StubHardwareApi api;
+		AntennaSet antennas;
+		List<Filter> filters;
+		RssiFilter rssiFilter;
+
+		@Setup
+		public void setup() {
+			SyntheticTagSource source = BenchmarkFixtures.createSource(tagCount);
+			api = new StubHardwareApi(new InMemoryHardwareMgmt(source, BenchmarkFixtures.ANTENNA_COUNT));
+			/* the tag source keeps the antenna index the rounds are pruned by */
+			api.setTagSource(source);
+			api.setTimingModel(new ZeroDelayTimingModel());
+			antennas = AntennaSet.of(BenchmarkFixtures.createAntennas());
+			PropagationModel model = new PropagationModel();
+			for (short antenna : BenchmarkFixtures.createAntennas())
+				model.configure(antenna, transmitPower, null, null);
+			api.setPropagationModel(model);
+			filters = new ArrayList<>();
+			rssiFilter = new RssiFilter();
+		}
+	}
+
+	@Benchmark
+	public RequestCreateTagsType inventory(Power power) {
+		return power.api.inventory(power.antennas, power.filters, power.rssiFilter);
+	}
+
+	@Benchmark
+	public void applyFilters(Population population, Blackhole blackhole) {
+		for (RequestCreateTagType tag : population.tags)
+			blackhole.consume(population.api.applyFilters(tag, population.antennas, population.filters,
+					population.rssiFilter));
+	}
+
+	@Benchmark
+	public boolean applyFilter(Bank bank) {
+		return bank.api.applyFilter(bank.filter, bank.data);
+	}
+}
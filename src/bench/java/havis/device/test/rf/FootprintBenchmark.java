@@ -0,0 +1,105 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Benchmarks the heap retained by a tag population read from the hardware
+ * management, i.e. the tags with their hex data and the decoded memory of all
+ * banks, with and without sharing the bank contents through a
+ * {@link BankStore}. The tags resemble a retail population with unique EPC
+ * and TID banks but the same password and empty user banks. The bytes per tag
+ * are reported as a secondary result besides the time to load the population.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = 1)
+@Measurement(iterations = 5, batchSize = 1)
+@Fork(1)
+public class FootprintBenchmark {
+
+	private static final short[] BANKS = { RFUtils.BANK_PSW, RFUtils.BANK_EPC, RFUtils.BANK_TID, RFUtils.BANK_USR };
+
+	@State(Scope.Benchmark)
+	public static class Population {
+
+		@Param({ "10000", "100000" })
+		int tagCount;
+
+		/* size of the user bank, which is empty for most retail tags */
+		@Param({ "64", "512" })
+		int userBits;
+
+		@Param({ "false", "true" })
+		boolean bankStore;
+
+		SyntheticTagSource source;
+
+		@Setup
+		public void setup() {
+			StringBuilder user = new StringBuilder();
+			for (int i = 0; i < userBits / 4; i++)
+				user.append('0');
+			int[] antennas = new int[BenchmarkFixtures.ANTENNA_COUNT];
+			for (int i = 0; i < antennas.length; i++)
+				antennas[i] = i + 1;
+			source = new SyntheticTagSource(0, tagCount, BenchmarkFixtures.EPC_TEMPLATE, "e28011052000xxxxxxxxxxxx",
+					"0000000000000000", user.toString(), antennas, 2, -70, -30);
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		public long bytesPerTag;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytesPerTag = 0;
+		}
+	}
+
+	@Benchmark
+	public TagPopulation load(Population population, Footprint footprint) {
+		long before = getUsedMemory();
+
+		/* each tag read from the hardware management has its own hex data */
+		List<RequestCreateTagType> tags = new ArrayList<>(population.tagCount);
+		for (int i = 0; i < population.tagCount; i++)
+			tags.add(population.source.getTag(i));
+		TagPopulation result = new TagPopulation(tags, population.bankStore ? new BankStore() : null);
+		tags = null;
+		for (int i = 0; i < result.size(); i++)
+			for (short bank : BANKS)
+				result.getMemory(i).getBank(bank);
+
+		footprint.bytesPerTag = (getUsedMemory() - before) / population.tagCount;
+		return result;
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,81 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import havis.device.test.hardware.HardwareMgmt;
+import havis.device.test.hardware.RequestAbstractType;
+import havis.device.test.hardware.RequestCreateTagType;
+import havis.device.test.hardware.RequestCreateTagsType;
+import havis.device.test.hardware.RequestReadType;
+import havis.device.test.hardware.RequestType;
+import havis.device.test.hardware.RequestUpdateType;
+import havis.device.test.hardware.ResponseReadAntennaType;
+import havis.device.test.hardware.ResponseReadAntennasType;
+import havis.device.test.hardware.ResponseReadType;
+import havis.device.test.hardware.ResponseType;
+
+/**
+ * In-process stand-in for the hardware management used by the benchmarks.
+ * The tags are kept in memory and passed by reference, so the benchmarks
+ * measure the stub rather than the transport to the hardware management.
+ */
+class InMemoryHardwareMgmt implements HardwareMgmt {
+
+	private final Map<String, RequestCreateTagType> tags = new LinkedHashMap<>();
+	private final ResponseReadAntennasType antennas = new ResponseReadAntennasType();
+
+	/**
+	 * @param source
+	 *            the source the tags are copied from
+	 * @param antennaCount
+	 *            the number of antennas, which are numbered from 1
+	 */
+	InMemoryHardwareMgmt(TagSource source, int antennaCount) {
+		for (int i = 0; i < source.size(); i++) {
+			RequestCreateTagType tag = source.getTag(i);
+			tags.put(tag.getTagId(), tag);
+		}
+		for (int antennaId = 1; antennaId <= antennaCount; antennaId++) {
+			ResponseReadAntennaType antenna = new ResponseReadAntennaType();
+			antenna.setAntennaId(antennaId);
+			antennas.getAntenna().add(antenna);
+		}
+	}
+
+	@Override
+	public synchronized List<ResponseType> process(List<RequestType> requests) {
+		List<ResponseType> responses = new ArrayList<>();
+		for (RequestType request : requests) {
+			ResponseType response = new ResponseType();
+			response.setConfigId(request.getConfigId());
+			for (RequestAbstractType choice : request.getChoice())
+				response.getChoice().add(process(choice));
+			responses.add(response);
+		}
+		return responses;
+	}
+
+	/* requests other than reads are acknowledged by an empty response */
+	private ResponseReadType process(RequestAbstractType choice) {
+		ResponseReadType response = new ResponseReadType();
+		response.setOperationId(choice.getOperationId());
+		if (choice instanceof RequestReadType) {
+			RequestReadType read = (RequestReadType) choice;
+			if (read.getTags() != null) {
+				response.setTags(new RequestCreateTagsType());
+				response.getTags().getTag().addAll(tags.values());
+			}
+			if (read.getAntennas() != null)
+				response.setAntennas(antennas);
+		} else if (choice instanceof RequestUpdateType) {
+			RequestUpdateType update = (RequestUpdateType) choice;
+			if (update.getTags() != null)
+				for (RequestCreateTagType tag : update.getTags().getTag())
+					tags.put(tag.getTagId(), tag);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,86 @@
+package havis.device.test.rf;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.configuration.SingulationControl;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.RequestCreateTagsType;
+
+/**
+ * Benchmarks inventory rounds over growing populations. The result of a round
+ * is built in a single pass, so the round time grows linearly with the number
+ * of tags, i.e. the time per tag stays the same from 1000 to 100000 tags, for
+ * filters matching all tags as well as for selective filters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryScalingBenchmark {
+
+	@Param({ "1000", "10000", "50000", "100000" })
+	int tagCount;
+
+	/* all: no filter, selective: a filter matching less than 1% of the tags */
+	@Param({ "all", "selective" })
+	String match;
+
+	/* session 0 reports all matching tags, session 1 only those with flag A */
+	@Param({ "0", "1" })
+	short session;
+
+	private StubHardwareApi api;
+	private AntennaSet antennas;
+	private List<Filter> filters;
+	private RssiFilter rssiFilter;
+
+	@Setup
+	public void setup() {
+		SyntheticTagSource source = BenchmarkFixtures.createSource(tagCount);
+		api = new StubHardwareApi(new InMemoryHardwareMgmt(source, BenchmarkFixtures.ANTENNA_COUNT));
+		api.setTagSource(source);
+		api.setTimingModel(new ZeroDelayTimingModel());
+		SingulationControl singulationControl = new SingulationControl();
+		singulationControl.setSession(session);
+		api.setSingulationControl(singulationControl);
+		antennas = AntennaSet.of(BenchmarkFixtures.createAntennas());
+		filters = "selective".equals(match) ? Collections.singletonList(createSelectiveFilter())
+				: Collections.<Filter> emptyList();
+		rssiFilter = new RssiFilter();
+	}
+
+	/* matches the tags whose position ends with 0x00 or 0x01 */
+	private static Filter createSelectiveFilter() {
+		Filter filter = new Filter();
+		filter.setBank(RFUtils.BANK_EPC);
+		filter.setBitOffset((short) (BenchmarkFixtures.EPC_TEMPLATE.length() * 4 - 8));
+		filter.setBitLength((short) 8);
+		filter.setData(RFUtils.hexToBytes("00"));
+		filter.setMask(RFUtils.hexToBytes("fe"));
+		filter.setMatch(true);
+		return filter;
+	}
+
+	@Benchmark
+	public RequestCreateTagsType inventory() {
+		return api.inventory(antennas, filters, rssiFilter);
+	}
+}
@@ -0,0 +1,120 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.tag.TagData;
+import havis.device.rf.tag.operation.LockOperation;
+import havis.device.rf.tag.operation.ReadOperation;
+import havis.device.rf.tag.operation.WriteOperation;
+import havis.device.rf.tag.result.LockResult;
+import havis.device.rf.tag.result.ReadResult;
+import havis.device.rf.tag.result.WriteResult;
+import havis.device.test.hardware.FieldType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Benchmarks the tag operations on single tags. The operations are performed
+ * on the tags of an inventory round in turn, changes are committed to an
+ * in-process hardware management.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagOperationBenchmark {
+
+	@State(Scope.Thread)
+	public static class Tags {
+
+		@Param({ "100", "10000" })
+		int tagCount;
+
+		StubHardwareApi api;
+		List<RequestCreateTagType> tags;
+		ReadOperation rdOp = BenchmarkFixtures.createReadOperation();
+		WriteOperation wrOp = BenchmarkFixtures.createWriteOperation();
+		LockOperation lOp = BenchmarkFixtures.createLockOperation();
+		private int next;
+
+		@Setup
+		public void setup() {
+			api = new StubHardwareApi(new InMemoryHardwareMgmt(BenchmarkFixtures.createSource(tagCount),
+					BenchmarkFixtures.ANTENNA_COUNT));
+			api.setTimingModel(new ZeroDelayTimingModel());
+			api.connect();
+			tags = api.inventory(BenchmarkFixtures.createAntennas(), BenchmarkFixtures.createFilters(0),
+					new RssiFilter()).getTag();
+		}
+
+		RequestCreateTagType next() {
+			RequestCreateTagType tag = tags.get(next);
+			next = next + 1 == tags.size() ? 0 : next + 1;
+			return tag;
+		}
+	}
+
+	/* operations independent of the population */
+	@State(Scope.Thread)
+	public static class Fields {
+
+		StubHardwareApi api;
+		FieldType field;
+		LockOperation lOp = BenchmarkFixtures.createLockOperation();
+		String bank = BenchmarkFixtures.EPC_TEMPLATE.replace('n', '0');
+
+		@Setup
+		public void setup() {
+			api = new StubHardwareApi(new InMemoryHardwareMgmt(BenchmarkFixtures.createSource(1),
+					BenchmarkFixtures.ANTENNA_COUNT));
+			field = new FieldType();
+			field.setLocked(false);
+			field.setPermanent(false);
+		}
+	}
+
+	@Benchmark
+	public TagData getTagData(Tags tags) {
+		return tags.api.getTagData(tags.next());
+	}
+
+	@Benchmark
+	public ReadResult read(Tags tags) {
+		return tags.api.read(tags.rdOp, tags.next());
+	}
+
+	@Benchmark
+	public WriteResult write(Tags tags) {
+		return tags.api.write(tags.wrOp, tags.next());
+	}
+
+	@Benchmark
+	public LockResult lock(Tags tags) {
+		return tags.api.lock(tags.lOp, tags.next());
+	}
+
+	@Benchmark
+	public String insert(Fields fields) {
+		return fields.api.insert(fields.bank, "abcd", 8);
+	}
+
+	@Benchmark
+	public FieldType applyLockOperation(Fields fields) throws StubHardwareApiException {
+		fields.api.applyLockOperation(fields.field, fields.lOp);
+		return fields.field;
+	}
+}
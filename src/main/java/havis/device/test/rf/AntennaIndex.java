@@ -0,0 +1,450 @@
+package havis.device.test.rf;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Index of the tags seen by each antenna. For each antenna the positions of
+ * the tags within the population and their peak RSSI values are kept in
+ * primitive arrays ordered by descending peak RSSI, so an inventory round only
+ * visits the tags of the requested antennas and RSSI limits can be resolved by
+ * binary search.
+ * 
+ * The arrays of all antennas are replaced as a whole when the index is
+ * rebuilt, so the index can be read while a tag is updated. A tag whose
+ * antennas or peak RSSI values have changed only marks the index as stale, the
+ * arrays are rebuilt once on the next selection however many tags have
+ * changed in the meantime.
+ * 
+ * Killed tags are kept as tombstones, which are skipped by the selection. The
+ * positions of killed tags are only removed from the arrays of the antennas
+ * when they make up a considerable part of them, so killing a tag does not
+ * copy any array.
+ */
+public class AntennaIndex {
+
+	private static final int[] EMPTY = new int[0];
+
+	private volatile Map<Integer, Entries> entries;
+	private volatile boolean stale;
+	private final int[][] tagAntennas;
+	private final int[][] tagPeakRssi;
+	/* antennas of each tag as masks of the antennas 0 to 63 and 64 to 127 */
+	private final long[] tagMaskLow;
+	private final long[] tagMaskHigh;
+	/* killed tags as words of 64 positions each */
+	private final AtomicLongArray killed;
+	/* killed tags which are not contained in the arrays of the antennas */
+	private final BitSet removed = new BitSet();
+	/* number of entries of killed tags still contained in the arrays */
+	private int garbage;
+	private int entryCount;
+
+	static class Entries {
+		final int[] positions;
+		final int[] peakRssi;
+
+		Entries(int[] positions, int[] peakRssi) {
+			this.positions = positions;
+			this.peakRssi = peakRssi;
+		}
+	}
+
+	/**
+	 * Builds the index for a population
+	 * 
+	 * @param tags
+	 *            the tags of the population
+	 */
+	public AntennaIndex(List<RequestCreateTagType> tags) {
+		tagAntennas = new int[tags.size()][];
+		tagPeakRssi = new int[tags.size()][];
+		tagMaskLow = new long[tags.size()];
+		tagMaskHigh = new long[tags.size()];
+		killed = new AtomicLongArray((tags.size() + 63) >>> 6);
+
+		for (int position = 0; position < tags.size(); position++) {
+			RequestCreateTagType tag = tags.get(position);
+			if (isKilled(tag))
+				setKilled(position, true);
+			setAntennas(position, tag.getAntennas().getAntenna());
+		}
+		rebuild();
+	}
+
+	/*
+	 * builds the arrays of all antennas from the antennas of the live tags,
+	 * which removes the killed tags from the arrays
+	 */
+	private synchronized void rebuild() {
+		Map<Integer, long[]> keys = new HashMap<>();
+		Map<Integer, Integer> counts = new HashMap<>();
+		removed.clear();
+		entryCount = 0;
+		for (int position = 0; position < tagAntennas.length; position++) {
+			if (isKilled(position)) {
+				removed.set(position);
+				continue;
+			}
+			for (int i = 0; i < tagAntennas[position].length; i++) {
+				int antennaId = tagAntennas[position][i];
+				Integer count = counts.get(antennaId);
+				count = count == null ? 0 : count;
+				long[] antennaKeys = keys.get(antennaId);
+				if (antennaKeys == null || antennaKeys.length == count) {
+					antennaKeys = antennaKeys == null ? new long[16] : Arrays.copyOf(antennaKeys, count * 2);
+					keys.put(antennaId, antennaKeys);
+				}
+				antennaKeys[count] = toKey(position, tagPeakRssi[position][i]);
+				counts.put(antennaId, count + 1);
+				entryCount++;
+			}
+		}
+
+		Map<Integer, Entries> result = new HashMap<>();
+		for (Map.Entry<Integer, long[]> entry : keys.entrySet()) {
+			int count = counts.get(entry.getKey());
+			long[] antennaKeys = entry.getValue();
+			Arrays.sort(antennaKeys, 0, count);
+			int[] positions = new int[count];
+			int[] peakRssi = new int[count];
+			for (int i = 0; i < count; i++) {
+				positions[i] = (int) antennaKeys[i];
+				peakRssi[i] = (int) -(antennaKeys[i] >> 32);
+			}
+			result.put(entry.getKey(), new Entries(positions, peakRssi));
+		}
+		garbage = 0;
+		entries = result;
+		stale = false;
+	}
+
+	/* the arrays of the antennas, which are rebuilt if tags have changed */
+	private Map<Integer, Entries> getEntries() {
+		if (stale)
+			synchronized (this) {
+				if (stale)
+					rebuild();
+			}
+		return entries;
+	}
+
+	/**
+	 * Selects the tags seen by the given antennas that pass the RSSI filter.
+	 * A tag passes the filter if no limit is set, if its peak RSSI is at least
+	 * the minimum or if its peak RSSI is at most the maximum.
+	 * 
+	 * @param antennas
+	 *            the antennas
+	 * @param rssiFilter
+	 *            the RSSI filter
+	 * @param selected
+	 *            the set to which the positions of the selected tags are
+	 *            added
+	 */
+	public void select(List<Short> antennas, RssiFilter rssiFilter, BitSet selected) {
+		select(AntennaSet.ALL.retain(antennas), rssiFilter, null, selected);
+	}
+
+	/**
+	 * Selects the tags visible on the given antennas that pass the RSSI
+	 * filter. The tags below the visibility threshold of an antenna are cut
+	 * off by binary search and the RSSI filter is applied to the RSSI reported
+	 * at the transmit power of the antenna.
+	 * 
+	 * @param antennas
+	 *            the antennas
+	 * @param rssiFilter
+	 *            the RSSI filter
+	 * @param model
+	 *            the propagation model or null if all tags are visible
+	 * @param selected
+	 *            the set to which the positions of the selected tags are
+	 *            added
+	 */
+	public void select(AntennaSet antennas, RssiFilter rssiFilter, PropagationModel model, BitSet selected) {
+		Map<Integer, Entries> entries = getEntries();
+		for (int antenna = antennas.next(0); antenna >= 0; antenna = antennas.next(antenna + 1)) {
+			Entries e = entries.get(antenna);
+			if (e == null)
+				continue;
+
+			int visible = e.positions.length;
+			int offset = 0;
+			if (model != null && model.isConfigured(antenna)) {
+				visible = firstBelow(e.peakRssi, model.getThreshold(antenna));
+				offset = model.getRssiOffset(antenna);
+			}
+
+			if (rssiFilter.getMinRssi() == 0 && rssiFilter.getMaxRssi() == 0) {
+				set(selected, e.positions, 0, visible);
+				continue;
+			}
+
+			if (rssiFilter.getMinRssi() != 0)
+				set(selected, e.positions, 0, Math.min(visible, firstBelow(e.peakRssi, rssiFilter.getMinRssi() - offset)));
+
+			if (rssiFilter.getMaxRssi() != 0)
+				set(selected, e.positions, firstBelow(e.peakRssi, rssiFilter.getMaxRssi() - offset + 1), visible);
+		}
+	}
+
+	/**
+	 * Re-indexes a tag if its antennas or peak RSSI values have changed. A tag
+	 * which has been killed is skipped by the selection and a tag which has
+	 * been revived is selected again. The arrays of the antennas are rebuilt
+	 * on the next selection if a tag has changed or if the killed tags make up
+	 * an eighth of the arrays.
+	 * 
+	 * @param position
+	 *            the position of the tag within the population
+	 * @param tag
+	 *            the tag
+	 */
+	public synchronized void update(int position, RequestCreateTagType tag) {
+		boolean tagKilled = isKilled(tag);
+		boolean wasKilled = isKilled(position);
+		List<RequestCreateTagAntennaType> antennas = tag.getAntennas().getAntenna();
+		if (!isIndexed(position, antennas)) {
+			/* the tag is removed from the arrays by the rebuild if killed */
+			setKilled(position, tagKilled);
+			setAntennas(position, antennas);
+			stale = true;
+			return;
+		}
+		if (tagKilled == wasKilled)
+			return;
+
+		setKilled(position, tagKilled);
+		if (removed.get(position)) {
+			/* a revived tag removed from the arrays is added by the rebuild */
+			stale = true;
+		} else {
+			garbage += tagKilled ? tagAntennas[position].length : -tagAntennas[position].length;
+			if (garbage > 0 && garbage >= entryCount / 8)
+				stale = true;
+		}
+	}
+
+	private void setAntennas(int position, List<RequestCreateTagAntennaType> antennas) {
+		/* the arrays of a tag are filled before they are published */
+		int[] antennaIds = new int[antennas.size()];
+		int[] peakRssi = new int[antennas.size()];
+		long low = 0;
+		long high = 0;
+		for (int i = 0; i < antennas.size(); i++) {
+			RequestCreateTagAntennaType antenna = antennas.get(i);
+			antennaIds[i] = antenna.getAntennaId();
+			peakRssi[i] = getPeakRssi(antenna);
+			low |= maskLow(antenna.getAntennaId());
+			high |= maskHigh(antenna.getAntennaId());
+		}
+		tagPeakRssi[position] = peakRssi;
+		tagAntennas[position] = antennaIds;
+		tagMaskLow[position] = low;
+		tagMaskHigh[position] = high;
+	}
+
+	private void setKilled(int position, boolean tagKilled) {
+		long bit = 1L << position;
+		int word = position >>> 6;
+		long value;
+		do
+			value = killed.get(word);
+		while (!killed.compareAndSet(word, value, tagKilled ? value | bit : value & ~bit));
+	}
+
+	/* antennas out of range are never requested */
+	private static long maskLow(int antenna) {
+		return antenna >= 0 && antenna < 64 ? 1L << antenna : 0;
+	}
+
+	private static long maskHigh(int antenna) {
+		return antenna >= 64 && antenna <= AntennaSet.MAX_ANTENNA ? 1L << antenna - 64 : 0;
+	}
+
+	/**
+	 * Checks whether a single tag is seen by one of the given antennas and
+	 * passes the RSSI filter, with the same semantics as
+	 * {@link #select(List, RssiFilter, BitSet)}
+	 * 
+	 * @param position
+	 *            the position of the tag within the population
+	 * @param antennas
+	 *            the antennas
+	 * @param rssiFilter
+	 *            the RSSI filter
+	 * @return true if the tag would be selected, false otherwise
+	 */
+	public boolean matches(int position, List<Short> antennas, RssiFilter rssiFilter) {
+		return matches(position, AntennaSet.ALL.retain(antennas), rssiFilter, null);
+	}
+
+	/**
+	 * Checks whether a single tag is visible on one of the given antennas and
+	 * passes the RSSI filter, with the same semantics as
+	 * {@link #select(AntennaSet, RssiFilter, PropagationModel, BitSet)}. Tags
+	 * not seen by any of the antennas are rejected by a single mask
+	 * operation.
+	 * 
+	 * @param position
+	 *            the position of the tag within the population
+	 * @param antennas
+	 *            the antennas
+	 * @param rssiFilter
+	 *            the RSSI filter
+	 * @param model
+	 *            the propagation model or null if all tags are visible
+	 * @return true if the tag would be selected, false otherwise
+	 */
+	public boolean matches(int position, AntennaSet antennas, RssiFilter rssiFilter, PropagationModel model) {
+		if (!antennas.intersects(tagMaskLow[position], tagMaskHigh[position]) || isKilled(position))
+			return false;
+		boolean unfiltered = rssiFilter.getMinRssi() == 0 && rssiFilter.getMaxRssi() == 0;
+		if (unfiltered && (model == null || model.isEmpty()))
+			return true;
+
+		int[] antennaIds = tagAntennas[position];
+		int[] peakRssi = tagPeakRssi[position];
+		for (int i = 0; i < antennaIds.length && i < peakRssi.length; i++) {
+			int antenna = antennaIds[i];
+			if (!antennas.contains(antenna))
+				continue;
+			int rssi = peakRssi[i];
+			if (model != null) {
+				if (!model.isVisible(antenna, rssi))
+					continue;
+				rssi = model.getRssi(antenna, rssi);
+			}
+			if (unfiltered)
+				return true;
+			if (rssiFilter.getMinRssi() != 0 && rssi >= rssiFilter.getMinRssi())
+				return true;
+			if (rssiFilter.getMaxRssi() != 0 && rssi <= rssiFilter.getMaxRssi())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna
+	 * @return the number of live tags seen by the antenna
+	 */
+	public int size(int antenna) {
+		return getPositions(antenna).length;
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna
+	 * @return the positions of the live tags seen by the antenna ordered by
+	 *         descending peak RSSI
+	 */
+	public int[] getPositions(int antenna) {
+		return getLive(antenna, true);
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna
+	 * @return the peak RSSI values of the live tags seen by the antenna in
+	 *         descending order
+	 */
+	public int[] getPeakRssi(int antenna) {
+		return getLive(antenna, false);
+	}
+
+	private int[] getLive(int antenna, boolean positions) {
+		Entries e = getEntries().get(antenna);
+		if (e == null)
+			return EMPTY;
+		int[] result = new int[e.positions.length];
+		int count = 0;
+		for (int i = 0; i < e.positions.length; i++)
+			if (!isKilled(e.positions[i]))
+				result[count++] = positions ? e.positions[i] : e.peakRssi[i];
+		return Arrays.copyOf(result, count);
+	}
+
+	private boolean isIndexed(int position, List<RequestCreateTagAntennaType> antennas) {
+		if (tagAntennas[position].length != antennas.size())
+			return false;
+		for (int i = 0; i < antennas.size(); i++)
+			if (tagAntennas[position][i] != antennas.get(i).getAntennaId()
+					|| tagPeakRssi[position][i] != getPeakRssi(antennas.get(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param position
+	 *            the position of the tag within the population
+	 * @return whether the tag has been killed when it was indexed
+	 */
+	public boolean isKilled(int position) {
+		return (killed.get(position >>> 6) & 1L << position) != 0;
+	}
+
+	/**
+	 * @return the positions of the killed tags
+	 */
+	public BitSet getKilled() {
+		long[] words = new long[killed.length()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = killed.get(i);
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * @return the number of killed tags
+	 */
+	public int getKilledCount() {
+		int count = 0;
+		for (int i = 0; i < killed.length(); i++)
+			count += Long.bitCount(killed.get(i));
+		return count;
+	}
+
+	private static boolean isKilled(RequestCreateTagType tag) {
+		return tag.isKilled() != null && tag.isKilled();
+	}
+
+	static int getPeakRssi(RequestCreateTagAntennaType antenna) {
+		return antenna.getPeakRSSI() == null ? 0 : antenna.getPeakRSSI();
+	}
+
+	/* sorts by descending RSSI first and by ascending position second */
+	private static long toKey(int position, int peakRssi) {
+		return (-(long) peakRssi << 32) | position;
+	}
+
+	/* index of the first value below the given one in a descending array */
+	private static int firstBelow(int[] descending, int value) {
+		int low = 0;
+		int high = descending.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (descending[mid] >= value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/* killed tags are skipped */
+	private void set(BitSet selected, int[] positions, int from, int to) {
+		for (int i = from; i < to; i++)
+			if (!isKilled(positions[i]))
+				selected.set(positions[i]);
+	}
+}
@@ -0,0 +1,231 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable set of antennas kept as a bit mask over the antenna IDs 0 to
+ * {@link #MAX_ANTENNA}. Membership tests and intersections are single bit
+ * operations, so antenna sets can be matched per tag without boxing.
+ */
+public final class AntennaSet {
+
+	/**
+	 * Highest antenna ID of a set
+	 */
+	public static final int MAX_ANTENNA = 127;
+
+	/**
+	 * Set without antennas
+	 */
+	public static final AntennaSet EMPTY = new AntennaSet(0, 0);
+
+	/**
+	 * Set of all antennas 0 to {@link #MAX_ANTENNA}, whose
+	 * {@link #retain(Collection)} converts a list of antenna IDs ignoring the
+	 * IDs out of range
+	 */
+	public static final AntennaSet ALL = new AntennaSet(-1L, -1L);
+
+	/* antennas 0 to 63 and 64 to 127 */
+	private final long low;
+	private final long high;
+
+	private AntennaSet(long low, long high) {
+		this.low = low;
+		this.high = high;
+	}
+
+	/**
+	 * @param antennas
+	 *            the antenna IDs
+	 * @return the set of the antennas
+	 * @throws IllegalArgumentException
+	 *             if an antenna ID is out of range
+	 */
+	public static AntennaSet of(int... antennas) {
+		long low = 0;
+		long high = 0;
+		for (int antenna : antennas) {
+			check(antenna);
+			if (antenna < 64)
+				low |= 1L << antenna;
+			else
+				high |= 1L << antenna - 64;
+		}
+		return new AntennaSet(low, high);
+	}
+
+	/**
+	 * @param antennas
+	 *            the antenna IDs
+	 * @return the set of the antennas
+	 * @throws IllegalArgumentException
+	 *             if an antenna ID is out of range
+	 */
+	public static AntennaSet of(Collection<Short> antennas) {
+		long low = 0;
+		long high = 0;
+		for (short antenna : antennas) {
+			check(antenna);
+			if (antenna < 64)
+				low |= 1L << antenna;
+			else
+				high |= 1L << antenna - 64;
+		}
+		return new AntennaSet(low, high);
+	}
+
+	private static void check(int antenna) {
+		if (antenna < 0 || antenna > MAX_ANTENNA)
+			throw new IllegalArgumentException("Antenna ID must be between 0 and " + MAX_ANTENNA + ", got " + antenna);
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return whether the set contains the antenna, false for IDs out of range
+	 */
+	public boolean contains(int antenna) {
+		if (antenna < 0 || antenna > MAX_ANTENNA)
+			return false;
+		return antenna < 64 ? (low & 1L << antenna) != 0 : (high & 1L << antenna - 64) != 0;
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return the set with the antenna added
+	 * @throws IllegalArgumentException
+	 *             if the antenna ID is out of range
+	 */
+	public AntennaSet with(int antenna) {
+		if (contains(antenna))
+			return this;
+		return union(of(antenna));
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return the set with the antenna removed
+	 */
+	public AntennaSet without(int antenna) {
+		if (!contains(antenna))
+			return this;
+		return antenna < 64 ? new AntennaSet(low & ~(1L << antenna), high)
+				: new AntennaSet(low, high & ~(1L << antenna - 64));
+	}
+
+	/**
+	 * @param other
+	 *            another set
+	 * @return the antennas contained in both sets
+	 */
+	public AntennaSet intersect(AntennaSet other) {
+		return new AntennaSet(low & other.low, high & other.high);
+	}
+
+	/**
+	 * @param other
+	 *            another set
+	 * @return the antennas contained in either set
+	 */
+	public AntennaSet union(AntennaSet other) {
+		return new AntennaSet(low | other.low, high | other.high);
+	}
+
+	/**
+	 * Returns the antennas of this set which are contained in a list. IDs of
+	 * the list which are out of range are ignored.
+	 * 
+	 * @param antennas
+	 *            the antenna IDs
+	 * @return the antennas contained in both
+	 */
+	public AntennaSet retain(Collection<Short> antennas) {
+		long low = 0;
+		long high = 0;
+		for (short antenna : antennas)
+			if (contains(antenna)) {
+				if (antenna < 64)
+					low |= 1L << antenna;
+				else
+					high |= 1L << antenna - 64;
+			}
+		return new AntennaSet(low, high);
+	}
+
+	/**
+	 * @param low
+	 *            the mask of the antennas 0 to 63
+	 * @param high
+	 *            the mask of the antennas 64 to 127
+	 * @return whether one of the antennas of the masks is contained
+	 */
+	public boolean intersects(long low, long high) {
+		return (this.low & low | this.high & high) != 0;
+	}
+
+	public boolean isEmpty() {
+		return low == 0 && high == 0;
+	}
+
+	/**
+	 * @return the number of antennas
+	 */
+	public int size() {
+		return Long.bitCount(low) + Long.bitCount(high);
+	}
+
+	/**
+	 * Returns the next antenna, to iterate the set by
+	 * <code>for (int a = set.next(0); a >= 0; a = set.next(a + 1))</code>
+	 * 
+	 * @param from
+	 *            the lowest antenna ID to return
+	 * @return the lowest antenna ID of the set which is at least the given
+	 *         one, -1 if there is none
+	 */
+	public int next(int from) {
+		if (from < 64) {
+			long bits = low & -1L << Math.max(from, 0);
+			if (bits != 0)
+				return Long.numberOfTrailingZeros(bits);
+			from = 64;
+		}
+		if (from > MAX_ANTENNA)
+			return -1;
+		long bits = high & -1L << from - 64;
+		return bits != 0 ? 64 + Long.numberOfTrailingZeros(bits) : -1;
+	}
+
+	/**
+	 * @return the antenna IDs in ascending order
+	 */
+	public List<Short> toList() {
+		List<Short> antennas = new ArrayList<>(size());
+		for (int antenna = next(0); antenna >= 0; antenna = next(antenna + 1))
+			antennas.add((short) antenna);
+		return antennas;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof AntennaSet))
+			return false;
+		AntennaSet other = (AntennaSet) obj;
+		return low == other.low && high == other.high;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(low) * 31 + Long.hashCode(high);
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+}
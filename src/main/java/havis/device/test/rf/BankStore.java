@@ -0,0 +1,154 @@
+package havis.device.test.rf;
+
+import java.lang.ref.WeakReference;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.MemoryBankNameEnumeration;
+
+/**
+ * Content addressed store of memory bank contents. Identical contents, e.g.
+ * the empty user banks or the password banks, are kept once and shared by all
+ * tags referring to them, both as the hex data of the tags and as the binary
+ * contents of their memory. Only the contents of the banks which are commonly
+ * shared are stored, as each stored content costs more than a copy held by a
+ * single tag. The EPC and TID banks identify a tag and are not stored by
+ * default.
+ * 
+ * The contents of a bank are immutable, a tag whose bank is written refers to
+ * the contents stored for the new data afterwards. Contents are only held
+ * weakly by the store, so contents which have been overwritten are released.
+ * The hex data is kept as long as a tag refers to it and the binary contents
+ * as long as the memory of a tag refers to them. Binary contents released
+ * while tags still refer to the hex data are decoded again on next use.
+ */
+public class BankStore {
+
+	/**
+	 * Contents of a bank as hex data and in binary form. The binary contents
+	 * must not be modified.
+	 */
+	public static final class Bank {
+		private final String hex;
+		private final byte[] data;
+
+		Bank(String hex, byte[] data) {
+			this.hex = hex;
+			this.data = data;
+		}
+
+		public String getHex() {
+			return hex;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+	/* weak references only, the hex data is the key of its entry */
+	private static final class Entry {
+		final WeakReference<String> hex;
+		WeakReference<Bank> bank;
+
+		Entry(Bank bank) {
+			this.hex = new WeakReference<>(bank.hex);
+			this.bank = new WeakReference<>(bank);
+		}
+	}
+
+	private final Set<MemoryBankNameEnumeration> sharedBanks;
+	private final Map<String, Entry> banks = new WeakHashMap<>();
+	private long references;
+
+	/**
+	 * Creates a store sharing the password and user banks
+	 */
+	public BankStore() {
+		this(EnumSet.of(MemoryBankNameEnumeration.PWD_BANK, MemoryBankNameEnumeration.USER_BANK));
+	}
+
+	/**
+	 * Creates a new store
+	 * 
+	 * @param sharedBanks
+	 *            the banks whose contents are shared
+	 */
+	public BankStore(Set<MemoryBankNameEnumeration> sharedBanks) {
+		this.sharedBanks = EnumSet.copyOf(sharedBanks);
+	}
+
+	/**
+	 * @param bank
+	 *            the name of the bank
+	 * @return whether the contents of the bank are shared
+	 */
+	public boolean isShared(MemoryBankNameEnumeration bank) {
+		return bank != null && sharedBanks.contains(bank);
+	}
+
+	/**
+	 * Returns the contents for hex data, which are decoded if they are not
+	 * stored yet
+	 * 
+	 * @param hex
+	 *            the hex data
+	 * @return the stored contents
+	 */
+	public synchronized Bank intern(String hex) {
+		references++;
+		Entry entry = banks.get(hex);
+		Bank bank = entry == null ? null : entry.bank.get();
+		if (bank == null)
+			bank = put(entry, hex, RFUtils.hexToBytes(hex));
+		return bank;
+	}
+
+	/**
+	 * Returns the contents for binary data, which are copied if they are not
+	 * stored yet
+	 * 
+	 * @param data
+	 *            the binary data
+	 * @return the stored contents
+	 */
+	public synchronized Bank intern(byte[] data) {
+		references++;
+		String hex = TagMemory.toHex(data);
+		Entry entry = banks.get(hex);
+		Bank bank = entry == null ? null : entry.bank.get();
+		if (bank == null)
+			bank = put(entry, hex, data.clone());
+		return bank;
+	}
+
+	/* the hex data still referred to by tags is reused */
+	private Bank put(Entry entry, String hex, byte[] data) {
+		String stored = entry == null ? null : entry.hex.get();
+		Bank bank = new Bank(stored == null ? hex : stored, data);
+		if (stored == null)
+			banks.put(bank.hex, new Entry(bank));
+		else
+			entry.bank = new WeakReference<>(bank);
+		return bank;
+	}
+
+	/**
+	 * @return the number of distinct contents stored, which includes the
+	 *         contents released but not purged yet
+	 */
+	public synchronized int size() {
+		return banks.size();
+	}
+
+	/**
+	 * @return the number of contents requested, i.e. of the references to the
+	 *         stored contents
+	 */
+	public synchronized long getReferences() {
+		return references;
+	}
+}
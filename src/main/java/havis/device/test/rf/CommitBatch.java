@@ -0,0 +1,54 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Tags changed by the tag operations of a single execution, which are
+ * committed at its end if the commit mode is {@link CommitMode#BATCHED}. A
+ * batch is started by {@link HardwareApi#beginCommit()} for the calling
+ * thread and may be joined by the threads performing the operations of the
+ * same execution.
+ */
+public final class CommitBatch {
+
+	private final Map<String, RequestCreateTagType> tags = new LinkedHashMap<>();
+	private boolean closed;
+
+	/**
+	 * Adds a changed tag. A tag changed by several operations is committed
+	 * once.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return false if the batch has been closed already, so the tag is to be
+	 *         committed immediately
+	 */
+	synchronized boolean add(RequestCreateTagType tag) {
+		if (closed)
+			return false;
+		tags.put(tag.getTagId(), tag);
+		return true;
+	}
+
+	/**
+	 * Closes the batch, tags changed afterwards are not added any more
+	 * 
+	 * @return the tags to commit in the order they have been changed first
+	 */
+	synchronized Collection<RequestCreateTagType> close() {
+		closed = true;
+		return new ArrayList<>(tags.values());
+	}
+
+	/**
+	 * @return the number of tags to commit
+	 */
+	public synchronized int size() {
+		return tags.size();
+	}
+}
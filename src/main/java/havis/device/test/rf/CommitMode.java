@@ -0,0 +1,20 @@
+package havis.device.test.rf;
+
+/**
+ * Defines when tags changed by write, lock and kill operations are committed
+ * to the hardware management
+ */
+public enum CommitMode {
+	/**
+	 * Each changed tag is committed by its own update request as soon as the
+	 * operation has been performed
+	 */
+	IMMEDIATE,
+
+	/**
+	 * The changed tags are collected during an execution and committed by a
+	 * single update request at its end. Changes of the same tags committed by
+	 * other hardware APIs in the meantime are reverted.
+	 */
+	BATCHED
+}
@@ -0,0 +1,170 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import havis.device.rf.exception.ImplementationException;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagType;
+import havis.device.test.hardware.RequestCreateTagsType;
+
+/**
+ * Runs inventory rounds back to back on a dedicated thread and publishes an
+ * observation for each tag and antenna to a ring buffer. The antennas and the
+ * RSSI filter are taken from the hardware manager for each round, so changes
+ * of the configuration apply to the next round. A failed round stops the
+ * inventory, the failure is kept until it is started again.
+ */
+public class ContinuousInventory implements Runnable {
+
+	private static final Logger log = Logger.getLogger(ContinuousInventory.class.getName());
+
+	private final StubHardwareManager manager;
+	private final HardwareApi hwApi;
+	private final List<Short> antennas;
+	private final List<Filter> filters;
+	private final ObservationRingBuffer observations;
+	private final AtomicLong rounds = new AtomicLong();
+	private volatile boolean running;
+	private Thread thread;
+	private Exception failure;
+
+	/**
+	 * Creates a new continuous inventory
+	 * 
+	 * @param manager
+	 *            the hardware manager providing the configuration
+	 * @param hwApi
+	 *            the hardware API to run the inventory rounds with
+	 * @param antennas
+	 *            the antennas as passed to
+	 *            {@link StubHardwareManager#execute(List, List, List, havis.device.rf.RFConsumer)}
+	 * @param filters
+	 *            the filters
+	 * @param capacity
+	 *            the capacity of the ring buffer
+	 */
+	public ContinuousInventory(StubHardwareManager manager, HardwareApi hwApi, List<Short> antennas,
+			List<Filter> filters, int capacity) {
+		this.manager = manager;
+		this.hwApi = hwApi;
+		this.antennas = antennas;
+		this.filters = filters;
+		this.observations = new ObservationRingBuffer(capacity);
+	}
+
+	/**
+	 * @return the ring buffer the observations are published to
+	 */
+	public ObservationRingBuffer getObservations() {
+		return observations;
+	}
+
+	/**
+	 * @return the number of inventory rounds run so far
+	 */
+	public long getRounds() {
+		return rounds.get();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the failure of the round which has stopped the inventory or
+	 *         null
+	 */
+	public synchronized Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Starts the inventory thread. An inventory stopped by a failure is
+	 * started again.
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			return;
+		failure = null;
+		running = true;
+		thread = new Thread(this, StubHardwareManager.class.getSimpleName() + "-continuous");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the inventory thread and waits until the current round has
+	 * finished
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+			this.thread = null;
+			running = false;
+		}
+		if (thread == null)
+			return;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		Exception failure = null;
+		try {
+			while (running) {
+				try {
+					runRound();
+				} catch (ImplementationException | RuntimeException e) {
+					log.log(Level.SEVERE, "Continuous inventory round failed, stopping.", e);
+					failure = e;
+					running = false;
+				}
+			}
+		} finally {
+			/* the inventory can be started again, unless it has been stopped and restarted meanwhile */
+			synchronized (this) {
+				if (thread == Thread.currentThread()) {
+					thread = null;
+					this.failure = failure;
+				}
+			}
+		}
+	}
+
+	private void runRound() throws ImplementationException {
+		AntennaSet effAntennas = manager.getEffectiveAntennas(antennas);
+		if (effAntennas.isEmpty()) {
+			/* wait for antennas to be connected */
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				// stop is checked by the caller
+			}
+			return;
+		}
+
+		RequestCreateTagsType tags = hwApi.inventory(effAntennas, filters, manager.getRssiFilter());
+		long timestamp = System.currentTimeMillis();
+		for (RequestCreateTagType tag : tags.getTag()) {
+			if (tag.getAntennas() == null)
+				continue;
+			for (RequestCreateTagAntennaType antenna : tag.getAntennas().getAntenna()) {
+				int antennaId = antenna.getAntennaId();
+				if (effAntennas.contains(antennaId))
+					observations.publish(tag.getTagId(), (short) antennaId, AntennaIndex.getPeakRssi(antenna),
+							timestamp);
+			}
+		}
+		rounds.incrementAndGet();
+	}
+}
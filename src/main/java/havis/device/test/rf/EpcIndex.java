@@ -0,0 +1,333 @@
+package havis.device.test.rf;
+
+import java.util.Arrays;
+
+import havis.device.rf.common.util.RFUtils;
+
+/**
+ * Index of the tags of a population by the first 64 bits of their EPC, i.e.
+ * the bits of the EPC bank following CRC and PC. The keys are kept in a
+ * sorted primitive array, so a select filter on an EPC prefix is resolved to
+ * the range of candidate tags by binary search.
+ * 
+ * The index only narrows down the tags to check, the candidates still have to
+ * be matched against the filters. Tags without EPC bank are not part of the
+ * index, as they cannot match an inclusive filter on the EPC bank.
+ * 
+ * The index is immutable apart from the tags updated since it has been sorted,
+ * which are kept in small unsorted arrays and checked by each selection. The
+ * keys are sorted again once the number of updated tags exceeds the square
+ * root of the size of the index, so an update does not copy the sorted
+ * arrays. The arrays are replaced as a whole on update, so the index can be
+ * read while a tag is updated.
+ */
+public class EpcIndex {
+
+	/**
+	 * Bit offset of the EPC within the EPC bank
+	 */
+	public static final int EPC_OFFSET = 32;
+
+	private static final int[] EMPTY = new int[0];
+	private static final long[] EMPTY_KEYS = new long[0];
+
+	private final long[] tagKeys;
+	private final boolean[] indexed;
+	private volatile Entries entries;
+
+	static class Entries {
+		/* keys with flipped sign bit, so signed order is unsigned order */
+		final long[] keys;
+		final int[] positions;
+		/* positions updated since sorting in ascending order */
+		final int[] updated;
+		/* current keys of the updated tags which have an EPC bank */
+		final long[] updatedKeys;
+		final int[] updatedPositions;
+		final int size;
+
+		Entries(long[] keys, int[] positions) {
+			this(keys, positions, EMPTY, EMPTY_KEYS, EMPTY, keys.length);
+		}
+
+		Entries(long[] keys, int[] positions, int[] updated, long[] updatedKeys, int[] updatedPositions, int size) {
+			this.keys = keys;
+			this.positions = positions;
+			this.updated = updated;
+			this.updatedKeys = updatedKeys;
+			this.updatedPositions = updatedPositions;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Builds the index for a population
+	 * 
+	 * @param population
+	 *            the population
+	 */
+	public EpcIndex(TagPopulation population) {
+		int size = population.size();
+		tagKeys = new long[size];
+		indexed = new boolean[size];
+
+		for (int position = 0; position < size; position++) {
+			byte[] epcBank = population.getMemory(position).getBank(RFUtils.BANK_EPC);
+			if (epcBank == null)
+				continue;
+			tagKeys[position] = toKey(epcBank);
+			indexed[position] = true;
+		}
+		sort();
+	}
+
+	/* sorts the keys of all indexed tags */
+	private void sort() {
+		int count = 0;
+		long[] keys = new long[tagKeys.length];
+		int[] positions = new int[tagKeys.length];
+		for (int position = 0; position < tagKeys.length; position++) {
+			if (!indexed[position])
+				continue;
+			keys[count] = tagKeys[position];
+			positions[count] = position;
+			count++;
+		}
+		keys = Arrays.copyOf(keys, count);
+		positions = Arrays.copyOf(positions, count);
+		sort(keys, positions, 0, count - 1);
+		entries = new Entries(keys, positions);
+	}
+
+	/**
+	 * Selects the candidates for the filters of a matcher. Inclusive filters
+	 * on the EPC bank starting at {@link #EPC_OFFSET} are resolved by the
+	 * leading bits of their mask. If several filters can be resolved, the one
+	 * with the fewest candidates is used.
+	 * 
+	 * @param matcher
+	 *            the matcher
+	 * @return the positions of the candidates in ascending order or null if
+	 *         no filter can be resolved by the index
+	 */
+	public int[] select(FilterMatcher matcher) {
+		Entries e = entries;
+		int from = -1;
+		int to = -1;
+		long fromKey = 0;
+		long toKey = 0;
+		for (FilterMatcher.Condition condition : matcher.conditions) {
+			if (condition.bank != RFUtils.BANK_EPC || !condition.match || condition.segments.length != 1)
+				continue;
+			FilterMatcher.Segment segment = condition.segments[0];
+			if (!segment.match || segment.bitOffset != EPC_OFFSET || segment.bitLength == 0)
+				continue;
+
+			/* leading bits of the segment, which are not masked */
+			int length = Math.min(64, segment.bitLength);
+			long mask = segment.mask[0] << (64 - length);
+			long value = segment.value[0] << (64 - length);
+			int prefix = Math.min(length, Long.numberOfLeadingZeros(~mask));
+			if (prefix == 0)
+				continue;
+
+			long low = value & (-1L << (64 - prefix));
+			long high = prefix == 64 ? low : low | (-1L >>> prefix);
+			int start = firstNotBelow(e.keys, low ^ Long.MIN_VALUE);
+			int end = firstAbove(e.keys, high ^ Long.MIN_VALUE);
+			if (from < 0 || end - start < to - from) {
+				from = start;
+				to = end;
+				fromKey = low ^ Long.MIN_VALUE;
+				toKey = high ^ Long.MIN_VALUE;
+			}
+		}
+
+		if (from < 0)
+			return null;
+		if (from == to && e.updatedKeys.length == 0)
+			return EMPTY;
+
+		/* sorted candidates whose keys are still valid and updated candidates */
+		int[] candidates = new int[to - from + e.updatedKeys.length];
+		int count = 0;
+		for (int i = from; i < to; i++)
+			if (e.updated.length == 0 || Arrays.binarySearch(e.updated, e.positions[i]) < 0)
+				candidates[count++] = e.positions[i];
+		for (int i = 0; i < e.updatedKeys.length; i++)
+			if (e.updatedKeys[i] >= fromKey && e.updatedKeys[i] <= toKey)
+				candidates[count++] = e.updatedPositions[i];
+		if (count == 0)
+			return EMPTY;
+		candidates = Arrays.copyOf(candidates, count);
+		Arrays.sort(candidates);
+		return candidates;
+	}
+
+	/**
+	 * @return the number of indexed tags
+	 */
+	public int size() {
+		return entries.size;
+	}
+
+	/**
+	 * Re-indexes a tag if its EPC has changed
+	 * 
+	 * @param position
+	 *            the position of the tag within the population
+	 * @param epcBank
+	 *            the contents of the EPC bank of the tag, null if the tag
+	 *            does not have an EPC bank
+	 */
+	public synchronized void update(int position, byte[] epcBank) {
+		long key = epcBank == null ? 0 : toKey(epcBank);
+		if (indexed[position] == (epcBank != null) && tagKeys[position] == key)
+			return;
+
+		Entries e = entries;
+		int size = e.size + (epcBank != null ? 1 : 0) - (indexed[position] ? 1 : 0);
+		indexed[position] = epcBank != null;
+		tagKeys[position] = key;
+
+		int[] updated = e.updated;
+		int i = Arrays.binarySearch(updated, position);
+		if (i < 0) {
+			if (updated.length >= Math.max(16, (int) Math.sqrt(e.keys.length))) {
+				sort();
+				return;
+			}
+			updated = insert(updated, -i - 1, position);
+		}
+
+		/* the current key replaces a previous update of the tag */
+		long[] updatedKeys = e.updatedKeys;
+		int[] updatedPositions = e.updatedPositions;
+		int j = indexOf(updatedPositions, position);
+		if (j >= 0) {
+			updatedKeys = remove(updatedKeys, j);
+			updatedPositions = remove(updatedPositions, j);
+		}
+		if (epcBank != null) {
+			updatedKeys = insert(updatedKeys, updatedKeys.length, key);
+			updatedPositions = insert(updatedPositions, updatedPositions.length, position);
+		}
+		entries = new Entries(e.keys, e.positions, updated, updatedKeys, updatedPositions, size);
+	}
+
+	/* first 64 bits of the EPC with flipped sign bit */
+	private static long toKey(byte[] epcBank) {
+		return FilterMatcher.getBits(epcBank, EPC_OFFSET, 64) ^ Long.MIN_VALUE;
+	}
+
+	private static int firstNotBelow(long[] keys, long key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static int firstAbove(long[] keys, long key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys[mid] <= key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++)
+			if (array[i] == value)
+				return i;
+		return -1;
+	}
+
+	private static long[] remove(long[] array, int index) {
+		long[] result = new long[array.length - 1];
+		System.arraycopy(array, 0, result, 0, index);
+		System.arraycopy(array, index + 1, result, index, result.length - index);
+		return result;
+	}
+
+	private static int[] remove(int[] array, int index) {
+		int[] result = new int[array.length - 1];
+		System.arraycopy(array, 0, result, 0, index);
+		System.arraycopy(array, index + 1, result, index, result.length - index);
+		return result;
+	}
+
+	private static long[] insert(long[] array, int index, long value) {
+		long[] result = new long[array.length + 1];
+		System.arraycopy(array, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(array, index, result, index + 1, array.length - index);
+		return result;
+	}
+
+	private static int[] insert(int[] array, int index, int value) {
+		int[] result = new int[array.length + 1];
+		System.arraycopy(array, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(array, index, result, index + 1, array.length - index);
+		return result;
+	}
+
+	/* sorts the keys and the positions along with them */
+	private static void sort(long[] keys, int[] positions, int low, int high) {
+		while (high - low > 16) {
+			int mid = (low + high) >>> 1;
+			/* median of three as pivot */
+			if (keys[mid] < keys[low])
+				swap(keys, positions, mid, low);
+			if (keys[high] < keys[low])
+				swap(keys, positions, high, low);
+			if (keys[high] < keys[mid])
+				swap(keys, positions, high, mid);
+			long pivot = keys[mid];
+
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (keys[i] < pivot)
+					i++;
+				while (keys[j] > pivot)
+					j--;
+				if (i <= j)
+					swap(keys, positions, i++, j--);
+			}
+
+			/* recurse into the smaller part */
+			if (j - low < high - i) {
+				sort(keys, positions, low, j);
+				low = i;
+			} else {
+				sort(keys, positions, i, high);
+				high = j;
+			}
+		}
+
+		for (int i = low + 1; i <= high; i++)
+			for (int j = i; j > low && keys[j] < keys[j - 1]; j--)
+				swap(keys, positions, j, j - 1);
+	}
+
+	private static void swap(long[] keys, int[] positions, int i, int j) {
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int position = positions[i];
+		positions[i] = positions[j];
+		positions[j] = position;
+	}
+}
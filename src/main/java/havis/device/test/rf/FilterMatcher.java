@@ -0,0 +1,192 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.tag.Filter;
+
+/**
+ * Immutable matcher compiled from a list of select filters. The filter data
+ * and masks are converted once into 64 bit words, which are compared against
+ * the binary contents of the memory banks of a tag without any allocation.
+ * 
+ * A tag matches if it matches each filter. The semantics are the same as of
+ * {@link StubHardwareApi#applyFilters(havis.device.test.hardware.RequestCreateTagType, List)}:
+ * A filter is divided into sub filters by its mask using
+ * {@link RFUtils#applyMask(Filter)}. A tag matches an inclusive filter if all
+ * sub filters are equal to the bank contents and an exclusive filter if none
+ * of the sub filters is equal to the bank contents. Bits beyond the bank
+ * contents are treated as 0. A tag without the bank of a filter only matches
+ * an exclusive filter.
+ */
+public class FilterMatcher {
+
+	/**
+	 * Matcher without any filter, which matches all tags
+	 */
+	public static final FilterMatcher ALL = new FilterMatcher(Collections.<Condition> emptyList());
+
+	final Condition[] conditions;
+
+	static class Condition {
+		final short bank;
+		final boolean match;
+		final Segment[] segments;
+
+		Condition(short bank, boolean match, Segment[] segments) {
+			this.bank = bank;
+			this.match = match;
+			this.segments = segments;
+		}
+	}
+
+	static class Segment {
+		final int bitOffset;
+		final int bitLength;
+		final long[] mask;
+		final long[] value;
+		final boolean match;
+
+		Segment(int bitOffset, int bitLength, long[] mask, long[] value, boolean match) {
+			this.bitOffset = bitOffset;
+			this.bitLength = bitLength;
+			this.mask = mask;
+			this.value = value;
+			this.match = match;
+		}
+
+		/* whether the bank contents are equal to the segment */
+		boolean isEqual(byte[] data) {
+			for (int i = 0; i < mask.length; i++) {
+				int length = Math.min(64, bitLength - i * 64);
+				if ((getBits(data, bitOffset + i * 64, length) & mask[i]) != value[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private FilterMatcher(List<Condition> conditions) {
+		this.conditions = conditions.toArray(new Condition[conditions.size()]);
+	}
+
+	/**
+	 * Compiles a list of filters
+	 * 
+	 * @param filters
+	 *            the filters
+	 * @return the matcher
+	 */
+	public static FilterMatcher compile(List<Filter> filters) {
+		if (filters == null || filters.isEmpty())
+			return ALL;
+
+		List<Condition> conditions = new ArrayList<>(filters.size());
+		for (Filter filter : filters) {
+			List<Filter> subFilters = RFUtils.applyMask(filter);
+			if (subFilters == null)
+				subFilters = Collections.singletonList(filter);
+
+			boolean inclusive = true;
+			for (Filter subFilter : subFilters)
+				inclusive &= subFilter.isMatch();
+
+			Segment[] segments;
+			if (inclusive && subFilters.size() > 1) {
+				/* all sub filters have to be equal: one masked segment */
+				segments = new Segment[] { compileMasked(subFilters) };
+			} else {
+				segments = new Segment[subFilters.size()];
+				for (int i = 0; i < segments.length; i++)
+					segments[i] = compileMasked(Collections.singletonList(subFilters.get(i)));
+			}
+			conditions.add(new Condition(filter.getBank(), filter.isMatch(), segments));
+		}
+		return new FilterMatcher(conditions);
+	}
+
+	private static Segment compileMasked(List<Filter> subFilters) {
+		int start = Integer.MAX_VALUE;
+		int end = 0;
+		for (Filter subFilter : subFilters) {
+			start = Math.min(start, subFilter.getBitOffset());
+			end = Math.max(end, subFilter.getBitOffset() + subFilter.getBitLength());
+		}
+		int bitLength = Math.max(0, end - start);
+
+		long[] mask = new long[(bitLength + 63) / 64];
+		long[] value = new long[mask.length];
+		for (Filter subFilter : subFilters) {
+			byte[] data = subFilter.getData() == null ? new byte[0] : subFilter.getData();
+			for (int i = 0; i < subFilter.getBitLength(); i++) {
+				/* position of the bit within the segment */
+				int bit = subFilter.getBitOffset() - start + i;
+				int word = bit / 64;
+				int length = Math.min(64, bitLength - word * 64);
+				long flag = 1L << (length - 1 - bit % 64);
+				mask[word] |= flag;
+				if (getBits(data, i, 1) != 0)
+					value[word] |= flag;
+			}
+		}
+		return new Segment(start, bitLength, mask, value, subFilters.get(0).isMatch());
+	}
+
+	/**
+	 * @return the number of compiled filters
+	 */
+	public int size() {
+		return conditions.length;
+	}
+
+	/**
+	 * Checks whether the memory of a tag matches all filters
+	 * 
+	 * @param memory
+	 *            the memory of the tag
+	 * @return true if the tag matches, false otherwise
+	 */
+	public boolean matches(TagMemory memory) {
+		for (Condition condition : conditions) {
+			byte[] data = memory.getBank(condition.bank);
+			if (data == null) {
+				if (condition.match)
+					return false;
+				continue;
+			}
+			for (Segment segment : condition.segments)
+				if (segment.isEqual(data) != segment.match)
+					return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns up to 64 bits of the data as number, the first bit being the
+	 * most significant one. Bits beyond the data are 0.
+	 */
+	static long getBits(byte[] data, int bitOffset, int bitLength) {
+		long bits = 0;
+		int bit = bitOffset;
+		int end = bitOffset + bitLength;
+		while (bit < end && (bit & 7) != 0) {
+			bits = (bits << 1) | (getByte(data, bit >>> 3) >>> (7 - (bit & 7)) & 1);
+			bit++;
+		}
+		while (end - bit >= 8) {
+			bits = (bits << 8) | getByte(data, bit >>> 3);
+			bit += 8;
+		}
+		while (bit < end) {
+			bits = (bits << 1) | (getByte(data, bit >>> 3) >>> (7 - (bit & 7)) & 1);
+			bit++;
+		}
+		return bits;
+	}
+
+	private static int getByte(byte[] data, int index) {
+		return index < data.length ? data[index] & 0xff : 0;
+	}
+}
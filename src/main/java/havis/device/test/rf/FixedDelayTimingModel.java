@@ -0,0 +1,36 @@
+package havis.device.test.rf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing model with the same delay for each inventory round regardless of
+ * the number of antennas and tags
+ */
+public class FixedDelayTimingModel implements InventoryTimingModel {
+
+	static final String NAME = "fixed";
+
+	private final long delay;
+
+	/**
+	 * Creates a new fixed delay model
+	 * 
+	 * @param delay
+	 *            the delay of each round in milliseconds
+	 */
+	public FixedDelayTimingModel(long delay) {
+		this.delay = delay;
+	}
+
+	/**
+	 * @return the delay of each round in milliseconds
+	 */
+	public long getDelay() {
+		return delay;
+	}
+
+	@Override
+	public long getRoundDuration(int antennaCount, int tagCount) {
+		return TimeUnit.MILLISECONDS.toNanos(delay);
+	}
+}
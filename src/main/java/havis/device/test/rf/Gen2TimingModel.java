@@ -0,0 +1,58 @@
+package havis.device.test.rf;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing model approximating an EPC Class 1 Gen 2 inventory. Each antenna
+ * adds a fixed overhead for switching and setting up the round. The tags are
+ * singulated by the Q algorithm, which in average needs about <i>e</i> slots
+ * per tag: one successful slot, one empty slot and <i>e</i> - 2 slots with
+ * collisions.
+ */
+public class Gen2TimingModel implements InventoryTimingModel {
+
+	static final String NAME = "gen2";
+
+	private static final double COLLISION_SLOTS_PER_TAG = Math.E - 2;
+
+	private final long antennaOverhead;
+	private final long successSlot;
+	private final long emptySlot;
+	private final long collisionSlot;
+
+	/**
+	 * Creates a new model using the durations from the
+	 * {@link StubEnvironment}
+	 */
+	public Gen2TimingModel() {
+		this(StubEnvironment.TIMING_GEN2_ANTENNA_OVERHEAD, StubEnvironment.TIMING_GEN2_SUCCESS_SLOT,
+				StubEnvironment.TIMING_GEN2_EMPTY_SLOT, StubEnvironment.TIMING_GEN2_COLLISION_SLOT);
+	}
+
+	/**
+	 * Creates a new model
+	 * 
+	 * @param antennaOverhead
+	 *            the overhead per antenna in microseconds
+	 * @param successSlot
+	 *            the duration of a slot with a singulated tag in microseconds
+	 * @param emptySlot
+	 *            the duration of an empty slot in microseconds
+	 * @param collisionSlot
+	 *            the duration of a slot with colliding replies in
+	 *            microseconds
+	 */
+	public Gen2TimingModel(long antennaOverhead, long successSlot, long emptySlot, long collisionSlot) {
+		this.antennaOverhead = antennaOverhead;
+		this.successSlot = successSlot;
+		this.emptySlot = emptySlot;
+		this.collisionSlot = collisionSlot;
+	}
+
+	@Override
+	public long getRoundDuration(int antennaCount, int tagCount) {
+		double micros = antennaCount * antennaOverhead
+				+ tagCount * (successSlot + emptySlot + COLLISION_SLOTS_PER_TAG * collisionSlot);
+		return TimeUnit.MICROSECONDS.toNanos(Math.round(micros));
+	}
+}
@@ -24,8 +24,33 @@ public interface HardwareApi {
 
 	public List<Short> getConnectedAntennaIDs();
 
+	/**
+	 * @return the connected antennas, by default converted from
+	 *         {@link #getConnectedAntennaIDs()} ignoring the IDs out of range
+	 */
+	public default AntennaSet getConnectedAntennas() {
+		return AntennaSet.ALL.retain(getConnectedAntennaIDs());
+	}
+
 	public RequestCreateTagsType inventory(List<Short> antennas, List<Filter> filters, RssiFilter rssiFilter);
 
+	/**
+	 * Performs an inventory round on a set of antennas. Implementations
+	 * matching the antennas per tag should override this method, the default
+	 * implementation passes the antennas as a list.
+	 * 
+	 * @param antennas
+	 *            the antennas
+	 * @param filters
+	 *            the filters
+	 * @param rssiFilter
+	 *            the RSSI filter
+	 * @return the tags found
+	 */
+	public default RequestCreateTagsType inventory(AntennaSet antennas, List<Filter> filters, RssiFilter rssiFilter) {
+		return inventory(antennas.toList(), filters, rssiFilter);
+	}
+
 	public TagData getTagData(RequestCreateTagType tag);
 
 	public ReadResult read(ReadOperation rdOp, RequestCreateTagType tag);
@@ -35,4 +60,45 @@ public interface HardwareApi {
 	public LockResult lock(LockOperation lOp, RequestCreateTagType tag);
 
 	public KillResult kill(KillOperation kOp, RequestCreateTagType tag);
+
+	/**
+	 * Starts collecting the tags changed by the tag operations of the calling
+	 * thread if the commit mode is {@link CommitMode#BATCHED}. The default
+	 * implementation commits each tag immediately.
+	 * 
+	 * @return the batch to pass to {@link #endCommit(CommitBatch)} or null if
+	 *         the tags are committed immediately
+	 */
+	public default CommitBatch beginCommit() {
+		return null;
+	}
+
+	/**
+	 * Makes the calling thread add the tags changed by its tag operations to
+	 * a batch started by another thread, e.g. by a worker performing the
+	 * operations of an execution in parallel
+	 * 
+	 * @param batch
+	 *            the batch or null if the tags are committed immediately
+	 */
+	public default void joinCommit(CommitBatch batch) {
+	}
+
+	/**
+	 * Stops adding the tags changed by the calling thread to the batch joined
+	 * by {@link #joinCommit(CommitBatch)}
+	 */
+	public default void leaveCommit() {
+	}
+
+	/**
+	 * Commits the tags collected since {@link #beginCommit()}
+	 * 
+	 * @param batch
+	 *            the batch returned by {@link #beginCommit()}
+	 * @throws StubHardwareApiException
+	 *             if the tags could not be committed
+	 */
+	public default void endCommit(CommitBatch batch) throws StubHardwareApiException {
+	}
 }
\ No newline at end of file
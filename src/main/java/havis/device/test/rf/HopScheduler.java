@@ -0,0 +1,171 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import havis.device.rf.capabilities.FreqHopTableEntry;
+import havis.device.rf.capabilities.RegulatoryCapabilities;
+
+/**
+ * Frequency hopping of a reader. The reader stays on a channel for the dwell
+ * time of the region, hops to the next channel of a pseudo random sequence
+ * over the channels of the hop table and is silent during each hop
+ * transition. Readers which share the channels with more readers than there
+ * are channels only get a share of the air time, so regions with few channels
+ * allow fewer rounds per second in dense reader environments.
+ * 
+ * The scheduler maps the air time of an inventory round as provided by the
+ * {@link InventoryTimingModel} to the time it takes including hops and
+ * waiting for a free channel.
+ */
+public class HopScheduler {
+
+	private static final Logger log = Logger.getLogger(HopScheduler.class.getName());
+
+	private final int[] sequence;
+	private final long dwellTime;
+	private final long transitionTime;
+	private final int readers;
+
+	private int channel = -1;
+	private long dwellLeft;
+	private long hops;
+
+	/**
+	 * Creates a new scheduler
+	 * 
+	 * @param frequencies
+	 *            the frequencies of the channels in kHz
+	 * @param dwellTime
+	 *            the maximum time on a channel in milliseconds, 0 for no limit
+	 * @param transitionTime
+	 *            the time of a hop in microseconds
+	 * @param readers
+	 *            the number of readers sharing the channels
+	 * @throws IllegalArgumentException
+	 *             if no frequency is given or the number of readers is not
+	 *             positive
+	 */
+	public HopScheduler(List<Integer> frequencies, long dwellTime, long transitionTime, int readers) {
+		if (frequencies.isEmpty())
+			throw new IllegalArgumentException("At least one frequency is required");
+		if (readers < 1)
+			throw new IllegalArgumentException("Number of readers must be positive");
+
+		/* reproducible sequence, the channels of a table are visited in turn */
+		List<Integer> shuffled = new ArrayList<>(frequencies);
+		Collections.shuffle(shuffled, new Random(frequencies.size()));
+		this.sequence = new int[shuffled.size()];
+		for (int i = 0; i < sequence.length; i++)
+			sequence[i] = shuffled.get(i);
+
+		this.dwellTime = dwellTime > 0 ? TimeUnit.MILLISECONDS.toNanos(dwellTime) : Long.MAX_VALUE;
+		this.transitionTime = TimeUnit.MICROSECONDS.toNanos(transitionTime);
+		this.readers = readers;
+	}
+
+	/**
+	 * Creates a scheduler for a region using the first hop table of its
+	 * regulatory capabilities, the dwell time from
+	 * {@link StubEnvironment#HOPPING_DWELL_TIMES}, the transition time
+	 * {@link StubEnvironment#HOPPING_TRANSITION_TIME} and the number of
+	 * readers {@link StubEnvironment#HOPPING_READERS}
+	 * 
+	 * @param regionId
+	 *            the ID of the region
+	 * @param regulatoryCapabilities
+	 *            the regulatory capabilities of the region, may be null
+	 * @return the scheduler or null if the region does not hop
+	 */
+	public static HopScheduler forRegion(String regionId, RegulatoryCapabilities regulatoryCapabilities) {
+		if (regulatoryCapabilities == null || !regulatoryCapabilities.isHopping()
+				|| regulatoryCapabilities.getFreqHopTable() == null)
+			return null;
+		for (FreqHopTableEntry entry : regulatoryCapabilities.getFreqHopTable().getEntryList())
+			if (!entry.getFreqList().isEmpty())
+				return new HopScheduler(entry.getFreqList(), getDwellTime(regionId),
+						StubEnvironment.HOPPING_TRANSITION_TIME, (int) StubEnvironment.HOPPING_READERS);
+		return null;
+	}
+
+	/**
+	 * @param regionId
+	 *            the ID of the region
+	 * @return the dwell time of the region in milliseconds as configured by
+	 *         {@link StubEnvironment#HOPPING_DWELL_TIMES}, 0 if the region is
+	 *         not configured
+	 */
+	static long getDwellTime(String regionId) {
+		for (String entry : StubEnvironment.HOPPING_DWELL_TIMES.split(",")) {
+			String[] pair = entry.split("=");
+			if (pair.length != 2 || !pair[0].trim().equals(regionId))
+				continue;
+			try {
+				return Long.parseLong(pair[1].trim());
+			} catch (NumberFormatException e) {
+				log.log(Level.WARNING, "Invalid dwell time ''{0}'' for region {1}, using no limit.",
+						new Object[] { pair[1], regionId });
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Schedules an inventory round
+	 * 
+	 * @param airTime
+	 *            the air time of the round in nanoseconds
+	 * @return the duration of the round in nanoseconds including the hops and
+	 *         the time waiting for a free channel
+	 */
+	public synchronized long schedule(long airTime) {
+		long duration = 0;
+		long left = airTime;
+		while (left > 0) {
+			if (dwellLeft == 0) {
+				hop();
+				duration += transitionTime;
+			}
+			long slice = Math.min(left, dwellLeft);
+			left -= slice;
+			dwellLeft -= slice;
+			duration += slice;
+		}
+		if (readers > sequence.length)
+			duration = duration * readers / sequence.length;
+		return duration;
+	}
+
+	private void hop() {
+		channel = (channel + 1) % sequence.length;
+		dwellLeft = dwellTime;
+		hops++;
+	}
+
+	/**
+	 * @return the frequency of the current channel in kHz, the first
+	 *         frequency of the sequence before the first round
+	 */
+	public synchronized int getFrequency() {
+		return sequence[Math.max(channel, 0)];
+	}
+
+	/**
+	 * @return the number of hops performed
+	 */
+	public synchronized long getHops() {
+		return hops;
+	}
+
+	/**
+	 * @return the number of channels
+	 */
+	public int getChannelCount() {
+		return sequence.length;
+	}
+}
@@ -0,0 +1,154 @@
+package havis.device.test.rf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inventoried flags of the tags for the Gen2 sessions S1 to S3. Inventory
+ * rounds are simulated with target A, so a tag is reported if its flag is A
+ * and its flag is set to B once it has been reported. A flag returns to A
+ * when its persistence time has elapsed:
+ * <ul>
+ * <li>S0: the flag returns to A after each round, i.e. each tag is reported
+ * in each round</li>
+ * <li>S1: the flag returns to A after the persistence time regardless of
+ * whether the tag is energized</li>
+ * <li>S2 and S3: the flag stays B while the tag is energized, i.e. seen by
+ * the rounds, and returns to A after the persistence time without being
+ * energized</li>
+ * </ul>
+ * Only the flags of tags which have been reported are kept.
+ */
+public class InventoriedFlags {
+
+	static final int SESSIONS = 4;
+
+	private final long[] persistence = new long[SESSIONS];
+	/* the flags of S0 are never kept */
+	private final List<Map<String, long[]>> flags = new ArrayList<>(SESSIONS);
+	private long purgeTime;
+
+	/**
+	 * Creates flags with the persistence times of
+	 * {@link StubEnvironment#SESSION_S1_PERSISTENCE},
+	 * {@link StubEnvironment#SESSION_S2_PERSISTENCE} and
+	 * {@link StubEnvironment#SESSION_S3_PERSISTENCE}
+	 */
+	public InventoriedFlags() {
+		this(StubEnvironment.SESSION_S1_PERSISTENCE, StubEnvironment.SESSION_S2_PERSISTENCE,
+				StubEnvironment.SESSION_S3_PERSISTENCE);
+	}
+
+	/**
+	 * Creates new flags
+	 * 
+	 * @param s1Persistence
+	 *            the persistence time of session S1 in milliseconds
+	 * @param s2Persistence
+	 *            the persistence time of session S2 in milliseconds
+	 * @param s3Persistence
+	 *            the persistence time of session S3 in milliseconds
+	 */
+	public InventoriedFlags(long s1Persistence, long s2Persistence, long s3Persistence) {
+		persistence[1] = TimeUnit.MILLISECONDS.toNanos(s1Persistence);
+		persistence[2] = TimeUnit.MILLISECONDS.toNanos(s2Persistence);
+		persistence[3] = TimeUnit.MILLISECONDS.toNanos(s3Persistence);
+		for (int session = 0; session < SESSIONS; session++)
+			flags.add(new HashMap<String, long[]>());
+	}
+
+	/**
+	 * Singulates a tag in an inventory round with target A
+	 * 
+	 * @param tagId
+	 *            the ID of the tag
+	 * @param session
+	 *            the session from 0 to 3
+	 * @param now
+	 *            the time of the round as returned by {@link System#nanoTime()}
+	 * @return true if the tag is reported, i.e. its flag has been A
+	 * @throws IllegalArgumentException
+	 *             if the session is out of range
+	 */
+	public synchronized boolean inventory(String tagId, int session, long now) {
+		if (session < 0 || session >= SESSIONS)
+			throw new IllegalArgumentException("Session must be between 0 and 3, got " + session);
+		if (session == 0)
+			return true;
+
+		/* inventoried at, energized at */
+		long[] flag = flags.get(session).get(tagId);
+		if (flag != null && isB(session, flag, now)) {
+			flag[1] = now;
+			return false;
+		}
+		if (flag == null)
+			flags.get(session).put(tagId, new long[] { now, now });
+		else {
+			flag[0] = now;
+			flag[1] = now;
+		}
+		return true;
+	}
+
+	private boolean isB(int session, long[] flag, long now) {
+		return now - (session == 1 ? flag[0] : flag[1]) < persistence[session];
+	}
+
+	/**
+	 * Returns the flag of a tag
+	 * 
+	 * @param tagId
+	 *            the ID of the tag
+	 * @param session
+	 *            the session from 0 to 3
+	 * @param now
+	 *            the current time as returned by {@link System#nanoTime()}
+	 * @return true if the flag is B, false if it is A
+	 */
+	public synchronized boolean isB(String tagId, int session, long now) {
+		if (session <= 0 || session >= SESSIONS)
+			return false;
+		long[] flag = flags.get(session).get(tagId);
+		return flag != null && isB(session, flag, now);
+	}
+
+	/**
+	 * Removes the flags which have returned to A. Flags are purged at most
+	 * once per shortest persistence time.
+	 * 
+	 * @param now
+	 *            the current time as returned by {@link System#nanoTime()}
+	 */
+	public synchronized void purge(long now) {
+		long interval = Math.min(persistence[1], Math.min(persistence[2], persistence[3]));
+		if (now - purgeTime < interval)
+			return;
+		purgeTime = now;
+		for (int session = 1; session < SESSIONS; session++)
+			for (Iterator<long[]> it = flags.get(session).values().iterator(); it.hasNext();)
+				if (!isB(session, it.next(), now))
+					it.remove();
+	}
+
+	/**
+	 * Sets the flags of all tags to A
+	 */
+	public synchronized void reset() {
+		for (int session = 1; session < SESSIONS; session++)
+			flags.get(session).clear();
+	}
+
+	/**
+	 * @param session
+	 *            the session from 1 to 3
+	 * @return the number of flags kept for the session
+	 */
+	public synchronized int size(int session) {
+		return flags.get(session).size();
+	}
+}
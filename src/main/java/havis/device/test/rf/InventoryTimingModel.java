@@ -0,0 +1,51 @@
+package havis.device.test.rf;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Model of the time an inventory round takes. The {@link StubHardwareApi}
+ * delays each inventory round by the duration provided by the model.
+ */
+public interface InventoryTimingModel {
+
+	/**
+	 * Returns the duration of an inventory round
+	 * 
+	 * @param antennaCount
+	 *            the number of antennas the round is performed on
+	 * @param tagCount
+	 *            the number of tags seen in the round
+	 * @return the duration in nanoseconds
+	 */
+	long getRoundDuration(int antennaCount, int tagCount);
+
+	/**
+	 * Creates a timing model by name. Supported names are <b>zero</b>,
+	 * <b>fixed</b> and <b>gen2</b> as well as the fully qualified name of a
+	 * class implementing this interface with a public default constructor.
+	 * Unknown names result in a fixed delay model.
+	 * 
+	 * @param name
+	 *            the name of the model
+	 * @return the timing model
+	 */
+	static InventoryTimingModel forName(String name) {
+		switch (name) {
+		case ZeroDelayTimingModel.NAME:
+			return new ZeroDelayTimingModel();
+		case FixedDelayTimingModel.NAME:
+			return new FixedDelayTimingModel(StubEnvironment.TIMING_FIXED_DELAY);
+		case Gen2TimingModel.NAME:
+			return new Gen2TimingModel();
+		default:
+			try {
+				return Class.forName(name).asSubclass(InventoryTimingModel.class).newInstance();
+			} catch (Exception e) {
+				Logger.getLogger(InventoryTimingModel.class.getName()).log(Level.WARNING,
+						"Failed to create inventory timing model '" + name + "', using fixed delay.", e);
+				return new FixedDelayTimingModel(StubEnvironment.TIMING_FIXED_DELAY);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package havis.device.test.rf;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds. The values are counted in buckets
+ * which grow exponentially, each power of two is divided into 16 buckets of
+ * equal width, so a recorded value is known with a relative error of at most
+ * 1/16. Values beyond about 18 minutes are counted in the last bucket.
+ * 
+ * The buckets are {@link LongAdder}s, so concurrent recording does not
+ * contend and does not allocate once the buckets are in use.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder sum = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = new LongAdder();
+	}
+
+	/**
+	 * Records a latency
+	 * 
+	 * @param nanos
+	 *            the latency in nanoseconds, negative values are recorded as
+	 *            0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts[indexOf(nanos)].increment();
+		sum.add(nanos);
+	}
+
+	/**
+	 * Resets the histogram. Latencies recorded concurrently may be lost or
+	 * partially kept.
+	 */
+	public void reset() {
+		for (LongAdder count : counts)
+			count.reset();
+		sum.reset();
+	}
+
+	/**
+	 * Takes a snapshot of the histogram. Latencies recorded concurrently may
+	 * or may not be part of the snapshot.
+	 * 
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] values = new long[counts.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = counts[i].sum();
+		return new Snapshot(values, sum.sum());
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long lowerBound(int index) {
+		if (index < 2 * SUB_BUCKETS)
+			return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	static long upperBound(int index) {
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+	}
+
+	/**
+	 * Immutable state of a histogram
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+
+		Snapshot(long[] counts, long sum) {
+			this.counts = counts;
+			this.sum = sum;
+			long count = 0;
+			for (long c : counts)
+				count += c;
+			this.count = count;
+		}
+
+		/**
+		 * @return the number of recorded latencies
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the sum of the recorded latencies in nanoseconds
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return the mean latency in nanoseconds or 0 if no latency has been
+		 *         recorded
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @return the lower bound of the bucket of the smallest latency in
+		 *         nanoseconds or 0 if no latency has been recorded
+		 */
+		public long getMin() {
+			for (int i = 0; i < counts.length; i++)
+				if (counts[i] > 0)
+					return lowerBound(i);
+			return 0;
+		}
+
+		/**
+		 * @return the upper bound of the bucket of the largest latency in
+		 *         nanoseconds or 0 if no latency has been recorded
+		 */
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--)
+				if (counts[i] > 0)
+					return upperBound(i);
+			return 0;
+		}
+
+		/**
+		 * Returns the latency below or at which the given percentage of the
+		 * recorded latencies lie.
+		 * 
+		 * @param percentile
+		 *            the percentile between 0 and 100
+		 * @return the upper bound of the bucket of the percentile in
+		 *         nanoseconds or 0 if no latency has been recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return upperBound(i);
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d, mean=%.0fns, p50=%dns, p99=%dns, max=%dns", count, getMean(),
+					getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+		}
+	}
+}
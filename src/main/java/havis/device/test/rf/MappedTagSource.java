@@ -0,0 +1,429 @@
+package havis.device.test.rf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.DataType;
+import havis.device.test.hardware.FieldFormatEnumeration;
+import havis.device.test.hardware.FieldType;
+import havis.device.test.hardware.LockFieldNameEnumeration;
+import havis.device.test.hardware.LockType;
+import havis.device.test.hardware.LocksType;
+import havis.device.test.hardware.MemoryBankType;
+import havis.device.test.hardware.MemoryBanksType;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagAntennasType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Tag source backed by a memory-mapped file with a record of fixed size per
+ * tag. A record holds the contents of the memory banks, the lock state of the
+ * lockable fields, the killed flag and the peak RSSI per antenna, so the
+ * population is kept off the heap and survives restarts. Opening a store only
+ * maps the file.
+ * 
+ * The capacity of each memory bank and the number of antennas per tag are
+ * defined when the store is created. Tags are identified by their position,
+ * the IDs of the tags a store is created from are not kept.
+ * 
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: the magic
+ * number, the format version, the number of tags, the record size, the bank
+ * capacities in bytes in the order of the bank indexes and the number of
+ * antenna slots, each as big-endian int. Each record starts with the flags
+ * byte, one byte per lockable field and the length of each bank in bytes as
+ * short, -1 if the tag does not have the bank, followed by the bank contents
+ * and the antenna slots of antenna ID and peak RSSI as short each.
+ * 
+ * The store configured in the {@link StubEnvironment} is opened once per file
+ * and shared until it is closed, so all connections use the same mapping and
+ * the same locks of the records.
+ */
+public class MappedTagSource implements TagSource, Closeable, Flushable {
+
+	static final String NAME = "mapped";
+
+	static final int HEADER_SIZE = 64;
+
+	private static final int MAGIC = 0x48565453;
+	private static final int VERSION = 1;
+	private static final int BANK_COUNT = 4;
+	private static final int BANKS_OFFSET = 8;
+	private static final int DATA_OFFSET = BANKS_OFFSET + BANK_COUNT * 2;
+
+	private static final int FLAG_KILLED = 0x01;
+	private static final int LOCK_PRESENT = 0x01;
+	private static final int LOCK_LOCKED = 0x02;
+	private static final int LOCK_PERMANENT = 0x04;
+	private static final short NO_RSSI = Short.MIN_VALUE;
+
+	/* the order of the lock bytes within a record */
+	private static final LockFieldNameEnumeration[] LOCK_FIELDS = { LockFieldNameEnumeration.KILL_PWD,
+			LockFieldNameEnumeration.ACCESS_PWD, LockFieldNameEnumeration.EPC_BANK,
+			LockFieldNameEnumeration.TID_BANK, LockFieldNameEnumeration.USER_BANK };
+
+	private static final String TAG_ID_PREFIX = "mapped-";
+
+	/* the stores opened by fromEnvironment by canonical file */
+	private static final Map<File, MappedTagSource> stores = new HashMap<>();
+
+	private final File file;
+	private final int count;
+	private final int recordSize;
+	private final int[] capacities = new int[BANK_COUNT];
+	private final int[] bankOffsets = new int[BANK_COUNT];
+	private final int antennaSlots;
+	private final int antennasOffset;
+	private final int recordsPerSegment;
+	private final MappedByteBuffer[] segments;
+	/* records are read and written under the lock of their stripe */
+	private final Object[] stripes = new Object[64];
+
+	private MappedTagSource(File file, ByteBuffer header, FileChannel channel) throws IOException {
+		this.file = file;
+		if (header.getInt(0) != MAGIC)
+			throw new IOException("File " + file + " is not a tag store");
+		if (header.getInt(4) != VERSION)
+			throw new IOException("Unsupported version " + header.getInt(4) + " of tag store " + file);
+
+		count = header.getInt(8);
+		recordSize = header.getInt(12);
+		int offset = DATA_OFFSET;
+		for (int bank = 0; bank < BANK_COUNT; bank++) {
+			capacities[bank] = header.getInt(16 + bank * 4);
+			bankOffsets[bank] = offset;
+			offset += capacities[bank];
+		}
+		antennaSlots = header.getInt(32);
+		antennasOffset = offset;
+		if (recordSize != offset + antennaSlots * 4 || count < 0)
+			throw new IOException("Invalid layout of tag store " + file);
+		if (channel.size() < HEADER_SIZE + (long) count * recordSize)
+			throw new IOException("Tag store " + file + " is truncated");
+
+		recordsPerSegment = Integer.MAX_VALUE / recordSize;
+		segments = new MappedByteBuffer[count == 0 ? 0 : (count - 1) / recordsPerSegment + 1];
+		for (int i = 0; i < segments.length; i++) {
+			long position = HEADER_SIZE + (long) i * recordsPerSegment * recordSize;
+			int records = Math.min(recordsPerSegment, count - i * recordsPerSegment);
+			segments[i] = channel.map(MapMode.READ_WRITE, position, (long) records * recordSize);
+		}
+		for (int i = 0; i < stripes.length; i++)
+			stripes[i] = new Object();
+	}
+
+	/**
+	 * Opens an existing store
+	 * 
+	 * @param file
+	 *            the file of the store
+	 * @return the store
+	 * @throws IOException
+	 *             if the file could not be mapped or is not a valid store
+	 */
+	public static MappedTagSource open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("File " + file + " is not a tag store");
+			/* the mappings stay valid after the channel has been closed */
+			return new MappedTagSource(file, channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE), channel);
+		}
+	}
+
+	/**
+	 * Creates a store from the tags of another source, replacing the file if
+	 * it exists
+	 * 
+	 * @param file
+	 *            the file of the store
+	 * @param source
+	 *            the source of the initial tags
+	 * @param epcWords
+	 *            the capacity of the EPC bank in words
+	 * @param tidWords
+	 *            the capacity of the TID bank in words
+	 * @param pwdWords
+	 *            the capacity of the password bank in words
+	 * @param userWords
+	 *            the capacity of the user bank in words
+	 * @param antennaSlots
+	 *            the maximum number of antennas seeing a tag
+	 * @return the store
+	 * @throws IOException
+	 *             if the file could not be written
+	 * @throws IllegalArgumentException
+	 *             if a tag exceeds the capacities
+	 */
+	public static MappedTagSource create(File file, TagSource source, int epcWords, int tidWords, int pwdWords,
+			int userWords, int antennaSlots) throws IOException {
+		int[] capacities = new int[BANK_COUNT];
+		capacities[RFUtils.BANK_EPC] = epcWords * 2;
+		capacities[RFUtils.BANK_TID] = tidWords * 2;
+		capacities[RFUtils.BANK_PSW] = pwdWords * 2;
+		capacities[RFUtils.BANK_USR] = userWords * 2;
+		int recordSize = DATA_OFFSET + antennaSlots * 4;
+		for (int capacity : capacities)
+			recordSize += capacity;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(8, source.size());
+		header.putInt(12, recordSize);
+		for (int bank = 0; bank < BANK_COUNT; bank++)
+			header.putInt(16 + bank * 4, capacities[bank]);
+		header.putInt(32, antennaSlots);
+
+		MappedTagSource store;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+			channel.truncate(0);
+			raf.setLength(HEADER_SIZE + (long) source.size() * recordSize);
+			channel.write(header, 0);
+			store = new MappedTagSource(file, header, channel);
+		}
+		for (int position = 0; position < source.size(); position++)
+			store.write(position, source.getTag(position));
+		store.flush();
+		return store;
+	}
+
+	/**
+	 * Opens the store configured in the {@link StubEnvironment}. A store
+	 * already opened for the file is returned until it is closed. If the file
+	 * does not exist yet, the store is created from the synthetic tag source
+	 * in a temporary file, which is renamed once it is complete, so the file
+	 * is never seen partially written.
+	 * 
+	 * @return the store
+	 * @throws IOException
+	 *             if the store could not be opened or created
+	 */
+	static MappedTagSource fromEnvironment() throws IOException {
+		File file = new File(StubEnvironment.MAPPED_FILE).getCanonicalFile();
+		synchronized (stores) {
+			MappedTagSource store = stores.get(file);
+			if (store == null) {
+				if (!file.exists())
+					createAtomically(file);
+				stores.put(file, store = open(file));
+			}
+			return store;
+		}
+	}
+
+	private static void createAtomically(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null)
+			dir.mkdirs();
+		File temp = File.createTempFile(file.getName(), ".tmp", dir);
+		try {
+			create(temp, new SyntheticTagSource(), (int) StubEnvironment.MAPPED_EPC_WORDS,
+					(int) StubEnvironment.MAPPED_TID_WORDS, (int) StubEnvironment.MAPPED_PWD_WORDS,
+					(int) StubEnvironment.MAPPED_USER_WORDS, (int) StubEnvironment.MAPPED_ANTENNA_SLOTS).close();
+			/* a store created by another process meanwhile is kept */
+			if (!file.exists())
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * @return the file of the store
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public RequestCreateTagType getTag(int position) {
+		checkPosition(position);
+		synchronized (stripes[position & (stripes.length - 1)]) {
+			return read(position);
+		}
+	}
+
+	@Override
+	public int indexOf(String tagId) {
+		if (tagId == null || !tagId.startsWith(TAG_ID_PREFIX))
+			return -1;
+		try {
+			int position = Integer.parseInt(tagId.substring(TAG_ID_PREFIX.length()));
+			return position >= 0 && position < count && tagId.equals(getTagId(position)) ? position : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void update(Collection<RequestCreateTagType> tags) {
+		for (RequestCreateTagType tag : tags) {
+			int position = indexOf(tag.getTagId());
+			if (position < 0)
+				throw new IllegalArgumentException("Unknown tag " + tag.getTagId());
+			write(position, tag);
+		}
+	}
+
+	/**
+	 * Writes the changed records to the file
+	 */
+	@Override
+	public void flush() {
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+	}
+
+	/**
+	 * Writes the changed records to the file, the store is not shared any
+	 * more. The mapping is released by the garbage collection.
+	 */
+	@Override
+	public void close() {
+		flush();
+		synchronized (stores) {
+			stores.values().remove(this);
+		}
+	}
+
+	private RequestCreateTagType read(int position) {
+		ByteBuffer record = getRecord(position);
+
+		RequestCreateTagType tag = new RequestCreateTagType();
+		tag.setTagId(getTagId(position));
+		if ((record.get(0) & FLAG_KILLED) != 0)
+			tag.setKilled(Boolean.TRUE);
+
+		for (int i = 0; i < LOCK_FIELDS.length; i++) {
+			int lock = record.get(1 + i);
+			if ((lock & LOCK_PRESENT) == 0)
+				continue;
+			if (tag.getLocks() == null)
+				tag.setLocks(new LocksType());
+			LockType lockType = new LockType();
+			lockType.setField(new FieldType());
+			lockType.getField().setName(LOCK_FIELDS[i]);
+			lockType.getField().setLocked((lock & LOCK_LOCKED) != 0);
+			lockType.getField().setPermanent((lock & LOCK_PERMANENT) != 0);
+			tag.getLocks().getLock().add(lockType);
+		}
+
+		tag.setMemoryBanks(new MemoryBanksType());
+		for (short bank = 0; bank < BANK_COUNT; bank++) {
+			int length = record.getShort(BANKS_OFFSET + bank * 2);
+			if (length < 0)
+				continue;
+			byte[] data = new byte[length];
+			record.position(bankOffsets[bank]);
+			record.get(data);
+			MemoryBankType memBank = new MemoryBankType();
+			memBank.setName(TagMemory.toBankName(bank));
+			memBank.setData(new DataType());
+			memBank.getData().setFormat(FieldFormatEnumeration.HEX);
+			memBank.getData().setValue(TagMemory.toHex(data));
+			tag.getMemoryBanks().getMemoryBank().add(memBank);
+		}
+
+		tag.setAntennas(new RequestCreateTagAntennasType());
+		for (int i = 0; i < antennaSlots; i++) {
+			short antennaId = record.getShort(antennasOffset + i * 4);
+			if (antennaId == 0)
+				break;
+			short rssi = record.getShort(antennasOffset + i * 4 + 2);
+			RequestCreateTagAntennaType antenna = new RequestCreateTagAntennaType();
+			antenna.setAntennaId((int) antennaId);
+			antenna.setPeakRSSI(rssi == NO_RSSI ? null : (int) rssi);
+			tag.getAntennas().getAntenna().add(antenna);
+		}
+		return tag;
+	}
+
+	private void write(int position, RequestCreateTagType tag) {
+		checkPosition(position);
+
+		/* encode first, so a tag exceeding the capacities leaves the record unchanged */
+		TagMemory memory = new TagMemory(tag);
+		byte[][] banks = new byte[BANK_COUNT][];
+		for (short bank = 0; bank < BANK_COUNT; bank++) {
+			banks[bank] = memory.getBank(bank);
+			if (banks[bank] != null && banks[bank].length > capacities[bank])
+				throw new IllegalArgumentException(String.format("Bank %d of tag %s exceeds capacity of %d bytes",
+						bank, tag.getTagId(), capacities[bank]));
+		}
+		List<RequestCreateTagAntennaType> antennas = tag.getAntennas() == null ? null : tag.getAntennas().getAntenna();
+		if (antennas != null && antennas.size() > antennaSlots)
+			throw new IllegalArgumentException(String.format("Tag %s exceeds capacity of %d antennas", tag.getTagId(),
+					antennaSlots));
+
+		synchronized (stripes[position & (stripes.length - 1)]) {
+			ByteBuffer record = getRecord(position);
+			record.put(0, (byte) (tag.isKilled() != null && tag.isKilled() ? FLAG_KILLED : 0));
+
+			for (int i = 0; i < LOCK_FIELDS.length; i++)
+				record.put(1 + i, (byte) 0);
+			if (tag.getLocks() != null)
+				for (LockType lock : tag.getLocks().getLock())
+					for (int i = 0; i < LOCK_FIELDS.length; i++)
+						if (lock.getField().getName() == LOCK_FIELDS[i])
+							record.put(1 + i, (byte) (LOCK_PRESENT
+									| (isSet(lock.getField().isLocked()) ? LOCK_LOCKED : 0)
+									| (isSet(lock.getField().isPermanent()) ? LOCK_PERMANENT : 0)));
+
+			for (short bank = 0; bank < BANK_COUNT; bank++) {
+				record.putShort(BANKS_OFFSET + bank * 2, (short) (banks[bank] == null ? -1 : banks[bank].length));
+				record.position(bankOffsets[bank]);
+				if (banks[bank] != null)
+					record.put(banks[bank]);
+				while (record.position() < bankOffsets[bank] + capacities[bank])
+					record.put((byte) 0);
+			}
+
+			for (int i = 0; i < antennaSlots; i++) {
+				RequestCreateTagAntennaType antenna = antennas != null && i < antennas.size() ? antennas.get(i) : null;
+				record.putShort(antennasOffset + i * 4, (short) (antenna == null ? 0 : antenna.getAntennaId()));
+				record.putShort(antennasOffset + i * 4 + 2, antenna == null || antenna.getPeakRSSI() == null ? NO_RSSI
+						: (short) (int) antenna.getPeakRSSI());
+			}
+		}
+	}
+
+	/* a view of the record, which has its own position */
+	private ByteBuffer getRecord(int position) {
+		ByteBuffer segment = segments[position / recordsPerSegment].duplicate();
+		int offset = (position % recordsPerSegment) * recordSize;
+		segment.position(offset);
+		segment.limit(offset + recordSize);
+		return segment.slice();
+	}
+
+	private void checkPosition(int position) {
+		if (position < 0 || position >= count)
+			throw new IndexOutOfBoundsException("Position " + position + " exceeds store of " + count + " tags");
+	}
+
+	private static boolean isSet(Boolean value) {
+		return value != null && value;
+	}
+
+	private static String getTagId(int position) {
+		return TAG_ID_PREFIX + position;
+	}
+}
@@ -0,0 +1,65 @@
+package havis.device.test.rf;
+
+import java.util.Map;
+
+import havis.device.test.rf.StubMetrics.Phase;
+
+/**
+ * Immutable state of the {@link StubMetrics} at a point in time. Latencies
+ * and counters are cumulative since the metrics have been created or reset,
+ * so rates are obtained from the difference of two snapshots.
+ */
+public class MetricsSnapshot {
+
+	private final long timestamp;
+	private final Map<Phase, LatencyHistogram.Snapshot> latencies;
+	private final Map<Enum<?>, Long> results;
+
+	MetricsSnapshot(long timestamp, Map<Phase, LatencyHistogram.Snapshot> latencies, Map<Enum<?>, Long> results) {
+		this.timestamp = timestamp;
+		this.latencies = latencies;
+		this.results = results;
+	}
+
+	/**
+	 * @return the time the snapshot has been taken in milliseconds since the
+	 *         epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @param phase
+	 *            the phase
+	 * @return the latencies of the phase
+	 */
+	public LatencyHistogram.Snapshot getLatency(Phase phase) {
+		return latencies.get(phase);
+	}
+
+	/**
+	 * @return the latencies of all phases
+	 */
+	public Map<Phase, LatencyHistogram.Snapshot> getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * @param result
+	 *            the result code of a read, write, lock or kill result
+	 * @return the number of results with the code
+	 */
+	public long getResultCount(Enum<?> result) {
+		Long count = results.get(result);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return the number of results by result code, the codes are grouped by
+	 *         operation type
+	 */
+	public Map<Enum<?>, Long> getResultCounts() {
+		return results;
+	}
+}
@@ -0,0 +1,170 @@
+package havis.device.test.rf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated ring buffer of tag observations with a single producer and any
+ * number of consumers. Publishing never blocks and does not allocate; if a
+ * consumer falls behind by more than the capacity, the oldest observations
+ * are overwritten and counted as missed by the consumer.
+ * 
+ * Each slot carries the sequence of the observation it holds. The producer
+ * marks a slot as being written before replacing its fields, so a consumer
+ * detects an observation that has been overwritten while it was read by
+ * checking the sequence of the slot again.
+ */
+public class ObservationRingBuffer {
+
+	private static final long WRITING = -1;
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final AtomicReferenceArray<String> tagIds;
+	/* antenna ID in the upper and RSSI in the lower 32 bits */
+	private final AtomicLongArray readings;
+	private final AtomicLongArray timestamps;
+	private final AtomicLong published = new AtomicLong();
+
+	/**
+	 * Creates a new ring buffer
+	 * 
+	 * @param capacity
+	 *            the minimum capacity, which is rounded up to a power of two
+	 */
+	public ObservationRingBuffer(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+
+		this.mask = size - 1;
+		this.sequences = new AtomicLongArray(size);
+		this.tagIds = new AtomicReferenceArray<>(size);
+		this.readings = new AtomicLongArray(size);
+		this.timestamps = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, WRITING);
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return the number of observations published so far, which is the
+	 *         sequence of the next observation
+	 */
+	public long getPublished() {
+		return published.get();
+	}
+
+	/**
+	 * Publishes an observation. Must only be called by a single thread.
+	 * 
+	 * @param tagId
+	 *            the tag ID
+	 * @param antennaId
+	 *            the antenna ID
+	 * @param rssi
+	 *            the RSSI
+	 * @param timestamp
+	 *            the time of the observation in milliseconds
+	 */
+	public void publish(String tagId, short antennaId, int rssi, long timestamp) {
+		long sequence = published.get();
+		int slot = (int) sequence & mask;
+		sequences.set(slot, WRITING);
+		tagIds.lazySet(slot, tagId);
+		readings.lazySet(slot, (long) antennaId << 32 | rssi & 0xffffffffL);
+		timestamps.lazySet(slot, timestamp);
+		sequences.lazySet(slot, sequence);
+		published.lazySet(sequence + 1);
+	}
+
+	/**
+	 * Creates a cursor starting with the next observation published
+	 * 
+	 * @return the cursor
+	 */
+	public Cursor createCursor() {
+		return new Cursor(published.get());
+	}
+
+	/**
+	 * Position of a consumer within the ring buffer. A cursor must only be used
+	 * by a single thread.
+	 */
+	public class Cursor {
+
+		private long next;
+		private long missed;
+
+		private Cursor(long next) {
+			this.next = next;
+		}
+
+		/**
+		 * Takes the next observation
+		 * 
+		 * @param observation
+		 *            the observation to fill
+		 * @return true if an observation has been taken, false if there is no
+		 *         further observation yet
+		 */
+		public boolean poll(TagObservation observation) {
+			while (true) {
+				long available = published.get();
+				if (next >= available)
+					return false;
+
+				/* skip the observations that have been overwritten already */
+				long oldest = available - mask - 1;
+				if (next < oldest) {
+					missed += oldest - next;
+					next = oldest;
+				}
+
+				int slot = (int) next & mask;
+				if (sequences.get(slot) == next) {
+					String tagId = tagIds.get(slot);
+					long reading = readings.get(slot);
+					long timestamp = timestamps.get(slot);
+					if (sequences.get(slot) == next) {
+						observation.set(next, tagId, (short) (reading >> 32), (int) reading, timestamp);
+						next++;
+						return true;
+					}
+				}
+
+				/* overwritten while reading */
+				missed++;
+				next++;
+			}
+		}
+
+		/**
+		 * @return the sequence of the next observation to take
+		 */
+		public long getNext() {
+			return next;
+		}
+
+		/**
+		 * @return the number of observations that have been overwritten
+		 *         before they could be taken
+		 */
+		public long getMissed() {
+			return missed;
+		}
+
+		/**
+		 * @return the number of observations published but not taken yet
+		 */
+		public long getBacklog() {
+			return Math.max(0, Math.min(published.get() - next, mask + 1));
+		}
+	}
+}
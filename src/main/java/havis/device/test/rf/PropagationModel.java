@@ -0,0 +1,165 @@
+package havis.device.test.rf;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import havis.device.rf.capabilities.RegulatoryCapabilities;
+import havis.device.rf.capabilities.TransmitPowerTableEntry;
+
+/**
+ * Read range model of the antennas. The peak RSSI of a tag on an antenna is
+ * taken as the RSSI at the reference transmit power, so the difference
+ * between both is the round trip path loss of the tag. At the configured
+ * transmit power of an antenna a tag is visible if
+ * <ul>
+ * <li>the forward link powers the tag, i.e. the transmit power minus the one
+ * way path loss is at least the tag sensitivity and</li>
+ * <li>the reader receives the tag, i.e. the transmit power minus the round
+ * trip path loss is at least the receive sensitivity</li>
+ * </ul>
+ * A visible tag reports its peak RSSI shifted by the difference between the
+ * transmit power and the reference transmit power. As both conditions only
+ * depend on the peak RSSI, each antenna is reduced to a visibility threshold,
+ * i.e. the minimum peak RSSI of a visible tag, and an RSSI offset.
+ * 
+ * Antennas without a configured transmit power are not modelled, their tags
+ * are always visible with their peak RSSI.
+ */
+public class PropagationModel {
+
+	private final int referencePower;
+	private final int tagSensitivity;
+	/* antenna ID to visibility threshold and RSSI offset */
+	private final Map<Integer, int[]> antennas = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a model with the reference transmit power
+	 * {@link StubEnvironment#PROPAGATION_REFERENCE_POWER} and the tag
+	 * sensitivity {@link StubEnvironment#PROPAGATION_TAG_SENSITIVITY}
+	 */
+	public PropagationModel() {
+		this((int) StubEnvironment.PROPAGATION_REFERENCE_POWER, (int) StubEnvironment.PROPAGATION_TAG_SENSITIVITY);
+	}
+
+	/**
+	 * Creates a new model
+	 * 
+	 * @param referencePower
+	 *            the transmit power in dBm at which the tags report their peak
+	 *            RSSI
+	 * @param tagSensitivity
+	 *            the minimum power in dBm a tag needs to respond
+	 */
+	public PropagationModel(int referencePower, int tagSensitivity) {
+		this.referencePower = referencePower;
+		this.tagSensitivity = tagSensitivity;
+	}
+
+	/**
+	 * Configures an antenna
+	 * 
+	 * @param antenna
+	 *            the antenna ID
+	 * @param transmitPower
+	 *            the transmit power in dBm, null or 0 if the antenna is not
+	 *            modelled. The power is limited to the maximum of the
+	 *            transmit power table of the regulatory capabilities.
+	 * @param receiveSensitivity
+	 *            the receive sensitivity in dBm as a positive value, e.g. 80
+	 *            for -80 dBm, null or 0 for no limit
+	 * @param regulatoryCapabilities
+	 *            the regulatory capabilities of the region or null
+	 */
+	public void configure(short antenna, Short transmitPower, Short receiveSensitivity,
+			RegulatoryCapabilities regulatoryCapabilities) {
+		if (transmitPower == null || transmitPower == 0) {
+			antennas.remove((int) antenna);
+			return;
+		}
+
+		int power = Math.min(transmitPower, getMaxTransmitPower(regulatoryCapabilities));
+		/* forward link: power - pathLoss / 2 >= tagSensitivity with pathLoss = referencePower - peakRssi */
+		int threshold = referencePower - 2 * (power - tagSensitivity);
+		/* reverse link: power - pathLoss >= -receiveSensitivity */
+		if (receiveSensitivity != null && receiveSensitivity != 0)
+			threshold = Math.max(threshold, referencePower - power - receiveSensitivity);
+		antennas.put((int) antenna, new int[] { threshold, power - referencePower });
+	}
+
+	private static int getMaxTransmitPower(RegulatoryCapabilities regulatoryCapabilities) {
+		if (regulatoryCapabilities == null || regulatoryCapabilities.getTransmitPowerTable() == null
+				|| regulatoryCapabilities.getTransmitPowerTable().getEntryList().isEmpty())
+			return Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (TransmitPowerTableEntry entry : regulatoryCapabilities.getTransmitPowerTable().getEntryList())
+			max = Math.max(max, entry.getTransmitPower());
+		/* tables without a real power, e.g. of an unspecified region, do not limit */
+		return max > 0 ? max : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Removes the configuration of all antennas
+	 */
+	public void reset() {
+		antennas.clear();
+	}
+
+	/**
+	 * @return whether no antenna is modelled, i.e. all tags are visible
+	 */
+	public boolean isEmpty() {
+		return antennas.isEmpty();
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return whether the antenna is modelled
+	 */
+	public boolean isConfigured(int antenna) {
+		return antennas.containsKey(antenna);
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return the minimum peak RSSI of a tag visible on the antenna,
+	 *         {@link Integer#MIN_VALUE} if the antenna is not modelled
+	 */
+	public int getThreshold(int antenna) {
+		int[] values = antennas.get(antenna);
+		return values == null ? Integer.MIN_VALUE : values[0];
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @return the offset added to the peak RSSI of a tag seen by the antenna
+	 */
+	public int getRssiOffset(int antenna) {
+		int[] values = antennas.get(antenna);
+		return values == null ? 0 : values[1];
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @param peakRssi
+	 *            the peak RSSI of a tag
+	 * @return whether the tag is visible on the antenna
+	 */
+	public boolean isVisible(int antenna, int peakRssi) {
+		return peakRssi >= getThreshold(antenna);
+	}
+
+	/**
+	 * @param antenna
+	 *            the antenna ID
+	 * @param peakRssi
+	 *            the peak RSSI of a tag
+	 * @return the RSSI reported by the tag on the antenna
+	 */
+	public int getRssi(int antenna, int peakRssi) {
+		return peakRssi + getRssiOffset(antenna);
+	}
+}
@@ -0,0 +1,316 @@
+package havis.device.test.rf;
+
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides the settings of the RF stub. Each setting is read from the system
+ * properties first and falls back to the <b>havis.device.rf.properties</b>
+ * file on the class path. All keys share the prefix
+ * <b>havis.device.test.rf.</b>
+ */
+public class StubEnvironment {
+
+	private static final Logger log = Logger.getLogger(StubEnvironment.class.getName());
+
+	private static final String PROPERTIES_FILE = "havis.device.rf.properties";
+	private static final String PREFIX = "havis.device.test.rf.";
+
+	private static final Properties properties = new Properties();
+
+	static {
+		try (InputStream stream = StubEnvironment.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+			if (stream != null)
+				properties.load(stream);
+		} catch (Exception e) {
+			log.log(Level.SEVERE, "Failed to load properties file " + PROPERTIES_FILE, e);
+		}
+	}
+
+	/**
+	 * Whether the tag population read from the hardware management is cached
+	 * across inventory rounds
+	 */
+	public static boolean TAG_CACHE_ENABLED = getBoolean("tagCache.enabled", true);
+
+	/**
+	 * Maximum age of the cached tag population in milliseconds after which it
+	 * is read again from the hardware management. A value of 0 lets the cache
+	 * live until it is invalidated explicitly.
+	 */
+	public static long TAG_CACHE_MAX_AGE = getLong("tagCache.maxAge", 1000);
+
+	/**
+	 * Maximum age of the cached antennas of a connection in milliseconds
+	 * after which they are read again from the hardware management. A value
+	 * of 0 lets the cache live until it is invalidated explicitly.
+	 */
+	public static long ANTENNA_CACHE_MAX_AGE = getLong("antennaCache.maxAge", 0);
+
+	/**
+	 * Whether identical bank contents are stored once and shared by the tags
+	 * of the cached tag population
+	 */
+	public static boolean BANK_STORE_ENABLED = getBoolean("bankStore.enabled", true);
+
+	/**
+	 * Name of the inventory timing model, see
+	 * {@link InventoryTimingModel#forName(String)}
+	 */
+	public static volatile String TIMING_MODEL = getProperty("timingModel", "fixed");
+
+	/**
+	 * Delay of each inventory round in milliseconds for the fixed timing
+	 * model
+	 */
+	public static volatile long TIMING_FIXED_DELAY = getLong("timingModel.fixed.delay", 50);
+
+	/**
+	 * Overhead per antenna and round in microseconds for the Gen2 timing
+	 * model
+	 */
+	public static long TIMING_GEN2_ANTENNA_OVERHEAD = getLong("timingModel.gen2.antennaOverhead", 2000);
+
+	/**
+	 * Duration of a slot with a singulated tag in microseconds for the Gen2
+	 * timing model
+	 */
+	public static long TIMING_GEN2_SUCCESS_SLOT = getLong("timingModel.gen2.successSlot", 600);
+
+	/**
+	 * Duration of an empty slot in microseconds for the Gen2 timing model
+	 */
+	public static long TIMING_GEN2_EMPTY_SLOT = getLong("timingModel.gen2.emptySlot", 100);
+
+	/**
+	 * Duration of a slot with colliding replies in microseconds for the Gen2
+	 * timing model
+	 */
+	public static long TIMING_GEN2_COLLISION_SLOT = getLong("timingModel.gen2.collisionSlot", 250);
+
+	/**
+	 * Defines when tags changed by tag operations are committed to the
+	 * hardware management, either <b>immediate</b> or <b>batched</b>
+	 */
+	public static volatile CommitMode COMMIT_MODE = getEnum("commitMode", CommitMode.IMMEDIATE);
+
+	/**
+	 * Whether the tags of an execution are processed in parallel. The
+	 * operations of each tag are still performed in order.
+	 */
+	public static volatile boolean PARALLEL_EXECUTION = getBoolean("parallelExecution", false);
+
+	/**
+	 * Number of threads used for parallel execution, 0 for the number of
+	 * available processors
+	 */
+	public static volatile long PARALLEL_EXECUTION_THREADS = getLong("parallelExecution.threads", 0);
+
+	/**
+	 * Minimum number of tags of an execution to process them in parallel
+	 */
+	public static long PARALLEL_EXECUTION_MIN_TAGS = getLong("parallelExecution.minTags", 64);
+
+	/**
+	 * Maximum number of tags processed in parallel ahead of the oldest tag
+	 * whose results have not been handed to the caller yet
+	 */
+	public static volatile long PARALLEL_EXECUTION_WINDOW = getLong("parallelExecution.window", 256);
+
+	/**
+	 * Number of observations kept by the ring buffer of a continuous
+	 * inventory, rounded up to a power of two
+	 */
+	public static long CONTINUOUS_BUFFER_SIZE = getLong("continuousInventory.bufferSize", 65536);
+
+	/**
+	 * Name of the source of the tag population, see
+	 * {@link TagSource#forName(String)}
+	 */
+	public static String TAG_SOURCE = getProperty("tagSource", "hardwareMgmt");
+
+	/**
+	 * Seed of the synthetic tag population
+	 */
+	public static long SYNTHETIC_SEED = getLong("tagSource.synthetic.seed", 0);
+
+	/**
+	 * Number of tags of the synthetic tag population
+	 */
+	public static long SYNTHETIC_COUNT = getLong("tagSource.synthetic.count", 1000000);
+
+	/**
+	 * Template of the EPC bank including CRC and PC of the synthetic tags, see
+	 * {@link SyntheticTagSource}
+	 */
+	public static String SYNTHETIC_EPC_TEMPLATE = getProperty("tagSource.synthetic.epcTemplate",
+			"000030003034257bf4000000nnnnnnnn");
+
+	/**
+	 * Template of the TID bank of the synthetic tags
+	 */
+	public static String SYNTHETIC_TID_TEMPLATE = getProperty("tagSource.synthetic.tidTemplate",
+			"e28011052000xxxxxxxxxxxx");
+
+	/**
+	 * Template of the password bank of the synthetic tags
+	 */
+	public static String SYNTHETIC_PWD_TEMPLATE = getProperty("tagSource.synthetic.pwdTemplate", "0000000000000000");
+
+	/**
+	 * Template of the user bank of the synthetic tags, empty for tags without
+	 * user bank
+	 */
+	public static String SYNTHETIC_USER_TEMPLATE = getProperty("tagSource.synthetic.userTemplate", "");
+
+	/**
+	 * Comma separated IDs of the antennas seeing the synthetic tags. The
+	 * antennas have to be known to the hardware management.
+	 */
+	public static String SYNTHETIC_ANTENNAS = getProperty("tagSource.synthetic.antennas", "1");
+
+	/**
+	 * Number of antennas seeing each synthetic tag
+	 */
+	public static long SYNTHETIC_ANTENNAS_PER_TAG = getLong("tagSource.synthetic.antennasPerTag", 1);
+
+	/**
+	 * Minimum peak RSSI of the synthetic tags
+	 */
+	public static long SYNTHETIC_MIN_RSSI = getLong("tagSource.synthetic.minRssi", -70);
+
+	/**
+	 * Maximum peak RSSI of the synthetic tags
+	 */
+	public static long SYNTHETIC_MAX_RSSI = getLong("tagSource.synthetic.maxRssi", -30);
+
+	/**
+	 * File of the memory-mapped tag store. If the file does not exist, it is
+	 * created from the synthetic tag population.
+	 */
+	public static String MAPPED_FILE = getProperty("tagSource.mapped.file", "conf/havis/device/test/rf/tags.bin");
+
+	/**
+	 * Capacity of the EPC bank in words of a created tag store
+	 */
+	public static long MAPPED_EPC_WORDS = getLong("tagSource.mapped.epcWords", 16);
+
+	/**
+	 * Capacity of the TID bank in words of a created tag store
+	 */
+	public static long MAPPED_TID_WORDS = getLong("tagSource.mapped.tidWords", 12);
+
+	/**
+	 * Capacity of the password bank in words of a created tag store
+	 */
+	public static long MAPPED_PWD_WORDS = getLong("tagSource.mapped.pwdWords", 4);
+
+	/**
+	 * Capacity of the user bank in words of a created tag store
+	 */
+	public static long MAPPED_USER_WORDS = getLong("tagSource.mapped.userWords", 32);
+
+	/**
+	 * Maximum number of antennas seeing a tag of a created tag store
+	 */
+	public static long MAPPED_ANTENNA_SLOTS = getLong("tagSource.mapped.antennaSlots", 4);
+
+	/**
+	 * Whether the latencies of the execution phases and the operation results
+	 * are recorded, see {@link StubMetrics}
+	 */
+	public static boolean METRICS_ENABLED = getBoolean("metrics.enabled", true);
+
+	/**
+	 * Whether the management bean is registered with the platform MBean
+	 * server, see {@link StubManagement}
+	 */
+	public static boolean JMX_ENABLED = getBoolean("jmx.enabled", true);
+
+	/**
+	 * Persistence time of the inventoried flags of session S1 in milliseconds,
+	 * see {@link InventoriedFlags}
+	 */
+	public static long SESSION_S1_PERSISTENCE = getLong("session.s1.persistence", 2000);
+
+	/**
+	 * Persistence time of the inventoried flags of session S2 in milliseconds
+	 * after a tag has last been energized
+	 */
+	public static long SESSION_S2_PERSISTENCE = getLong("session.s2.persistence", 2000);
+
+	/**
+	 * Persistence time of the inventoried flags of session S3 in milliseconds
+	 * after a tag has last been energized
+	 */
+	public static long SESSION_S3_PERSISTENCE = getLong("session.s3.persistence", 2000);
+
+	/**
+	 * Transmit power in dBm at which the tags report their peak RSSI, see
+	 * {@link PropagationModel}
+	 */
+	public static long PROPAGATION_REFERENCE_POWER = getLong("propagation.referencePower", 30);
+
+	/**
+	 * Minimum power in dBm a tag needs to respond
+	 */
+	public static long PROPAGATION_TAG_SENSITIVITY = getLong("propagation.tagSensitivity", -20);
+
+	/**
+	 * Maximum time on a channel in milliseconds by region ID, e.g.
+	 * <b>EU=4000,FCC=400</b>, see {@link HopScheduler}. Regions which are not
+	 * listed stay on a channel without limit.
+	 */
+	public static String HOPPING_DWELL_TIMES = getProperty("hopping.dwellTimes", "EU=4000,FCC=400,China=2000,Japan=4000");
+
+	/**
+	 * Time of a hop between channels in microseconds
+	 */
+	public static long HOPPING_TRANSITION_TIME = getLong("hopping.transitionTime", 1000);
+
+	/**
+	 * Number of readers sharing the channels of the region
+	 */
+	public static long HOPPING_READERS = getLong("hopping.readers", 1);
+
+	static String getProperty(String key, String defaultValue) {
+		String value = System.getProperty(PREFIX + key);
+		if (value == null)
+			value = properties.getProperty(PREFIX + key);
+		if (value == null || value.trim().length() == 0)
+			return defaultValue;
+		return value.trim();
+	}
+
+	static boolean getBoolean(String key, boolean defaultValue) {
+		return Boolean.parseBoolean(getProperty(key, Boolean.toString(defaultValue)));
+	}
+
+	static long getLong(String key, long defaultValue) {
+		String value = getProperty(key, null);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			log.log(Level.WARNING, "Invalid value ''{0}'' for property {1}, using {2}.",
+					new Object[] { value, PREFIX + key, defaultValue });
+			return defaultValue;
+		}
+	}
+
+	static <E extends Enum<E>> E getEnum(String key, E defaultValue) {
+		String value = getProperty(key, null);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			log.log(Level.WARNING, "Invalid value ''{0}'' for property {1}, using {2}.",
+					new Object[] { value, PREFIX + key, defaultValue });
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import havis.device.test.hardware.RequestType;
+import havis.device.test.hardware.ResponseType;
+
+/**
+ * Events emitted to the Java Flight Recorder for inventory rounds, tag
+ * operations and calls of the hardware management. The events are
+ * implemented by <b>havis.device.test.rf.JfrStubEvents</b>, which is compiled
+ * from <b>src/main/jfr</b> if the JDK provides the JFR API. If the class is
+ * missing or the runtime does not provide the JFR API, no events are emitted.
+ * 
+ * An event is begun before and committed after the recorded action. Begin
+ * returns null if the event type is disabled, in which case the event must
+ * not be committed, so disabled events cost a single call.
+ */
+public interface StubEvents {
+
+	/**
+	 * Events which are never emitted
+	 */
+	StubEvents NONE = new StubEvents() {
+		@Override
+		public Object beginInventory() {
+			return null;
+		}
+
+		@Override
+		public void commitInventory(Object event, AntennaSet antennas, int filterCount, int tagsSeen,
+				int tagsReturned) {
+		}
+
+		@Override
+		public Object beginOperation() {
+			return null;
+		}
+
+		@Override
+		public void commitOperation(Object event, String type, short bank, int words, Enum<?> result) {
+		}
+
+		@Override
+		public Object beginProcess() {
+			return null;
+		}
+
+		@Override
+		public void commitProcess(Object event, List<RequestType> requests, List<ResponseType> responses) {
+		}
+	};
+
+	/**
+	 * The events used by the stub
+	 */
+	StubEvents EVENTS = create();
+
+	/**
+	 * @return the begun inventory round event or null if it is disabled
+	 */
+	Object beginInventory();
+
+	/**
+	 * Commits an inventory round event
+	 * 
+	 * @param event
+	 *            the event as returned by {@link #beginInventory()}
+	 * @param antennas
+	 *            the antennas of the round
+	 * @param filterCount
+	 *            the number of filters
+	 * @param tagsSeen
+	 *            the number of tags checked against the filters
+	 * @param tagsReturned
+	 *            the number of tags returned by the round
+	 */
+	void commitInventory(Object event, AntennaSet antennas, int filterCount, int tagsSeen, int tagsReturned);
+
+	/**
+	 * @return the begun tag operation event or null if it is disabled
+	 */
+	Object beginOperation();
+
+	/**
+	 * Commits a tag operation event
+	 * 
+	 * @param event
+	 *            the event as returned by {@link #beginOperation()}
+	 * @param type
+	 *            the type of the operation
+	 * @param bank
+	 *            the memory bank or -1 if the operation does not access a
+	 *            bank
+	 * @param words
+	 *            the number of words read or written
+	 * @param result
+	 *            the result code or null if the operation has no result
+	 */
+	void commitOperation(Object event, String type, short bank, int words, Enum<?> result);
+
+	/**
+	 * @return the begun hardware management event or null if it is disabled
+	 */
+	Object beginProcess();
+
+	/**
+	 * Commits a hardware management event
+	 * 
+	 * @param event
+	 *            the event as returned by {@link #beginProcess()}
+	 * @param requests
+	 *            the requests passed to the hardware management
+	 * @param responses
+	 *            the responses of the hardware management
+	 */
+	void commitProcess(Object event, List<RequestType> requests, List<ResponseType> responses);
+
+	/**
+	 * @return the JFR events if available, {@link #NONE} otherwise
+	 */
+	static StubEvents create() {
+		try {
+			return Class.forName("havis.device.test.rf.JfrStubEvents").asSubclass(StubEvents.class).newInstance();
+		} catch (ClassNotFoundException | LinkageError e) {
+			/* not compiled or no JFR API at runtime */
+			return NONE;
+		} catch (Exception e) {
+			Logger.getLogger(StubEvents.class.getName()).log(Level.WARNING, "Failed to create JFR events.", e);
+			return NONE;
+		}
+	}
+}
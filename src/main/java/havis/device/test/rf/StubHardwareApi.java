@@ -1,15 +1,25 @@
 package havis.device.test.rf;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import havis.device.rf.common.util.RFUtils;
 import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.configuration.SingulationControl;
 import havis.device.rf.tag.Filter;
 import havis.device.rf.tag.TagData;
 import havis.device.rf.tag.operation.KillOperation;
@@ -22,8 +32,6 @@ import havis.device.rf.tag.result.KillResult.Result;
 import havis.device.rf.tag.result.LockResult;
 import havis.device.rf.tag.result.ReadResult;
 import havis.device.rf.tag.result.WriteResult;
-import havis.device.test.hardware.DataType;
-import havis.device.test.hardware.FieldFormatEnumeration;
 import havis.device.test.hardware.FieldType;
 import havis.device.test.hardware.HardwareMgmt;
 import havis.device.test.hardware.LockFieldNameEnumeration;
@@ -46,104 +54,583 @@ import havis.device.test.hardware.ResponseReadAntennaType;
 import havis.device.test.hardware.ResponseReadAntennasType;
 import havis.device.test.hardware.ResponseReadType;
 import havis.device.test.hardware.ResponseType;
+import havis.device.test.rf.StubMetrics.Phase;
 
 public class StubHardwareApi implements HardwareApi {
 
-	private long operationId = 0;
+	private static final Logger logger = Logger.getLogger(StubHardwareApi.class.getName());
+	private final AtomicLong operationId = new AtomicLong();
+	/* identifies the commits of this instance */
+	private final long origin = TagVersions.newOrigin();
 	private static final String ID = "default";
+	/* shared by all instances, as the tag IDs identify the tags of the field */
+	private static final TagLocks tagLocks = new TagLocks(256);
 	private HardwareMgmt manager;
-	private Map<Short, ResponseReadAntennaType> antennas;
+	/* versions of the tags committed by all instances using the hardware management */
+	private final TagVersions versions;
+	private final Object antennaLock = new Object();
+	private volatile boolean connected;
+	private volatile AntennaTopology antennaTopology;
+	private final TagPopulationCache tagCache = new TagPopulationCache(StubEnvironment.TAG_CACHE_MAX_AGE);
+	private final Object cacheLock = new Object();
+	private volatile InventoryTimingModel timingModel = InventoryTimingModel.forName(StubEnvironment.TIMING_MODEL);
+	private volatile CommitMode commitMode = StubEnvironment.COMMIT_MODE;
+	private volatile TagSource tagSource;
+	private volatile StubMetrics metrics = new StubMetrics();
+	private volatile SingulationControl singulationControl;
+	private final InventoriedFlags inventoriedFlags = new InventoriedFlags();
+	private volatile PropagationModel propagationModel = new PropagationModel();
+	private volatile HopScheduler hopScheduler;
+	private TagPopulation sourcePopulation;
+	/* batch of the execution the calling thread performs operations for */
+	private final ThreadLocal<CommitBatch> batches = new ThreadLocal<>();
+
+	/* antennas read from the hardware management, replaced as a whole */
+	private static class AntennaTopology {
+		final long loadTime = System.currentTimeMillis();
+		final Map<Short, ResponseReadAntennaType> antennas = new LinkedHashMap<>();
+		final List<Short> ids;
+		final AntennaSet set;
+
+		AntennaTopology(List<ResponseReadAntennaType> antennas) {
+			AntennaSet set = AntennaSet.EMPTY;
+			for (ResponseReadAntennaType antenna : antennas) {
+				this.antennas.put((short) antenna.getAntennaId(), antenna);
+				/* antennas out of range are never requested */
+				if (antenna.getAntennaId() >= 0 && antenna.getAntennaId() <= AntennaSet.MAX_ANTENNA)
+					set = set.with(antenna.getAntennaId());
+			}
+			this.ids = Collections.unmodifiableList(new ArrayList<>(this.antennas.keySet()));
+			this.set = set;
+		}
 
-	private static final long INVENTORY_DELAY_MILLIS = 50;
+		boolean isExpired(long maxAge) {
+			return maxAge > 0 && System.currentTimeMillis() - loadTime >= maxAge;
+		}
+	}
 
 	public StubHardwareApi(HardwareMgmt manager) {
+		this(manager, TagSources.get(StubEnvironment.TAG_SOURCE));
+	}
+
+	/**
+	 * Creates the hardware API
+	 * 
+	 * @param manager
+	 *            the hardware management
+	 * @param tagSource
+	 *            the source of the tag population or null if the tags are
+	 *            read from the hardware management
+	 */
+	public StubHardwareApi(HardwareMgmt manager, TagSource tagSource) {
 		super();
 		this.manager = manager;
+		this.versions = TagVersions.get(manager);
+		this.tagSource = tagSource;
 	}
 
 	public void connect() {
-		manager.process(createRequest(ID, createCreateRequest()));
-
-		this.antennas = new HashMap<Short, ResponseReadAntennaType>();
-		for (ResponseReadAntennaType antenna : getAntennas().getAntenna())
-			antennas.put((short) antenna.getAntennaId(), antenna);
+		process(createRequest(ID, createCreateRequest()));
 
+		synchronized (antennaLock) {
+			this.connected = true;
+			this.antennaTopology = new AntennaTopology(getAntennas().getAntenna());
+		}
 	}
 
 	@Override
 	public void disconnect() {
-		this.antennas = null;
+		synchronized (antennaLock) {
+			this.connected = false;
+			this.antennaTopology = null;
+		}
+		/* the tags read are not held any more */
+		versions.release(this);
+		tagCache.invalidate();
+		/* the source is shared, so it is only flushed, like the mapped store */
+		TagSource source = tagSource;
+		if (source instanceof Flushable)
+			try {
+				((Flushable) source).flush();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Failed to flush tag source " + source + ".", e);
+			}
 	}
 
+	/**
+	 * Returns the IDs of the connected antennas. While connected, the
+	 * antennas are cached until they are invalidated by
+	 * {@link #invalidateAntennas()} or have exceeded the maximum age
+	 * {@link StubEnvironment#ANTENNA_CACHE_MAX_AGE}.
+	 * 
+	 * @return the unmodifiable list of the antenna IDs
+	 */
 	@Override
 	public List<Short> getConnectedAntennaIDs() {
-		List<Short> resultList = new ArrayList<>();
+		return getAntennaTopology().ids;
+	}
+
+	@Override
+	public AntennaSet getConnectedAntennas() {
+		return getAntennaTopology().set;
+	}
+
+	/**
+	 * @param antennaId
+	 *            the antenna ID
+	 * @return the connected antenna as read from the hardware management or
+	 *         null if the antenna is not connected
+	 */
+	public ResponseReadAntennaType getConnectedAntenna(short antennaId) {
+		return getAntennaTopology().antennas.get(antennaId);
+	}
 
-		for (ResponseReadAntennaType antenna : getAntennas().getAntenna())
-			resultList.add((short) antenna.getAntennaId());
+	/**
+	 * Invalidates the cached antennas, so they are read from the hardware
+	 * management again on the next access. To be called whenever the antennas
+	 * of the hardware management have changed.
+	 */
+	public void invalidateAntennas() {
+		synchronized (antennaLock) {
+			this.antennaTopology = null;
+		}
+	}
 
-		return resultList;
+	private AntennaTopology getAntennaTopology() {
+		AntennaTopology topology = this.antennaTopology;
+		if (topology != null && !topology.isExpired(StubEnvironment.ANTENNA_CACHE_MAX_AGE))
+			return topology;
+		synchronized (antennaLock) {
+			topology = this.antennaTopology;
+			if (topology != null && !topology.isExpired(StubEnvironment.ANTENNA_CACHE_MAX_AGE))
+				return topology;
+			topology = new AntennaTopology(getAntennas().getAntenna());
+			/* not cached while disconnected */
+			if (connected)
+				this.antennaTopology = topology;
+			return topology;
+		}
 	}
 
 	@Override
 	public RequestCreateTagsType inventory(List<Short> antennas, List<Filter> filters, RssiFilter rssiFilter) {
+		return inventory(AntennaSet.ALL.retain(antennas), filters, rssiFilter);
+	}
+
+	@Override
+	public RequestCreateTagsType inventory(AntennaSet antennas, List<Filter> filters, RssiFilter rssiFilter) {
+		Object event = StubEvents.EVENTS.beginInventory();
+		TagPopulation population = getPopulation();
+		List<RequestCreateTagType> tags = population.getTags();
+		RequestCreateTagsType result = new RequestCreateTagsType();
+		StubMetrics metrics = this.metrics;
+		PropagationModel model = propagationModel;
+		long start = metrics.start();
+		int seen = 0;
+
+		/* tags inventoried in a session before are not reported */
+		SingulationControl singCtl = singulationControl;
+		int session = singCtl != null && singCtl.getSession() > 0 && singCtl.getSession() < InventoriedFlags.SESSIONS
+				? singCtl.getSession() : 0;
+		long now = System.nanoTime();
+		if (session > 0)
+			inventoriedFlags.purge(now);
+
+		/* the result is built in a single pass, tags are never removed from it */
+		List<RequestCreateTagType> resultTags = result.getTag();
+		if (StubEnvironment.TAG_CACHE_ENABLED || population.getSource() != null) {
+			FilterMatcher matcher = FilterMatcher.compile(filters);
+			AntennaIndex antennaIndex = population.getAntennaIndex();
+
+			/* the tag is taken from its memory, as a tag source may create the tag on each access */
+			int[] candidates = matcher.size() > 0 ? population.getEpcIndex().select(matcher) : null;
+			if (candidates != null) {
+				/* only visit the tags within the EPC prefix range of a filter */
+				for (int i : candidates) {
+					if (!antennaIndex.matches(i, antennas, rssiFilter, model))
+						continue;
+					seen++;
+					TagMemory memory = population.getMemory(i);
+					if (!isKilled(memory.getTag()) && matcher.matches(memory) && isReported(memory.getTag(), session, now))
+						resultTags.add(memory.getTag());
+				}
+			} else {
+				/* only visit the tags visible on the requested antennas */
+				BitSet selected = new BitSet(tags.size());
+				antennaIndex.select(antennas, rssiFilter, model, selected);
+				for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+					seen++;
+					TagMemory memory = population.getMemory(i);
+					if (!isKilled(memory.getTag()) && matcher.matches(memory) && isReported(memory.getTag(), session, now))
+						resultTags.add(memory.getTag());
+				}
+			}
+		} else {
+			/* population is read on each round, building an index does not pay off */
+			seen = tags.size();
+			for (RequestCreateTagType tag : tags)
+				if (!isKilled(tag) && applyFilters(tag, antennas, filters, rssiFilter) && isReported(tag, session, now))
+					resultTags.add(tag);
+		}
+		metrics.record(Phase.FILTER, start);
+
+		long duration = timingModel.getRoundDuration(antennas.size(), resultTags.size());
+		HopScheduler scheduler = hopScheduler;
+		if (scheduler != null)
+			duration = scheduler.schedule(duration);
+		if (duration > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(duration);
+			} catch (InterruptedException e) {
+				// just stop sleeping
+			}
+		}
+
+		if (event != null)
+			StubEvents.EVENTS.commitInventory(event, antennas, filters.size(), seen, resultTags.size());
+		return result;
+	}
+
+	/**
+	 * Returns the tag population. The population of the tag source is used if
+	 * a tag source has been set. Otherwise the population is taken from the
+	 * tag cache if possible and read from the hardware management. The tags
+	 * of the cached population committed by other instances since it has
+	 * been read are refreshed before it is reused.
+	 * 
+	 * @return the tag population
+	 */
+	protected TagPopulation getPopulation() {
+		TagSource source = tagSource;
+		if (source != null)
+			return getPopulation(source);
+
+		if (!StubEnvironment.TAG_CACHE_ENABLED) {
+			/* read for a single round, sharing the bank contents does not pay off */
+			long version = versions.current();
+			TagPopulation population = new TagPopulation(readTags(null), null);
+			versions.read(this, version);
+			return population;
+		}
+
+		synchronized (cacheLock) {
+			if (!refresh())
+				tagCache.invalidate();
+			TagPopulation population = tagCache.get();
+			if (population == null) {
+				long version = versions.current();
+				population = tagCache.put(readTags(null), version);
+			}
+			versions.read(this, tagCache.getVersion());
+			return population;
+		}
+	}
+
+	/*
+	 * refreshes the tags of the cached population committed by other instances
+	 * since its version, returns false if the population has to be read again
+	 */
+	private boolean refresh() {
+		long version = versions.current();
+		if (version == tagCache.getVersion() || !tagCache.isCached())
+			return true;
+		Set<String> changed = versions.getChanged(tagCache.getVersion(), origin);
+		if (changed == null)
+			return false;
+		if (!changed.isEmpty()) {
+			List<RequestCreateTagType> tags = readTags(changed);
+			/* tags deleted since are not part of the population any more */
+			if (tags.size() != changed.size())
+				return false;
+			for (RequestCreateTagType tag : tags) {
+				Lock lock = tagLocks.get(tag.getTagId());
+				lock.lock();
+				try {
+					if (!tagCache.refresh(tag))
+						return false;
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+		tagCache.setVersion(version);
+		return true;
+	}
+
+	/*
+	 * reads a tag committed by another instance since it has been read again,
+	 * so the whole tag committed by a tag operation does not revert the
+	 * changes of the other instance. To be called holding the lock of the tag.
+	 */
+	private void refresh(RequestCreateTagType tag) {
+		TagSource source = tagSource;
+		if (source != null) {
+			/* the source is shared, its current tag reflects all commits */
+			int position = source.indexOf(tag.getTagId());
+			if (position < 0)
+				return;
+			RequestCreateTagType current = source.getTag(position);
+			if (current != tag)
+				TagPopulationCache.copy(current, tag);
+			return;
+		}
+		TagVersions.Commit commit = versions.get(tag.getTagId());
+		if (commit == null || commit.origin == origin)
+			return;
+		/* the cached tags reflect the commits up to the version of the cache */
+		boolean cached = StubEnvironment.TAG_CACHE_ENABLED && tagCache.getMemory(tag) != null;
+		if (cached && commit.version <= tagCache.getVersion())
+			return;
+
+		List<RequestCreateTagType> tags = readTags(Collections.singletonList(tag.getTagId()));
+		if (tags.isEmpty())
+			return;
+		if (!cached || !tagCache.refresh(tags.get(0)))
+			TagPopulationCache.copy(tags.get(0), tag);
+	}
+
+	/* reads the tags with the given IDs or all tags if the IDs are null */
+	private List<RequestCreateTagType> readTags(Collection<String> tagIds) {
 		RequestReadType read = createReadRequest();
 		read.setTags(new RequestDeleteTagsType());
-		List<ResponseType> resp = manager.process(createRequest(ID, read));
+		if (tagIds != null)
+			read.getTags().getTagId().addAll(tagIds);
+		List<ResponseType> resp = process(createRequest(ID, read));
 
 		RequestCreateTagsType tags = ((ResponseReadType) resp.get(0)
 				.getChoice().get(0)).getTags();
-		if (tags == null) {
-			return new RequestCreateTagsType();
-		}
-		Iterator<RequestCreateTagType> iTags = tags.getTag().iterator();
-		while (iTags.hasNext()) {
-			RequestCreateTagType tag = iTags.next();
-			if (tag.isKilled() != null && tag.isKilled()
-					|| !applyFilters(tag, antennas, filters, rssiFilter))
-				
+		return tags == null ? Collections.<RequestCreateTagType> emptyList() : tags.getTag();
+	}
 
-				iTags.remove();
-		}
+	/* the population and its indexes are shared with the other instances using the source */
+	private synchronized TagPopulation getPopulation(TagSource source) {
+		if (sourcePopulation == null || sourcePopulation.getSource() != source)
+			sourcePopulation = TagSources.getPopulation(source);
+		return sourcePopulation;
+	}
 
-		try {
-			Thread.sleep(INVENTORY_DELAY_MILLIS);
-		} catch (InterruptedException e) {
-			// just stop sleeping
-		}
+	private boolean isKilled(RequestCreateTagType tag) {
+		return tag.isKilled() != null && tag.isKilled();
+	}
+
+	/* singulates a matching tag, its flag is set to B if it is reported */
+	private boolean isReported(RequestCreateTagType tag, int session, long now) {
+		return session == 0 || inventoriedFlags.inventory(tag.getTagId(), session, now);
+	}
+
+	/**
+	 * Returns the binary memory of a tag. The memory of the cached population
+	 * is used if the tag is part of it, so the banks are decoded only once.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return the memory of the tag
+	 */
+	protected TagMemory getMemory(RequestCreateTagType tag) {
+		TagMemory memory = StubEnvironment.TAG_CACHE_ENABLED ? tagCache.getMemory(tag) : null;
+		return memory != null ? memory : new TagMemory(tag);
+	}
+
+	/**
+	 * @return the cache of the tag population, which can be used to
+	 *         invalidate the population after external changes and to query
+	 *         the cache statistics
+	 */
+	public TagPopulationCache getTagCache() {
+		return tagCache;
+	}
+
+	public InventoryTimingModel getTimingModel() {
+		return timingModel;
+	}
+
+	public void setTimingModel(InventoryTimingModel timingModel) {
+		this.timingModel = timingModel;
+	}
+
+	/**
+	 * @return the source of the tag population or null if the tags are read
+	 *         from the hardware management
+	 */
+	public TagSource getTagSource() {
+		return tagSource;
+	}
+
+	/**
+	 * Sets the source of the tag population. Tags changed by tag operations
+	 * are committed to the source instead of the hardware management.
+	 * 
+	 * @param tagSource
+	 *            the tag source or null to read the tags from the hardware
+	 *            management
+	 */
+	public void setTagSource(TagSource tagSource) {
+		this.tagSource = tagSource;
+	}
 
+	/**
+	 * Returns the killed tags of the population. Killed tags are kept as
+	 * tombstones by the antenna index, so they are not visited by inventory
+	 * rounds.
+	 * 
+	 * @return the killed tags
+	 */
+	public List<RequestCreateTagType> getKilledTags() {
+		TagPopulation population = getPopulation();
+		BitSet killed = population.getAntennaIndex().getKilled();
+		List<RequestCreateTagType> tags = new ArrayList<>(killed.cardinality());
+		for (int i = killed.nextSetBit(0); i >= 0; i = killed.nextSetBit(i + 1))
+			tags.add(population.getTags().get(i));
 		return tags;
 	}
 
+	/**
+	 * Revives the killed tags, so they are inventoried again. The revived tags
+	 * are committed like tags changed by tag operations.
+	 * 
+	 * @return the number of revived tags
+	 */
+	public int reviveKilledTags() {
+		List<RequestCreateTagType> tags = getKilledTags();
+		for (RequestCreateTagType tag : tags) {
+			Lock lock = tagLocks.get(tag.getTagId());
+			lock.lock();
+			try {
+				tag.setKilled(false);
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (!tags.isEmpty())
+			commit(tags);
+		return tags.size();
+	}
+
+	/**
+	 * Deletes the killed tags from the hardware management. The tags of a tag
+	 * source keep their positions, so they cannot be deleted and stay
+	 * tombstones.
+	 * 
+	 * @return the number of deleted tags
+	 */
+	public int purgeKilledTags() {
+		if (tagSource != null)
+			return 0;
+		List<RequestCreateTagType> tags = getKilledTags();
+		if (tags.isEmpty())
+			return 0;
+		RequestDeleteType delete = createDeleteRequest();
+		delete.setTags(new RequestDeleteTagsType());
+		for (RequestCreateTagType tag : tags)
+			delete.getTags().getTagId().add(tag.getTagId());
+		process(createRequest(ID, delete));
+		for (RequestCreateTagType tag : tags)
+			versions.commit(tag.getTagId(), origin);
+		tagCache.invalidate();
+		return tags.size();
+	}
+
+	/**
+	 * @return the metrics the filter and commit latencies are recorded to
+	 */
+	public StubMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(StubMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public SingulationControl getSingulationControl() {
+		return singulationControl;
+	}
+
+	/**
+	 * Sets the singulation control. If its session is S1 to S3, tags are only
+	 * reported if their inventoried flag is A, see {@link InventoriedFlags}.
+	 * 
+	 * @param singulationControl
+	 *            the singulation control or null to report all tags
+	 */
+	public void setSingulationControl(SingulationControl singulationControl) {
+		this.singulationControl = singulationControl;
+	}
+
+	public PropagationModel getPropagationModel() {
+		return propagationModel;
+	}
+
+	/**
+	 * Sets the read range model, which determines the visibility and RSSI of
+	 * the tags at the transmit power of the antennas
+	 * 
+	 * @param propagationModel
+	 *            the propagation model
+	 */
+	public void setPropagationModel(PropagationModel propagationModel) {
+		this.propagationModel = propagationModel;
+	}
+
+	public HopScheduler getHopScheduler() {
+		return hopScheduler;
+	}
+
+	/**
+	 * Sets the frequency hopping, which adds the hops and the time waiting
+	 * for a free channel to the duration of the inventory rounds
+	 * 
+	 * @param hopScheduler
+	 *            the hop scheduler or null if the reader does not hop
+	 */
+	public void setHopScheduler(HopScheduler hopScheduler) {
+		this.hopScheduler = hopScheduler;
+	}
+
+	/**
+	 * @return the inventoried flags of the tags
+	 */
+	public InventoriedFlags getInventoriedFlags() {
+		return inventoriedFlags;
+	}
+
+	public CommitMode getCommitMode() {
+		return commitMode;
+	}
+
+	public void setCommitMode(CommitMode commitMode) {
+		this.commitMode = commitMode;
+	}
+
 	protected boolean applyFilters(RequestCreateTagType tag,
 			List<Short> antennas, List<Filter> filters, RssiFilter rssiFilter) {
+		return applyFilters(tag, AntennaSet.ALL.retain(antennas), filters, rssiFilter);
+	}
 
-		Map<Integer, Integer> tagsAntennaMap = new HashMap<>();
-		for (RequestCreateTagAntennaType a : tag.getAntennas().getAntenna())
-			tagsAntennaMap.put(a.getAntennaId(), a.getPeakRSSI());
+	protected boolean applyFilters(RequestCreateTagType tag,
+			AntennaSet antennas, List<Filter> filters, RssiFilter rssiFilter) {
 
+		PropagationModel model = propagationModel;
 		boolean match = false;
-		for (short antenna : antennas)
-			if (tagsAntennaMap.containsKey((int) antenna)) {
-				if (rssiFilter.getMinRssi() == 0 && rssiFilter.getMaxRssi() == 0) {
-					match = true;
-					break;
-				} else {
-					if (rssiFilter.getMinRssi() != 0 && tagsAntennaMap.get((int)antenna) >= rssiFilter.getMinRssi()) {
-						match = true;
-						break;						
-					}
-					
-					if (rssiFilter.getMaxRssi() != 0 && tagsAntennaMap.get((int)antenna) <= rssiFilter.getMaxRssi()) {
-						match = true;
-						break;						
-					}
-				}
+		for (RequestCreateTagAntennaType a : tag.getAntennas().getAntenna()) {
+			int peakRssi = AntennaIndex.getPeakRssi(a);
+			if (!antennas.contains(a.getAntennaId()) || !model.isVisible(a.getAntennaId(), peakRssi))
+				continue;
+			int rssi = model.getRssi(a.getAntennaId(), peakRssi);
+			if (rssiFilter.getMinRssi() == 0 && rssiFilter.getMaxRssi() == 0
+					|| rssiFilter.getMinRssi() != 0 && rssi >= rssiFilter.getMinRssi()
+					|| rssiFilter.getMaxRssi() != 0 && rssi <= rssiFilter.getMaxRssi()) {
+				match = true;
+				break;
 			}
+		}
 
 		if (!match)
 			return false;
 
+		return applyFilters(tag, filters);
+	}
+
+	protected boolean applyFilters(RequestCreateTagType tag, List<Filter> filters) {
 		for (Filter filter : filters) {
 
 			MemoryBankType memBank = getMemoryBank(tag, filter.getBank());
@@ -223,25 +710,27 @@ public class StubHardwareApi implements HardwareApi {
 		return null;
 	}
 
-	@SuppressWarnings("unused")
 	@Override
 	public TagData getTagData(RequestCreateTagType tag) {
+		Lock lock = tagLocks.get(tag.getTagId());
+		lock.lock();
+		try {
+			return createTagData(tag);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private TagData createTagData(RequestCreateTagType tag) {
 		TagData td = new TagData();
 
 		String tagId = tag.getTagId();
 
 		int antennaId = tag.getAntennas().getAntenna().get(0).getAntennaId();
-		int rssi = tag.getAntennas().getAntenna().get(0).getPeakRSSI();
-
-		MemoryBankType epcBank = null;
-		for (MemoryBankType mb : tag.getMemoryBanks().getMemoryBank())
-			if (mb.getName() == MemoryBankNameEnumeration.EPC_BANK) {
-				epcBank = mb;
-				break;
-			}
+		int rssi = propagationModel.getRssi(antennaId, tag.getAntennas().getAntenna().get(0).getPeakRSSI());
 
-		String epcBankStr = epcBank.getData().getValue();
-		byte[] epcBankData = RFUtils.hexToBytes(epcBankStr);
+		byte[] epcBankData = getMemory(tag).getBank(RFUtils.BANK_EPC);
 
 		short crc = RFUtils.bytesToShort(new byte[] { epcBankData[0],
 				epcBankData[1] });
@@ -270,29 +759,22 @@ public class StubHardwareApi implements HardwareApi {
 
 	@Override
 	public ReadResult read(ReadOperation rdOp, RequestCreateTagType tag) {
+		Lock lock = tagLocks.get(tag.getTagId());
+		lock.lock();
+		try {
+			return performRead(rdOp, tag);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private ReadResult performRead(ReadOperation rdOp, RequestCreateTagType tag) {
 		ReadResult rdRes = new ReadResult();
 		rdRes.setOperationId(rdOp.getOperationId());
 
 		FieldType lockedField = getLock(tag, rdOp);
-		int accessPsw = 0;
-		String dataStr = null;
-
-		/*
-		 * Read tag's data from the bank specified in rdOp and the access
-		 * password
-		 */
-		for (MemoryBankType memBank : tag.getMemoryBanks().getMemoryBank()) {
-			if (memBank.getName().equals(mapBank(rdOp.getBank())))
-				dataStr = memBank.getData().getValue();
-			if (memBank.getName().equals(MemoryBankNameEnumeration.PWD_BANK)) {
-				try {
-					String pswStr = memBank.getData().getValue().substring(8);
-					accessPsw = RFUtils
-							.bytesToInt(RFUtils.hexToBytes(pswStr));
-				} catch (Exception e) {
-				}
-			}
-		}
+		TagMemory memory = getMemory(tag);
+		int accessPsw = memory.getAccessPassword();
 
 		/* if a wrong (non-empty) password has been provided result will be INCORRECT_PASSWORD_ERROR */
 		if (rdOp.getPassword() != 0 && accessPsw != 0 && rdOp.getPassword() != accessPsw) {
@@ -321,14 +803,7 @@ public class StubHardwareApi implements HardwareApi {
 		}
 		
 		try {
-			String dataSubStr = null;
-			if (rdOp.getLength() > 0)
-				dataSubStr = dataStr.substring(rdOp.getOffset() * 4,
-						(rdOp.getOffset() + rdOp.getLength()) * 4);
-			else
-				dataSubStr = dataStr.substring(rdOp.getOffset() * 4);
-
-			rdRes.setReadData(RFUtils.hexToBytes(dataSubStr));
+			rdRes.setReadData(memory.read(rdOp.getBank(), rdOp.getOffset(), rdOp.getLength()));
 			rdRes.setResult(ReadResult.Result.SUCCESS);
 		} catch (IndexOutOfBoundsException e) {
 			rdRes.setResult(ReadResult.Result.MEMORY_OVERRUN_ERROR);
@@ -423,6 +898,17 @@ public class StubHardwareApi implements HardwareApi {
 
 	@Override
 	public WriteResult write(WriteOperation wrOp, RequestCreateTagType tag) {
+		Lock lock = tagLocks.get(tag.getTagId());
+		lock.lock();
+		try {
+			refresh(tag);
+			return performWrite(wrOp, tag);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private WriteResult performWrite(WriteOperation wrOp, RequestCreateTagType tag) {
 		WriteResult wrRes = new WriteResult();
 		wrRes.setOperationId(wrOp.getOperationId());
 
@@ -433,19 +919,8 @@ public class StubHardwareApi implements HardwareApi {
 		}
 		
 		FieldType lockedField = getLock(tag, wrOp);
-		int accessPsw = 0;
-		MemoryBankType bank = null;
-
-		for (MemoryBankType memBank : tag.getMemoryBanks().getMemoryBank()) {
-			if (memBank.getName().equals(mapBank(wrOp.getBank())))
-				bank = memBank;
-			if (memBank.getName().equals(MemoryBankNameEnumeration.PWD_BANK)) {
-				try {
-					String pswStr = memBank.getData().getValue().substring(8);
-					accessPsw = RFUtils.bytesToInt(RFUtils.hexToBytes(pswStr));
-				} catch (Exception e) { }
-			}
-		}
+		TagMemory memory = getMemory(tag);
+		int accessPsw = memory.getAccessPassword();
 
 		/* if bank is locked: passwords MUST match */
 		if (lockedField != null && lockedField.isLocked()) {
@@ -485,45 +960,20 @@ public class StubHardwareApi implements HardwareApi {
 			
 		}
 		
-		/* memory bank is empty */
-		if (bank.getData() == null || bank.getData().getValue() == null) {
-			bank.setData(new DataType());
-			bank.getData().setFormat(FieldFormatEnumeration.HEX);
-			String newData = insert("", RFUtils.bytesToHex(wrOp.getData()),
-					wrOp.getOffset() * 4);
-			
-			/* write data to memrory bank */
-			bank.getData().setValue(newData);
-
+		/*
+		 * if the memory bank already contains data and the complete length of
+		 * the data to be written exceeds the initial length of the memory bank,
+		 * result is MEMORY_OVERRUN_ERROR. An empty memory bank is filled with 0
+		 * up to the offset.
+		 */
+		if (memory.write(wrOp.getBank(), wrOp.getOffset(), wrOp.getData())) {
 			wrRes.setWordsWritten((short) (wrOp.getData().length / 2));
 			wrRes.setResult(WriteResult.Result.SUCCESS);
-		}
-
-		else { /*
-			    * memory bank already contains data into which the new data
-				* will be inserted
-				*/
-			String memBankData = bank.getData().getValue() != null ? bank
-					.getData().getValue() : "";
-			
-			/* if complete length of data to be written exceeds the initial length of the memory bank, 
-			 * result is MEMORY_OVERRUN_ERROR */
-			if (wrOp.getData().length * 2 + wrOp.getOffset() * 4 > bank.getData().getValue().length()) 
-				wrRes.setResult(WriteResult.Result.MEMORY_OVERRUN_ERROR);
-			
-			else {
-				
-				String newData = insert(memBankData,
-						RFUtils.bytesToHex(wrOp.getData()), wrOp.getOffset() * 4);
-				
-				/* write data to memrory bank */
-				bank.getData().setValue(newData);
-	
-				wrRes.setWordsWritten((short) (wrOp.getData().length / 2));
-				wrRes.setResult(WriteResult.Result.SUCCESS);
-			}
-		}
+		} else
+			wrRes.setResult(WriteResult.Result.MEMORY_OVERRUN_ERROR);
 
+		/* the hex data of the tag is updated only for the hardware management */
+		memory.flush();
 		commit(tag);
 
 		return wrRes;
@@ -531,24 +981,22 @@ public class StubHardwareApi implements HardwareApi {
 
 	@Override
 	public LockResult lock(LockOperation lOp, RequestCreateTagType tag) {
+		Lock lock = tagLocks.get(tag.getTagId());
+		lock.lock();
+		try {
+			refresh(tag);
+			return performLock(lOp, tag);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private LockResult performLock(LockOperation lOp, RequestCreateTagType tag) {
 
 		LockResult lRes = new LockResult();
 		lRes.setOperationId(lOp.getOperationId());
 
-		int lockPasswd = 0;
-
-		try {
-			for (MemoryBankType memBank : tag.getMemoryBanks().getMemoryBank()) {
-				if (memBank.getName()
-						.equals(MemoryBankNameEnumeration.PWD_BANK)) {
-					byte[] lockPasswdBytes = Arrays.copyOfRange(
-							RFUtils.hexToBytes(memBank.getData().getValue()),
-							4, 8);
-					lockPasswd = RFUtils.bytesToInt(lockPasswdBytes);
-				}
-			}
-		} catch (IllegalArgumentException e) {
-		}
+		int lockPasswd = getMemory(tag).getAccessPassword();
 
 		if (lockPasswd != 0) {/* lockPsw has been set*/
 			
@@ -618,6 +1066,17 @@ public class StubHardwareApi implements HardwareApi {
 
 	@Override
 	public KillResult kill(KillOperation kOp, RequestCreateTagType tag) {
+		Lock lock = tagLocks.get(tag.getTagId());
+		lock.lock();
+		try {
+			refresh(tag);
+			return performKill(kOp, tag);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private KillResult performKill(KillOperation kOp, RequestCreateTagType tag) {
 
 		KillResult kRes = new KillResult();
 		kRes.setOperationId(kOp.getOperationId());
@@ -627,20 +1086,7 @@ public class StubHardwareApi implements HardwareApi {
 			return kRes;
 		}
 
-		int killPasswd = 0;
-
-		try {
-			for (MemoryBankType memBank : tag.getMemoryBanks().getMemoryBank()) {
-				if (memBank.getName()
-						.equals(MemoryBankNameEnumeration.PWD_BANK)) {
-					byte[] killPasswdBytes = Arrays.copyOfRange(
-							RFUtils.hexToBytes(memBank.getData().getValue()),
-							0, 4);
-					killPasswd = RFUtils.bytesToInt(killPasswdBytes);
-				}
-			}
-		} catch (IllegalArgumentException e) {
-		}
+		int killPasswd = getMemory(tag).getKillPassword();
 
 		if (killPasswd != kOp.getKillPassword()) {
 			kRes.setResult(Result.INCORRECT_PASSWORD_ERROR);
@@ -805,19 +1251,7 @@ public class StubHardwareApi implements HardwareApi {
 	}
 
 	protected MemoryBankNameEnumeration mapBank(short bankIndex) {
-
-		switch (bankIndex) {
-		case RFUtils.BANK_EPC:
-			return MemoryBankNameEnumeration.EPC_BANK;
-		case RFUtils.BANK_TID:
-			return MemoryBankNameEnumeration.TID_BANK;
-		case RFUtils.BANK_PSW:
-			return MemoryBankNameEnumeration.PWD_BANK;
-		case RFUtils.BANK_USR:
-			return MemoryBankNameEnumeration.USER_BANK;
-		default:
-			return null;
-		}
+		return TagMemory.toBankName(bankIndex);
 	}
 
 	protected String insert(String originalString, String stringToInsert,
@@ -853,18 +1287,96 @@ public class StubHardwareApi implements HardwareApi {
 		/* aaaabbbbccccddddNNNN => append */
 		/* aaaabbbbccccdddd0000NNNN => fill with 0 and append */
 		else {
-			String fillStr = "";
+			StringBuilder result = new StringBuilder(offset + stringToInsert.length());
+			result.append(originalString);
 			for (int i = originalString.length(); i < offset; i++)
-				fillStr += '0';
-			return originalString + fillStr + stringToInsert;
+				result.append('0');
+			return result.append(stringToInsert).toString();
+		}
+	}
+
+	@Override
+	public CommitBatch beginCommit() {
+		if (commitMode != CommitMode.BATCHED)
+			return null;
+		CommitBatch batch = new CommitBatch();
+		batches.set(batch);
+		return batch;
+	}
+
+	@Override
+	public void joinCommit(CommitBatch batch) {
+		if (batch != null)
+			batches.set(batch);
+	}
+
+	@Override
+	public void leaveCommit() {
+		batches.remove();
+	}
+
+	@Override
+	public void endCommit(CommitBatch batch) throws StubHardwareApiException {
+		if (batch == null)
+			return;
+		if (batches.get() == batch)
+			batches.remove();
+		Collection<RequestCreateTagType> tags = batch.close();
+		if (tags.isEmpty())
+			return;
+
+		try {
+			commit(tags);
+		} catch (RuntimeException e) {
+			throw new StubHardwareApiException(String.format("Failed to commit %d tag(s): %s", tags.size(),
+					e.getMessage()), e);
 		}
 	}
 
 	private void commit(RequestCreateTagType tag) {
-		RequestUpdateType update = createUpdateRequest();
-		update.setTags(new RequestCreateTagsType());
-		update.getTags().getTag().add(tag);
-		manager.process(createRequest(ID, update));
+		/* tags changed after the end of a batch are committed immediately */
+		CommitBatch batch = batches.get();
+		if (batch == null || !batch.add(tag))
+			commit(Collections.singletonList(tag));
+	}
+
+	/*
+	 * operations on different tags may be performed and committed
+	 * concurrently, the commits of a tag are serialized by its lock unless
+	 * they are batched
+	 */
+	private void commit(Collection<RequestCreateTagType> tags) {
+		StubMetrics metrics = this.metrics;
+		long start = metrics.start();
+		TagSource source = tagSource;
+		if (source != null) {
+			source.update(tags);
+			TagPopulation population = getPopulation(source);
+			for (RequestCreateTagType tag : tags)
+				population.update(population.indexOf(tag.getTagId()), tag);
+		} else {
+			RequestUpdateType update = createUpdateRequest();
+			update.setTags(new RequestCreateTagsType());
+			update.getTags().getTag().addAll(tags);
+			try {
+				process(createRequest(ID, update));
+			} catch (RuntimeException e) {
+				/* the changes have been applied to the cached tags already */
+				tagCache.invalidate();
+				throw e;
+			}
+			for (RequestCreateTagType tag : tags)
+				tagCache.update(tag, versions.commit(tag.getTagId(), origin));
+		}
+		metrics.record(Phase.COMMIT, start);
+	}
+
+	private List<ResponseType> process(List<RequestType> requests) {
+		Object event = StubEvents.EVENTS.beginProcess();
+		List<ResponseType> responses = manager.process(requests);
+		if (event != null)
+			StubEvents.EVENTS.commitProcess(event, requests, responses);
+		return responses;
 	}
 
 	public List<RequestType> createRequest(String configId, RequestAbstractType choice) {
@@ -879,7 +1391,7 @@ public class StubHardwareApi implements HardwareApi {
 	public ResponseReadAntennasType getAntennas() {
 		RequestReadType read = createReadRequest();
 		read.setAntennas(new RequestDeleteAntennasType());
-		List<ResponseType> resp = manager.process(createRequest(ID, read));
+		List<ResponseType> resp = process(createRequest(ID, read));
 		ResponseReadAntennasType ret = ((ResponseReadType) resp.get(0)
 				.getChoice().get(0)).getAntennas();
 		return ret == null ? new ResponseReadAntennasType() : ret;
@@ -910,6 +1422,6 @@ public class StubHardwareApi implements HardwareApi {
 	}
 
 	private String createOperationId() {
-		return String.valueOf(operationId++);
+		return String.valueOf(operationId.getAndIncrement());
 	}
 }
\ No newline at end of file
@@ -7,4 +7,8 @@ public class StubHardwareApiException extends Exception {
 	public StubHardwareApiException(String message) {
 		super(message);
 	}
+
+	public StubHardwareApiException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
\ No newline at end of file
@@ -3,6 +3,15 @@ package havis.device.test.rf;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,16 +47,24 @@ import havis.device.rf.tag.result.WriteResult;
 import havis.device.test.hardware.HardwareMgmt;
 import havis.device.test.hardware.RequestCreateTagType;
 import havis.device.test.hardware.RequestCreateTagsType;
+import havis.device.test.rf.StubMetrics.Phase;
 
 public class StubHardwareManager implements HardwareManager {
 
 	private static final Logger logger = Logger
 			.getLogger(StubHardwareManager.class.getName());
 
-	private boolean connected;
-	private List<Short> connectedAntennas;
-	private HardwareApi hwApi;	
-	private String regionId;
+	private volatile boolean connected;
+	private volatile AntennaSet connectedAntennas;
+	private volatile HardwareApi hwApi;
+	private volatile String regionId;
+	/* set through the management bean by another thread */
+	private volatile boolean parallelExecution = StubEnvironment.PARALLEL_EXECUTION;
+	private ThreadPoolExecutor executor;
+	private ContinuousInventory continuousInventory;
+	private final StubMetrics metrics = new StubMetrics();
+	private final PropagationModel propagationModel = new PropagationModel();
+	private volatile HopScheduler hopScheduler;
 	private static HardwareMgmt hwMgmt;
 
 	public static void setHardwareMgmt(HardwareMgmt hwMgmt) {
@@ -72,26 +89,38 @@ public class StubHardwareManager implements HardwareManager {
 			ImplementationException {
 		if (logger.isLoggable(Level.FINE))
 			logger.log(Level.FINE, "Opening hardware connection.");
-		this.hwApi = new StubHardwareApi(hwMgmt);
+		StubHardwareApi hwApi = new StubHardwareApi(hwMgmt, TagSources.get(StubEnvironment.TAG_SOURCE));
+		hwApi.setMetrics(metrics);
+		hwApi.setSingulationControl(singCtl);
+		hwApi.setPropagationModel(propagationModel);
+		hwApi.setHopScheduler(hopScheduler);
+		this.hwApi = hwApi;
 		this.hwApi.connect();
-		this.connectedAntennas = new ArrayList<Short>();
-		this.connectedAntennas.addAll(this.hwApi.getConnectedAntennaIDs());
+		/* read by executions while antennas are configured */
+		this.connectedAntennas = this.hwApi.getConnectedAntennas();
 		
 		if (this.regionId == null)
 			this.regionId = Environment.DEFAULT_REGION_ID;
 		
 		this.connected = true;
+		StubManagement.add(this);
 	}
 
 	@Override
 	public void closeConnection() throws ConnectionException {
 		if (logger.isLoggable(Level.FINE))
 			logger.log(Level.FINE, "Closing hardware connection.");
+		StubManagement.remove(this);
+		stopContinuousInventory();
 		this.connectedAntennas = null;
 		this.hwApi.disconnect();
 		this.hwApi = null;
 		this.regionId = null;
 		this.connected = false;
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+		}
 	}
 
 	@Override
@@ -99,8 +128,38 @@ public class StubHardwareManager implements HardwareManager {
 			List<TagOperation> operations, RFConsumer consumer) 
 					throws ImplementationException, ParameterException {
 
-		TagDataList result = new TagDataList();
-		
+		final TagDataList result = new TagDataList();
+		execute(antennas, filters, operations, consumer, new TagDataSink() {
+			@Override
+			public void accept(TagData tagData) {
+				result.getEntryList().add(tagData);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Executes the operations like
+	 * {@link #execute(List, List, List, RFConsumer)}, but hands the tag data
+	 * of each tag to the sink as soon as its operations have been performed
+	 * instead of collecting the results of the whole execution.
+	 * 
+	 * @param antennas
+	 *            the antennas
+	 * @param filters
+	 *            the filters
+	 * @param operations
+	 *            the operations to perform on each tag
+	 * @param consumer
+	 *            the consumer for request operations
+	 * @param sink
+	 *            the sink receiving the tag data in the order of the
+	 *            inventory
+	 */
+	public void execute(List<Short> antennas, List<Filter> filters,
+			List<TagOperation> operations, RFConsumer consumer, TagDataSink sink) 
+					throws ImplementationException, ParameterException {
+
 		if (logger.isLoggable(Level.FINE))
 			logger.log(
 					Level.FINE,
@@ -118,54 +177,417 @@ public class StubHardwareManager implements HardwareManager {
 			if (logger.isLoggable(Level.FINE))
 				logger.log(Level.FINE,
 						"Module region is set to 'Unspecified'. Aborting execution.");
-			return result;
+			return;
 		}
 
-		List<Short> effAntennas = getEffectiveAntennaList(antennas);
+		AntennaSet effAntennas = getEffectiveAntennas(antennas);
 
-		if (effAntennas.size() == 0) {
+		if (effAntennas.isEmpty()) {
 			if (logger.isLoggable(Level.FINE))
 				logger.log(Level.FINE,
 						"Empty antenna list received. Aborting execution.");
-			return result;
+			return;
 		}
 
+		long start = metrics.start();
 		RequestCreateTagsType tags = hwApi.inventory(effAntennas, filters, rssiFilter);
+		metrics.record(Phase.INVENTORY, start);
 
 		if (logger.isLoggable(Level.FINE))
 			logger.log(Level.FINE, "Inventory round returned %s tag(s).", tags
 					.getTag().size());
 
-		for (RequestCreateTagType tag : tags.getTag()) {
-			TagData tagData = hwApi.getTagData(tag);
-			result.getEntryList().add(tagData);
-			RFCError tagError = null;
-			for (TagOperation tagOp : operations)
-				tagError = performOperation(tagOp, tagData, tagError, tag, consumer);
+		/* the changed tags are collected per execution, executions may run concurrently */
+		CommitBatch batch = hwApi.beginCommit();
+		try {
+			if (parallelExecution && tags.getTag().size() >= StubEnvironment.PARALLEL_EXECUTION_MIN_TAGS)
+				executeParallel(tags.getTag(), operations, consumer, sink, batch);
+			else
+				for (RequestCreateTagType tag : tags.getTag())
+					sink.accept(performOperations(tag, operations, consumer));
+		} catch (ImplementationException | ParameterException | RuntimeException e) {
+			/* commit the changes made so far, but report the original failure */
+			try {
+				hwApi.endCommit(batch);
+			} catch (StubHardwareApiException commitException) {
+				e.addSuppressed(commitException);
+			}
+			throw e;
 		}
-		
-		return result;
+
+		try {
+			hwApi.endCommit(batch);
+		} catch (StubHardwareApiException e) {
+			ImplementationException exception = new ImplementationException(e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+	}
+
+	/**
+	 * Starts a continuous inventory, which runs inventory rounds on a
+	 * dedicated thread until it is stopped. The antennas and the RSSI filter
+	 * are applied as currently configured for each round. A running
+	 * continuous inventory is stopped first.
+	 * 
+	 * @param antennas
+	 *            the antennas as passed to
+	 *            {@link #execute(List, List, List, RFConsumer)}
+	 * @param filters
+	 *            the filters
+	 * @return the ring buffer the observations are published to
+	 */
+	public ObservationRingBuffer startContinuousInventory(List<Short> antennas, List<Filter> filters)
+			throws ImplementationException {
+		if (!connected)
+			throw new ImplementationException(
+					"RF hardware not connected. You may want to call openConnection() first.");
+
+		stopContinuousInventory();
+		ContinuousInventory inventory = new ContinuousInventory(this, hwApi, antennas, filters,
+				(int) StubEnvironment.CONTINUOUS_BUFFER_SIZE);
+		synchronized (this) {
+			continuousInventory = inventory;
+		}
+		inventory.start();
+		return inventory.getObservations();
+	}
+
+	/**
+	 * Stops the continuous inventory, if any, and waits for the current round
+	 * to finish
+	 */
+	public void stopContinuousInventory() {
+		ContinuousInventory inventory;
+		synchronized (this) {
+			inventory = continuousInventory;
+			continuousInventory = null;
+		}
+		if (inventory != null)
+			inventory.stop();
+	}
+
+	/**
+	 * Restarts the continuous inventory after it has been stopped by a failed
+	 * round, see {@link ContinuousInventory#getFailure()}. The observations
+	 * are published to the same ring buffer.
+	 * 
+	 * @return true if the inventory has been restarted, false if there is no
+	 *         failed continuous inventory
+	 */
+	public boolean restartContinuousInventory() {
+		ContinuousInventory inventory = getContinuousInventory();
+		if (inventory == null || inventory.getFailure() == null)
+			return false;
+		if (logger.isLoggable(Level.FINE))
+			logger.log(Level.FINE, "Restarting continuous inventory after failure.", inventory.getFailure());
+		inventory.start();
+		return true;
+	}
+
+	/**
+	 * @return the started continuous inventory or null. An inventory stopped
+	 *         by a failed round is kept until it is stopped or started
+	 *         again, so the failure can be reported.
+	 */
+	public synchronized ContinuousInventory getContinuousInventory() {
+		return continuousInventory;
+	}
+
+	/**
+	 * Performs the operations on a single tag
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param operations
+	 *            the operations, which are performed in order
+	 * @param consumer
+	 *            the consumer for request operations
+	 * @return the tag data with the operation results
+	 */
+	protected TagData performOperations(RequestCreateTagType tag, List<TagOperation> operations, RFConsumer consumer)
+			throws ImplementationException, ParameterException {
+		long start = metrics.start();
+		TagData tagData = hwApi.getTagData(tag);
+		metrics.record(Phase.TAG_DATA, start);
+		RFCError tagError = null;
+		for (TagOperation tagOp : operations)
+			tagError = performOperation(tagOp, tagData, tagError, tag, consumer);
+		return tagData;
+	}
+
+	/**
+	 * Performs the operations on the tags in parallel. Each tag is processed
+	 * by a single thread, so the operations of a tag are performed in order.
+	 * The tag data is handed to the sink by the calling thread in the order of
+	 * the tags. At most {@link StubEnvironment#PARALLEL_EXECUTION_WINDOW} tags
+	 * are processed ahead of the tag the sink is waiting for.
+	 * 
+	 * Once the operations of a tag have failed, no further tags are taken. In
+	 * contrast to the serial execution, the tags processed by the other
+	 * threads at that time are completed and their changes are committed,
+	 * although they may follow the failed tag.
+	 * 
+	 * @param tags
+	 *            the tags
+	 * @param operations
+	 *            the operations
+	 * @param consumer
+	 *            the consumer for request operations
+	 * @param sink
+	 *            the sink receiving the tag data
+	 * @param batch
+	 *            the batch the workers add the changed tags to or null if the
+	 *            tags are committed immediately
+	 */
+	protected void executeParallel(List<RequestCreateTagType> tags, List<TagOperation> operations,
+			RFConsumer consumer, TagDataSink sink, CommitBatch batch) throws ImplementationException, ParameterException {
+		int window = (int) Math.max(1, Math.min(StubEnvironment.PARALLEL_EXECUTION_WINDOW, tags.size()));
+		int threads = Math.min(getParallelism(), tags.size());
+		ParallelExecution execution = new ParallelExecution(tags, operations, consumer, window, batch);
+
+		ExecutorService executor = getExecutor();
+		List<Future<?>> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++)
+			workers.add(executor.submit(execution));
+
+		try {
+			execution.deliver(sink);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ImplementationException("Execution has been interrupted.");
+		} finally {
+			/* wait for the workers, so no tag is changed after the execution */
+			execution.cancel(threads);
+			for (Future<?> worker : workers) {
+				try {
+					worker.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					// failures are reported by deliver
+				}
+			}
+		}
+	}
+
+	/**
+	 * State of a parallel execution. Workers take the next tag after
+	 * acquiring a permit, which is released when the tag data of a tag has
+	 * been handed to the sink. Hence the tag the sink is waiting for is always
+	 * processed or completed and the completed tags fit into a ring of the
+	 * size of the window.
+	 */
+	private class ParallelExecution implements Runnable {
+
+		private final List<RequestCreateTagType> tags;
+		private final List<TagOperation> operations;
+		private final RFConsumer consumer;
+		private final CommitBatch batch;
+		private final TagData[] completed;
+		private final Semaphore permits;
+		private final AtomicInteger next = new AtomicInteger();
+		private volatile boolean cancelled;
+		private Throwable failure;
+
+		ParallelExecution(List<RequestCreateTagType> tags, List<TagOperation> operations, RFConsumer consumer,
+				int window, CommitBatch batch) {
+			this.tags = tags;
+			this.operations = operations;
+			this.consumer = consumer;
+			this.batch = batch;
+			this.completed = new TagData[window];
+			this.permits = new Semaphore(window);
+		}
+
+		@Override
+		public void run() {
+			/* the tags changed by the worker are committed with the execution */
+			HardwareApi hwApi = StubHardwareManager.this.hwApi;
+			if (hwApi != null)
+				hwApi.joinCommit(batch);
+			try {
+				process();
+			} finally {
+				if (hwApi != null)
+					hwApi.leaveCommit();
+			}
+		}
+
+		private void process() {
+			while (!cancelled) {
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					return;
+				}
+				int index = next.getAndIncrement();
+				if (cancelled || index >= tags.size()) {
+					permits.release();
+					return;
+				}
+				try {
+					TagData tagData = performOperations(tags.get(index), operations, consumer);
+					synchronized (this) {
+						completed[index % completed.length] = tagData;
+						notifyAll();
+					}
+				} catch (Throwable t) {
+					/* no further tags are taken, the tags in progress are completed */
+					cancelled = true;
+					synchronized (this) {
+						if (failure == null)
+							failure = t;
+						notifyAll();
+					}
+					return;
+				}
+			}
+		}
+
+		void deliver(TagDataSink sink) throws ImplementationException, ParameterException, InterruptedException {
+			for (int index = 0; index < tags.size(); index++) {
+				TagData tagData;
+				synchronized (this) {
+					int slot = index % completed.length;
+					while ((tagData = completed[slot]) == null && failure == null)
+						wait();
+					if (tagData == null)
+						rethrow(failure);
+					completed[slot] = null;
+				}
+				permits.release();
+				sink.accept(tagData);
+			}
+		}
+
+		void cancel(int workers) {
+			cancelled = true;
+			/* wake up workers waiting for a permit */
+			permits.release(workers);
+		}
+
+		private void rethrow(Throwable t) throws ImplementationException, ParameterException {
+			if (t instanceof ImplementationException)
+				throw (ImplementationException) t;
+			if (t instanceof ParameterException)
+				throw (ParameterException) t;
+			if (t instanceof RuntimeException)
+				throw (RuntimeException) t;
+			if (t instanceof Error)
+				throw (Error) t;
+			throw new ImplementationException(String.valueOf(t));
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		int parallelism = getParallelism();
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, StubHardwareManager.class.getSimpleName() + "-"
+									+ count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		} else if (parallelism > executor.getMaximumPoolSize()) {
+			/* the parallelism may be changed at runtime */
+			executor.setMaximumPoolSize(parallelism);
+			executor.setCorePoolSize(parallelism);
+		} else if (parallelism < executor.getCorePoolSize()) {
+			executor.setCorePoolSize(parallelism);
+			executor.setMaximumPoolSize(parallelism);
+		}
+		return executor;
+	}
+
+	private int getParallelism() {
+		long threads = StubEnvironment.PARALLEL_EXECUTION_THREADS;
+		return threads > 0 ? (int) threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the hardware API of the current connection or null if not
+	 *         connected
+	 */
+	public HardwareApi getHardwareApi() {
+		return hwApi;
+	}
+
+	/**
+	 * @return the metrics of the executions, which are kept across
+	 *         connections
+	 */
+	public StubMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return a snapshot of the latencies of the execution phases and the
+	 *         operation result counters
+	 */
+	public MetricsSnapshot getMetricsSnapshot() {
+		return metrics.snapshot();
+	}
+
+	/**
+	 * @return the read range model configured by the antenna configurations,
+	 *         which is kept across connections
+	 */
+	public PropagationModel getPropagationModel() {
+		return propagationModel;
+	}
+
+	/**
+	 * @return the frequency hopping of the region or null if the region does
+	 *         not hop
+	 */
+	public HopScheduler getHopScheduler() {
+		return hopScheduler;
+	}
+
+	public boolean isParallelExecution() {
+		return parallelExecution;
+	}
+
+	public void setParallelExecution(boolean parallelExecution) {
+		this.parallelExecution = parallelExecution;
 	}
 
 	protected List<Short> getEffectiveAntennaList(List<Short> antennas)
 			throws ImplementationException {
+		return getEffectiveAntennas(antennas).toList();
+	}
+
+	/**
+	 * Returns the connected antennas of a request
+	 * 
+	 * @param antennas
+	 *            the requested antennas, a first antenna 0 for all antennas
+	 * @return the requested antennas which are connected
+	 */
+	protected AntennaSet getEffectiveAntennas(List<Short> antennas)
+			throws ImplementationException {
 		List<Short> antennasOverride = Environment.HARDWARE_MANAGER_ANTENNAS;
 		if (antennasOverride != null)
 			antennas = antennasOverride;
 		if (antennas.size() == 0)
-			return antennas;
+			return AntennaSet.EMPTY;
 		if (antennas.get(0) == 0)
 			return this.connectedAntennas;
-		List<Short> effectiveAntennas = new ArrayList<>();
-		for (Short s : antennas)
-			if (connectedAntennas.contains(s))
-				effectiveAntennas.add(s);
-		return effectiveAntennas;
+		return connectedAntennas.retain(antennas);
 	}
 	
 	protected RFCError performOperation(TagOperation op, TagData tagData, RFCError tagError, 
 			RequestCreateTagType tag, RFConsumer consumer) throws ImplementationException,
 			ParameterException {
+		Object event = StubEvents.EVENTS.beginOperation();
 
 		if (op instanceof ReadOperation) {
 			if (logger.isLoggable(Level.FINE))
@@ -174,7 +596,9 @@ public class StubHardwareManager implements HardwareManager {
 			ReadResult rRes = null;
 			ReadOperation rdOp = (ReadOperation) op;
 			if (tagError == null) {
+				long start = metrics.start();
 				rRes = hwApi.read(rdOp, tag);
+				metrics.record(Phase.READ, start);
 				if (rRes.getResult() != ReadResult.Result.SUCCESS)
 					tagError = RFCError.NonSpecificTagError;
 			} else {
@@ -185,6 +609,9 @@ public class StubHardwareManager implements HardwareManager {
 			}
 
 			tagData.getResultList().add(rRes);
+			metrics.count(rRes.getResult());
+			if (event != null)
+				StubEvents.EVENTS.commitOperation(event, "read", rdOp.getBank(), rdOp.getLength(), rRes.getResult());
 			if (logger.isLoggable(Level.FINE))
 				logger.log(
 						Level.FINE,
@@ -199,7 +626,9 @@ public class StubHardwareManager implements HardwareManager {
 			WriteResult wRes = null;
 			WriteOperation wrOp = (WriteOperation) op;
 			if (tagError == null) {
+				long start = metrics.start();
 				wRes = hwApi.write(wrOp, tag);
+				metrics.record(Phase.WRITE, start);
 
 				if (wRes.getResult() != WriteResult.Result.SUCCESS)
 					tagError = RFCError.NonSpecificTagError;
@@ -211,6 +640,10 @@ public class StubHardwareManager implements HardwareManager {
 			}
 
 			tagData.getResultList().add(wRes);
+			metrics.count(wRes.getResult());
+			if (event != null)
+				StubEvents.EVENTS.commitOperation(event, "write", wrOp.getBank(),
+						wrOp.getData() == null ? 0 : wrOp.getData().length / 2, wRes.getResult());
 			if (logger.isLoggable(Level.FINE))
 				logger.log(
 						Level.FINE,
@@ -225,7 +658,9 @@ public class StubHardwareManager implements HardwareManager {
 			LockResult lRes = null;
 			LockOperation lOp = (LockOperation) op;
 			if (tagError == null) {
+				long start = metrics.start();
 				lRes = hwApi.lock(lOp, tag);
+				metrics.record(Phase.LOCK, start);
 				if (lRes.getResult() != LockResult.Result.SUCCESS)
 					tagError = RFCError.NonSpecificTagError;
 			} else {
@@ -235,6 +670,9 @@ public class StubHardwareManager implements HardwareManager {
 			}
 
 			tagData.getResultList().add(lRes);
+			metrics.count(lRes.getResult());
+			if (event != null)
+				StubEvents.EVENTS.commitOperation(event, "lock", (short) -1, 0, lRes.getResult());
 			if (logger.isLoggable(Level.FINE))
 				logger.log(
 						Level.FINE,
@@ -249,7 +687,9 @@ public class StubHardwareManager implements HardwareManager {
 			KillResult kRes = null;
 			KillOperation kOp = (KillOperation) op;
 			if (tagError == null) {
+				long start = metrics.start();
 				kRes = hwApi.kill(kOp, tag);
+				metrics.record(Phase.KILL, start);
 				if (kRes.getResult() != KillResult.Result.SUCCESS)
 					tagError = RFCError.NonSpecificTagError;
 			} else {
@@ -259,6 +699,9 @@ public class StubHardwareManager implements HardwareManager {
 			}
 
 			tagData.getResultList().add(kRes);
+			metrics.count(kRes.getResult());
+			if (event != null)
+				StubEvents.EVENTS.commitOperation(event, "kill", (short) -1, 0, kRes.getResult());
 			if (logger.isLoggable(Level.FINE))
 				logger.log(
 						Level.FINE,
@@ -270,7 +713,15 @@ public class StubHardwareManager implements HardwareManager {
 			if (logger.isLoggable(Level.FINE))
 				logger.log(Level.FINE, "Performing request operation %s",
 						op.getOperationId());
-			List<TagOperation> additionalOps = consumer.getOperations(tagData);
+			List<TagOperation> additionalOps;
+			/* tags may be processed in parallel, the consumer is called by one thread at a time */
+			long start = metrics.start();
+			synchronized (consumer) {
+				additionalOps = consumer.getOperations(tagData);
+			}
+			metrics.record(Phase.REQUEST, start);
+			if (event != null)
+				StubEvents.EVENTS.commitOperation(event, "request", (short) -1, 0, null);
 			if (logger.isLoggable(Level.FINE))
 				logger.log(
 						Level.FINE,
@@ -299,6 +750,10 @@ public class StubHardwareManager implements HardwareManager {
 					region == null ? "null" : region.getId());
 
 		this.regionId = region.getId();
+		this.hopScheduler = HopScheduler.forRegion(region.getId(), region.getRegulatoryCapabilities());
+		HardwareApi hwApi = this.hwApi;
+		if (hwApi instanceof StubHardwareApi)
+			((StubHardwareApi) hwApi).setHopScheduler(hopScheduler);
 	}
 
 	
@@ -307,6 +762,8 @@ public class StubHardwareManager implements HardwareManager {
 			throws ImplementationException {
 		
 		AntennaPropertyList result = new AntennaPropertyList();
+		/* read once for all antennas of type AUTO */
+		AntennaSet connectedAntennas = null;
 		for (short i = 0; i < connectTypeMap.size(); i++) {
 
 			short antennaId = (short) (i + 1);
@@ -323,7 +780,9 @@ public class StubHardwareManager implements HardwareManager {
 					conState = false;
 					break;
 				default:
-					conState = this.hwApi.getConnectedAntennaIDs().contains(antennaId);
+					if (connectedAntennas == null)
+						connectedAntennas = this.hwApi.getConnectedAntennas();
+					conState = connectedAntennas.contains(antennaId);
 					break;
 			}
 			AntennaProperties ap = new AntennaProperties();
@@ -336,15 +795,19 @@ public class StubHardwareManager implements HardwareManager {
 		return result;
 	}
 
-	private void setConnected(short antenna, boolean connected) throws ImplementationException {
+	private synchronized void setConnected(short antenna, boolean connected) throws ImplementationException {
 		logger.entering(this.getClass().getName(), "setConnected", new Object[] { antenna, connected  });
-		if (connected) {
-			if (!connectedAntennas.contains(antenna))
-				connectedAntennas.add(antenna);													
-		} else {
-			if (connectedAntennas.contains(antenna))
-				connectedAntennas.remove((Short) antenna);
+		/* antennas out of range are never requested */
+		if (!AntennaSet.ALL.contains(antenna)) {
+			logger.log(Level.FINE, "Ignoring connection of antenna {0} out of range", antenna);
+			logger.exiting(this.getClass().getName(), "setConnected");
+			return;
 		}
+		/* replaced as a whole, so executions read a consistent set */
+		if (connected)
+			connectedAntennas = connectedAntennas.with(antenna);
+		else
+			connectedAntennas = connectedAntennas.without(antenna);
 		
 		logger.exiting(this.getClass().getName(), "setConnected");
 	}
@@ -383,15 +846,18 @@ public class StubHardwareManager implements HardwareManager {
 				setConnected(antenna, false);
 				break;
 			default:
-				setConnected(antenna, this.hwApi.getConnectedAntennaIDs().contains(antenna));
+				setConnected(antenna, this.hwApi.getConnectedAntennas().contains(antenna));
 				break;
 		}
+
+		propagationModel.configure(antenna, antennaConfiguration.getTransmitPower(),
+				antennaConfiguration.getReceiveSensitivity(), regulatoryCapabilities);
 		
 		logger.exiting(this.getClass().getName(), "setAntennaConfiguration");
 	}
 
-	private RssiFilter rssiFilter = new RssiFilter();
-	private SingulationControl singCtl = new SingulationControl();
+	private volatile RssiFilter rssiFilter = new RssiFilter();
+	private volatile SingulationControl singCtl = new SingulationControl();
 	
 	@Override
 	public RssiFilter getRssiFilter() {
@@ -410,7 +876,10 @@ public class StubHardwareManager implements HardwareManager {
 
 	@Override
 	public void setSingulationControl(SingulationControl singCtl) throws ImplementationException {
-		this.singCtl = singCtl;		
+		this.singCtl = singCtl;
+		HardwareApi hwApi = this.hwApi;
+		if (hwApi instanceof StubHardwareApi)
+			((StubHardwareApi) hwApi).setSingulationControl(singCtl);
 	}
 
 	@Override
@@ -0,0 +1,343 @@
+package havis.device.test.rf;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import havis.device.rf.tag.result.KillResult;
+import havis.device.rf.tag.result.LockResult;
+import havis.device.rf.tag.result.ReadResult;
+import havis.device.rf.tag.result.WriteResult;
+import havis.device.test.rf.StubMetrics.Phase;
+
+/**
+ * Management bean of the RF stub, see {@link StubManagementMXBean}. Each stub
+ * hardware manager adds itself when its connection is opened and removes
+ * itself when it is closed. The bean is registered with the platform MBean
+ * server by the OSGi activator or, outside of an OSGi container, by an
+ * explicit call of {@link #register()}.
+ */
+public class StubManagement implements StubManagementMXBean {
+
+	private static final Logger log = Logger.getLogger(StubManagement.class.getName());
+
+	/**
+	 * Name the bean is registered with
+	 */
+	public static final String OBJECT_NAME = "havis.device.test.rf:type=StubManagement";
+
+	private static final Set<StubHardwareManager> managers = Collections
+			.newSetFromMap(new WeakHashMap<StubHardwareManager, Boolean>());
+	private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	private static ObjectName registered;
+
+	private long sampleTime = System.nanoTime();
+	/* inventory rounds and tags of each manager at the last sample */
+	private final Map<StubHardwareManager, long[]> samples = new WeakHashMap<>();
+	private double roundsPerSecond;
+	private double tagsPerRound;
+
+	/**
+	 * Registers the bean with the platform MBean server unless it has been
+	 * registered already or {@link StubEnvironment#JMX_ENABLED} is false
+	 */
+	public static synchronized void register() {
+		if (registered != null || !StubEnvironment.JMX_ENABLED)
+			return;
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(name))
+				server.registerMBean(new StubManagement(), name);
+			registered = name;
+		} catch (JMException | RuntimeException e) {
+			log.log(Level.WARNING, "Failed to register management bean " + OBJECT_NAME, e);
+		}
+	}
+
+	/**
+	 * Unregisters the bean from the platform MBean server if it has been
+	 * registered by {@link #register()}
+	 */
+	public static synchronized void unregister() {
+		if (registered == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+		} catch (JMException | RuntimeException e) {
+			log.log(Level.WARNING, "Failed to unregister management bean " + OBJECT_NAME, e);
+		}
+		registered = null;
+	}
+
+	/**
+	 * Creates the bean, whose rates are sampled from now on
+	 */
+	public StubManagement() {
+		for (StubHardwareManager manager : getManagers())
+			samples.put(manager, getCounts(manager));
+	}
+
+	static void add(StubHardwareManager manager) {
+		synchronized (managers) {
+			managers.add(manager);
+		}
+	}
+
+	static void remove(StubHardwareManager manager) {
+		synchronized (managers) {
+			managers.remove(manager);
+		}
+	}
+
+	static List<StubHardwareManager> getManagers() {
+		synchronized (managers) {
+			return new ArrayList<>(managers);
+		}
+	}
+
+	private static List<StubHardwareApi> getHardwareApis() {
+		List<StubHardwareApi> apis = new ArrayList<>();
+		for (StubHardwareManager manager : getManagers()) {
+			HardwareApi api = manager.getHardwareApi();
+			if (api instanceof StubHardwareApi)
+				apis.add((StubHardwareApi) api);
+		}
+		return apis;
+	}
+
+	private static List<MetricsSnapshot> getSnapshots() {
+		List<MetricsSnapshot> snapshots = new ArrayList<>();
+		for (StubHardwareManager manager : getManagers())
+			snapshots.add(manager.getMetricsSnapshot());
+		return snapshots;
+	}
+
+	private static long getCount(Phase phase) {
+		long count = 0;
+		for (MetricsSnapshot snapshot : getSnapshots())
+			count += snapshot.getLatency(phase).getCount();
+		return count;
+	}
+
+	private static long[] getCounts(StubHardwareManager manager) {
+		MetricsSnapshot snapshot = manager.getMetricsSnapshot();
+		return new long[] { snapshot.getLatency(Phase.INVENTORY).getCount(),
+				snapshot.getLatency(Phase.TAG_DATA).getCount() };
+	}
+
+	/*
+	 * the rates are updated at most once per sample interval from the counts
+	 * of each manager, so managers removed in the meantime do not reduce them
+	 */
+	private synchronized void sample() {
+		long now = System.nanoTime();
+		if (now - sampleTime < SAMPLE_INTERVAL)
+			return;
+		long deltaRounds = 0;
+		long deltaTags = 0;
+		for (StubHardwareManager manager : getManagers()) {
+			long[] counts = getCounts(manager);
+			long[] last = samples.put(manager, counts);
+			/* managers added since are counted from zero, counters may have been reset */
+			deltaRounds += last == null || counts[0] < last[0] ? counts[0] : counts[0] - last[0];
+			deltaTags += last == null || counts[1] < last[1] ? counts[1] : counts[1] - last[1];
+		}
+		roundsPerSecond = deltaRounds * (double) TimeUnit.SECONDS.toNanos(1) / (now - sampleTime);
+		tagsPerRound = deltaRounds == 0 ? 0 : (double) deltaTags / deltaRounds;
+		sampleTime = now;
+	}
+
+	@Override
+	public int getManagerCount() {
+		return getManagers().size();
+	}
+
+	@Override
+	public synchronized double getRoundsPerSecond() {
+		sample();
+		return roundsPerSecond;
+	}
+
+	@Override
+	public synchronized double getTagsPerRound() {
+		sample();
+		return tagsPerRound;
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (Phase phase : new Phase[] { Phase.READ, Phase.WRITE, Phase.LOCK, Phase.KILL, Phase.REQUEST })
+			counts.put(phase.name(), getCount(phase));
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (MetricsSnapshot snapshot : getSnapshots())
+			for (Map.Entry<Enum<?>, Long> entry : snapshot.getResultCounts().entrySet()) {
+				Enum<?> result = entry.getKey();
+				if (result == ReadResult.Result.SUCCESS || result == WriteResult.Result.SUCCESS
+						|| result == LockResult.Result.SUCCESS || result == KillResult.Result.SUCCESS)
+					continue;
+				String key = result.getDeclaringClass().getEnclosingClass().getSimpleName() + "." + result.name();
+				Long count = counts.get(key);
+				counts.put(key, (count == null ? 0 : count) + entry.getValue());
+			}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getMeanLatencies() {
+		long[] counts = new long[Phase.values().length];
+		long[] sums = new long[Phase.values().length];
+		for (MetricsSnapshot snapshot : getSnapshots())
+			for (Phase phase : Phase.values()) {
+				counts[phase.ordinal()] += snapshot.getLatency(phase).getCount();
+				sums[phase.ordinal()] += snapshot.getLatency(phase).getSum();
+			}
+		Map<String, Double> latencies = new LinkedHashMap<>();
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+			latencies.put(phase.name(), counts[i] == 0 ? 0 : sums[i] / 1000.0 / counts[i]);
+		}
+		return latencies;
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = 0;
+		long misses = 0;
+		for (StubHardwareApi api : getHardwareApis()) {
+			hits += api.getTagCache().getHits();
+			misses += api.getTagCache().getMisses();
+		}
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	@Override
+	public String getTimingModel() {
+		return StubEnvironment.TIMING_MODEL;
+	}
+
+	@Override
+	public void setTimingModel(String timingModel) {
+		StubEnvironment.TIMING_MODEL = timingModel;
+		for (StubHardwareApi api : getHardwareApis())
+			api.setTimingModel(InventoryTimingModel.forName(timingModel));
+	}
+
+	@Override
+	public long getInventoryDelay() {
+		return StubEnvironment.TIMING_FIXED_DELAY;
+	}
+
+	@Override
+	public void setInventoryDelay(long delay) {
+		if (delay < 0)
+			throw new IllegalArgumentException("Inventory delay must not be negative");
+		StubEnvironment.TIMING_FIXED_DELAY = delay;
+		for (StubHardwareApi api : getHardwareApis())
+			if (api.getTimingModel() instanceof FixedDelayTimingModel)
+				api.setTimingModel(new FixedDelayTimingModel(delay));
+	}
+
+	@Override
+	public boolean isParallelExecution() {
+		return StubEnvironment.PARALLEL_EXECUTION;
+	}
+
+	@Override
+	public void setParallelExecution(boolean parallelExecution) {
+		StubEnvironment.PARALLEL_EXECUTION = parallelExecution;
+		for (StubHardwareManager manager : getManagers())
+			manager.setParallelExecution(parallelExecution);
+	}
+
+	@Override
+	public int getParallelism() {
+		return (int) StubEnvironment.PARALLEL_EXECUTION_THREADS;
+	}
+
+	@Override
+	public void setParallelism(int parallelism) {
+		if (parallelism < 0)
+			throw new IllegalArgumentException("Parallelism must not be negative");
+		/* the thread pools are resized by the next parallel execution */
+		StubEnvironment.PARALLEL_EXECUTION_THREADS = parallelism;
+	}
+
+	@Override
+	public long getParallelWindow() {
+		return StubEnvironment.PARALLEL_EXECUTION_WINDOW;
+	}
+
+	@Override
+	public void setParallelWindow(long window) {
+		if (window < 1)
+			throw new IllegalArgumentException("Parallel window must be positive");
+		StubEnvironment.PARALLEL_EXECUTION_WINDOW = window;
+	}
+
+	@Override
+	public String getCommitMode() {
+		return StubEnvironment.COMMIT_MODE.name();
+	}
+
+	@Override
+	public void setCommitMode(String commitMode) {
+		CommitMode mode = CommitMode.valueOf(commitMode);
+		StubEnvironment.COMMIT_MODE = mode;
+		for (StubHardwareApi api : getHardwareApis())
+			api.setCommitMode(mode);
+	}
+
+	@Override
+	public void resetStatistics() {
+		for (StubHardwareManager manager : getManagers())
+			manager.getMetrics().reset();
+	}
+
+	@Override
+	public void invalidateTagCache() {
+		for (StubHardwareApi api : getHardwareApis())
+			api.getTagCache().invalidate();
+	}
+
+	@Override
+	public void invalidateAntennaCache() {
+		for (StubHardwareApi api : getHardwareApis())
+			api.invalidateAntennas();
+	}
+
+	@Override
+	public int reviveKilledTags() {
+		int count = 0;
+		for (StubHardwareApi api : getHardwareApis())
+			count += api.reviveKilledTags();
+		return count;
+	}
+
+	@Override
+	public int purgeKilledTags() {
+		int count = 0;
+		for (StubHardwareApi api : getHardwareApis())
+			count += api.purgeKilledTags();
+		return count;
+	}
+}
@@ -0,0 +1,134 @@
+package havis.device.test.rf;
+
+import java.util.Map;
+
+/**
+ * Management interface of the RF stub. The statistics are aggregated over all
+ * stub hardware managers, the tunables are applied to all managers and their
+ * connections immediately and are used for managers created later on.
+ */
+public interface StubManagementMXBean {
+
+	/**
+	 * @return the number of live stub hardware managers
+	 */
+	int getManagerCount();
+
+	/**
+	 * @return the inventory rounds of executions per second, measured over
+	 *         the last second at least
+	 */
+	double getRoundsPerSecond();
+
+	/**
+	 * @return the mean number of tags processed per inventory round of an
+	 *         execution, measured over the last second at least
+	 */
+	double getTagsPerRound();
+
+	/**
+	 * @return the number of operations performed by type, i.e. READ, WRITE,
+	 *         LOCK, KILL and REQUEST
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * @return the number of failed operations by result code, e.g.
+	 *         <b>ReadResult.MEMORY_OVERRUN_ERROR</b>
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * @return the mean latency of each execution phase in microseconds
+	 */
+	Map<String, Double> getMeanLatencies();
+
+	/**
+	 * @return the share of inventory rounds served from the tag cache between
+	 *         0 and 1
+	 */
+	double getCacheHitRate();
+
+	/**
+	 * @return the name of the inventory timing model
+	 */
+	String getTimingModel();
+
+	/**
+	 * @param timingModel
+	 *            the name of the inventory timing model, see
+	 *            {@link InventoryTimingModel#forName(String)}
+	 */
+	void setTimingModel(String timingModel);
+
+	/**
+	 * @return the delay of each inventory round of the fixed timing model in
+	 *         milliseconds
+	 */
+	long getInventoryDelay();
+
+	/**
+	 * @param delay
+	 *            the delay of each inventory round of the fixed timing model
+	 *            in milliseconds
+	 */
+	void setInventoryDelay(long delay);
+
+	boolean isParallelExecution();
+
+	void setParallelExecution(boolean parallelExecution);
+
+	/**
+	 * @return the number of threads of a parallel execution, 0 for the number
+	 *         of processors
+	 */
+	int getParallelism();
+
+	void setParallelism(int parallelism);
+
+	/**
+	 * @return the number of tags processed in parallel ahead of the tag whose
+	 *         results are handed out next
+	 */
+	long getParallelWindow();
+
+	void setParallelWindow(long window);
+
+	/**
+	 * @return the commit mode, i.e. IMMEDIATE or BATCHED
+	 */
+	String getCommitMode();
+
+	void setCommitMode(String commitMode);
+
+	/**
+	 * Resets the statistics of all managers
+	 */
+	void resetStatistics();
+
+	/**
+	 * Invalidates the tag caches, so the tags are read from the hardware
+	 * management again
+	 */
+	void invalidateTagCache();
+
+	/**
+	 * Invalidates the cached antennas of the connections, so the antennas are
+	 * read from the hardware management again
+	 */
+	void invalidateAntennaCache();
+
+	/**
+	 * Revives the killed tags of all connections
+	 * 
+	 * @return the number of revived tags
+	 */
+	int reviveKilledTags();
+
+	/**
+	 * Deletes the killed tags of all connections from the hardware management
+	 * 
+	 * @return the number of deleted tags
+	 */
+	int purgeKilledTags();
+}
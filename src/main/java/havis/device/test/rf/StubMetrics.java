@@ -0,0 +1,159 @@
+package havis.device.test.rf;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import havis.device.rf.tag.result.KillResult;
+import havis.device.rf.tag.result.LockResult;
+import havis.device.rf.tag.result.ReadResult;
+import havis.device.rf.tag.result.WriteResult;
+
+/**
+ * Latencies of the phases of an execution and counters of the operation
+ * results. Recording neither locks nor allocates, so the metrics can be kept
+ * enabled in long-running environments. If the metrics are disabled, no time
+ * is taken at all.
+ */
+public class StubMetrics {
+
+	/**
+	 * Phase of an execution
+	 */
+	public enum Phase {
+		/**
+		 * Inventory round including the delay of the timing model
+		 */
+		INVENTORY,
+		/**
+		 * Selection of the tags matching the antennas and filters of an
+		 * inventory round
+		 */
+		FILTER,
+		/**
+		 * Creation of the tag data of a tag
+		 */
+		TAG_DATA,
+		READ,
+		WRITE,
+		LOCK,
+		KILL,
+		/**
+		 * Call of the consumer of a request operation, excluding the
+		 * operations returned by the consumer
+		 */
+		REQUEST,
+		/**
+		 * Commit of changed tags
+		 */
+		COMMIT
+	}
+
+	private final boolean enabled;
+	private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+	private final Map<Enum<?>, LongAdder> results = new LinkedHashMap<>();
+
+	/**
+	 * Creates new metrics, which are enabled as configured by
+	 * {@link StubEnvironment#METRICS_ENABLED}
+	 */
+	public StubMetrics() {
+		this(StubEnvironment.METRICS_ENABLED);
+	}
+
+	/**
+	 * Creates new metrics
+	 * 
+	 * @param enabled
+	 *            whether latencies and results are recorded
+	 */
+	public StubMetrics(boolean enabled) {
+		this.enabled = enabled;
+		for (Phase phase : Phase.values())
+			latencies.put(phase, new LatencyHistogram());
+		addResults(ReadResult.Result.values());
+		addResults(WriteResult.Result.values());
+		addResults(LockResult.Result.values());
+		addResults(KillResult.Result.values());
+	}
+
+	private void addResults(Enum<?>[] values) {
+		for (Enum<?> value : values)
+			results.put(value, new LongAdder());
+	}
+
+	/**
+	 * @return whether latencies and results are recorded
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the start time of a phase to be passed to
+	 * {@link #record(Phase, long)}
+	 * 
+	 * @return the current value of {@link System#nanoTime()} or 0 if the
+	 *         metrics are disabled
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the latency of a phase
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @param start
+	 *            the start time as returned by {@link #start()}
+	 */
+	public void record(Phase phase, long start) {
+		if (enabled)
+			latencies.get(phase).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Counts an operation result
+	 * 
+	 * @param result
+	 *            the result code of a read, write, lock or kill result
+	 */
+	public void count(Enum<?> result) {
+		if (!enabled || result == null)
+			return;
+		LongAdder counter = results.get(result);
+		if (counter != null)
+			counter.increment();
+	}
+
+	/**
+	 * Resets all latencies and counters. Values recorded concurrently may be
+	 * lost or partially kept.
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : latencies.values())
+			histogram.reset();
+		for (LongAdder counter : results.values())
+			counter.reset();
+	}
+
+	/**
+	 * Takes a snapshot of the metrics. Values recorded concurrently may or may
+	 * not be part of the snapshot.
+	 * 
+	 * @return the snapshot
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<Phase, LatencyHistogram.Snapshot> latencies = new EnumMap<>(Phase.class);
+		for (Map.Entry<Phase, LatencyHistogram> entry : this.latencies.entrySet())
+			latencies.put(entry.getKey(), entry.getValue().snapshot());
+		Map<Enum<?>, Long> results = new LinkedHashMap<>();
+		for (Map.Entry<Enum<?>, LongAdder> entry : this.results.entrySet())
+			results.put(entry.getKey(), entry.getValue().sum());
+		return new MetricsSnapshot(System.currentTimeMillis(), Collections.unmodifiableMap(latencies),
+				Collections.unmodifiableMap(results));
+	}
+}
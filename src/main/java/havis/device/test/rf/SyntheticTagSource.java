@@ -0,0 +1,247 @@
+package havis.device.test.rf;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.DataType;
+import havis.device.test.hardware.FieldFormatEnumeration;
+import havis.device.test.hardware.MemoryBankType;
+import havis.device.test.hardware.MemoryBanksType;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagAntennasType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Tag source generating a population of tags procedurally. Each tag is
+ * derived from the seed and its position only, so it is created again
+ * identically whenever it is visited and only tags which have been changed by
+ * tag operations are kept in memory.
+ * 
+ * The memory banks are created from templates of hex digits, in which each
+ * <b>x</b> is replaced by a random digit and the <b>n</b> digits are replaced
+ * by the position of the tag, the last <b>n</b> being the least significant
+ * digit. An empty template results in a tag without the bank. Each tag is
+ * seen by a number of consecutive antennas of the antenna list starting at a
+ * random antenna, with a peak RSSI evenly distributed between the minimum and
+ * the maximum.
+ */
+public class SyntheticTagSource implements TagSource {
+
+	static final String NAME = "synthetic";
+
+	private static final String TAG_ID_PREFIX = "synthetic-";
+	private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+	private final long seed;
+	private final int count;
+	private final String[] templates = new String[4];
+	private final int[] antennas;
+	private final int antennasPerTag;
+	private final int minRssi;
+	private final int maxRssi;
+	private final Map<Integer, RequestCreateTagType> changedTags = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new source using the settings from the {@link StubEnvironment}
+	 */
+	public SyntheticTagSource() {
+		this(StubEnvironment.SYNTHETIC_SEED, (int) StubEnvironment.SYNTHETIC_COUNT,
+				StubEnvironment.SYNTHETIC_EPC_TEMPLATE, StubEnvironment.SYNTHETIC_TID_TEMPLATE,
+				StubEnvironment.SYNTHETIC_PWD_TEMPLATE, StubEnvironment.SYNTHETIC_USER_TEMPLATE,
+				parseAntennas(StubEnvironment.SYNTHETIC_ANTENNAS), (int) StubEnvironment.SYNTHETIC_ANTENNAS_PER_TAG,
+				(int) StubEnvironment.SYNTHETIC_MIN_RSSI, (int) StubEnvironment.SYNTHETIC_MAX_RSSI);
+	}
+
+	/**
+	 * Creates a new source
+	 * 
+	 * @param seed
+	 *            the seed of the random digits and the antenna distribution
+	 * @param count
+	 *            the number of tags
+	 * @param epcTemplate
+	 *            the template of the EPC bank including CRC and PC
+	 * @param tidTemplate
+	 *            the template of the TID bank
+	 * @param pwdTemplate
+	 *            the template of the password bank
+	 * @param userTemplate
+	 *            the template of the user bank
+	 * @param antennas
+	 *            the IDs of the antennas
+	 * @param antennasPerTag
+	 *            the number of antennas seeing each tag
+	 * @param minRssi
+	 *            the minimum peak RSSI
+	 * @param maxRssi
+	 *            the maximum peak RSSI
+	 * @throws IllegalArgumentException
+	 *             if a template contains characters other than hex digits,
+	 *             <b>x</b> and <b>n</b> or the antenna distribution is invalid
+	 */
+	public SyntheticTagSource(long seed, int count, String epcTemplate, String tidTemplate, String pwdTemplate,
+			String userTemplate, int[] antennas, int antennasPerTag, int minRssi, int maxRssi) {
+		if (count < 0)
+			throw new IllegalArgumentException("Invalid tag count " + count);
+		if (antennas.length == 0 || antennasPerTag < 1 || antennasPerTag > antennas.length)
+			throw new IllegalArgumentException("Invalid number of antennas per tag " + antennasPerTag + " for "
+					+ antennas.length + " antenna(s)");
+		if (minRssi > maxRssi)
+			throw new IllegalArgumentException("Minimum RSSI " + minRssi + " exceeds maximum RSSI " + maxRssi);
+
+		this.seed = seed;
+		this.count = count;
+		templates[RFUtils.BANK_EPC] = checkTemplate(epcTemplate);
+		templates[RFUtils.BANK_TID] = checkTemplate(tidTemplate);
+		templates[RFUtils.BANK_PSW] = checkTemplate(pwdTemplate);
+		templates[RFUtils.BANK_USR] = checkTemplate(userTemplate);
+		this.antennas = antennas.clone();
+		this.antennasPerTag = antennasPerTag;
+		this.minRssi = minRssi;
+		this.maxRssi = maxRssi;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public RequestCreateTagType getTag(int position) {
+		if (position < 0 || position >= count)
+			throw new IndexOutOfBoundsException("Position " + position + " exceeds population of " + count
+					+ " tags");
+		RequestCreateTagType tag = changedTags.get(position);
+		return tag != null ? tag : createTag(position);
+	}
+
+	@Override
+	public int indexOf(String tagId) {
+		if (tagId == null || !tagId.startsWith(TAG_ID_PREFIX))
+			return -1;
+		try {
+			int position = Integer.parseInt(tagId.substring(TAG_ID_PREFIX.length()));
+			return position >= 0 && position < count && tagId.equals(getTagId(position)) ? position : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void update(Collection<RequestCreateTagType> tags) {
+		for (RequestCreateTagType tag : tags) {
+			int position = indexOf(tag.getTagId());
+			if (position < 0)
+				throw new IllegalArgumentException("Unknown tag " + tag.getTagId());
+			changedTags.put(position, tag);
+		}
+	}
+
+	/**
+	 * @return the number of tags which have been changed and are kept in
+	 *         memory
+	 */
+	public int getChangedCount() {
+		return changedTags.size();
+	}
+
+	/**
+	 * Creates a tag as generated from the seed, ignoring any changes
+	 * 
+	 * @param position
+	 *            the position of the tag
+	 * @return the tag
+	 */
+	RequestCreateTagType createTag(int position) {
+		long random = mix(seed + (position + 1) * GAMMA);
+
+		RequestCreateTagType tag = new RequestCreateTagType();
+		tag.setTagId(getTagId(position));
+
+		tag.setMemoryBanks(new MemoryBanksType());
+		for (short bank = 0; bank < templates.length; bank++) {
+			if (templates[bank].isEmpty())
+				continue;
+			random = next(random);
+			MemoryBankType memBank = new MemoryBankType();
+			memBank.setName(TagMemory.toBankName(bank));
+			memBank.setData(new DataType());
+			memBank.getData().setFormat(FieldFormatEnumeration.HEX);
+			memBank.getData().setValue(expand(templates[bank], position, random));
+			tag.getMemoryBanks().getMemoryBank().add(memBank);
+		}
+
+		tag.setAntennas(new RequestCreateTagAntennasType());
+		random = next(random);
+		int first = (int) ((random >>> 1) % antennas.length);
+		for (int i = 0; i < antennasPerTag; i++) {
+			random = next(random);
+			RequestCreateTagAntennaType antenna = new RequestCreateTagAntennaType();
+			antenna.setAntennaId(antennas[(first + i) % antennas.length]);
+			antenna.setPeakRSSI(minRssi + (int) ((random >>> 1) % (maxRssi - minRssi + 1)));
+			tag.getAntennas().getAntenna().add(antenna);
+		}
+		return tag;
+	}
+
+	private static String getTagId(int position) {
+		return TAG_ID_PREFIX + position;
+	}
+
+	/* replaces the placeholders of a template */
+	private static String expand(String template, int position, long random) {
+		char[] chars = template.toCharArray();
+		long serial = position;
+		long bits = random;
+		int digits = 16;
+		for (int i = chars.length - 1; i >= 0; i--) {
+			if (chars[i] == 'n') {
+				chars[i] = Character.forDigit((int) (serial & 0x0f), 16);
+				serial >>>= 4;
+			} else if (chars[i] == 'x') {
+				if (digits == 0) {
+					random = next(random);
+					bits = random;
+					digits = 16;
+				}
+				chars[i] = Character.forDigit((int) (bits & 0x0f), 16);
+				bits >>>= 4;
+				digits--;
+			}
+		}
+		return new String(chars);
+	}
+
+	private static String checkTemplate(String template) {
+		String result = template == null ? "" : template.trim().toLowerCase();
+		for (int i = 0; i < result.length(); i++) {
+			char c = result.charAt(i);
+			if (Character.digit(c, 16) < 0 && c != 'x' && c != 'n')
+				throw new IllegalArgumentException("Invalid character '" + c + "' in template '" + template + "'");
+		}
+		if (result.length() % 4 != 0)
+			throw new IllegalArgumentException("Template '" + template + "' is not a multiple of 16 bits");
+		return result;
+	}
+
+	static int[] parseAntennas(String antennas) {
+		String[] ids = antennas.split(",");
+		int[] result = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			result[i] = Integer.parseInt(ids[i].trim());
+		return result;
+	}
+
+	private static long next(long random) {
+		return mix(random + GAMMA);
+	}
+
+	/* SplitMix64 finalizer */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
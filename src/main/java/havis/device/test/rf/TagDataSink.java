@@ -0,0 +1,27 @@
+package havis.device.test.rf;
+
+import havis.device.rf.exception.ImplementationException;
+import havis.device.rf.tag.TagData;
+
+/**
+ * Receives the tag data of an execution as soon as the operations on a tag
+ * have been performed, see
+ * {@link StubHardwareManager#execute(java.util.List, java.util.List, java.util.List, havis.device.rf.RFConsumer, TagDataSink)}
+ * 
+ * The sink is called by the thread calling the execution and in the order of
+ * the inventory. Processing of further tags is held back while the sink is
+ * busy, so a slow sink limits the number of buffered results instead of
+ * letting them pile up.
+ */
+public interface TagDataSink {
+
+	/**
+	 * Accepts the tag data of a tag
+	 * 
+	 * @param tagData
+	 *            the tag data with the operation results
+	 * @throws ImplementationException
+	 *             to abort the execution
+	 */
+	void accept(TagData tagData) throws ImplementationException;
+}
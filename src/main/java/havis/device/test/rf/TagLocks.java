@@ -0,0 +1,43 @@
+package havis.device.test.rf;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks keyed by tag ID. Operations on the same tag acquire the same
+ * lock, while operations on different tags usually acquire different locks
+ * and proceed in parallel.
+ */
+class TagLocks {
+
+	private final Lock[] locks;
+	private final int mask;
+
+	/**
+	 * Creates the locks
+	 * 
+	 * @param stripes
+	 *            the number of locks, which is rounded up to a power of two
+	 */
+	TagLocks(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes));
+		if (size < stripes)
+			size <<= 1;
+		this.locks = new Lock[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++)
+			locks[i] = new ReentrantLock();
+	}
+
+	/**
+	 * @param tagId
+	 *            the tag ID
+	 * @return the lock of the tag
+	 */
+	Lock get(String tagId) {
+		int hash = tagId == null ? 0 : tagId.hashCode();
+		/* spread the upper bits, since only the lower ones select the lock */
+		hash ^= hash >>> 16;
+		return locks[hash & mask];
+	}
+}
@@ -0,0 +1,303 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.DataType;
+import havis.device.test.hardware.FieldFormatEnumeration;
+import havis.device.test.hardware.MemoryBankNameEnumeration;
+import havis.device.test.hardware.MemoryBankType;
+import havis.device.test.hardware.MemoryBanksType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Binary contents of the memory banks of a tag. The contents of a bank are
+ * decoded from the hex data of the tag on first access and again whenever the
+ * hex data of the bank has been replaced.
+ * 
+ * Writes are applied to the binary contents only. The hex data of the tag is
+ * updated by {@link #flush()}, which has to be called before the tag is passed
+ * to the hardware management.
+ * 
+ * The binary contents are never modified, but replaced on write, so they can
+ * be shared with other tags through a {@link BankStore}. The contents of each
+ * bank are published as a whole, so the memory can be read by inventory
+ * rounds while a tag operation writes to it.
+ */
+public class TagMemory {
+
+	private static final int BANK_COUNT = 4;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final RequestCreateTagType tag;
+	private final BankStore store;
+	private final AtomicReferenceArray<Contents> banks = new AtomicReferenceArray<>(BANK_COUNT);
+
+	/* contents of a bank, which have been written if they have not been decoded from hex data */
+	private static final class Contents {
+		final String source;
+		final byte[] data;
+		/* keeps the stored contents from being released while in use */
+		final BankStore.Bank stored;
+
+		Contents(String source, byte[] data) {
+			this.source = source;
+			this.data = data;
+			this.stored = null;
+		}
+
+		Contents(String source, BankStore.Bank stored) {
+			this.source = source;
+			this.data = stored.getData();
+			this.stored = stored;
+		}
+
+		boolean isDirty() {
+			return source == null;
+		}
+	}
+
+	/**
+	 * Creates the memory of a tag
+	 * 
+	 * @param tag
+	 *            the tag
+	 */
+	public TagMemory(RequestCreateTagType tag) {
+		this(tag, null);
+	}
+
+	/**
+	 * Creates the memory of a tag sharing its contents through a store
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param store
+	 *            the store of the bank contents or null if the contents are
+	 *            not shared
+	 */
+	public TagMemory(RequestCreateTagType tag, BankStore store) {
+		this.tag = tag;
+		this.store = store;
+	}
+
+	/**
+	 * @return the tag
+	 */
+	public RequestCreateTagType getTag() {
+		return tag;
+	}
+
+	/**
+	 * Returns the contents of a memory bank
+	 * 
+	 * @param bank
+	 *            the bank index, see {@link RFUtils#BANK_PSW} etc.
+	 * @return the contents, which must not be modified, or null if the tag
+	 *         does not have the bank or the bank does not contain any data
+	 */
+	public byte[] getBank(short bank) {
+		if (bank < 0 || bank >= BANK_COUNT)
+			return null;
+		Contents contents = banks.get(bank);
+		if (contents != null && contents.isDirty())
+			return contents.data;
+
+		String source = getData(tag, toBankName(bank));
+		if (source == null)
+			return null;
+
+		if (contents == null || source != contents.source) {
+			Contents decoded = isShared(bank) ? new Contents(source, store.intern(source))
+					: new Contents(source, RFUtils.hexToBytes(source));
+			/* contents written in the meantime are kept */
+			banks.compareAndSet(bank, contents, decoded);
+			return decoded.data;
+		}
+		return contents.data;
+	}
+
+	private boolean isShared(short bank) {
+		return store != null && store.isShared(toBankName(bank));
+	}
+
+	/**
+	 * Reads words from a memory bank
+	 * 
+	 * @param bank
+	 *            the bank index
+	 * @param offset
+	 *            the word offset
+	 * @param length
+	 *            the number of words, 0 to read up to the end of the bank
+	 * @return the data read
+	 * @throws IndexOutOfBoundsException
+	 *             if the words exceed the contents of the bank
+	 */
+	public byte[] read(short bank, int offset, int length) {
+		byte[] data = getBank(bank);
+		if (data == null)
+			data = new byte[0];
+
+		int from = offset * 2;
+		int to = length > 0 ? (offset + length) * 2 : data.length;
+		if (from < 0 || from > to || to > data.length)
+			throw new IndexOutOfBoundsException("Words " + offset + " to " + to / 2 + " exceed bank of " + data.length
+					/ 2 + " words");
+
+		byte[] result = new byte[to - from];
+		System.arraycopy(data, from, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Writes words to a memory bank. If the bank does not contain any data
+	 * yet, it is created with the words before the offset set to 0. Otherwise
+	 * the data must fit into the current contents of the bank.
+	 * 
+	 * @param bank
+	 *            the bank index
+	 * @param offset
+	 *            the word offset
+	 * @param data
+	 *            the data to write
+	 * @return true if the data has been written, false if it exceeds the
+	 *         contents of the bank
+	 */
+	public boolean write(short bank, int offset, byte[] data) {
+		byte[] current = getBank(bank);
+		int from = offset * 2;
+		if (current == null) {
+			current = new byte[from + data.length];
+		} else if (from + data.length > current.length) {
+			return false;
+		} else {
+			/* copy on write, the contents may be shared */
+			current = current.clone();
+		}
+
+		System.arraycopy(data, 0, current, from, data.length);
+		banks.set(bank, isShared(bank) ? new Contents(null, store.intern(current)) : new Contents(null, current));
+		return true;
+	}
+
+	/**
+	 * @return the kill password stored in the first two words of the password
+	 *         bank, 0 if it is not available
+	 */
+	public int getKillPassword() {
+		return getPassword(0);
+	}
+
+	/**
+	 * @return the access password stored in the third and fourth word of the
+	 *         password bank, 0 if it is not available
+	 */
+	public int getAccessPassword() {
+		return getPassword(4);
+	}
+
+	private int getPassword(int offset) {
+		byte[] data;
+		try {
+			data = getBank(RFUtils.BANK_PSW);
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
+		if (data == null || data.length < offset + 4)
+			return 0;
+		return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8
+				| (data[offset + 3] & 0xff);
+	}
+
+	/**
+	 * Writes the changed banks back to the hex data of the tag
+	 * 
+	 * @return true if any bank has been changed
+	 */
+	public boolean flush() {
+		boolean changed = false;
+		for (short bank = 0; bank < BANK_COUNT; bank++) {
+			Contents contents = banks.get(bank);
+			if (contents == null || !contents.isDirty())
+				continue;
+
+			MemoryBankType memBank = getMemoryBank(tag, toBankName(bank));
+			if (memBank.getData() == null) {
+				memBank.setData(new DataType());
+				memBank.getData().setFormat(FieldFormatEnumeration.HEX);
+			}
+			String source = contents.stored != null ? contents.stored.getHex() : toHex(contents.data);
+			memBank.getData().setValue(source);
+			banks.set(bank, contents.stored != null ? new Contents(source, contents.stored)
+					: new Contents(source, contents.data));
+			changed = true;
+		}
+		return changed;
+	}
+
+	private static String getData(RequestCreateTagType tag, MemoryBankNameEnumeration name) {
+		if (tag.getMemoryBanks() == null)
+			return null;
+		List<MemoryBankType> memBanks = tag.getMemoryBanks().getMemoryBank();
+		for (int i = 0; i < memBanks.size(); i++) {
+			MemoryBankType memBank = memBanks.get(i);
+			if (memBank.getName() == name)
+				return memBank.getData() == null ? null : memBank.getData().getValue();
+		}
+		return null;
+	}
+
+	private static MemoryBankType getMemoryBank(RequestCreateTagType tag, MemoryBankNameEnumeration name) {
+		if (tag.getMemoryBanks() == null)
+			tag.setMemoryBanks(new MemoryBanksType());
+		for (MemoryBankType memBank : tag.getMemoryBanks().getMemoryBank())
+			if (memBank.getName() == name)
+				return memBank;
+
+		MemoryBankType memBank = new MemoryBankType();
+		memBank.setName(name);
+		tag.getMemoryBanks().getMemoryBank().add(memBank);
+		return memBank;
+	}
+
+	/**
+	 * Converts data to the lower case hex form used by the hardware
+	 * management
+	 * 
+	 * @param data
+	 *            the data
+	 * @return the hex string
+	 */
+	static String toHex(byte[] data) {
+		char[] chars = new char[data.length * 2];
+		for (int i = 0; i < data.length; i++) {
+			chars[i * 2] = HEX[(data[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX[data[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Maps a bank index to the name of the memory bank
+	 * 
+	 * @param bank
+	 *            the bank index
+	 * @return the name or null if the index is invalid
+	 */
+	static MemoryBankNameEnumeration toBankName(short bank) {
+		switch (bank) {
+		case RFUtils.BANK_EPC:
+			return MemoryBankNameEnumeration.EPC_BANK;
+		case RFUtils.BANK_TID:
+			return MemoryBankNameEnumeration.TID_BANK;
+		case RFUtils.BANK_PSW:
+			return MemoryBankNameEnumeration.PWD_BANK;
+		case RFUtils.BANK_USR:
+			return MemoryBankNameEnumeration.USER_BANK;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package havis.device.test.rf;
+
+/**
+ * Observation of a tag by an antenna during a continuous inventory. Instances
+ * are filled by {@link ObservationRingBuffer.Cursor#poll(TagObservation)} and
+ * can be reused for each observation.
+ */
+public class TagObservation {
+
+	private long sequence;
+	private String tagId;
+	private short antennaId;
+	private int rssi;
+	private long timestamp;
+
+	void set(long sequence, String tagId, short antennaId, int rssi, long timestamp) {
+		this.sequence = sequence;
+		this.tagId = tagId;
+		this.antennaId = antennaId;
+		this.rssi = rssi;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return the sequence number of the observation within the ring buffer
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getTagId() {
+		return tagId;
+	}
+
+	public short getAntennaId() {
+		return antennaId;
+	}
+
+	public int getRssi() {
+		return rssi;
+	}
+
+	/**
+	 * @return the time of the inventory round in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return "TagObservation [sequence=" + sequence + ", tagId=" + tagId + ", antennaId=" + antennaId + ", rssi="
+				+ rssi + ", timestamp=" + timestamp + "]";
+	}
+}
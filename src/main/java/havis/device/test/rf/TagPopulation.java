@@ -0,0 +1,247 @@
+package havis.device.test.rf;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.MemoryBankType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Snapshot of the tag population together with the indexes built for it. The
+ * indexes and the memory of the tags are built on first use and may be
+ * accessed concurrently.
+ * 
+ * The bank contents of a snapshot are shared through a {@link BankStore} if
+ * {@link StubEnvironment#BANK_STORE_ENABLED} is set, i.e. the hex data of the
+ * tags is replaced by the stored instance and the memory of the tags refers to
+ * the stored binary contents.
+ * 
+ * A population backed by a {@link TagSource} is not a snapshot, but reflects
+ * the tags committed to the source. Its tags and their memory are not kept,
+ * but obtained from the source on each access.
+ */
+public class TagPopulation {
+
+	private final TagSource source;
+	private final List<RequestCreateTagType> tags;
+	private final AtomicReferenceArray<TagMemory> memories;
+	private final BankStore store;
+	private Map<String, Integer> positions;
+	private volatile AntennaIndex antennaIndex;
+	private volatile EpcIndex epcIndex;
+
+	/**
+	 * Creates a new population
+	 * 
+	 * @param tags
+	 *            the tags, which are copied
+	 */
+	public TagPopulation(List<RequestCreateTagType> tags) {
+		this(tags, StubEnvironment.BANK_STORE_ENABLED ? new BankStore() : null);
+	}
+
+	/**
+	 * Creates a new population sharing the bank contents through a store
+	 * 
+	 * @param tags
+	 *            the tags, which are copied
+	 * @param store
+	 *            the store of the bank contents or null if the contents are
+	 *            not shared
+	 */
+	public TagPopulation(List<RequestCreateTagType> tags, BankStore store) {
+		this(Collections.unmodifiableList(new ArrayList<>(tags)), null, null, store);
+		if (store != null)
+			for (RequestCreateTagType tag : tags)
+				intern(tag, store);
+	}
+
+	/**
+	 * Creates a new population backed by a tag source
+	 * 
+	 * @param source
+	 *            the tag source
+	 */
+	public TagPopulation(TagSource source) {
+		this.source = source;
+		this.tags = new SourceList(source);
+		this.memories = null;
+		this.store = null;
+	}
+
+	private TagPopulation(List<RequestCreateTagType> tags, AntennaIndex antennaIndex, EpcIndex epcIndex,
+			BankStore store) {
+		this.source = null;
+		this.tags = tags;
+		this.memories = new AtomicReferenceArray<>(tags.size());
+		this.antennaIndex = antennaIndex;
+		this.epcIndex = epcIndex;
+		this.store = store;
+	}
+
+	/* the hex data of each shared bank refers to the stored instance */
+	private static void intern(RequestCreateTagType tag, BankStore store) {
+		if (tag.getMemoryBanks() == null)
+			return;
+		for (MemoryBankType bank : tag.getMemoryBanks().getMemoryBank()) {
+			if (!store.isShared(bank.getName()) || bank.getData() == null || bank.getData().getValue() == null)
+				continue;
+			try {
+				bank.getData().setValue(store.intern(bank.getData().getValue()).getHex());
+			} catch (IllegalArgumentException e) {
+				/* invalid data is kept and fails when the bank is accessed */
+			}
+		}
+	}
+
+	private static class SourceList extends AbstractList<RequestCreateTagType> implements RandomAccess {
+		private final TagSource source;
+
+		SourceList(TagSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public RequestCreateTagType get(int index) {
+			return source.getTag(index);
+		}
+
+		@Override
+		public int size() {
+			return source.size();
+		}
+	}
+
+	/**
+	 * @return the tag source backing the population or null if the
+	 *         population is a snapshot of the tags of the hardware management
+	 */
+	public TagSource getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the tags, which must not be modified
+	 */
+	public List<RequestCreateTagType> getTags() {
+		return tags;
+	}
+
+	public int size() {
+		return tags.size();
+	}
+
+	/**
+	 * @return the store the bank contents are shared through or null if the
+	 *         contents are not shared
+	 */
+	public BankStore getBankStore() {
+		return store;
+	}
+
+	/**
+	 * @return the antenna index of the population
+	 */
+	public AntennaIndex getAntennaIndex() {
+		AntennaIndex index = antennaIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = antennaIndex;
+				if (index == null)
+					antennaIndex = index = new AntennaIndex(tags);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return the EPC index of the population
+	 */
+	public EpcIndex getEpcIndex() {
+		EpcIndex index = epcIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = epcIndex;
+				if (index == null)
+					epcIndex = index = new EpcIndex(this);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @param position
+	 *            the position of a tag
+	 * @return the binary memory of the tag
+	 */
+	public TagMemory getMemory(int position) {
+		if (memories == null)
+			return new TagMemory(tags.get(position));
+		TagMemory memory = memories.get(position);
+		if (memory == null) {
+			/* another thread may have created the memory in the meantime */
+			memories.compareAndSet(position, null, new TagMemory(tags.get(position), store));
+			memory = memories.get(position);
+		}
+		return memory;
+	}
+
+	/**
+	 * @param tagId
+	 *            the tag ID
+	 * @return the position of the tag within the population or -1 if the tag
+	 *         is unknown
+	 */
+	public synchronized int indexOf(String tagId) {
+		if (source != null)
+			return source.indexOf(tagId);
+		if (positions == null) {
+			positions = new HashMap<>();
+			for (int i = 0; i < tags.size(); i++)
+				positions.put(tags.get(i).getTagId(), i);
+		}
+		Integer position = positions.get(tagId);
+		return position == null ? -1 : position;
+	}
+
+	/**
+	 * Applies a changed tag to the population and its indexes
+	 * 
+	 * @param position
+	 *            the position of the tag
+	 * @param tag
+	 *            the changed tag
+	 * @return this population if the tag instance is part of it or the
+	 *         population is backed by a tag source, to which the tag has been
+	 *         committed already, a new population with the tag replaced
+	 *         otherwise
+	 */
+	synchronized TagPopulation update(int position, RequestCreateTagType tag) {
+		TagPopulation population = this;
+		if (source == null && tags.get(position) != tag) {
+			List<RequestCreateTagType> newTags = new ArrayList<>(tags);
+			newTags.set(position, tag);
+			population = new TagPopulation(Collections.unmodifiableList(newTags), antennaIndex, epcIndex, store);
+			population.positions = positions;
+			for (int i = 0; i < memories.length(); i++)
+				if (i != position)
+					population.memories.set(i, memories.get(i));
+		}
+
+		/* the tag may have been refreshed from the hardware management */
+		if (source == null && store != null)
+			intern(tag, store);
+		if (antennaIndex != null)
+			antennaIndex.update(position, tag);
+		if (epcIndex != null)
+			epcIndex.update(position, population.getMemory(position).getBank(RFUtils.BANK_EPC));
+		return population;
+	}
+}
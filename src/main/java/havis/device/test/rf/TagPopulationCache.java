@@ -0,0 +1,244 @@
+package havis.device.test.rf;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Cache of the tag population read from the hardware management. The
+ * population is kept across inventory rounds until it is invalidated or has
+ * exceeded its maximum age. Tags committed through the {@link StubHardwareApi}
+ * are applied to the cached population directly, so committing does not
+ * require the population to be read again.
+ *
+ * The cached population is versioned by the commits of the tags to the
+ * hardware management, which are counted for all hardware APIs using it, i.e.
+ * the version is the last commit reflected by the population. Before the population is reused, the tags committed by other
+ * hardware APIs since are refreshed, see
+ * {@link #refresh(RequestCreateTagType)}. Changes made to the hardware
+ * management by other means are picked up when the population has exceeded
+ * its maximum age. The indexes of the cached population are updated
+ * incrementally.
+ */
+public class TagPopulationCache {
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private long maxAge;
+	private long version;
+	private long loadTime;
+	private TagPopulation population;
+
+	/**
+	 * Creates a new cache
+	 *
+	 * @param maxAge
+	 *            the maximum age of the cached population in milliseconds, 0
+	 *            if the population does not expire
+	 */
+	public TagPopulationCache(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * @return the cached population or null if the population has not been
+	 *         cached yet, has been invalidated or has expired
+	 */
+	public synchronized TagPopulation get() {
+		if (isCached()) {
+			hits.incrementAndGet();
+			return population;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Unlike {@link #get()}, this neither counts as a hit nor as a miss.
+	 *
+	 * @return whether a population is cached, which has not expired
+	 */
+	public synchronized boolean isCached() {
+		return population != null && (maxAge <= 0 || System.currentTimeMillis() - loadTime < maxAge);
+	}
+
+	/**
+	 * Replaces the cached population, which does not reflect any commit
+	 *
+	 * @param tags
+	 *            the population read from the hardware management
+	 * @return the cached population
+	 */
+	public TagPopulation put(List<RequestCreateTagType> tags) {
+		return put(tags, 0);
+	}
+
+	/**
+	 * Replaces the cached population
+	 *
+	 * @param tags
+	 *            the population read from the hardware management
+	 * @param version
+	 *            the version of the last commit before the population has
+	 *            been read
+	 * @return the cached population
+	 */
+	public synchronized TagPopulation put(List<RequestCreateTagType> tags, long version) {
+		this.population = new TagPopulation(tags);
+		this.loadTime = System.currentTimeMillis();
+		this.version = version;
+		return population;
+	}
+
+	/**
+	 * Applies a committed tag to the cached population. If the tag is unknown
+	 * to the cached population, the population is invalidated.
+	 *
+	 * @param tag
+	 *            the committed tag
+	 */
+	public void update(RequestCreateTagType tag) {
+		update(tag, 0);
+	}
+
+	/**
+	 * Applies a committed tag to the cached population like
+	 * {@link #update(RequestCreateTagType)}. The version of the population is
+	 * set to the version of the commit if there has not been any other commit
+	 * in between.
+	 *
+	 * @param tag
+	 *            the committed tag
+	 * @param version
+	 *            the version of the commit
+	 */
+	public synchronized void update(RequestCreateTagType tag, long version) {
+		if (population == null)
+			return;
+
+		int position = population.indexOf(tag.getTagId());
+		if (position < 0) {
+			invalidate();
+			return;
+		}
+
+		population = population.update(position, tag);
+		if (version == this.version + 1)
+			this.version = version;
+	}
+
+	/**
+	 * Applies a tag committed by another hardware API to the cached
+	 * population. The state of the tag is copied to the cached instance, so
+	 * the instances reported by previous inventory rounds reflect the change.
+	 * If the tag is unknown to the cached population, the population is
+	 * invalidated.
+	 *
+	 * @param tag
+	 *            the tag as read from the hardware management
+	 * @return true if the tag has been applied
+	 */
+	public synchronized boolean refresh(RequestCreateTagType tag) {
+		if (population == null)
+			return false;
+
+		int position = population.indexOf(tag.getTagId());
+		if (position < 0) {
+			invalidate();
+			return false;
+		}
+
+		RequestCreateTagType cached = population.getTags().get(position);
+		if (cached != tag)
+			copy(tag, cached);
+		population = population.update(position, cached);
+		return true;
+	}
+
+	/**
+	 * Copies the state of a tag to another instance of the same tag
+	 *
+	 * @param from
+	 *            the tag to copy from
+	 * @param to
+	 *            the tag to copy to
+	 */
+	static void copy(RequestCreateTagType from, RequestCreateTagType to) {
+		to.setAntennas(from.getAntennas());
+		to.setMemoryBanks(from.getMemoryBanks());
+		to.setLocks(from.getLocks());
+		to.setKilled(from.isKilled());
+	}
+
+	/**
+	 * Returns the memory of a tag of the cached population. Unlike
+	 * {@link #get()}, this neither counts as a hit nor as a miss.
+	 *
+	 * @param tag
+	 *            the tag
+	 * @return the memory or null if the tag instance is not part of the
+	 *         cached population
+	 */
+	public synchronized TagMemory getMemory(RequestCreateTagType tag) {
+		if (population == null)
+			return null;
+		int position = population.indexOf(tag.getTagId());
+		if (position < 0 || population.getTags().get(position) != tag)
+			return null;
+		return population.getMemory(position);
+	}
+
+	/**
+	 * Invalidates the cached population, i.e. the next call of {@link #get()}
+	 * will return null.
+	 */
+	public synchronized void invalidate() {
+		population = null;
+	}
+
+	/**
+	 * @return the version of the last commit reflected by the cached
+	 *         population
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version of the last commit reflected by the cached population,
+	 * after the tags committed by other hardware APIs since the current
+	 * version have been refreshed
+	 *
+	 * @param version
+	 *            the version
+	 */
+	public synchronized void setVersion(long version) {
+		if (population != null && version > this.version)
+			this.version = version;
+	}
+
+	public synchronized long getMaxAge() {
+		return maxAge;
+	}
+
+	public synchronized void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * @return the number of requests served from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of requests that required the population to be read
+	 *         from the hardware management
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,82 @@
+package havis.device.test.rf;
+
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Source of the tag population used by the {@link StubHardwareApi} instead of
+ * the tags of the hardware management. Tags are addressed by their position
+ * within the source and may be created on each access, so a source does not
+ * have to keep all tags in memory. Tags changed by tag operations are
+ * committed to the source instead of the hardware management.
+ */
+public interface TagSource {
+
+	/**
+	 * @return the number of tags
+	 */
+	int size();
+
+	/**
+	 * Returns a tag. A tag which has not been committed yet may be created on
+	 * each call, so changes to the returned instance are only kept once the
+	 * instance has been committed by {@link #update(Collection)}.
+	 * 
+	 * @param position
+	 *            the position of the tag
+	 * @return the tag
+	 */
+	RequestCreateTagType getTag(int position);
+
+	/**
+	 * @param tagId
+	 *            the tag ID
+	 * @return the position of the tag or -1 if the tag is unknown
+	 */
+	int indexOf(String tagId);
+
+	/**
+	 * Commits changed tags. Tags may be committed by several threads
+	 * concurrently.
+	 * 
+	 * @param tags
+	 *            the changed tags
+	 * @throws IllegalArgumentException
+	 *             if a tag is not part of the source
+	 */
+	void update(Collection<RequestCreateTagType> tags);
+
+	/**
+	 * Creates a tag source by name. Supported names are <b>hardwareMgmt</b>,
+	 * for which no source is created, <b>synthetic</b> and <b>mapped</b> as
+	 * well as the fully qualified name of a class implementing this interface
+	 * with a public default constructor. Unknown names and sources which
+	 * cannot be created result in no source.
+	 * 
+	 * @param name
+	 *            the name of the source
+	 * @return the tag source or null if the tags are read from the hardware
+	 *         management
+	 */
+	static TagSource forName(String name) {
+		try {
+			switch (name) {
+			case "hardwareMgmt":
+				return null;
+			case SyntheticTagSource.NAME:
+				return new SyntheticTagSource();
+			case MappedTagSource.NAME:
+				return MappedTagSource.fromEnvironment();
+			default:
+				return Class.forName(name).asSubclass(TagSource.class).newInstance();
+			}
+		} catch (Exception e) {
+			Logger.getLogger(TagSource.class.getName()).log(Level.WARNING,
+					"Failed to create tag source '" + name + "', using hardware management.", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package havis.device.test.rf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tag sources shared by the hardware APIs. A source configured by name is
+ * created once, so the tags committed to it are kept across connections and
+ * seen by all hardware managers. The population of a source and its indexes
+ * are shared by all APIs using the source as well. The sources are closed
+ * when the bundle is stopped.
+ */
+public class TagSources {
+
+	private static final Logger logger = Logger.getLogger(TagSources.class.getName());
+
+	private static final Map<String, TagSource> sources = new HashMap<>();
+	private static final Map<TagSource, WeakReference<TagPopulation>> populations = new WeakHashMap<>();
+
+	/**
+	 * Returns the source configured by name, see
+	 * {@link TagSource#forName(String)}. The source is created on the first
+	 * call for the name.
+	 * 
+	 * @param name
+	 *            the name of the source
+	 * @return the tag source or null if the tags are read from the hardware
+	 *         management
+	 */
+	static synchronized TagSource get(String name) {
+		/* the mapped store is configured by its file as well */
+		String key = MappedTagSource.NAME.equals(name) ? name + ':' + StubEnvironment.MAPPED_FILE : name;
+		TagSource source = sources.get(key);
+		if (source == null) {
+			/* sources failed to be created are tried again by the next call */
+			source = TagSource.forName(name);
+			if (source != null)
+				sources.put(key, source);
+		}
+		return source;
+	}
+
+	/**
+	 * Closes the sources which need to be closed, like the mapped store, and
+	 * releases all sources. Sources requested afterwards are created again.
+	 */
+	public static synchronized void close() {
+		for (TagSource source : sources.values())
+			if (source instanceof Closeable)
+				try {
+					((Closeable) source).close();
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Failed to close tag source " + source + ".", e);
+				}
+		sources.clear();
+		populations.clear();
+	}
+
+	/**
+	 * @param source
+	 *            the tag source
+	 * @return the population of the source shared by the hardware APIs, which
+	 *         is kept as long as it is used
+	 */
+	static synchronized TagPopulation getPopulation(TagSource source) {
+		WeakReference<TagPopulation> reference = populations.get(source);
+		TagPopulation population = reference == null ? null : reference.get();
+		if (population == null)
+			populations.put(source, new WeakReference<>(population = new TagPopulation(source)));
+		return population;
+	}
+}
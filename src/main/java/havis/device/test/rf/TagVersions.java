@@ -0,0 +1,192 @@
+package havis.device.test.rf;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import havis.device.test.hardware.HardwareMgmt;
+
+/**
+ * Versions of the tags committed to a hardware management. The versions are
+ * shared by all hardware APIs using the same hardware management, so an API
+ * can detect that tags it has read have been committed by another API since.
+ * Each commit of a tag increments the version. The most recent commits are
+ * kept to determine the tags changed since a version, older commits are only
+ * known by the last commit of each tag. The last commit of a tag is dropped
+ * once all hardware APIs have read the tags since, as none of them holds a
+ * tag read before the commit any more.
+ * 
+ * The hardware APIs are identified by an origin ID and only weakly referenced
+ * as readers, so the versions do not keep the hardware management alive.
+ * 
+ * Changes made to the hardware management by other means are not recorded.
+ */
+class TagVersions {
+
+	private static final Map<HardwareMgmt, TagVersions> instances = new WeakHashMap<>();
+	private static final AtomicLong origins = new AtomicLong();
+
+	/**
+	 * Commit of a tag
+	 */
+	static final class Commit {
+		final long version;
+		final String tagId;
+		final long origin;
+
+		Commit(long version, String tagId, long origin) {
+			this.version = version;
+			this.tagId = tagId;
+			this.origin = origin;
+		}
+	}
+
+	private final int capacity;
+	private final ArrayDeque<Commit> commits = new ArrayDeque<>();
+	private final Map<String, Commit> tags = new HashMap<>();
+	/* the versions up to which the readers have read the tags */
+	private final Map<Object, Long> readers = new WeakHashMap<>();
+	private long version;
+	private int pruneSize;
+
+	/**
+	 * Creates the versions
+	 * 
+	 * @param capacity
+	 *            the number of recent commits kept
+	 */
+	TagVersions(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.pruneSize = this.capacity;
+	}
+
+	/**
+	 * @return a new origin ID identifying a hardware API
+	 */
+	static long newOrigin() {
+		return origins.incrementAndGet();
+	}
+
+	/**
+	 * @param manager
+	 *            the hardware management
+	 * @return the versions shared by the hardware APIs using the hardware
+	 *         management
+	 */
+	static TagVersions get(HardwareMgmt manager) {
+		synchronized (instances) {
+			TagVersions versions = instances.get(manager);
+			if (versions == null)
+				instances.put(manager, versions = new TagVersions(4096));
+			return versions;
+		}
+	}
+
+	/**
+	 * @return the version of the last commit, 0 if no tag has been committed
+	 */
+	synchronized long current() {
+		return version;
+	}
+
+	/**
+	 * Records the commit of a tag
+	 * 
+	 * @param tagId
+	 *            the ID of the tag
+	 * @param origin
+	 *            the origin ID of the hardware API which has committed the tag
+	 * @return the version of the commit
+	 */
+	synchronized long commit(String tagId, long origin) {
+		Commit commit = new Commit(++version, tagId, origin);
+		tags.put(tagId, commit);
+		commits.addLast(commit);
+		if (commits.size() > capacity)
+			commits.removeFirst();
+		if (tags.size() > pruneSize)
+			prune();
+		return version;
+	}
+
+	/**
+	 * Records that a reader has read the tags, so the tags it holds reflect
+	 * the commits up to a version
+	 * 
+	 * @param reader
+	 *            the reader, which is weakly referenced
+	 * @param version
+	 *            the version
+	 */
+	synchronized void read(Object reader, long version) {
+		readers.put(reader, version);
+	}
+
+	/**
+	 * Removes a reader, which does not hold any tags any more
+	 * 
+	 * @param reader
+	 *            the reader
+	 */
+	synchronized void release(Object reader) {
+		readers.remove(reader);
+	}
+
+	/*
+	 * drops the last commits of the tags read by all readers since, the
+	 * commits of the recent log are kept for tags read before by operations
+	 * still in progress
+	 */
+	private void prune() {
+		long oldest = version - commits.size();
+		for (long read : readers.values())
+			oldest = Math.min(oldest, read);
+		for (Iterator<Commit> it = tags.values().iterator(); it.hasNext();)
+			if (it.next().version <= oldest)
+				it.remove();
+		/* a reader which does not read again only delays the next attempt */
+		pruneSize = Math.max(capacity, tags.size() * 2);
+	}
+
+	/**
+	 * @param tagId
+	 *            the ID of the tag
+	 * @return the last commit of the tag or null if the tag has not been
+	 *         committed yet
+	 */
+	synchronized Commit get(String tagId) {
+		return tags.get(tagId);
+	}
+
+	/**
+	 * Returns the tags committed by other hardware APIs since a version
+	 * 
+	 * @param since
+	 *            the version
+	 * @param origin
+	 *            the origin ID of the hardware API whose commits are ignored
+	 * @return the IDs of the tags or null if the commits since the version are
+	 *         not known any more
+	 */
+	synchronized Set<String> getChanged(long since, long origin) {
+		if (since >= version)
+			return Collections.emptySet();
+		if (version - since > commits.size())
+			return null;
+		Set<String> changed = new HashSet<>();
+		for (Iterator<Commit> it = commits.descendingIterator(); it.hasNext();) {
+			Commit commit = it.next();
+			if (commit.version <= since)
+				break;
+			if (commit.origin != origin)
+				changed.add(commit.tagId);
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,15 @@
+package havis.device.test.rf;
+
+/**
+ * Timing model without any delay, i.e. inventory rounds complete as fast as
+ * possible
+ */
+public class ZeroDelayTimingModel implements InventoryTimingModel {
+
+	static final String NAME = "zero";
+
+	@Override
+	public long getRoundDuration(int antennaCount, int tagCount) {
+		return 0;
+	}
+}
@@ -14,6 +14,8 @@ import havis.device.rf.RFDevice;
 import havis.device.rf.common.CommunicationHandler;
 import havis.device.test.hardware.HardwareMgmt;
 import havis.device.test.rf.StubHardwareManager;
+import havis.device.test.rf.StubManagement;
+import havis.device.test.rf.TagSources;
 
 /**
  * <p>
@@ -33,6 +35,12 @@ import havis.device.test.rf.StubHardwareManager;
  * hardware access.
  * </p>
  * 
+ * <p>
+ * The management bean of the stub is registered with the platform MBean
+ * server while the bundle is started. The tag sources are closed when the
+ * bundle is stopped, so the changes to a mapped store are written.
+ * </p>
+ * 
  */
 
 public class Activator implements BundleActivator {
@@ -75,11 +83,13 @@ public class Activator implements BundleActivator {
 		};
 
 		hwMgmtTracker.open();
+		StubManagement.register();
 	}
 
 	/**
 	 * Is called by the OSGi container once the bundle is stopped. This listener
-	 * method is called to unregister an service instances.
+	 * method is called to unregister an service instances and to close the
+	 * tag sources.
 	 * 
 	 * @param bundleContext
 	 *            the BundleContext instance.
@@ -88,6 +98,8 @@ public class Activator implements BundleActivator {
 	public void stop(BundleContext bundleContext) throws Exception {
 		unregisterService();
 		hwMgmtTracker.close();
+		StubManagement.unregister();
+		TagSources.close();
 	}
 
 	protected void registerService(BundleContext bundleContext) {
@@ -0,0 +1,21 @@
+package havis.device.test.rf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("havis.device.test.rf.HardwareMgmtProcess")
+@Label("Hardware Management Process")
+@Description("Call of the hardware management by the RF stub")
+@Category({ "Havis", "RF Stub" })
+class HardwareMgmtEvent extends jdk.jfr.Event {
+
+	@Label("Requests")
+	@Description("Types of the requests")
+	String requests;
+
+	@Label("Tags")
+	@Description("Tags sent or received")
+	int tags;
+}
@@ -0,0 +1,28 @@
+package havis.device.test.rf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("havis.device.test.rf.InventoryRound")
+@Label("Inventory Round")
+@Description("Inventory round of the RF stub including the delay of the timing model")
+@Category({ "Havis", "RF Stub" })
+@StackTrace(false)
+class InventoryRoundEvent extends jdk.jfr.Event {
+
+	@Label("Antennas")
+	String antennas;
+
+	@Label("Filter Count")
+	int filterCount;
+
+	@Label("Tags Seen")
+	@Description("Tags checked against the filters")
+	int tagsSeen;
+
+	@Label("Tags Returned")
+	int tagsReturned;
+}
@@ -0,0 +1,100 @@
+package havis.device.test.rf;
+
+import java.util.List;
+
+import havis.device.test.hardware.RequestAbstractType;
+import havis.device.test.hardware.RequestType;
+import havis.device.test.hardware.RequestUpdateType;
+import havis.device.test.hardware.ResponseAbstractType;
+import havis.device.test.hardware.ResponseReadType;
+import havis.device.test.hardware.ResponseType;
+import jdk.jfr.EventType;
+
+/**
+ * Events emitted to the Java Flight Recorder, see {@link StubEvents}
+ */
+public class JfrStubEvents implements StubEvents {
+
+	private static final EventType INVENTORY = EventType.getEventType(InventoryRoundEvent.class);
+	private static final EventType OPERATION = EventType.getEventType(TagOperationEvent.class);
+	private static final EventType PROCESS = EventType.getEventType(HardwareMgmtEvent.class);
+
+	@Override
+	public Object beginInventory() {
+		if (!INVENTORY.isEnabled())
+			return null;
+		InventoryRoundEvent event = new InventoryRoundEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitInventory(Object event, AntennaSet antennas, int filterCount, int tagsSeen, int tagsReturned) {
+		InventoryRoundEvent inventory = (InventoryRoundEvent) event;
+		inventory.end();
+		if (!inventory.shouldCommit())
+			return;
+		inventory.antennas = String.valueOf(antennas);
+		inventory.filterCount = filterCount;
+		inventory.tagsSeen = tagsSeen;
+		inventory.tagsReturned = tagsReturned;
+		inventory.commit();
+	}
+
+	@Override
+	public Object beginOperation() {
+		if (!OPERATION.isEnabled())
+			return null;
+		TagOperationEvent event = new TagOperationEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitOperation(Object event, String type, short bank, int words, Enum<?> result) {
+		TagOperationEvent operation = (TagOperationEvent) event;
+		operation.end();
+		if (!operation.shouldCommit())
+			return;
+		operation.type = type;
+		operation.bank = bank;
+		operation.words = words;
+		operation.result = result == null ? null : result.name();
+		operation.commit();
+	}
+
+	@Override
+	public Object beginProcess() {
+		if (!PROCESS.isEnabled())
+			return null;
+		HardwareMgmtEvent event = new HardwareMgmtEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitProcess(Object event, List<RequestType> requests, List<ResponseType> responses) {
+		HardwareMgmtEvent process = (HardwareMgmtEvent) event;
+		process.end();
+		if (!process.shouldCommit())
+			return;
+		StringBuilder types = new StringBuilder();
+		int tags = 0;
+		for (RequestType request : requests)
+			for (RequestAbstractType choice : request.getChoice()) {
+				if (types.length() > 0)
+					types.append(',');
+				types.append(choice.getClass().getSimpleName());
+				if (choice instanceof RequestUpdateType && ((RequestUpdateType) choice).getTags() != null)
+					tags += ((RequestUpdateType) choice).getTags().getTag().size();
+			}
+		if (responses != null)
+			for (ResponseType response : responses)
+				for (ResponseAbstractType choice : response.getChoice())
+					if (choice instanceof ResponseReadType && ((ResponseReadType) choice).getTags() != null)
+						tags += ((ResponseReadType) choice).getTags().getTag().size();
+		process.requests = types.toString();
+		process.tags = tags;
+		process.commit();
+	}
+}
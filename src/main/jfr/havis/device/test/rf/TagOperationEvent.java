@@ -0,0 +1,25 @@
+package havis.device.test.rf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("havis.device.test.rf.TagOperation")
+@Label("Tag Operation")
+@Category({ "Havis", "RF Stub" })
+@StackTrace(false)
+class TagOperationEvent extends jdk.jfr.Event {
+
+	@Label("Type")
+	String type;
+
+	@Label("Bank")
+	short bank;
+
+	@Label("Words")
+	int words;
+
+	@Label("Result")
+	String result;
+}
@@ -0,0 +1,279 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.createTag;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import mockit.Deencapsulation;
+
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class AntennaIndexTest {
+
+	private static BitSet select(AntennaIndex index, RssiFilter rssiFilter, int... antennas) {
+		List<Short> antennaList = new ArrayList<>();
+		for (int antenna : antennas)
+			antennaList.add((short) antenna);
+		BitSet selected = new BitSet();
+		index.select(antennaList, rssiFilter, selected);
+		return selected;
+	}
+
+	private static BitSet select(AntennaIndex index, RssiFilter rssiFilter, PropagationModel model, int antenna) {
+		BitSet selected = new BitSet();
+		index.select(AntennaSet.of(antenna), rssiFilter, model, selected);
+		return selected;
+	}
+
+	private static BitSet bits(int... positions) {
+		BitSet bits = new BitSet();
+		for (int position : positions)
+			bits.set(position);
+		return bits;
+	}
+
+	@Test
+	public void testBuild() {
+		AntennaIndex index = new AntennaIndex(Arrays.asList(
+				createTag(null, null, 1, -50),
+				createTag(null, null, 1, -30, 2, -70),
+				createTag(null, null, 2, -40),
+				createTag(null, null, 1, -50)));
+
+		assertEquals(3, index.size(1));
+		assertEquals(2, index.size(2));
+		assertEquals(0, index.size(3));
+
+		/* ordered by descending RSSI and ascending position */
+		assertArrayEquals(new int[] { 1, 0, 3 }, index.getPositions(1));
+		assertArrayEquals(new int[] { -30, -50, -50 }, index.getPeakRssi(1));
+		assertArrayEquals(new int[] { 2, 1 }, index.getPositions(2));
+		assertArrayEquals(new int[] { -40, -70 }, index.getPeakRssi(2));
+		assertArrayEquals(new int[0], index.getPositions(3));
+	}
+
+	@Test
+	public void testSelect() {
+		AntennaIndex index = new AntennaIndex(Arrays.asList(
+				createTag(null, null, 1, -50),
+				createTag(null, null, 1, -30, 2, -70),
+				createTag(null, null, 2, -40),
+				createTag(null, null, 3, -10)));
+		RssiFilter rssiFilter = new RssiFilter();
+
+		assertEquals(bits(0, 1), select(index, rssiFilter, 1));
+		assertEquals(bits(1, 2), select(index, rssiFilter, 2));
+		assertEquals(bits(0, 1, 2), select(index, rssiFilter, 1, 2));
+		assertEquals(bits(), select(index, rssiFilter, 4));
+		assertEquals(bits(), select(index, rssiFilter));
+
+		rssiFilter.setMinRssi((short) -40);
+		assertEquals(bits(1), select(index, rssiFilter, 1));
+		assertEquals(bits(2), select(index, rssiFilter, 2));
+
+		rssiFilter.setMinRssi((short) 0);
+		rssiFilter.setMaxRssi((short) -50);
+		assertEquals(bits(0), select(index, rssiFilter, 1));
+		assertEquals(bits(1), select(index, rssiFilter, 2));
+
+		/* either limit is sufficient */
+		rssiFilter.setMinRssi((short) -35);
+		assertEquals(bits(0, 1), select(index, rssiFilter, 1));
+	}
+
+	@Test
+	public void testMatches() {
+		AntennaIndex index = new AntennaIndex(Arrays.asList(
+				createTag(null, null, 1, -50),
+				createTag(null, null, 1, -30, 2, -70),
+				createTag(null, null, 2, -40),
+				createTag(null, null, 3, -10)));
+		RssiFilter rssiFilter = new RssiFilter();
+
+		/* same results as select */
+		List<RssiFilter> rssiFilters = new ArrayList<>();
+		rssiFilters.add(rssiFilter);
+		for (int[] limits : new int[][] { { -40, 0 }, { 0, -50 }, { -35, -50 } }) {
+			RssiFilter filter = new RssiFilter();
+			filter.setMinRssi((short) limits[0]);
+			filter.setMaxRssi((short) limits[1]);
+			rssiFilters.add(filter);
+		}
+		for (RssiFilter filter : rssiFilters)
+			for (int antenna = 1; antenna <= 4; antenna++) {
+				BitSet selected = select(index, filter, antenna);
+				for (int position = 0; position < 4; position++)
+					assertEquals(selected.get(position),
+							index.matches(position, Arrays.asList((short) antenna), filter));
+			}
+
+		assertEquals(true, index.matches(1, Arrays.asList((short) 3, (short) 2), rssiFilter));
+		assertEquals(false, index.matches(1, new ArrayList<Short>(), rssiFilter));
+	}
+
+	@Test
+	public void testPropagation() {
+		AntennaIndex index = new AntennaIndex(Arrays.asList(
+				createTag(null, null, 1, -50),
+				createTag(null, null, 1, -30, 2, -70),
+				createTag(null, null, 2, -40),
+				createTag(null, null, 3, -10)));
+		RssiFilter rssiFilter = new RssiFilter();
+		PropagationModel model = new PropagationModel(30, -20);
+
+		/* not modelled */
+		assertEquals(bits(0, 1), select(index, rssiFilter, model, 1));
+
+		/* forward link limits the range to a peak RSSI of -40 */
+		model.configure((short) 1, (short) 15, null, null);
+		assertEquals(bits(1), select(index, rssiFilter, model, 1));
+		model.configure((short) 1, (short) 20, null, null);
+		assertEquals(bits(0, 1), select(index, rssiFilter, model, 1));
+
+		/* reverse link limits the range to a peak RSSI of -30 */
+		model.configure((short) 2, (short) 30, (short) 30, null);
+		assertEquals(bits(), select(index, rssiFilter, model, 2));
+
+		/* RSSI filter applies to the RSSI at the transmit power */
+		model.configure((short) 1, (short) 15, null, null);
+		rssiFilter.setMinRssi((short) -44);
+		assertEquals(bits(), select(index, rssiFilter, model, 1));
+		rssiFilter.setMinRssi((short) -45);
+		assertEquals(bits(1), select(index, rssiFilter, model, 1));
+		rssiFilter.setMinRssi((short) 0);
+		rssiFilter.setMaxRssi((short) -46);
+		assertEquals(bits(), select(index, rssiFilter, model, 1));
+		rssiFilter.setMaxRssi((short) -45);
+		assertEquals(bits(1), select(index, rssiFilter, model, 1));
+
+		/* same results as select */
+		for (int antenna = 1; antenna <= 3; antenna++) {
+			BitSet selected = select(index, rssiFilter, model, antenna);
+			for (int position = 0; position < 4; position++)
+				assertEquals(selected.get(position),
+						index.matches(position, AntennaSet.of(antenna), rssiFilter, model));
+		}
+	}
+
+	@Test
+	public void testUpdate() {
+		RequestCreateTagType tag = createTag(null, null, 1, -50);
+		AntennaIndex index = new AntennaIndex(Arrays.asList(createTag(null, null, 1, -40), tag, createTag(null, null, 2, -60)));
+
+		/* unchanged */
+		index.update(1, tag);
+		assertArrayEquals(new int[] { 0, 1 }, index.getPositions(1));
+
+		/* RSSI changed */
+		tag.getAntennas().getAntenna().get(0).setPeakRSSI(-30);
+		index.update(1, tag);
+		assertArrayEquals(new int[] { 1, 0 }, index.getPositions(1));
+		assertArrayEquals(new int[] { -30, -40 }, index.getPeakRssi(1));
+
+		/* antenna changed */
+		tag.getAntennas().getAntenna().get(0).setAntennaId(2);
+		index.update(1, tag);
+		assertArrayEquals(new int[] { 0 }, index.getPositions(1));
+		assertArrayEquals(new int[] { 1, 2 }, index.getPositions(2));
+		assertArrayEquals(new int[] { -30, -60 }, index.getPeakRssi(2));
+
+		/* antenna removed */
+		tag.getAntennas().getAntenna().clear();
+		index.update(1, tag);
+		assertArrayEquals(new int[] { 2 }, index.getPositions(2));
+		assertEquals(bits(0, 2), select(index, new RssiFilter(), 1, 2));
+	}
+
+	@Test
+	public void testKilled() {
+		RequestCreateTagType killed = createTag(null, null, 1, -50);
+		killed.setKilled(Boolean.TRUE);
+		RequestCreateTagType tag = createTag(null, null, 1, -40, 2, -60);
+		AntennaIndex index = new AntennaIndex(Arrays.asList(killed, tag, createTag(null, null, 2, -30)));
+
+		/* killed tags are kept as tombstones only */
+		assertEquals(bits(0), index.getKilled());
+		assertEquals(1, index.getKilledCount());
+		assertArrayEquals(new int[] { 1 }, index.getPositions(1));
+		assertEquals(bits(1, 2), select(index, new RssiFilter(), 1, 2));
+		assertFalse(index.matches(0, AntennaSet.of(1), new RssiFilter(), null));
+
+		/* killed */
+		tag.setKilled(Boolean.TRUE);
+		index.update(1, tag);
+		assertEquals(bits(0, 1), index.getKilled());
+		assertEquals(0, index.size(1));
+		assertArrayEquals(new int[] { 2 }, index.getPositions(2));
+		assertEquals(bits(2), select(index, new RssiFilter(), 1, 2));
+
+		/* revived */
+		killed.setKilled(Boolean.FALSE);
+		index.update(0, killed);
+		tag.setKilled(null);
+		index.update(1, tag);
+		assertTrue(index.getKilled().isEmpty());
+		assertFalse(index.isKilled(1));
+		assertArrayEquals(new int[] { 1, 0 }, index.getPositions(1));
+		assertArrayEquals(new int[] { 2, 1 }, index.getPositions(2));
+		assertTrue(index.matches(0, AntennaSet.of(1), new RssiFilter(), null));
+	}
+
+	@Test
+	public void testKilledWithoutRebuild() {
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		for (int i = 0; i < 64; i++)
+			tags.add(createTag(null, null, 1, -30 - i));
+		AntennaIndex index = new AntennaIndex(tags);
+		Object entries = Deencapsulation.getField(index, "entries");
+
+		/* killed tags are skipped, but the arrays are kept */
+		BitSet expected = new BitSet();
+		expected.set(0, 64);
+		for (int i = 0; i < 7; i++) {
+			tags.get(i * 8).setKilled(Boolean.TRUE);
+			index.update(i * 8, tags.get(i * 8));
+			expected.clear(i * 8);
+		}
+		assertEquals(expected, select(index, new RssiFilter(), 1));
+		assertEquals(57, index.size(1));
+		assertEquals(7, index.getKilledCount());
+		assertTrue(entries == Deencapsulation.getField(index, "entries"));
+
+		/* revived tags are selected again without rebuild */
+		tags.get(0).setKilled(null);
+		index.update(0, tags.get(0));
+		expected.set(0);
+		assertEquals(expected, select(index, new RssiFilter(), 1));
+		assertTrue(entries == Deencapsulation.getField(index, "entries"));
+
+		/* the killed tags are removed once they make up an eighth */
+		for (int i = 1; i < 3; i++) {
+			tags.get(i).setKilled(Boolean.TRUE);
+			index.update(i, tags.get(i));
+			expected.clear(i);
+		}
+		assertEquals(expected, select(index, new RssiFilter(), 1));
+		assertFalse(entries == Deencapsulation.getField(index, "entries"));
+		entries = Deencapsulation.getField(index, "entries");
+		assertEquals(56, index.getPositions(1).length);
+
+		/* a revived tag removed from the arrays is added by the next rebuild */
+		tags.get(8).setKilled(Boolean.FALSE);
+		index.update(8, tags.get(8));
+		assertTrue(index.matches(8, AntennaSet.of(1), new RssiFilter(), null));
+		expected.set(8);
+		assertEquals(expected, select(index, new RssiFilter(), 1));
+		assertFalse(entries == Deencapsulation.getField(index, "entries"));
+		assertArrayEquals(new int[] { 0, 3, 4, 5, 6, 7, 8, 9 }, Arrays.copyOf(index.getPositions(1), 8));
+	}
+}
@@ -0,0 +1,86 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class AntennaSetTest {
+
+	@Test
+	public void testOf() {
+		AntennaSet set = AntennaSet.of(Arrays.asList((short) 99, (short) 1, (short) 64, (short) 63, (short) 1));
+		assertEquals(4, set.size());
+		assertEquals(Arrays.asList((short) 1, (short) 63, (short) 64, (short) 99), set.toList());
+		assertEquals("[1, 63, 64, 99]", set.toString());
+		assertEquals(AntennaSet.of(1, 63, 64, 99), set);
+		assertEquals(AntennaSet.of(1, 63, 64, 99).hashCode(), set.hashCode());
+
+		assertTrue(AntennaSet.EMPTY.isEmpty());
+		assertTrue(AntennaSet.of(Collections.<Short> emptyList()).isEmpty());
+		assertTrue(AntennaSet.of(0, 127).contains(127));
+
+		for (int antenna : new int[] { -1, 128 })
+			try {
+				AntennaSet.of(antenna);
+				fail("Expected IllegalArgumentException");
+			} catch (IllegalArgumentException e) {
+			}
+	}
+
+	@Test
+	public void testContains() {
+		AntennaSet set = AntennaSet.of(2, 70);
+		assertTrue(set.contains(2));
+		assertTrue(set.contains(70));
+		assertFalse(set.contains(3));
+		assertFalse(set.contains(6));
+		assertFalse(set.contains(-62));
+		assertFalse(set.contains(134));
+	}
+
+	@Test
+	public void testModify() {
+		AntennaSet set = AntennaSet.of(1, 2);
+		assertSame(set, set.with(1));
+		assertSame(set, set.without(3));
+		assertEquals(AntennaSet.of(1, 2, 100), set.with(100));
+		assertEquals(AntennaSet.of(2), set.without(1));
+		assertEquals(AntennaSet.of(1, 2), AntennaSet.of(1, 2, 100).without(100));
+
+		assertEquals(AntennaSet.of(2, 100), AntennaSet.of(1, 2, 100).intersect(AntennaSet.of(2, 3, 100)));
+		assertEquals(AntennaSet.of(1, 2, 3, 100), AntennaSet.of(1, 2).union(AntennaSet.of(3, 100)));
+
+		/* antennas out of range are ignored */
+		assertEquals(AntennaSet.of(2, 100),
+				AntennaSet.of(1, 2, 100).retain(Arrays.asList((short) 2, (short) 5, (short) 100, (short) 200)));
+	}
+
+	@Test
+	public void testIntersects() {
+		AntennaSet set = AntennaSet.of(1, 65);
+		assertTrue(set.intersects(1L << 1, 0));
+		assertTrue(set.intersects(0, 1L << 1));
+		assertFalse(set.intersects(1L << 2, 1L << 2));
+		assertFalse(AntennaSet.EMPTY.intersects(-1L, -1L));
+	}
+
+	@Test
+	public void testNext() {
+		AntennaSet set = AntennaSet.of(0, 5, 63, 64, 127);
+		assertEquals(0, set.next(0));
+		assertEquals(5, set.next(1));
+		assertEquals(63, set.next(6));
+		assertEquals(64, set.next(64));
+		assertEquals(127, set.next(65));
+		assertEquals(-1, set.next(128));
+		assertEquals(-1, AntennaSet.of(3).next(4));
+		assertEquals(-1, AntennaSet.EMPTY.next(0));
+	}
+}
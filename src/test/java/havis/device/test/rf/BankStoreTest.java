@@ -0,0 +1,134 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.addBank;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.MemoryBankNameEnumeration;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class BankStoreTest {
+
+	private static RequestCreateTagType createTag(String tagId, String usr) {
+		/* each tag has its own copy of the hex data */
+		return addBank(TestTags.createTag(tagId), MemoryBankNameEnumeration.USER_BANK, new String(usr));
+	}
+
+	private static String getUserData(RequestCreateTagType tag) {
+		return tag.getMemoryBanks().getMemoryBank().get(0).getData().getValue();
+	}
+
+	@Test
+	public void testIntern() {
+		BankStore store = new BankStore();
+		BankStore.Bank bank = store.intern(new String("0000aaaa"));
+		assertEquals("0000aaaa", bank.getHex());
+		assertArrayEquals(RFUtils.hexToBytes("0000aaaa"), bank.getData());
+
+		assertSame(bank, store.intern(new String("0000aaaa")));
+		assertSame(bank, store.intern(RFUtils.hexToBytes("0000aaaa")));
+		assertEquals(1, store.size());
+		assertEquals(3, store.getReferences());
+
+		/* binary data is copied */
+		byte[] data = RFUtils.hexToBytes("1111");
+		BankStore.Bank other = store.intern(data);
+		assertNotSame(data, other.getData());
+		assertEquals("1111", other.getHex());
+		data[0] = 0;
+		assertArrayEquals(RFUtils.hexToBytes("1111"), other.getData());
+		assertSame(other, store.intern("1111"));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void testMemory() {
+		BankStore store = new BankStore();
+		RequestCreateTagType tag1 = createTag("1", "0000000000000000");
+		RequestCreateTagType tag2 = createTag("2", "0000000000000000");
+		TagMemory memory1 = new TagMemory(tag1, store);
+		TagMemory memory2 = new TagMemory(tag2, store);
+		assertSame(memory1.getBank(RFUtils.BANK_USR), memory2.getBank(RFUtils.BANK_USR));
+
+		/* copy on write */
+		assertTrue(memory1.write(RFUtils.BANK_USR, 1, RFUtils.hexToBytes("abcd")));
+		assertEquals("0000ABCD00000000", RFUtils.bytesToHex(memory1.getBank(RFUtils.BANK_USR)));
+		assertEquals("0000000000000000", RFUtils.bytesToHex(memory2.getBank(RFUtils.BANK_USR)));
+		assertTrue(memory1.flush());
+		assertEquals("0000abcd00000000", getUserData(tag1));
+		assertSame(store.intern("0000abcd00000000").getHex(), getUserData(tag1));
+
+		/* written back to the shared contents */
+		assertTrue(memory1.write(RFUtils.BANK_USR, 1, RFUtils.hexToBytes("0000")));
+		assertSame(memory2.getBank(RFUtils.BANK_USR), memory1.getBank(RFUtils.BANK_USR));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void testPopulation() {
+		RequestCreateTagType tag1 = createTag("1", "0000000000000000");
+		RequestCreateTagType tag2 = createTag("2", "0000000000000000");
+		RequestCreateTagType tag3 = createTag("3", "1111");
+		RequestCreateTagType tag4 = createTag("4", "xyz");
+		assertNotSame(getUserData(tag1), getUserData(tag2));
+
+		TagPopulation population = new TagPopulation(Arrays.asList(tag1, tag2, tag3, tag4), new BankStore());
+		assertSame(getUserData(tag1), getUserData(tag2));
+		assertSame(population.getMemory(0).getBank(RFUtils.BANK_USR), population.getMemory(1).getBank(RFUtils.BANK_USR));
+		assertArrayEquals(RFUtils.hexToBytes("1111"), population.getMemory(2).getBank(RFUtils.BANK_USR));
+		/* invalid data is kept */
+		assertEquals("xyz", getUserData(tag4));
+		assertEquals(2, population.getBankStore().size());
+
+		assertNull(new TagPopulation(Arrays.asList(tag1), null).getBankStore());
+	}
+
+	@Test
+	public void testIsShared() {
+		BankStore store = new BankStore();
+		assertTrue(store.isShared(MemoryBankNameEnumeration.PWD_BANK));
+		assertTrue(store.isShared(MemoryBankNameEnumeration.USER_BANK));
+		assertFalse(store.isShared(MemoryBankNameEnumeration.EPC_BANK));
+		assertFalse(store.isShared(MemoryBankNameEnumeration.TID_BANK));
+		assertFalse(store.isShared(null));
+
+		/* banks which are not shared are decoded for each tag */
+		RequestCreateTagType tag1 = createTag("1", "0000");
+		RequestCreateTagType tag2 = createTag("2", "0000");
+		store = new BankStore(EnumSet.of(MemoryBankNameEnumeration.EPC_BANK));
+		assertNotSame(new TagMemory(tag1, store).getBank(RFUtils.BANK_USR),
+				new TagMemory(tag2, store).getBank(RFUtils.BANK_USR));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void testRelease() throws InterruptedException {
+		BankStore store = new BankStore();
+		TagMemory memory = new TagMemory(createTag("1", "0000aaaa"), store);
+		for (int i = 0; i < 8; i++)
+			assertTrue(memory.write(RFUtils.BANK_USR, 1, new byte[] { 0, (byte) i }));
+		String hex = store.intern(new String("1111")).getHex();
+
+		assertEquals(10, store.size());
+
+		/* overwritten contents are released, the unflushed hex data of the tag is kept */
+		for (int i = 0; i < 50 && store.size() > 3; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(3, store.size());
+		assertArrayEquals(new byte[] { 0, 0, 0, 7 }, memory.getBank(RFUtils.BANK_USR));
+		assertSame(hex, store.intern(new String("1111")).getHex());
+	}
+}
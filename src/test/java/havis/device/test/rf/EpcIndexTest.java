@@ -0,0 +1,191 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.createFilter;
+import static havis.device.test.rf.TestTags.createTag;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import mockit.Deencapsulation;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class EpcIndexTest {
+
+	private static int[] select(EpcIndex index, Filter... filters) {
+		return index.select(FilterMatcher.compile(Arrays.asList(filters)));
+	}
+
+	private static TagPopulation createPopulation() {
+		return new TagPopulation(Arrays.asList(
+				createTag(null, "00003000aaaa000000000001"),
+				createTag(null, "00003000bbbb000000000002"),
+				createTag(null, "00003000aaaa000000000003"),
+				createTag(null, null),
+				createTag(null, "00003000aaab000000000004"),
+				createTag(null, "00003000")));
+	}
+
+	@Test
+	public void testSelect() {
+		EpcIndex index = new EpcIndex(createPopulation());
+		assertEquals(5, index.size());
+
+		/* prefix ranges */
+		assertArrayEquals(new int[] { 0, 2 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true)));
+		assertArrayEquals(new int[] { 0, 2, 4 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "fffe", true)));
+		assertArrayEquals(new int[] { 1 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 64, "bbbb000000000002", "ffffffffffffffff", true)));
+		assertArrayEquals(new int[0],
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "cccc", "ffff", true)));
+
+		/* bits beyond the EPC are 0 */
+		assertArrayEquals(new int[] { 5 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "0000", "ffff", true)));
+
+		/* narrowest range of several filters */
+		assertArrayEquals(new int[] { 2 }, select(index,
+				createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true),
+				createFilter(RFUtils.BANK_EPC, 32, 64, "aaaa000000000003", "ffffffffffffffff", true)));
+
+		/* filters which cannot be resolved */
+		assertNull(select(index));
+		assertNull(select(index, createFilter(RFUtils.BANK_EPC, 48, 16, "aaaa", "ffff", true)));
+		assertNull(select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", false)));
+		assertNull(select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "0fff", true)));
+		assertNull(select(index, createFilter(RFUtils.BANK_TID, 32, 16, "aaaa", "ffff", true)));
+
+		/* unresolved filters are left to the matcher */
+		assertArrayEquals(new int[] { 0, 2 }, select(index,
+				createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true),
+				createFilter(RFUtils.BANK_TID, 0, 8, "e2", "ff", true)));
+	}
+
+	@Test
+	public void testUpdate() {
+		TagPopulation population = createPopulation();
+		EpcIndex index = population.getEpcIndex();
+
+		RequestCreateTagType tag = createTag(null, "00003000aaaa000000000005");
+		population = population.update(1, tag);
+		assertEquals(index, population.getEpcIndex());
+		assertArrayEquals(new int[] { 0, 1, 2 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true)));
+		assertArrayEquals(new int[0],
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "bbbb", "ffff", true)));
+
+		/* tag gains an EPC bank */
+		population = population.update(3, createTag(null, "00003000bbbb000000000006"));
+		assertEquals(6, index.size());
+		assertArrayEquals(new int[] { 3 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "bbbb", "ffff", true)));
+
+		/* tag loses its EPC bank */
+		population = population.update(0, createTag(null, null));
+		assertEquals(5, index.size());
+		assertArrayEquals(new int[] { 1, 2 },
+				select(index, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true)));
+	}
+
+	@Test
+	public void testEquivalence() {
+		Random random = new Random(11);
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			byte[] epc = new byte[12];
+			random.nextBytes(epc);
+			/* few distinct leading bits */
+			epc[0] &= 0x03;
+			tags.add(createTag(null, "00003000" + TagMemory.toHex(epc)));
+		}
+		TagPopulation population = new TagPopulation(tags);
+		EpcIndex index = population.getEpcIndex();
+
+		for (int i = 0; i < 200; i++) {
+			byte[] data = new byte[2];
+			random.nextBytes(data);
+			data[0] &= 0x03;
+			int bitLength = 1 + random.nextInt(16);
+			String mask = random.nextBoolean() ? "ffff" : "fff0";
+			FilterMatcher matcher = FilterMatcher.compile(Arrays.asList(
+					createFilter(RFUtils.BANK_EPC, 32, bitLength, TagMemory.toHex(data), mask, true)));
+
+			List<Integer> expected = new ArrayList<>();
+			for (int position = 0; position < population.size(); position++)
+				if (matcher.matches(population.getMemory(position)))
+					expected.add(position);
+
+			List<Integer> actual = new ArrayList<>();
+			for (int position : matcher.size() > 0 ? index.select(matcher) : new int[0])
+				if (matcher.matches(population.getMemory(position)))
+					actual.add(position);
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testUpdates() {
+		Random random = new Random(13);
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			tags.add(createTag(null, createEpcBank(random)));
+		TagPopulation population = new TagPopulation(tags);
+		EpcIndex index = population.getEpcIndex();
+		Object keys = Deencapsulation.getField(Deencapsulation.<Object> getField(index, "entries"), "keys");
+
+		for (int i = 0; i < 200; i++) {
+			/* the same tags are updated repeatedly, some lose their EPC bank */
+			int position = random.nextInt(100);
+			population = population.update(position,
+					createTag(null, random.nextInt(8) == 0 ? null : createEpcBank(random)));
+
+			/* the keys are only sorted again after many updates */
+			if (i < 16)
+				assertTrue(keys == Deencapsulation.getField(Deencapsulation.<Object> getField(index, "entries"), "keys"));
+
+			byte[] data = new byte[1];
+			random.nextBytes(data);
+			data[0] &= 0x03;
+			FilterMatcher matcher = FilterMatcher.compile(Arrays.asList(
+					createFilter(RFUtils.BANK_EPC, 32, 8, TagMemory.toHex(data), "ff", true)));
+			List<Integer> expected = new ArrayList<>();
+			int size = 0;
+			for (int p = 0; p < population.size(); p++) {
+				if (population.getMemory(p).getBank(RFUtils.BANK_EPC) != null)
+					size++;
+				if (matcher.matches(population.getMemory(p)))
+					expected.add(p);
+			}
+
+			List<Integer> actual = new ArrayList<>();
+			int[] candidates = index.select(matcher);
+			for (int j = 0; j < candidates.length; j++) {
+				assertTrue(j == 0 || candidates[j - 1] < candidates[j]);
+				if (matcher.matches(population.getMemory(candidates[j])))
+					actual.add(candidates[j]);
+			}
+			assertEquals(expected, actual);
+			assertEquals(size, index.size());
+		}
+	}
+
+	/* few distinct leading bits */
+	private static String createEpcBank(Random random) {
+		byte[] epc = new byte[12];
+		random.nextBytes(epc);
+		epc[0] &= 0x03;
+		return "00003000" + TagMemory.toHex(epc);
+	}
+}
@@ -0,0 +1,126 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.addBank;
+import static havis.device.test.rf.TestTags.createFilter;
+import static havis.device.test.rf.TestTags.createTag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.HardwareMgmt;
+import havis.device.test.hardware.RequestCreateTagType;
+import mockit.Mocked;
+
+public class FilterMatcherTest {
+
+	@Mocked
+	HardwareMgmt manager;
+
+	private static boolean matches(RequestCreateTagType tag, Filter... filters) {
+		return FilterMatcher.compile(Arrays.asList(filters)).matches(new TagMemory(tag));
+	}
+
+	@Test
+	public void testCompile() {
+		assertEquals(FilterMatcher.ALL, FilterMatcher.compile(null));
+		assertEquals(FilterMatcher.ALL, FilterMatcher.compile(Collections.<Filter> emptyList()));
+		assertEquals(2, FilterMatcher.compile(Arrays.asList(
+				createFilter(RFUtils.BANK_EPC, 32, 16, "3000", "ffff", true),
+				createFilter(RFUtils.BANK_TID, 0, 8, "e2", "ff", true))).size());
+	}
+
+	@Test
+	public void testMatches() {
+		RequestCreateTagType tag = addBank(createTag(null, "00003000aaaabbbbcccc"), RFUtils.BANK_TID, "e2801105");
+
+		assertTrue(FilterMatcher.ALL.matches(new TagMemory(tag)));
+
+		/* inclusive */
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_EPC, 32, 32, "aaaabbbb", "ffffffff", true)));
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_EPC, 32, 32, "aaaabbbc", "ffffffff", true)));
+
+		/* exclusive */
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_EPC, 32, 32, "aaaabbbb", "ffffffff", false)));
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_EPC, 32, 32, "aaaabbbc", "ffffffff", false)));
+
+		/* bit offset not aligned to bytes */
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_EPC, 36, 8, "aa", "ff", true)));
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_TID, 4, 12, "280f", "fff0", true)));
+
+		/* masked */
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_TID, 0, 32, "e2000005", "ff0000ff", true)));
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_TID, 0, 32, "e2000006", "ff0000ff", true)));
+
+		/* bits beyond the bank contents are 0 */
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_TID, 24, 16, "0500", "ffff", true)));
+
+		/* more than 64 bits */
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_EPC, 0, 80, "00003000aaaabbbbcccc", "ffffffffffffffffffff", true)));
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_EPC, 0, 80, "00003000aaaabbbbcccd", "ffffffffffffffffffff", true)));
+
+		/* all filters have to match */
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_EPC, 32, 16, "aaaa", "ffff", true),
+				createFilter(RFUtils.BANK_TID, 0, 8, "e3", "ff", true)));
+
+		/* missing bank only matches exclusive filters */
+		assertFalse(matches(tag, createFilter(RFUtils.BANK_USR, 0, 8, "00", "ff", true)));
+		assertTrue(matches(tag, createFilter(RFUtils.BANK_USR, 0, 8, "00", "ff", false)));
+	}
+
+	@Test
+	public void testBankChanged() {
+		RequestCreateTagType tag = createTag(null, "00003000aaaa");
+		TagMemory memory = new TagMemory(tag);
+		FilterMatcher matcher = FilterMatcher.compile(Arrays.asList(createFilter(RFUtils.BANK_EPC, 32, 16, "bbbb", "ffff", true)));
+		assertFalse(matcher.matches(memory));
+
+		tag.getMemoryBanks().getMemoryBank().get(0).getData().setValue("00003000bbbb");
+		assertTrue(matcher.matches(memory));
+	}
+
+	@Test
+	public void testEquivalence() {
+		StubHardwareApi api = new StubHardwareApi(manager);
+		Random random = new Random(42);
+		for (int run = 0; run < 2000; run++) {
+			RequestCreateTagType tag = addBank(createTag(null, randomHex(random, 1 + random.nextInt(16))),
+					RFUtils.BANK_TID, random.nextInt(5) == 0 ? null : randomHex(random, 1 + random.nextInt(8)));
+			List<Filter> filters = new ArrayList<>();
+			for (int i = random.nextInt(3); i >= 0; i--) {
+				int bitLength = 1 + random.nextInt(96);
+				int bytes = (bitLength + 7) / 8;
+				/* derive the filter data from the bank contents to get matches */
+				String data = random.nextBoolean() ? randomHex(random, bytes)
+						: (tag.getMemoryBanks().getMemoryBank().get(0).getData().getValue() + randomHex(random, bytes)).substring(0, bytes * 2);
+				String mask = random.nextBoolean() ? randomHex(random, bytes) : random.nextBoolean() ? repeat("ff", bytes) : repeat("00", bytes);
+				filters.add(createFilter(random.nextBoolean() ? RFUtils.BANK_EPC : RFUtils.BANK_TID,
+						random.nextInt(4) == 0 ? 0 : random.nextInt(128), bitLength, data, mask, random.nextInt(3) != 0));
+			}
+			assertEquals("run " + run, api.applyFilters(tag, filters),
+					FilterMatcher.compile(filters).matches(new TagMemory(tag)));
+		}
+	}
+
+	private static String randomHex(Random random, int bytes) {
+		byte[] data = new byte[bytes];
+		random.nextBytes(data);
+		return RFUtils.bytesToHex(data);
+	}
+
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			sb.append(s);
+		return sb.toString();
+	}
+}
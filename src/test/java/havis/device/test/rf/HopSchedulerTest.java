@@ -0,0 +1,130 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import havis.device.rf.capabilities.FreqHopTable;
+import havis.device.rf.capabilities.FreqHopTableEntry;
+import havis.device.rf.capabilities.RegulatoryCapabilities;
+
+public class HopSchedulerTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static List<Integer> createChannels(int count) {
+		List<Integer> frequencies = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			frequencies.add(902250 + i * 500);
+		return frequencies;
+	}
+
+	private static RegulatoryCapabilities createCapabilities(boolean hopping, List<Integer> frequencies) {
+		RegulatoryCapabilities capabilities = new RegulatoryCapabilities();
+		capabilities.setHopping(hopping);
+		capabilities.setFreqHopTable(new FreqHopTable());
+		FreqHopTableEntry entry = new FreqHopTableEntry();
+		entry.setIndex((short) 1);
+		entry.getFreqList().addAll(frequencies);
+		capabilities.getFreqHopTable().getEntryList().add(entry);
+		return capabilities;
+	}
+
+	@Test
+	public void testSchedule() {
+		HopScheduler scheduler = new HopScheduler(createChannels(4), 100, 1000, 1);
+		assertEquals(4, scheduler.getChannelCount());
+		assertEquals(0, scheduler.schedule(0));
+		assertEquals(0, scheduler.getHops());
+
+		/* initial tuning */
+		assertEquals(61 * MS, scheduler.schedule(60 * MS));
+		assertEquals(1, scheduler.getHops());
+		int frequency = scheduler.getFrequency();
+
+		/* hop after 100 ms on the channel */
+		assertEquals(40 * MS, scheduler.schedule(40 * MS));
+		assertEquals(frequency, scheduler.getFrequency());
+		assertEquals(11 * MS, scheduler.schedule(10 * MS));
+		assertEquals(2, scheduler.getHops());
+		assertTrue(frequency != scheduler.getFrequency());
+
+		/* a long round spans several channels */
+		assertEquals(252 * MS, scheduler.schedule(250 * MS));
+		assertEquals(4, scheduler.getHops());
+	}
+
+	@Test
+	public void testSequence() {
+		HopScheduler scheduler = new HopScheduler(createChannels(50), 1, 0, 1);
+		Set<Integer> frequencies = new HashSet<>();
+		for (int i = 0; i < 50; i++) {
+			scheduler.schedule(MS);
+			frequencies.add(scheduler.getFrequency());
+		}
+		/* each channel once per cycle */
+		assertEquals(new HashSet<>(createChannels(50)), frequencies);
+
+		List<Integer> first = new ArrayList<>();
+		List<Integer> second = new ArrayList<>();
+		HopScheduler other = new HopScheduler(createChannels(50), 1, 0, 1);
+		for (int i = 0; i < 50; i++) {
+			scheduler.schedule(MS);
+			first.add(scheduler.getFrequency());
+			other.schedule(MS);
+			second.add(other.getFrequency());
+		}
+		assertEquals(first, second);
+		assertTrue(!first.equals(createChannels(50)));
+	}
+
+	@Test
+	public void testReaders() {
+		/* 8 readers on 4 channels get half the air time */
+		HopScheduler eu = new HopScheduler(createChannels(4), 4000, 0, 8);
+		HopScheduler fcc = new HopScheduler(createChannels(50), 400, 0, 8);
+		assertEquals(20 * MS, eu.schedule(10 * MS));
+		assertEquals(10 * MS, fcc.schedule(10 * MS));
+
+		try {
+			new HopScheduler(createChannels(4), 4000, 0, 0);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			new HopScheduler(Collections.<Integer> emptyList(), 4000, 0, 1);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testForRegion() {
+		assertNull(HopScheduler.forRegion("EU", null));
+		assertNull(HopScheduler.forRegion("EU", createCapabilities(false, createChannels(4))));
+		assertNull(HopScheduler.forRegion("EU", createCapabilities(true, Collections.<Integer> emptyList())));
+
+		HopScheduler scheduler = HopScheduler.forRegion("EU",
+				createCapabilities(true, Arrays.asList(865700, 866300, 866900, 867500)));
+		assertEquals(4, scheduler.getChannelCount());
+		assertEquals(4000, HopScheduler.getDwellTime("EU"));
+		assertEquals(400, HopScheduler.getDwellTime("FCC"));
+
+		/* no limit */
+		assertEquals(0, HopScheduler.getDwellTime("Unspecified"));
+		scheduler = HopScheduler.forRegion("Unspecified", createCapabilities(true, createChannels(2)));
+		scheduler.schedule(TimeUnit.HOURS.toNanos(1));
+		assertEquals(1, scheduler.getHops());
+	}
+}
@@ -0,0 +1,96 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InventoriedFlagsTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testSession0() {
+		InventoriedFlags flags = new InventoriedFlags(1000, 1000, 1000);
+		assertTrue(flags.inventory("a", 0, 0));
+		assertTrue(flags.inventory("a", 0, 1));
+		assertFalse(flags.isB("a", 0, 1));
+		assertEquals(0, flags.size(1));
+
+		try {
+			flags.inventory("a", 4, 0);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testSession1() {
+		InventoriedFlags flags = new InventoriedFlags(1000, 1000, 1000);
+		assertTrue(flags.inventory("a", 1, 0));
+		assertTrue(flags.isB("a", 1, 0));
+
+		/* flag returns to A although the tag is energized */
+		assertFalse(flags.inventory("a", 1, 500 * MS));
+		assertFalse(flags.inventory("a", 1, 999 * MS));
+		assertTrue(flags.inventory("a", 1, 1000 * MS));
+		assertFalse(flags.inventory("a", 1, 1001 * MS));
+
+		/* sessions are independent */
+		assertTrue(flags.inventory("a", 2, 1001 * MS));
+		assertTrue(flags.inventory("b", 1, 1001 * MS));
+	}
+
+	@Test
+	public void testSession2() {
+		InventoriedFlags flags = new InventoriedFlags(1000, 1000, 500);
+		assertTrue(flags.inventory("a", 2, 0));
+
+		/* flag stays B while the tag is energized */
+		for (long time = 800; time <= 4000; time += 800)
+			assertFalse(flags.inventory("a", 2, time * MS));
+		assertTrue(flags.isB("a", 2, 4999 * MS));
+
+		/* flag returns to A without energy */
+		assertFalse(flags.isB("a", 2, 5000 * MS));
+		assertTrue(flags.inventory("a", 2, 5000 * MS));
+
+		/* persistence of S3 */
+		assertTrue(flags.inventory("a", 3, 0));
+		assertFalse(flags.inventory("a", 3, 499 * MS));
+		assertTrue(flags.inventory("a", 3, 1000 * MS));
+	}
+
+	@Test
+	public void testPurge() {
+		InventoriedFlags flags = new InventoriedFlags(1000, 2000, 2000);
+		flags.inventory("a", 1, 1000 * MS);
+		flags.inventory("b", 2, 1000 * MS);
+		flags.inventory("c", 3, 1000 * MS);
+		assertEquals(1, flags.size(1));
+
+		flags.purge(1500 * MS);
+		assertEquals(1, flags.size(1));
+		assertEquals(1, flags.size(2));
+
+		flags.purge(2500 * MS);
+		assertEquals(0, flags.size(1));
+		assertEquals(1, flags.size(2));
+
+		/* purged at most once per second */
+		flags.purge(3000 * MS);
+		assertEquals(1, flags.size(2));
+		flags.purge(3500 * MS);
+		assertEquals(0, flags.size(2));
+		assertEquals(0, flags.size(3));
+
+		flags.inventory("a", 1, 4000 * MS);
+		flags.reset();
+		assertEquals(0, flags.size(1));
+		assertTrue(flags.inventory("a", 1, 4000 * MS));
+	}
+}
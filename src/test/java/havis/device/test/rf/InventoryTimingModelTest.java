@@ -0,0 +1,58 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InventoryTimingModelTest {
+
+	public static class CustomTimingModel implements InventoryTimingModel {
+		@Override
+		public long getRoundDuration(int antennaCount, int tagCount) {
+			return 42;
+		}
+	}
+
+	@Test
+	public void testForName() {
+		assertTrue(InventoryTimingModel.forName("zero") instanceof ZeroDelayTimingModel);
+		assertTrue(InventoryTimingModel.forName("fixed") instanceof FixedDelayTimingModel);
+		assertTrue(InventoryTimingModel.forName("gen2") instanceof Gen2TimingModel);
+		assertTrue(InventoryTimingModel.forName(CustomTimingModel.class.getName()) instanceof CustomTimingModel);
+
+		/* unknown model falls back to fixed delay */
+		assertTrue(InventoryTimingModel.forName("unknown") instanceof FixedDelayTimingModel);
+		assertTrue(InventoryTimingModel.forName(String.class.getName()) instanceof FixedDelayTimingModel);
+	}
+
+	@Test
+	public void testZeroDelay() {
+		assertEquals(0, new ZeroDelayTimingModel().getRoundDuration(16, 50000));
+	}
+
+	@Test
+	public void testFixedDelay() {
+		FixedDelayTimingModel model = new FixedDelayTimingModel(50);
+		assertEquals(50, model.getDelay());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(50), model.getRoundDuration(1, 1));
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(50), model.getRoundDuration(16, 50000));
+	}
+
+	@Test
+	public void testGen2() {
+		Gen2TimingModel model = new Gen2TimingModel(1000, 600, 100, 250);
+
+		/* no tags: antenna overhead only */
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), model.getRoundDuration(1, 0));
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(4000), model.getRoundDuration(4, 0));
+
+		/* each tag needs a successful, an empty and e - 2 collision slots */
+		long oneTag = model.getRoundDuration(1, 1);
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(1000 + 700 + Math.round((Math.E - 2) * 250)), oneTag);
+		assertTrue(model.getRoundDuration(1, 1000) > model.getRoundDuration(1, 100));
+		assertTrue(model.getRoundDuration(2, 100) > model.getRoundDuration(1, 100));
+	}
+}
@@ -0,0 +1,84 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		/* consecutive buckets without gaps */
+		for (int index = 0; index < LatencyHistogram.BUCKETS - 1; index++) {
+			assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.lowerBound(index)));
+			assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.upperBound(index)));
+			assertEquals(LatencyHistogram.upperBound(index) + 1, LatencyHistogram.lowerBound(index + 1));
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+
+		/* relative error of at most 1/16 */
+		for (long value = 1; value < 1L << 40; value = value * 3 + 1) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(LatencyHistogram.lowerBound(index) <= value && value <= LatencyHistogram.upperBound(index));
+			assertTrue(LatencyHistogram.upperBound(index) - LatencyHistogram.lowerBound(index) <= value / 16);
+		}
+	}
+
+	@Test
+	public void testSnapshot() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getCount());
+		assertEquals(0, snapshot.getValueAtPercentile(99));
+		assertEquals(0, snapshot.getMax());
+
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1000);
+		histogram.record(-5);
+
+		snapshot = histogram.snapshot();
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(500500000, snapshot.getSum());
+		assertEquals(0, snapshot.getMin());
+		assertEquals(1000000, snapshot.getMax(), 1000000 / 16);
+		assertEquals(500000, snapshot.getValueAtPercentile(50), 500000 / 16);
+		assertEquals(990000, snapshot.getValueAtPercentile(99), 990000 / 16);
+		assertEquals(snapshot.getMax(), snapshot.getValueAtPercentile(100));
+		assertEquals(0, snapshot.getValueAtPercentile(0));
+
+		/* snapshots are immutable */
+		histogram.reset();
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(0, histogram.snapshot().getCount());
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < 100000; i++)
+						histogram.record(i % 2000);
+				}
+			};
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(400000, histogram.snapshot().getCount());
+	}
+}
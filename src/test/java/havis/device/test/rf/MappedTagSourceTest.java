@@ -0,0 +1,264 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.tag.Filter;
+import havis.device.rf.tag.operation.KillOperation;
+import havis.device.rf.tag.operation.LockOperation;
+import havis.device.rf.tag.operation.LockOperation.Field;
+import havis.device.rf.tag.operation.LockOperation.Privilege;
+import havis.device.rf.tag.operation.WriteOperation;
+import havis.device.rf.tag.result.KillResult;
+import havis.device.rf.tag.result.LockResult;
+import havis.device.rf.tag.result.WriteResult;
+import havis.device.test.hardware.HardwareMgmt;
+import havis.device.test.hardware.LockFieldNameEnumeration;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagType;
+import havis.device.test.hardware.RequestType;
+import mockit.Mocked;
+import mockit.Verifications;
+
+public class MappedTagSourceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Mocked
+	HardwareMgmt manager;
+
+	private static SyntheticTagSource createSynthetic(int count) {
+		return new SyntheticTagSource(1, count, "0000300030340000nnnnnnnn", "e280xxxxxxxx", "aabbccdd11223344", "",
+				new int[] { 1, 2, 3 }, 2, -70, -30);
+	}
+
+	private static byte[] getBank(RequestCreateTagType tag, short bank) {
+		return new TagMemory(tag).getBank(bank);
+	}
+
+	@Test
+	public void testCreate() throws IOException {
+		SyntheticTagSource synthetic = createSynthetic(1000);
+		MappedTagSource store = MappedTagSource.create(folder.newFile(), synthetic, 8, 6, 4, 8, 2);
+		assertEquals(1000, store.size());
+
+		for (int position = 0; position < store.size(); position += 37) {
+			RequestCreateTagType expected = synthetic.getTag(position);
+			RequestCreateTagType tag = store.getTag(position);
+			assertEquals("mapped-" + position, tag.getTagId());
+			assertEquals(position, store.indexOf(tag.getTagId()));
+			for (short bank = 0; bank < 4; bank++)
+				assertArrayEquals(getBank(expected, bank), getBank(tag, bank));
+			assertNull(tag.isKilled());
+			assertNull(tag.getLocks());
+
+			List<RequestCreateTagAntennaType> antennas = tag.getAntennas().getAntenna();
+			assertEquals(2, antennas.size());
+			for (int i = 0; i < antennas.size(); i++) {
+				assertEquals(expected.getAntennas().getAntenna().get(i).getAntennaId(), antennas.get(i).getAntennaId());
+				assertEquals(expected.getAntennas().getAntenna().get(i).getPeakRSSI(), antennas.get(i).getPeakRSSI());
+			}
+		}
+		assertEquals(-1, store.indexOf("synthetic-1"));
+		assertEquals(-1, store.indexOf("mapped-1000"));
+
+		/* tags exceeding the capacities */
+		try {
+			MappedTagSource.create(folder.newFile(), synthetic, 4, 6, 4, 8, 2);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			MappedTagSource.create(folder.newFile(), synthetic, 8, 6, 4, 8, 1);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPersistence() throws IOException {
+		File file = folder.newFile();
+		MappedTagSource store = MappedTagSource.create(file, createSynthetic(100), 8, 6, 4, 8, 2);
+
+		RequestCreateTagType tag = store.getTag(42);
+		TagMemory memory = new TagMemory(tag);
+		memory.write(RFUtils.BANK_USR, 1, RFUtils.hexToBytes("1234"));
+		memory.flush();
+		tag.setKilled(Boolean.TRUE);
+		tag.getAntennas().getAntenna().remove(1);
+		tag.getAntennas().getAntenna().get(0).setPeakRSSI(null);
+		store.update(Collections.singletonList(tag));
+		store.close();
+
+		/* reopened store */
+		store = MappedTagSource.open(file);
+		assertEquals(100, store.size());
+		tag = store.getTag(42);
+		assertEquals(Boolean.TRUE, tag.isKilled());
+		assertEquals("00001234", TagMemory.toHex(getBank(tag, RFUtils.BANK_USR)));
+		assertEquals(1, tag.getAntennas().getAntenna().size());
+		assertNull(tag.getAntennas().getAntenna().get(0).getPeakRSSI());
+		assertNull(store.getTag(41).isKilled());
+
+		/* changes exceeding the capacities leave the record unchanged */
+		for (int antennaId = 1; antennaId <= 2; antennaId++) {
+			RequestCreateTagAntennaType antenna = new RequestCreateTagAntennaType();
+			antenna.setAntennaId(antennaId);
+			tag.getAntennas().getAntenna().add(antenna);
+		}
+		try {
+			store.update(Collections.singletonList(tag));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		assertEquals("00001234", TagMemory.toHex(getBank(store.getTag(42), RFUtils.BANK_USR)));
+
+		RequestCreateTagType unknown = new RequestCreateTagType();
+		unknown.setTagId("tag1");
+		try {
+			store.update(Collections.singletonList(unknown));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testOpenInvalid() throws IOException {
+		File file = folder.newFile();
+		try {
+			MappedTagSource.open(file);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+
+		try (FileOutputStream stream = new FileOutputStream(file)) {
+			stream.write(new byte[MappedTagSource.HEADER_SIZE]);
+		}
+		try {
+			MappedTagSource.open(file);
+			fail("Expected IOException");
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void testFromEnvironment() throws Exception {
+		String mappedFile = StubEnvironment.MAPPED_FILE;
+		long count = StubEnvironment.SYNTHETIC_COUNT;
+		File dir = folder.newFolder();
+		StubEnvironment.MAPPED_FILE = new File(dir, "tags.bin").getPath();
+		StubEnvironment.SYNTHETIC_COUNT = 100;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			/* concurrent calls create the file once and share the store */
+			List<Future<MappedTagSource>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++)
+				futures.add(executor.submit(new Callable<MappedTagSource>() {
+					@Override
+					public MappedTagSource call() throws IOException {
+						return MappedTagSource.fromEnvironment();
+					}
+				}));
+			MappedTagSource store = futures.get(0).get();
+			for (Future<MappedTagSource> future : futures)
+				assertSame(store, future.get());
+			assertEquals(100, store.size());
+			assertEquals(new File(StubEnvironment.MAPPED_FILE).getCanonicalFile(), store.getFile());
+			/* the temporary file has been renamed */
+			assertEquals(1, dir.list().length);
+
+			/* a closed store is opened again without creating the file */
+			RequestCreateTagType tag = store.getTag(5);
+			tag.setKilled(Boolean.TRUE);
+			store.update(Collections.singletonList(tag));
+			store.close();
+			MappedTagSource reopened = MappedTagSource.fromEnvironment();
+			assertNotSame(store, reopened);
+			assertTrue(reopened.getTag(5).isKilled());
+			reopened.close();
+		} finally {
+			executor.shutdown();
+			StubEnvironment.MAPPED_FILE = mappedFile;
+			StubEnvironment.SYNTHETIC_COUNT = count;
+		}
+	}
+
+	@Test
+	public void testStubHardwareApi() throws IOException {
+		MappedTagSource store = MappedTagSource.create(folder.newFile(), createSynthetic(1000), 8, 6, 4, 8, 2);
+		StubHardwareApi api = new StubHardwareApi(manager);
+		api.setTimingModel(new ZeroDelayTimingModel());
+		api.setTagSource(store);
+
+		List<Short> antennas = new ArrayList<>();
+		antennas.add((short) 1);
+		List<Filter> filters = new ArrayList<>();
+		Filter filter = new Filter();
+		filter.setBank(RFUtils.BANK_EPC);
+		filter.setBitOffset((short) 32);
+		filter.setBitLength((short) 64);
+		filter.setData(RFUtils.hexToBytes("3034000000000064"));
+		filter.setMask(RFUtils.hexToBytes("ffffffffffffffff"));
+		filter.setMatch(true);
+		filters.add(filter);
+
+		/* tag 100 is seen by antenna 1 or 3, as two of three antennas see each tag */
+		antennas.add((short) 3);
+		List<RequestCreateTagType> tags = api.inventory(antennas, filters, new RssiFilter()).getTag();
+		assertEquals(1, tags.size());
+		RequestCreateTagType tag = tags.get(0);
+		assertEquals("mapped-100", tag.getTagId());
+
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_USR);
+		writeOp.setOffset((short) 0);
+		writeOp.setData(RFUtils.hexToBytes("abcd"));
+		writeOp.setPassword(0x11223344);
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+		assertEquals("abcd", TagMemory.toHex(getBank(store.getTag(100), RFUtils.BANK_USR)));
+
+		LockOperation lockOp = new LockOperation();
+		lockOp.setField(Field.USER_MEMORY);
+		lockOp.setPrivilege(Privilege.PERMALOCK);
+		lockOp.setPassword(0x11223344);
+		assertEquals(LockResult.Result.SUCCESS, api.lock(lockOp, store.getTag(100)).getResult());
+		tag = store.getTag(100);
+		assertEquals(LockFieldNameEnumeration.USER_BANK, tag.getLocks().getLock().get(0).getField().getName());
+		assertTrue(tag.getLocks().getLock().get(0).getField().isLocked());
+		assertTrue(tag.getLocks().getLock().get(0).getField().isPermanent());
+
+		KillOperation killOp = new KillOperation();
+		killOp.setKillPassword(0xaabbccdd);
+		assertEquals(KillResult.Result.SUCCESS, api.kill(killOp, tag).getResult());
+		assertEquals(0, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+
+		/* the hardware management is neither read nor updated */
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 0;
+		}};
+	}
+}
@@ -0,0 +1,136 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ObservationRingBufferTest {
+
+	@Test
+	public void testCapacity() {
+		assertEquals(1, new ObservationRingBuffer(1).getCapacity());
+		assertEquals(8, new ObservationRingBuffer(8).getCapacity());
+		assertEquals(16, new ObservationRingBuffer(9).getCapacity());
+		try {
+			new ObservationRingBuffer(0);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testPoll() {
+		ObservationRingBuffer buffer = new ObservationRingBuffer(8);
+		ObservationRingBuffer.Cursor cursor = buffer.createCursor();
+		TagObservation observation = new TagObservation();
+		assertFalse(cursor.poll(observation));
+
+		buffer.publish("a", (short) 1, -42, 1000);
+		buffer.publish("b", (short) 2, -60, 1001);
+		ObservationRingBuffer.Cursor lateCursor = buffer.createCursor();
+		assertEquals(2, buffer.getPublished());
+		assertEquals(2, cursor.getBacklog());
+
+		assertTrue(cursor.poll(observation));
+		assertEquals(0, observation.getSequence());
+		assertEquals("a", observation.getTagId());
+		assertEquals(1, observation.getAntennaId());
+		assertEquals(-42, observation.getRssi());
+		assertEquals(1000, observation.getTimestamp());
+
+		assertTrue(cursor.poll(observation));
+		assertEquals("b", observation.getTagId());
+		assertEquals(2, observation.getAntennaId());
+		assertEquals(-60, observation.getRssi());
+		assertFalse(cursor.poll(observation));
+
+		/* a cursor starts with the next observation published */
+		assertFalse(lateCursor.poll(observation));
+		buffer.publish("c", (short) 1, 0, 1002);
+		assertTrue(lateCursor.poll(observation));
+		assertEquals("c", observation.getTagId());
+		assertTrue(cursor.poll(observation));
+		assertEquals("c", observation.getTagId());
+		assertEquals(0, cursor.getMissed());
+	}
+
+	@Test
+	public void testOverrun() {
+		ObservationRingBuffer buffer = new ObservationRingBuffer(8);
+		ObservationRingBuffer.Cursor cursor = buffer.createCursor();
+		for (int i = 0; i < 20; i++)
+			buffer.publish(String.valueOf(i), (short) 1, i, i);
+		assertEquals(8, cursor.getBacklog());
+
+		TagObservation observation = new TagObservation();
+		for (int i = 12; i < 20; i++) {
+			assertTrue(cursor.poll(observation));
+			assertEquals(i, observation.getSequence());
+			assertEquals(String.valueOf(i), observation.getTagId());
+		}
+		assertFalse(cursor.poll(observation));
+		assertEquals(12, cursor.getMissed());
+	}
+
+	@Test
+	public void testConcurrentConsumers() throws Exception {
+		final int count = 500000;
+		final String[] tagIds = new String[64];
+		for (int i = 0; i < tagIds.length; i++)
+			tagIds[i] = "tag" + i;
+
+		final ObservationRingBuffer buffer = new ObservationRingBuffer(1024);
+		final AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<long[]>> consumers = new ArrayList<>();
+			for (int c = 0; c < 3; c++) {
+				final ObservationRingBuffer.Cursor cursor = buffer.createCursor();
+				consumers.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() {
+						TagObservation observation = new TagObservation();
+						long received = 0;
+						long last = -1;
+						while (true) {
+							if (cursor.poll(observation)) {
+								long sequence = observation.getSequence();
+								/* observations must never be torn or reordered */
+								assertTrue(sequence > last);
+								assertEquals(tagIds[(int) (sequence % tagIds.length)], observation.getTagId());
+								assertEquals(sequence % 4, observation.getAntennaId());
+								assertEquals((int) -sequence, observation.getRssi());
+								assertEquals(sequence, observation.getTimestamp());
+								last = sequence;
+								received++;
+							} else if (done.get() && cursor.getNext() == buffer.getPublished())
+								return new long[] { received, cursor.getMissed() };
+						}
+					}
+				}));
+			}
+
+			for (int i = 0; i < count; i++)
+				buffer.publish(tagIds[i % tagIds.length], (short) (i % 4), -i, i);
+			done.set(true);
+
+			for (Future<long[]> consumer : consumers) {
+				long[] result = consumer.get();
+				assertEquals(count, result[0] + result[1]);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
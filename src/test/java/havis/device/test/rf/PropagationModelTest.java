@@ -0,0 +1,85 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import havis.device.rf.capabilities.RegulatoryCapabilities;
+import havis.device.rf.capabilities.TransmitPowerTable;
+import havis.device.rf.capabilities.TransmitPowerTableEntry;
+
+public class PropagationModelTest {
+
+	private static RegulatoryCapabilities createCapabilities(int... powers) {
+		RegulatoryCapabilities capabilities = new RegulatoryCapabilities();
+		capabilities.setTransmitPowerTable(new TransmitPowerTable());
+		for (int i = 0; i < powers.length; i++) {
+			TransmitPowerTableEntry entry = new TransmitPowerTableEntry();
+			entry.setIndex((short) i);
+			entry.setTransmitPower((short) powers[i]);
+			capabilities.getTransmitPowerTable().getEntryList().add(entry);
+		}
+		return capabilities;
+	}
+
+	@Test
+	public void testNotConfigured() {
+		PropagationModel model = new PropagationModel(30, -20);
+		assertFalse(model.isConfigured(1));
+		assertEquals(Integer.MIN_VALUE, model.getThreshold(1));
+		assertTrue(model.isVisible(1, -120));
+		assertEquals(-60, model.getRssi(1, -60));
+
+		/* no transmit power */
+		model.configure((short) 1, (short) 0, (short) 70, null);
+		assertFalse(model.isConfigured(1));
+		model.configure((short) 1, null, (short) 70, null);
+		assertFalse(model.isConfigured(1));
+	}
+
+	@Test
+	public void testConfigure() {
+		PropagationModel model = new PropagationModel(30, -20);
+
+		/* forward link limited */
+		model.configure((short) 1, (short) 30, null, null);
+		assertEquals(-70, model.getThreshold(1));
+		assertEquals(0, model.getRssiOffset(1));
+		assertTrue(model.isVisible(1, -70));
+		assertFalse(model.isVisible(1, -71));
+
+		model.configure((short) 1, (short) 20, (short) 70, null);
+		assertEquals(-50, model.getThreshold(1));
+		assertEquals(-10, model.getRssiOffset(1));
+		assertEquals(-55, model.getRssi(1, -45));
+
+		/* reverse link limited */
+		model.configure((short) 1, (short) 20, (short) 50, null);
+		assertEquals(-40, model.getThreshold(1));
+
+		/* other antennas are not affected */
+		assertFalse(model.isConfigured(2));
+
+		model.reset();
+		assertFalse(model.isConfigured(1));
+	}
+
+	@Test
+	public void testRegulatoryLimit() {
+		PropagationModel model = new PropagationModel(30, -20);
+		model.configure((short) 1, (short) 30, null, createCapabilities(8, 9, 27));
+		assertEquals(-3, model.getRssiOffset(1));
+		assertEquals(-64, model.getThreshold(1));
+
+		model.configure((short) 1, (short) 10, null, createCapabilities(8, 9, 27));
+		assertEquals(-20, model.getRssiOffset(1));
+
+		/* unspecified region */
+		model.configure((short) 1, (short) 30, null, createCapabilities(0));
+		assertEquals(0, model.getRssiOffset(1));
+		model.configure((short) 1, (short) 30, null, new RegulatoryCapabilities());
+		assertEquals(0, model.getRssiOffset(1));
+	}
+}
@@ -1,19 +1,34 @@
 package havis.device.test.rf;
 
+import static havis.device.test.rf.TestTags.addBank;
+import static havis.device.test.rf.TestTags.createTag;
 import static org.junit.Assert.*;
 
 import static mockit.Deencapsulation.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import havis.device.rf.common.util.RFUtils;
 import havis.device.rf.configuration.RssiFilter;
+import havis.device.rf.configuration.SingulationControl;
 import havis.device.rf.tag.Filter;
 import havis.device.rf.tag.TagData;
 import havis.device.rf.tag.operation.KillOperation;
@@ -61,6 +76,10 @@ public class StubHardwareApiTest {
 	
 	@Before
 	public void setup() {
+		/* the mocked hardware management is shared by the tests */
+		Map<HardwareMgmt, TagVersions> versions = getField(TagVersions.class, "instances");
+		versions.remove(manager);
+
 		RequestCreateTagType testTag = new RequestCreateTagType();
 		testTag.setTagId(UUID.randomUUID().toString());
 		
@@ -132,20 +151,74 @@ public class StubHardwareApiTest {
 		}};
 		
 		api.connect();		
-		HashMap<Short, ResponseReadAntennaType> antennaMap = getField(api, "antennas");
-		assertEquals(2, antennaMap.size());
-		assertTrue(antennaMap.containsKey((short)1));
-		assertTrue(antennaMap.containsKey((short)2));
-		assertEquals(antenna1, antennaMap.get((short)1));
-		assertEquals(antenna2, antennaMap.get((short)2));
+		assertEquals(Arrays.asList((short)1, (short)2), api.getConnectedAntennaIDs());
+		assertEquals(AntennaSet.of(1, 2), api.getConnectedAntennas());
+		assertEquals(antenna1, api.getConnectedAntenna((short)1));
+		assertEquals(antenna2, api.getConnectedAntenna((short)2));
+		assertNull(api.getConnectedAntenna((short)3));
+		
+		new Verifications() {{
+			/* read on connect only */
+			api.getAntennas();
+			times = 1;
+		}};
 	}
 
 	@Test
-	public void testDisconnect() {
-		final StubHardwareApi api = new StubHardwareApi(manager);		
-		setField(api, "antennas", new HashMap<Short, ResponseReadAntennaType>());
+	public void testDisconnect(@Mocked final ResponseReadAntennasType responseReadAntennasType) {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		new NonStrictExpectations(api) {{
+			api.getAntennas();
+			result = responseReadAntennasType;
+			
+			responseReadAntennasType.getAntenna();
+			result = new ArrayList<ResponseReadAntennaType>();
+		}};
+		api.connect();
+		assertNotNull(getField(api, "antennaTopology"));
 		api.disconnect();
-		assertNull(getField(api, "antennas"));
+		assertNull(getField(api, "antennaTopology"));
+	}
+
+	@Test
+	public void testInvalidateAntennas(@Mocked final ResponseReadAntennasType responseReadAntennasType) {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		final List<ResponseReadAntennaType> antennas = new ArrayList<>();
+		antennas.add(new ResponseReadAntennaType() {{ setAntennaId(1); }});
+		
+		new NonStrictExpectations(api) {{
+			api.getAntennas();
+			result = responseReadAntennasType;
+			
+			responseReadAntennasType.getAntenna();
+			result = antennas;
+		}};
+		
+		api.connect();
+		antennas.add(new ResponseReadAntennaType() {{ setAntennaId(2); }});
+		
+		/* cached until invalidated */
+		assertEquals(AntennaSet.of(1), api.getConnectedAntennas());
+		assertEquals(Arrays.asList((short)1), api.getConnectedAntennaIDs());
+		
+		api.invalidateAntennas();
+		assertEquals(AntennaSet.of(1, 2), api.getConnectedAntennas());
+		assertEquals(Arrays.asList((short)1, (short)2), api.getConnectedAntennaIDs());
+		
+		new Verifications() {{
+			api.getAntennas();
+			times = 2;
+		}};
+		
+		/* read on each call while disconnected */
+		api.disconnect();
+		api.getConnectedAntennaIDs();
+		api.getConnectedAntennaIDs();
+		
+		new Verifications() {{
+			api.getAntennas();
+			times = 4;
+		}};
 	}
 
 	@Test
@@ -171,29 +244,117 @@ public class StubHardwareApiTest {
 		assertTrue(antennaIds.contains((short)3));
 	}
 
+	/**
+	 * Hardware management keeping its own copy of the tags, like a hardware
+	 * management running in a separate process. The tags are copied when they
+	 * are read and updated, so hardware APIs never share tag instances.
+	 */
+	private static class CopyingHardwareMgmt implements HardwareMgmt {
+		final Map<String, RequestCreateTagType> tags = new LinkedHashMap<>();
+
+		CopyingHardwareMgmt(RequestCreateTagType... tags) {
+			for (RequestCreateTagType tag : tags)
+				this.tags.put(tag.getTagId(), copy(tag));
+		}
+
+		@Override
+		public synchronized List<ResponseType> process(List<RequestType> requests) {
+			List<ResponseType> responses = new ArrayList<>();
+			for (RequestType request : requests) {
+				ResponseType response = new ResponseType();
+				for (RequestAbstractType choice : request.getChoice()) {
+					if (choice instanceof RequestReadType) {
+						RequestReadType read = (RequestReadType) choice;
+						ResponseReadType readResponse = new ResponseReadType();
+						if (read.getTags() != null) {
+							List<String> tagIds = read.getTags().getTagId();
+							readResponse.setTags(new RequestCreateTagsType());
+							for (RequestCreateTagType tag : tags.values())
+								if (tagIds.isEmpty() || tagIds.contains(tag.getTagId()))
+									readResponse.getTags().getTag().add(copy(tag));
+						}
+						if (read.getAntennas() != null)
+							readResponse.setAntennas(new ResponseReadAntennasType());
+						response.getChoice().add(readResponse);
+					} else if (choice instanceof RequestUpdateType) {
+						for (RequestCreateTagType tag : ((RequestUpdateType) choice).getTags().getTag())
+							tags.put(tag.getTagId(), copy(tag));
+					} else if (choice instanceof RequestDeleteType) {
+						tags.keySet().removeAll(((RequestDeleteType) choice).getTags().getTagId());
+					}
+				}
+				responses.add(response);
+			}
+			return responses;
+		}
+
+		static RequestCreateTagType copy(RequestCreateTagType tag) {
+			RequestCreateTagType copy = new RequestCreateTagType();
+			copy.setTagId(tag.getTagId());
+			copy.setKilled(tag.isKilled());
+			if (tag.getAntennas() != null) {
+				copy.setAntennas(new RequestCreateTagAntennasType());
+				for (RequestCreateTagAntennaType antenna : tag.getAntennas().getAntenna()) {
+					RequestCreateTagAntennaType antennaCopy = new RequestCreateTagAntennaType();
+					antennaCopy.setAntennaId(antenna.getAntennaId());
+					antennaCopy.setPeakRSSI(antenna.getPeakRSSI());
+					copy.getAntennas().getAntenna().add(antennaCopy);
+				}
+			}
+			if (tag.getMemoryBanks() != null) {
+				copy.setMemoryBanks(new MemoryBanksType());
+				for (MemoryBankType bank : tag.getMemoryBanks().getMemoryBank()) {
+					MemoryBankType bankCopy = new MemoryBankType();
+					bankCopy.setName(bank.getName());
+					if (bank.getData() != null) {
+						bankCopy.setData(new DataType());
+						bankCopy.getData().setValue(bank.getData().getValue());
+						bankCopy.getData().setFormat(bank.getData().getFormat());
+					}
+					copy.getMemoryBanks().getMemoryBank().add(bankCopy);
+				}
+			}
+			if (tag.getLocks() != null) {
+				copy.setLocks(new LocksType());
+				for (LockType lock : tag.getLocks().getLock()) {
+					LockType lockCopy = new LockType();
+					lockCopy.setField(new FieldType());
+					lockCopy.getField().setName(lock.getField().getName());
+					lockCopy.getField().setLocked(lock.getField().isLocked());
+					lockCopy.getField().setPermanent(lock.getField().isPermanent());
+					copy.getLocks().getLock().add(lockCopy);
+				}
+			}
+			return copy;
+		}
+	}
+
 	@Test
 	public void testInventory(@Mocked final HardwareMgmt manager, 
 			@Mocked final RequestReadType readRequest, 
 			@Mocked final ResponseType response,
-			@Mocked final ResponseReadType readResponse,
-			@Mocked final RequestCreateTagsType tags, 
-			@Mocked final RequestCreateTagType tag1, 
-			@Mocked final RequestCreateTagType tag2) {
+			@Mocked final ResponseReadType readResponse) {
 		
 		final StubHardwareApi api = new StubHardwareApi(manager);	
+		api.setTimingModel(new ZeroDelayTimingModel());
 		final List<RequestType> requests = new ArrayList<>();
 		final List<ResponseType> responses = new ArrayList<>();
 		final List<ResponseReadType> readResponses = new ArrayList<>();
-		final List<RequestCreateTagType> tagList = new ArrayList<>();
+		final RequestCreateTagsType tags = new RequestCreateTagsType();
 		final List<Short> antennas = new ArrayList<>();
 		final List<Filter> filters = new ArrayList<>();
 		final RssiFilter rssiFilter = new RssiFilter();
 		
+		final RequestCreateTagType tag1 = createTag("tag1", "000030001111aaaa", 1, -40);
+		final RequestCreateTagType tag2 = createTag("tag2", "000030002222aaaa", 1, -60, 2, -30);
+		final RequestCreateTagType tag3 = createTag("tag3", "000030001111bbbb", 2, -50);
+		tags.getTag().add(tag1);
+		tags.getTag().add(tag2);
+		tags.getTag().add(tag3);
+		
 		responses.add(response);
 		readResponses.add(readResponse);
-		
-		tagList.add(tag1);
-		tagList.add(tag2);
+		antennas.add((short) 1);
 		
 		new NonStrictExpectations(api) {{
 			api.createReadRequest();
@@ -218,47 +379,91 @@ public class StubHardwareApiTest {
 		new NonStrictExpectations() {{
 			readResponse.getTags();
 			result = tags;
-			
-			tags.getTag();
-			result = tagList; 
-			
-			api.applyFilters(tag1, antennas, filters, rssiFilter);
-			result = true;
-			
-			api.applyFilters(tag2, antennas, filters, rssiFilter);
-			result = true;
 		}};
 		
-		final RequestCreateTagsType invResult1 = api.inventory(antennas, filters, rssiFilter);		
+		/* population changed externally */
+		api.getTagCache().invalidate();
 		
+		/* tags of antenna 1 in population order */
+		final RequestCreateTagsType invResult1 = api.inventory(antennas, filters, rssiFilter);		
 		assertEquals(2, invResult1.getTag().size());
 		assertEquals(tag1, invResult1.getTag().get(0));
 		assertEquals(tag2, invResult1.getTag().get(1));
-
-		new NonStrictExpectations() {{
-			api.applyFilters(tag2, antennas, filters, rssiFilter);
-			result = false;
-		}};
 		
-		final RequestCreateTagsType invResult2 = api.inventory(antennas, filters, rssiFilter);	
-		assertEquals(1, invResult2.getTag().size());
+		/* tags of both antennas without duplicates */
+		antennas.add((short) 2);
+		final RequestCreateTagsType invResult2 = api.inventory(antennas, filters, rssiFilter);		
+		assertEquals(3, invResult2.getTag().size());
 		assertEquals(tag1, invResult2.getTag().get(0));
+		assertEquals(tag2, invResult2.getTag().get(1));
+		assertEquals(tag3, invResult2.getTag().get(2));
 		
-		new NonStrictExpectations() {{
-			api.applyFilters(tag2, antennas, filters, rssiFilter);
-			result = true;
-			
-			tag1.isKilled();
-			result = Boolean.TRUE;
-			
-			tag2.isKilled();
-			result = Boolean.FALSE;
-		}};
-		
-		tagList.add(tag2);		
+		/* minimum RSSI */
+		rssiFilter.setMinRssi((short) -45);
 		final RequestCreateTagsType invResult3 = api.inventory(antennas, filters, rssiFilter);		
-		assertEquals(1, invResult3.getTag().size());
-		assertEquals(tag2, invResult3.getTag().get(0));
+		assertEquals(2, invResult3.getTag().size());
+		assertEquals(tag1, invResult3.getTag().get(0));
+		assertEquals(tag2, invResult3.getTag().get(1));
+		
+		/* maximum RSSI */
+		rssiFilter.setMinRssi((short) 0);
+		rssiFilter.setMaxRssi((short) -50);
+		final RequestCreateTagsType invResult4 = api.inventory(antennas, filters, rssiFilter);		
+		assertEquals(2, invResult4.getTag().size());
+		assertEquals(tag2, invResult4.getTag().get(0));
+		assertEquals(tag3, invResult4.getTag().get(1));
+		rssiFilter.setMaxRssi((short) 0);
+		
+		/* select filters */
+		Filter filter = new Filter();
+		filter.setBank(RFUtils.BANK_EPC);
+		filter.setBitOffset((short) 32);
+		filter.setBitLength((short) 16);
+		filter.setData(RFUtils.hexToBytes("1111"));
+		filter.setMask(RFUtils.hexToBytes("ffff"));
+		filter.setMatch(true);
+		filters.add(filter);
+		
+		final RequestCreateTagsType invResult5 = api.inventory(antennas, filters, rssiFilter);	
+		assertEquals(2, invResult5.getTag().size());
+		assertEquals(tag1, invResult5.getTag().get(0));
+		assertEquals(tag3, invResult5.getTag().get(1));
+		
+		/* killed tags */
+		tag1.setKilled(Boolean.TRUE);
+		tag3.setKilled(Boolean.FALSE);
+		final RequestCreateTagsType invResult6 = api.inventory(antennas, filters, rssiFilter);		
+		assertEquals(1, invResult6.getTag().size());
+		assertEquals(tag3, invResult6.getTag().get(0));
+		
+		/* population is not modified by inventory */
+		assertEquals(3, tags.getTag().size());
+		
+		/* first and second call read the population, the others hit the cache */
+		assertEquals(2, api.getTagCache().getMisses());
+		assertEquals(5, api.getTagCache().getHits());
+		
+		/* antennas of a committed tag are re-indexed */
+		tag3.getAntennas().getAntenna().get(0).setAntennaId(1);
+		api.getTagCache().update(tag3);
+		antennas.remove((Short) (short) 2);
+		final RequestCreateTagsType invResult7 = api.inventory(antennas, filters, rssiFilter);		
+		assertEquals(1, invResult7.getTag().size());
+		assertEquals(tag3, invResult7.getTag().get(0));
+		
+		/* without cache, each round reads the population and scans all tags */
+		boolean cacheEnabled = StubEnvironment.TAG_CACHE_ENABLED;
+		StubEnvironment.TAG_CACHE_ENABLED = false;
+		try {
+			tag1.setKilled(Boolean.FALSE);
+			final RequestCreateTagsType invResult8 = api.inventory(antennas, filters, rssiFilter);		
+			assertEquals(2, invResult8.getTag().size());
+			assertEquals(tag1, invResult8.getTag().get(0));
+			assertEquals(tag3, invResult8.getTag().get(1));
+			assertEquals(2, api.getTagCache().getMisses());
+		} finally {
+			StubEnvironment.TAG_CACHE_ENABLED = cacheEnabled;
+		}
 	}
 
 	@Test
@@ -618,6 +823,622 @@ public class StubHardwareApiTest {
 		assertEquals(Boolean.TRUE, this.testTag.isKilled());
 	}
 
+	@Test
+	public void testCommit() throws StubHardwareApiException {
+		StubHardwareApi api = new StubHardwareApi(manager);
+		assertEquals(CommitMode.IMMEDIATE, api.getCommitMode());
+
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_USR);
+		writeOp.setOffset((short) 0);
+		writeOp.setData(RFUtils.hexToBytes("1111"));
+
+		/* immediate mode does not start a batch */
+		CommitBatch batch = api.beginCommit();
+		assertNull(batch);
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, this.testTag).getResult());
+		api.endCommit(batch);
+
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 1;
+		}};
+
+		api.setCommitMode(CommitMode.BATCHED);
+		batch = api.beginCommit();
+		assertNotNull(batch);
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, this.testTag).getResult());
+		writeOp.setOffset((short) 1);
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, this.testTag).getResult());
+
+		KillOperation killOp = new KillOperation();
+		killOp.setKillPassword(0x11223344);
+		assertEquals(KillResult.Result.SUCCESS, api.kill(killOp, this.testTag).getResult());
+		assertEquals(1, batch.size());
+
+		/* nothing has been committed yet */
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 1;
+		}};
+
+		api.endCommit(batch);
+
+		final List<List<RequestType>> requests = new ArrayList<>();
+		new Verifications() {{
+			manager.process(withCapture(requests));
+			times = 2;
+		}};
+		RequestUpdateType update = (RequestUpdateType) requests.get(1).get(0).getChoice().get(0);
+		assertEquals(1, update.getTags().getTag().size());
+		assertSame(this.testTag, update.getTags().getTag().get(0));
+		assertEquals("11111111ccccddddeeeeffff", this.testTag.getMemoryBanks().getMemoryBank().get(3).getData().getValue());
+
+		/* empty batch */
+		api.endCommit(api.beginCommit());
+
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 2;
+		}};
+
+		/* tags changed after the end of a batch are committed immediately */
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, this.testTag).getResult());
+
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 3;
+		}};
+
+		new NonStrictExpectations() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			result = new IllegalStateException("failure");
+		}};
+
+		batch = api.beginCommit();
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, this.testTag).getResult());
+		try {
+			api.endCommit(batch);
+			fail("Expected StubHardwareApiException");
+		} catch (StubHardwareApiException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testCommitFailure() {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		final TagPopulationCache cache = api.getTagCache();
+		cache.put(Arrays.asList(this.testTag));
+
+		new NonStrictExpectations() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			result = new IllegalStateException("failure");
+		}};
+
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_USR);
+		writeOp.setOffset((short) 0);
+		writeOp.setData(RFUtils.hexToBytes("1111"));
+		try {
+			api.write(writeOp, this.testTag);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			/* the changed tag is read from the hardware management again */
+			assertNull(cache.get());
+		}
+	}
+
+	@Test
+	public void testConcurrentBatches() throws Exception {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		api.setCommitMode(CommitMode.BATCHED);
+		final List<RequestCreateTagType> tags = new ArrayList<>();
+		for (int i = 0; i < 2; i++)
+			tags.add(createTag("tag" + i, "000030003034111" + i, 1, -50));
+
+		/* both executions write while the batch of the other one is open */
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<CommitBatch>> futures = new ArrayList<>();
+			for (final RequestCreateTagType tag : tags) {
+				futures.add(executor.submit(new Callable<CommitBatch>() {
+					@Override
+					public CommitBatch call() throws Exception {
+						CommitBatch batch = api.beginCommit();
+						barrier.await();
+						WriteOperation writeOp = new WriteOperation();
+						writeOp.setBank(RFUtils.BANK_EPC);
+						writeOp.setOffset((short) 2);
+						writeOp.setData(RFUtils.hexToBytes("3035"));
+						assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+						barrier.await();
+						api.endCommit(batch);
+						return batch;
+					}
+				}));
+			}
+			for (Future<CommitBatch> future : futures)
+				assertEquals(1, future.get().size());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		/* each execution has committed its own tag */
+		final List<List<RequestType>> requests = new ArrayList<>();
+		new Verifications() {{
+			manager.process(withCapture(requests));
+			times = 2;
+		}};
+		Set<String> committed = new HashSet<>();
+		for (List<RequestType> request : requests) {
+			RequestUpdateType update = (RequestUpdateType) request.get(0).getChoice().get(0);
+			assertEquals(1, update.getTags().getTag().size());
+			committed.add(update.getTags().getTag().get(0).getTagId());
+		}
+		assertEquals(new HashSet<>(Arrays.asList("tag0", "tag1")), committed);
+	}
+
+	@Test
+	public void testSingulationControl() {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		api.setTimingModel(new ZeroDelayTimingModel());
+		api.setTagSource(new SyntheticTagSource(1, 100, "0000300030340000nnnnnnnn", "e280xxxxxxxx",
+				"0000000011223344", "0000000000000000", new int[] { 1 }, 1, -70, -30));
+		List<Short> antennas = Collections.singletonList((short) 1);
+		List<Filter> filters = new ArrayList<>();
+
+		/* session 0 reports all tags in each round */
+		SingulationControl singCtl = new SingulationControl();
+		api.setSingulationControl(singCtl);
+		assertSame(singCtl, api.getSingulationControl());
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+
+		/* session 2 only reports tags once while they are energized */
+		singCtl.setSession((short) 2);
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertEquals(0, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertEquals(100, api.getInventoriedFlags().size(2));
+
+		api.getInventoriedFlags().reset();
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+
+		api.setSingulationControl(null);
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+	}
+
+	@Test
+	public void testTagSource() {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		api.setTimingModel(new ZeroDelayTimingModel());
+		assertNull(api.getTagSource());
+
+		SyntheticTagSource source = new SyntheticTagSource(1, 10000, "0000300030340000nnnnnnnn", "e280xxxxxxxx",
+				"0000000011223344", "0000000000000000", new int[] { 1, 2 }, 1, -70, -30);
+		api.setTagSource(source);
+		assertSame(source, api.getTagSource());
+
+		List<Short> antennas = new ArrayList<>();
+		antennas.add((short) 1);
+		antennas.add((short) 2);
+		List<Filter> filters = new ArrayList<>();
+		assertEquals(10000, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+
+		/* serial 0x1230 to 0x123f */
+		Filter filter = new Filter();
+		filter.setBank(RFUtils.BANK_EPC);
+		filter.setBitOffset((short) 32);
+		filter.setBitLength((short) 60);
+		filter.setData(RFUtils.hexToBytes("3034000000001230"));
+		filter.setMask(RFUtils.hexToBytes("fffffffffffffff0"));
+		filter.setMatch(true);
+		filters.add(filter);
+		List<RequestCreateTagType> tags = api.inventory(antennas, filters, new RssiFilter()).getTag();
+		assertEquals(16, tags.size());
+		RequestCreateTagType tag = tags.get(0);
+		assertEquals("synthetic-" + 0x1230, tag.getTagId());
+
+		/* only changed tags are kept by the source */
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_EPC);
+		writeOp.setOffset((short) 2);
+		writeOp.setData(RFUtils.hexToBytes("3035"));
+		writeOp.setPassword(0x11223344);
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+		assertEquals(1, source.getChangedCount());
+
+		/* changes are visible to inventory and further operations */
+		assertEquals(15, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		filter.setData(RFUtils.hexToBytes("3035000000001230"));
+		tags = api.inventory(antennas, filters, new RssiFilter()).getTag();
+		assertEquals(1, tags.size());
+		assertSame(tag, tags.get(0));
+
+		ReadOperation readOp = new ReadOperation();
+		readOp.setBank(RFUtils.BANK_EPC);
+		readOp.setOffset((short) 2);
+		readOp.setLength((short) 1);
+		readOp.setPassword(0x11223344);
+		ReadResult readRes = api.read(readOp, source.getTag(0x1230));
+		assertEquals(ReadResult.Result.SUCCESS, readRes.getResult());
+		assertArrayEquals(RFUtils.hexToBytes("3035"), readRes.getReadData());
+
+		KillOperation killOp = new KillOperation();
+		killOp.setKillPassword(0x11111111);
+		assertEquals(KillResult.Result.INCORRECT_PASSWORD_ERROR, api.kill(killOp, source.getTag(5)).getResult());
+		assertEquals(1, source.getChangedCount());
+
+		/* the hardware management is neither read nor updated */
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 0;
+		}};
+
+		api.setTagSource(null);
+		assertNull(api.getTagSource());
+	}
+
+	@Test
+	public void testSharedTagSource() {
+		String tagSource = StubEnvironment.TAG_SOURCE;
+		long count = StubEnvironment.SYNTHETIC_COUNT;
+		String pwdTemplate = StubEnvironment.SYNTHETIC_PWD_TEMPLATE;
+		StubEnvironment.TAG_SOURCE = SyntheticTagSource.NAME;
+		StubEnvironment.SYNTHETIC_COUNT = 100;
+		StubEnvironment.SYNTHETIC_PWD_TEMPLATE = "1111111122223333";
+		Map<String, TagSource> sources = getField(TagSources.class, "sources");
+		sources.clear();
+		try {
+			StubHardwareApi api = new StubHardwareApi(manager);
+			api.setTimingModel(new ZeroDelayTimingModel());
+			TagSource source = api.getTagSource();
+			assertTrue(source instanceof SyntheticTagSource);
+
+			List<Short> antennas = Collections.singletonList((short) 1);
+			List<Filter> filters = new ArrayList<>();
+			RequestCreateTagType tag = api.inventory(antennas, filters, new RssiFilter()).getTag().get(5);
+			KillOperation killOp = new KillOperation();
+			killOp.setKillPassword(0x11111111);
+			assertEquals(KillResult.Result.SUCCESS, api.kill(killOp, tag).getResult());
+
+			/* a reconnect and other managers use the same source, its changes and its indexes */
+			StubHardwareApi other = new StubHardwareApi(manager);
+			other.setTimingModel(new ZeroDelayTimingModel());
+			assertSame(source, other.getTagSource());
+			assertEquals(1, ((SyntheticTagSource) source).getChangedCount());
+			assertEquals(99, other.inventory(antennas, filters, new RssiFilter()).getTag().size());
+			assertSame(api.getPopulation(), other.getPopulation());
+
+			/* closed sources are created again */
+			TagSources.close();
+			assertNotSame(source, new StubHardwareApi(manager).getTagSource());
+		} finally {
+			TagSources.close();
+			StubEnvironment.TAG_SOURCE = tagSource;
+			StubEnvironment.SYNTHETIC_COUNT = count;
+			StubEnvironment.SYNTHETIC_PWD_TEMPLATE = pwdTemplate;
+		}
+	}
+
+	@Test
+	public void testTagSourceStaleTag() {
+		SyntheticTagSource source = new SyntheticTagSource(1, 100, "0000300030340000nnnnnnnn", "e280xxxxxxxx",
+				"0000000011223344", "0000000000000000", new int[] { 1 }, 1, -70, -30);
+		StubHardwareApi api = new StubHardwareApi(manager, source);
+		StubHardwareApi other = new StubHardwareApi(manager, source);
+
+		/* both instances have read the tag before either has changed it */
+		RequestCreateTagType tag = source.getTag(5);
+		RequestCreateTagType otherTag = source.getTag(5);
+		assertNotSame(tag, otherTag);
+
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_EPC);
+		writeOp.setOffset((short) 2);
+		writeOp.setData(RFUtils.hexToBytes("3035"));
+		writeOp.setPassword(0x11223344);
+		assertEquals(WriteResult.Result.SUCCESS, other.write(writeOp, otherTag).getResult());
+
+		/* the stale tag is read again, so the commit of the other instance is kept */
+		writeOp.setBank(RFUtils.BANK_USR);
+		writeOp.setOffset((short) 0);
+		writeOp.setData(RFUtils.hexToBytes("abcd"));
+		assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+
+		ReadOperation readOp = new ReadOperation();
+		readOp.setBank(RFUtils.BANK_EPC);
+		readOp.setOffset((short) 2);
+		readOp.setLength((short) 1);
+		readOp.setPassword(0x11223344);
+		assertArrayEquals(RFUtils.hexToBytes("3035"), api.read(readOp, source.getTag(5)).getReadData());
+		readOp.setBank(RFUtils.BANK_USR);
+		readOp.setOffset((short) 0);
+		assertArrayEquals(RFUtils.hexToBytes("abcd"), api.read(readOp, source.getTag(5)).getReadData());
+	}
+
+	@Test
+	public void testKilledTags() {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		api.setTimingModel(new ZeroDelayTimingModel());
+		SyntheticTagSource source = new SyntheticTagSource(1, 100, "0000300030340000nnnnnnnn", "e280xxxxxxxx",
+				"1111111122223333", "0000000000000000", new int[] { 1, 2 }, 1, -70, -30);
+		api.setTagSource(source);
+
+		List<Short> antennas = Arrays.asList((short) 1, (short) 2);
+		List<Filter> filters = new ArrayList<>();
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertTrue(api.getKilledTags().isEmpty());
+
+		KillOperation killOp = new KillOperation();
+		killOp.setKillPassword(0x11111111);
+		assertEquals(KillResult.Result.SUCCESS, api.kill(killOp, source.getTag(5)).getResult());
+		assertEquals(KillResult.Result.SUCCESS, api.kill(killOp, source.getTag(7)).getResult());
+
+		/* killed tags are tombstones, not visited by inventory rounds */
+		assertEquals(98, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		List<RequestCreateTagType> killed = api.getKilledTags();
+		assertEquals(2, killed.size());
+		assertEquals("synthetic-5", killed.get(0).getTagId());
+		assertEquals("synthetic-7", killed.get(1).getTagId());
+
+		/* tags of a source cannot be deleted */
+		assertEquals(0, api.purgeKilledTags());
+		assertEquals(2, api.getKilledTags().size());
+
+		assertEquals(2, api.reviveKilledTags());
+		assertTrue(api.getKilledTags().isEmpty());
+		assertEquals(100, api.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertEquals(0, api.reviveKilledTags());
+
+		new Verifications() {{
+			manager.process(withAny(new ArrayList<RequestType>()));
+			times = 0;
+		}};
+	}
+
+	@Test
+	public void testPurgeKilledTags() {
+		final StubHardwareApi api = new StubHardwareApi(manager);
+		final RequestCreateTagType tag = createTag("tag1", "0000300030341111", 1, -50);
+		tag.setKilled(Boolean.TRUE);
+
+		new NonStrictExpectations(api) {{
+			api.getKilledTags();
+			result = Arrays.asList(tag);
+		}};
+
+		assertEquals(1, api.purgeKilledTags());
+
+		final List<List<RequestType>> requests = new ArrayList<>();
+		new Verifications() {{
+			manager.process(withCapture(requests));
+			times = 1;
+		}};
+		RequestDeleteType delete = (RequestDeleteType) requests.get(0).get(0).getChoice().get(0);
+		assertEquals(Arrays.asList("tag1"), delete.getTags().getTagId());
+	}
+
+	@Test
+	public void testRefreshCommittedTags() {
+		CopyingHardwareMgmt manager = new CopyingHardwareMgmt(
+				addBank(createTag("tag1", "000030003034aaaa", 1, -50), MemoryBankNameEnumeration.PWD_BANK, "1111111100000000"),
+				addBank(createTag("tag2", "000030003034bbbb", 1, -50), MemoryBankNameEnumeration.PWD_BANK, "1111111100000000"));
+		StubHardwareApi api1 = new StubHardwareApi(manager);
+		StubHardwareApi api2 = new StubHardwareApi(manager);
+		for (StubHardwareApi api : Arrays.asList(api1, api2)) {
+			api.setTimingModel(new ZeroDelayTimingModel());
+			api.getTagCache().setMaxAge(0);
+		}
+		List<Short> antennas = Arrays.asList((short) 1);
+		List<Filter> filters = new ArrayList<>();
+
+		List<RequestCreateTagType> tags = api1.inventory(antennas, filters, new RssiFilter()).getTag();
+		assertEquals(2, tags.size());
+		RequestCreateTagType tag1 = tags.get(0);
+
+		KillOperation killOp = new KillOperation();
+		killOp.setKillPassword(0x11111111);
+		assertEquals(KillResult.Result.SUCCESS,
+				api2.kill(killOp, api2.inventory(antennas, filters, new RssiFilter()).getTag().get(0)).getResult());
+
+		/* the kill is seen without reading the whole population again */
+		tags = api1.inventory(antennas, filters, new RssiFilter()).getTag();
+		assertEquals(1, tags.size());
+		assertEquals("tag2", tags.get(0).getTagId());
+		assertEquals(Boolean.TRUE, tag1.isKilled());
+		assertEquals(1, api1.getTagCache().getMisses());
+		assertEquals(api1.getTagCache().getVersion(), TagVersions.get(manager).current());
+
+		/* own commits do not require a refresh */
+		assertEquals(KillResult.Result.SUCCESS, api1.kill(killOp, tags.get(0)).getResult());
+		assertEquals(api1.getTagCache().getVersion(), TagVersions.get(manager).current());
+		assertEquals(0, api1.inventory(antennas, filters, new RssiFilter()).getTag().size());
+
+		/* deleted tags cause the population to be read again */
+		assertEquals(2, api2.purgeKilledTags());
+		assertEquals(0, api1.inventory(antennas, filters, new RssiFilter()).getTag().size());
+		assertEquals(2, api1.getTagCache().getMisses());
+		assertTrue(manager.tags.isEmpty());
+	}
+
+	@Test
+	public void testOperationsOfInstances() throws Exception {
+		final CopyingHardwareMgmt manager = new CopyingHardwareMgmt(
+				addBank(createTag("tag1", "000030003034aaaa", 1, -50), MemoryBankNameEnumeration.USER_BANK, "0000000000000000"));
+		final List<StubHardwareApi> apis = Arrays.asList(new StubHardwareApi(manager), new StubHardwareApi(manager));
+		final List<Short> antennas = Arrays.asList((short) 1);
+		final List<Filter> filters = new ArrayList<>();
+		for (StubHardwareApi api : apis) {
+			api.setTimingModel(new ZeroDelayTimingModel());
+			api.getTagCache().setMaxAge(0);
+		}
+		RequestCreateTagType tag1 = apis.get(0).inventory(antennas, filters, new RssiFilter()).getTag().get(0);
+		RequestCreateTagType tag2 = apis.get(1).inventory(antennas, filters, new RssiFilter()).getTag().get(0);
+
+		/* each instance writes another bank of the tag it has read before */
+		WriteOperation writeOp = new WriteOperation();
+		writeOp.setBank(RFUtils.BANK_USR);
+		writeOp.setOffset((short) 0);
+		writeOp.setData(RFUtils.hexToBytes("1111"));
+		assertEquals(WriteResult.Result.SUCCESS, apis.get(0).write(writeOp, tag1).getResult());
+		writeOp.setBank(RFUtils.BANK_EPC);
+		writeOp.setOffset((short) 2);
+		writeOp.setData(RFUtils.hexToBytes("3035"));
+		assertEquals(WriteResult.Result.SUCCESS, apis.get(1).write(writeOp, tag2).getResult());
+
+		/* no change has been reverted */
+		RequestCreateTagType tag = manager.tags.get("tag1");
+		assertEquals("000030003035aaaa", tag.getMemoryBanks().getMemoryBank().get(0).getData().getValue());
+		assertEquals("1111000000000000", tag.getMemoryBanks().getMemoryBank().get(1).getData().getValue());
+		assertEquals("1111000000000000", tag2.getMemoryBanks().getMemoryBank().get(1).getData().getValue());
+		assertSame(tag1, apis.get(0).inventory(antennas, filters, new RssiFilter()).getTag().get(0));
+		assertEquals("000030003035aaaa", tag1.getMemoryBanks().getMemoryBank().get(0).getData().getValue());
+
+		/* concurrently, each thread writes its own word through another instance */
+		final int threadCount = 4;
+		final int iterations = 25;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++) {
+				final short word = (short) t;
+				final StubHardwareApi api = apis.get(t % apis.size());
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 1; i <= iterations; i++) {
+							WriteOperation writeOp = new WriteOperation();
+							writeOp.setBank(RFUtils.BANK_USR);
+							writeOp.setOffset(word);
+							writeOp.setData(new byte[] { (byte) (i >> 8), (byte) i });
+							RequestCreateTagType tag = api.inventory(antennas, filters, new RssiFilter()).getTag().get(0);
+							assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		StringBuilder expected = new StringBuilder();
+		for (int t = 0; t < threadCount; t++)
+			expected.append(String.format("%04x", iterations));
+		assertEquals(expected.toString(), manager.tags.get("tag1").getMemoryBanks().getMemoryBank().get(1).getData()
+				.getValue());
+	}
+
+	@Test
+	public void testConcurrentCommits() throws Exception {
+		/* the commits of both tags have to be in progress at the same time */
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final StubHardwareApi api = new StubHardwareApi(new HardwareMgmt() {
+			@Override
+			public List<ResponseType> process(List<RequestType> requests) {
+				try {
+					barrier.await(5, TimeUnit.SECONDS);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				return new ArrayList<>();
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<WriteResult>> futures = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				final RequestCreateTagType tag = createTag("tag" + i, "000030003034111" + i, 1, -50);
+				futures.add(executor.submit(new Callable<WriteResult>() {
+					@Override
+					public WriteResult call() {
+						WriteOperation writeOp = new WriteOperation();
+						writeOp.setBank(RFUtils.BANK_EPC);
+						writeOp.setOffset((short) 2);
+						writeOp.setData(RFUtils.hexToBytes("3035"));
+						return api.write(writeOp, tag);
+					}
+				}));
+			}
+			for (Future<WriteResult> future : futures)
+				assertEquals(WriteResult.Result.SUCCESS, future.get().getResult());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentOperations() throws Exception {
+		final int threadCount = 8;
+		final int iterations = 25;
+		final StubHardwareApi api = new StubHardwareApi(manager);
+
+		final List<RequestCreateTagType> tags = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			RequestCreateTagType tag = new RequestCreateTagType();
+			tag.setTagId("tag" + i);
+			tag.setMemoryBanks(new MemoryBanksType());
+			MemoryBankType usrBank = new MemoryBankType();
+			usrBank.setName(MemoryBankNameEnumeration.USER_BANK);
+			usrBank.setData(new DataType());
+			usrBank.getData().setValue(String.format("%0" + (threadCount * 4) + "d", 0));
+			tag.getMemoryBanks().getMemoryBank().add(usrBank);
+			tags.add(tag);
+		}
+
+		final Set<String> operationIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threadCount; t++) {
+				final short word = (short) t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						List<RequestCreateTagType> order = new ArrayList<>(tags);
+						for (int i = 1; i <= iterations; i++) {
+							/* each thread writes its own word of every tag */
+							Collections.shuffle(order);
+							for (RequestCreateTagType tag : order) {
+								WriteOperation writeOp = new WriteOperation();
+								writeOp.setBank(RFUtils.BANK_USR);
+								writeOp.setOffset(word);
+								writeOp.setData(new byte[] { (byte) (i >> 8), (byte) i });
+								assertEquals(WriteResult.Result.SUCCESS, api.write(writeOp, tag).getResult());
+
+								ReadOperation readOp = new ReadOperation();
+								readOp.setBank(RFUtils.BANK_USR);
+								readOp.setOffset(word);
+								readOp.setLength((short) 1);
+								ReadResult readRes = api.read(readOp, tag);
+								assertArrayEquals(writeOp.getData(), readRes.getReadData());
+							}
+							assertTrue(operationIds.add(api.createReadRequest().getOperationId()));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		/* no write has been lost */
+		StringBuilder expected = new StringBuilder();
+		for (int t = 0; t < threadCount; t++)
+			expected.append(String.format("%04x", iterations));
+		for (RequestCreateTagType tag : tags)
+			assertEquals(expected.toString(), tag.getMemoryBanks().getMemoryBank().get(0).getData().getValue());
+		assertEquals(threadCount * iterations, operationIds.size());
+	}
+
 	@Test
 	public void testApplyLockOperation() throws StubHardwareApiException {
 		StubHardwareApi api = new StubHardwareApi(manager);
@@ -3,7 +3,9 @@ package havis.device.test.rf;
 import static mockit.Deencapsulation.getField;
 import static mockit.Deencapsulation.setField;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -12,6 +14,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +24,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import havis.device.rf.RFConsumer;
+import havis.device.rf.capabilities.FreqHopTable;
+import havis.device.rf.capabilities.FreqHopTableEntry;
 import havis.device.rf.capabilities.RegulatoryCapabilities;
 import havis.device.rf.common.Environment;
 import havis.device.rf.configuration.AntennaConfiguration;
@@ -44,8 +51,11 @@ import havis.device.rf.tag.result.LockResult;
 import havis.device.rf.tag.result.ReadResult;
 import havis.device.rf.tag.result.WriteResult;
 import havis.device.test.hardware.HardwareMgmt;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagAntennasType;
 import havis.device.test.hardware.RequestCreateTagType;
 import havis.device.test.hardware.RequestCreateTagsType;
+import havis.device.test.rf.StubMetrics.Phase;
 import mockit.Expectations;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
@@ -72,8 +82,8 @@ public class StubHardwareManagerTest {
 	public void testOpenConnection(@Mocked final Environment env) throws ConnectionException, ImplementationException {		
 		
 		new NonStrictExpectations() {{
-			hwApi.getConnectedAntennaIDs();
-			result = Arrays.asList((short)1,(short)2);
+			hwApi.getConnectedAntennas();
+			result = AntennaSet.of(1, 2);
 		}};
 				
 		setField(Environment.class, "DEFAULT_REGION_ID", "EU");		
@@ -88,8 +98,7 @@ public class StubHardwareManagerTest {
 		assertEquals(true, getField(shm, "connected"));
 		assertEquals("EU", getField(shm, "regionId"));
 		assertTrue(getField(shm, "connectedAntennas") != null);
-		assertTrue(((List<Short>)getField(shm, "connectedAntennas")).contains((short)1));
-		assertTrue(((List<Short>)getField(shm, "connectedAntennas")).contains((short)2));
+		assertEquals(AntennaSet.of(1, 2), getField(shm, "connectedAntennas"));
 		assertTrue(getField(shm, "hwApi") != null);		
 	}
 	
@@ -98,7 +107,7 @@ public class StubHardwareManagerTest {
 		StubHardwareManager shm = new StubHardwareManager();
 
 		setField(shm, "connected", true);
-		setField(shm, "connectedAntennas", new ArrayList<>());
+		setField(shm, "connectedAntennas", AntennaSet.EMPTY);
 		setField(shm, "hwApi", new StubHardwareApi(hwMgmt));
 
 		shm.closeConnection();
@@ -120,7 +129,7 @@ public class StubHardwareManagerTest {
 			@Mocked final AntennaConfigurationList acl,
 			@Mocked final TagData tagData,
 			@Mocked final Environment env)
-			throws ImplementationException, ParameterException {
+			throws ImplementationException, ParameterException, StubHardwareApiException {
 
 		final StubHardwareManager shm = new StubHardwareManager();
 
@@ -155,7 +164,7 @@ public class StubHardwareManagerTest {
 		/* call with non-empty antenna list */
 		new Expectations(shm) {
 			{
-				hwApi.inventory(withInstanceOf(List.class),withInstanceOf(List.class), withInstanceOf(RssiFilter.class));
+				hwApi.inventory(withInstanceOf(AntennaSet.class),withInstanceOf(List.class), withInstanceOf(RssiFilter.class));
 				result = tags;
 
 				tags.getTag();
@@ -171,7 +180,7 @@ public class StubHardwareManagerTest {
 		};
 		
 		setField(Environment.class, "HARDWARE_MANAGER_ANTENNAS",Arrays.asList(new Short[] {(short) 1, (short) 2 }));
-		setField(shm, "connectedAntennas", Arrays.asList((short)1, (short)2));
+		setField(shm, "connectedAntennas", AntennaSet.of(1, 2));
 		final TagDataList result3 =	shm.execute(Arrays.asList((short)1), new ArrayList<Filter>(),
 			Arrays.asList(new TagOperation[] { rdOp }), consumer);
 		assertEquals(1, result3.getEntryList().size());
@@ -181,7 +190,356 @@ public class StubHardwareManagerTest {
 				(ReadOperation)any, (TagData)any, (RFCError)any, 
 				(RequestCreateTagType)any, (RFConsumer)any);
 			times = 1;
+
+			hwApi.beginCommit();
+			times = 1;
+			hwApi.endCommit((CommitBatch) any);
+			times = 1;
 		}};
+
+		/* call with failing commit */
+		new NonStrictExpectations() {
+			{
+				hwApi.inventory(withInstanceOf(AntennaSet.class),withInstanceOf(List.class), withInstanceOf(RssiFilter.class));
+				result = tags;
+
+				tags.getTag();
+				result = Arrays.asList(new RequestCreateTagType[] { tag });
+
+				shm.performOperation((ReadOperation)any, (TagData)any, (RFCError)any, 
+					(RequestCreateTagType)any, (RFConsumer)any);
+				result = null;
+
+				hwApi.endCommit((CommitBatch) any);
+				result = new StubHardwareApiException("failure");
+			}
+		};
+
+		try {
+			shm.execute(Arrays.asList((short)1), new ArrayList<Filter>(),
+				Arrays.asList(new TagOperation[] { rdOp }), consumer);
+			fail("Exception expected but none thrown.");
+		} catch (ImplementationException e) {
+			assertTrue(e.getCause() instanceof StubHardwareApiException);
+		}
+	}
+
+	/**
+	 * Hardware API with a fixed tag population, which records the read
+	 * operations performed on each tag. The first read operation fails for
+	 * every third tag.
+	 */
+	private static class RecordingApi implements HardwareApi {
+		final RequestCreateTagsType tags = new RequestCreateTagsType();
+		final Map<String, List<String>> performed = new HashMap<>();
+		final AtomicInteger processed = new AtomicInteger();
+
+		RecordingApi(int tagCount) {
+			for (int i = 0; i < tagCount; i++) {
+				RequestCreateTagType tag = new RequestCreateTagType();
+				tag.setTagId(String.valueOf(i));
+				tag.setAntennas(new RequestCreateTagAntennasType());
+				RequestCreateTagAntennaType antenna = new RequestCreateTagAntennaType();
+				antenna.setAntennaId(1);
+				antenna.setPeakRSSI(-i);
+				tag.getAntennas().getAntenna().add(antenna);
+				tags.getTag().add(tag);
+			}
+		}
+
+		@Override
+		public RequestCreateTagsType inventory(List<Short> antennas, List<Filter> filters, RssiFilter rssiFilter) {
+			return tags;
+		}
+
+		@Override
+		public TagData getTagData(RequestCreateTagType tag) {
+			processed.incrementAndGet();
+			TagData tagData = new TagData();
+			tagData.setTagDataId(Long.parseLong(tag.getTagId()));
+			return tagData;
+		}
+
+		@Override
+		public ReadResult read(ReadOperation rdOp, RequestCreateTagType tag) {
+			synchronized (performed) {
+				if (!performed.containsKey(tag.getTagId()))
+					performed.put(tag.getTagId(), new ArrayList<String>());
+				performed.get(tag.getTagId()).add(rdOp.getOperationId());
+			}
+			ReadResult result = new ReadResult();
+			result.setOperationId(rdOp.getOperationId());
+			result.setResult(Integer.parseInt(tag.getTagId()) % 3 == 0 && rdOp.getOperationId().equals("1") ?
+					ReadResult.Result.MEMORY_OVERRUN_ERROR : ReadResult.Result.SUCCESS);
+			return result;
+		}
+
+		@Override public void connect() { }
+		@Override public void disconnect() { }
+		@Override public List<Short> getConnectedAntennaIDs() { return Arrays.asList((short) 1); }
+		@Override public WriteResult write(WriteOperation wrOp, RequestCreateTagType tag) { return null; }
+		@Override public LockResult lock(LockOperation lOp, RequestCreateTagType tag) { return null; }
+		@Override public KillResult kill(KillOperation kOp, RequestCreateTagType tag) { return null; }
+	}
+
+	private static AntennaSet getConnectedAntennas(StubHardwareManager shm) {
+		return getField(shm, "connectedAntennas");
+	}
+
+	private StubHardwareManager createParallelManager(HardwareApi api) {
+		StubHardwareManager shm = new StubHardwareManager();
+		setField(shm, "connected", true);
+		setField(shm, "hwApi", api);
+		setField(shm, "regionId", "EU");
+		setField(shm, "connectedAntennas", AntennaSet.of(1));
+		setField(Environment.class, "HARDWARE_MANAGER_ANTENNAS", null);
+		shm.setParallelExecution(true);
+		return shm;
+	}
+
+	private List<TagOperation> createReadOperations() {
+		ReadOperation rdOp1 = new ReadOperation();
+		rdOp1.setOperationId("1");
+		ReadOperation rdOp2 = new ReadOperation();
+		rdOp2.setOperationId("2");
+		return Arrays.asList(new TagOperation[] { rdOp1, rdOp2 });
+	}
+
+	@Test
+	public void testExecuteParallel() throws ImplementationException, ParameterException, ConnectionException {
+		final int tagCount = 500;
+		RecordingApi api = new RecordingApi(tagCount);
+		StubHardwareManager shm = createParallelManager(api);
+
+		TagDataList result = shm.execute(Arrays.asList((short) 1), new ArrayList<Filter>(), createReadOperations(), null);
+
+		assertEquals(tagCount, result.getEntryList().size());
+		for (int i = 0; i < tagCount; i++) {
+			TagData tagData = result.getEntryList().get(i);
+			/* inventory order */
+			assertEquals(i, tagData.getTagDataId());
+			assertEquals(2, tagData.getResultList().size());
+			ReadResult second = (ReadResult) tagData.getResultList().get(1);
+			if (i % 3 == 0) {
+				/* error short-circuit */
+				assertEquals(Arrays.asList("1"), api.performed.get(String.valueOf(i)));
+				assertEquals(ReadResult.Result.NON_SPECIFIC_TAG_ERROR, second.getResult());
+			} else {
+				assertEquals(Arrays.asList("1", "2"), api.performed.get(String.valueOf(i)));
+				assertEquals(ReadResult.Result.SUCCESS, second.getResult());
+			}
+		}
+
+		shm.closeConnection();
+		assertNull(getField(shm, "executor"));
+	}
+
+	@Test
+	public void testExecuteParallelFailure() throws Exception {
+		final int tagCount = 300;
+		final CountDownLatch failed = new CountDownLatch(1);
+		final RecordingApi api = new RecordingApi(tagCount) {
+			@Override
+			public TagData getTagData(RequestCreateTagType tag) {
+				TagData tagData = super.getTagData(tag);
+				if (tag.getTagId().equals("5")) {
+					failed.countDown();
+					throw new IllegalStateException("failure");
+				}
+				/* the tags following the failed tag are in progress until it has failed */
+				if (tagData.getTagDataId() > 5)
+					try {
+						assertTrue(failed.await(10, TimeUnit.SECONDS));
+						Thread.sleep(50);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				return tagData;
+			}
+		};
+
+		long oldThreads = StubEnvironment.PARALLEL_EXECUTION_THREADS;
+		StubEnvironment.PARALLEL_EXECUTION_THREADS = 2;
+		try {
+			StubHardwareManager shm = createParallelManager(api);
+			try {
+				shm.execute(Arrays.asList((short) 1), new ArrayList<Filter>(), createReadOperations(), null,
+						new TagDataSink() {
+							@Override
+							public void accept(TagData tagData) {
+								if (tagData.getTagDataId() != 0)
+									return;
+								/* give the workers time to take further tags */
+								try {
+									assertTrue(failed.await(10, TimeUnit.SECONDS));
+									Thread.sleep(100);
+								} catch (InterruptedException e) {
+									Thread.currentThread().interrupt();
+								}
+							}
+						});
+				fail("Exception expected but none thrown.");
+			} catch (IllegalStateException e) {
+				assertEquals("failure", e.getMessage());
+			}
+			/* at most the tag in progress on the other thread has been completed after the failure */
+			assertTrue(api.processed.get() <= 6 + 1);
+			shm.closeConnection();
+		} finally {
+			StubEnvironment.PARALLEL_EXECUTION_THREADS = oldThreads;
+		}
+	}
+
+	@Test
+	public void testMetrics() throws ImplementationException, ParameterException, ConnectionException {
+		final int tagCount = 500;
+		StubHardwareManager shm = createParallelManager(new RecordingApi(tagCount));
+
+		shm.execute(Arrays.asList((short) 1), new ArrayList<Filter>(), createReadOperations(), null);
+
+		MetricsSnapshot snapshot = shm.getMetricsSnapshot();
+		assertEquals(1, snapshot.getLatency(Phase.INVENTORY).getCount());
+		assertEquals(tagCount, snapshot.getLatency(Phase.TAG_DATA).getCount());
+		/* the second read is not performed after an error */
+		assertEquals(833, snapshot.getLatency(Phase.READ).getCount());
+		assertEquals(0, snapshot.getLatency(Phase.WRITE).getCount());
+		assertEquals(666, snapshot.getResultCount(ReadResult.Result.SUCCESS));
+		assertEquals(167, snapshot.getResultCount(ReadResult.Result.MEMORY_OVERRUN_ERROR));
+		assertEquals(167, snapshot.getResultCount(ReadResult.Result.NON_SPECIFIC_TAG_ERROR));
+		assertEquals(0, snapshot.getResultCount(WriteResult.Result.SUCCESS));
+
+		/* metrics are kept across connections */
+		shm.closeConnection();
+		assertEquals(tagCount, shm.getMetricsSnapshot().getLatency(Phase.TAG_DATA).getCount());
+
+		shm.getMetrics().reset();
+		assertEquals(0, shm.getMetricsSnapshot().getLatency(Phase.TAG_DATA).getCount());
+		assertEquals(0, shm.getMetricsSnapshot().getResultCount(ReadResult.Result.SUCCESS));
+	}
+
+	@Test
+	public void testExecuteSink() throws ImplementationException, ParameterException, ConnectionException {
+		final int tagCount = 300;
+		final long window = 8;
+		final RecordingApi api = new RecordingApi(tagCount);
+		final List<Long> received = new ArrayList<>();
+		final Thread caller = Thread.currentThread();
+
+		long oldWindow = StubEnvironment.PARALLEL_EXECUTION_WINDOW;
+		StubEnvironment.PARALLEL_EXECUTION_WINDOW = window;
+		try {
+			StubHardwareManager shm = createParallelManager(api);
+			shm.execute(Arrays.asList((short) 1), new ArrayList<Filter>(), createReadOperations(), null,
+					new TagDataSink() {
+						@Override
+						public void accept(TagData tagData) {
+							assertEquals(caller, Thread.currentThread());
+							received.add(tagData.getTagDataId());
+							/* slow consumer does not let the workers run ahead */
+							assertTrue(api.processed.get() - received.size() <= window);
+							if (received.size() % 50 == 0)
+								Thread.yield();
+						}
+					});
+
+			assertEquals(tagCount, received.size());
+			for (int i = 0; i < tagCount; i++)
+				assertEquals(i, received.get(i).longValue());
+			shm.closeConnection();
+
+			/* failing sink aborts the execution */
+			final RecordingApi api2 = new RecordingApi(tagCount);
+			shm = createParallelManager(api2);
+			try {
+				shm.execute(Arrays.asList((short) 1), new ArrayList<Filter>(), createReadOperations(), null,
+						new TagDataSink() {
+							@Override
+							public void accept(TagData tagData) throws ImplementationException {
+								if (tagData.getTagDataId() == 10)
+									throw new ImplementationException("abort");
+							}
+						});
+				fail("Exception expected but none thrown.");
+			} catch (ImplementationException e) {
+				assertEquals("abort", e.getMessage());
+			}
+			assertTrue(api2.processed.get() <= 11 + window);
+			shm.closeConnection();
+		} finally {
+			StubEnvironment.PARALLEL_EXECUTION_WINDOW = oldWindow;
+		}
+	}
+
+	@Test
+	public void testContinuousInventory() throws ImplementationException, ConnectionException {
+		final int tagCount = 10;
+		StubHardwareManager shm = createParallelManager(new RecordingApi(tagCount));
+
+		ObservationRingBuffer observations = shm.startContinuousInventory(Arrays.asList((short) 0),
+				new ArrayList<Filter>());
+		ObservationRingBuffer.Cursor cursor = observations.createCursor();
+		ContinuousInventory inventory = shm.getContinuousInventory();
+		assertTrue(inventory.isRunning());
+
+		/* wait for several rounds */
+		TagObservation observation = new TagObservation();
+		int received = 0;
+		long timeout = System.currentTimeMillis() + 10000;
+		while (received < 3 * tagCount && System.currentTimeMillis() < timeout) {
+			if (cursor.poll(observation)) {
+				int tag = Integer.parseInt(observation.getTagId());
+				assertEquals(1, observation.getAntennaId());
+				assertEquals(-tag, observation.getRssi());
+				received++;
+			}
+		}
+		assertEquals(3 * tagCount, received);
+		assertTrue(inventory.getRounds() >= 3);
+
+		shm.closeConnection();
+		assertFalse(inventory.isRunning());
+		assertNull(shm.getContinuousInventory());
+		long published = observations.getPublished();
+		assertEquals(published, observations.getPublished());
+	}
+
+	@Test
+	public void testContinuousInventoryFailure() throws Exception {
+		final AtomicInteger failures = new AtomicInteger(1);
+		StubHardwareManager shm = createParallelManager(new RecordingApi(10) {
+			@Override
+			public RequestCreateTagsType inventory(List<Short> antennas, List<Filter> filters,
+					RssiFilter rssiFilter) {
+				if (failures.getAndDecrement() > 0)
+					throw new IllegalStateException("failed");
+				return super.inventory(antennas, filters, rssiFilter);
+			}
+		});
+		assertFalse(shm.restartContinuousInventory());
+
+		ObservationRingBuffer observations = shm.startContinuousInventory(Arrays.asList((short) 0),
+				new ArrayList<Filter>());
+		ContinuousInventory inventory = shm.getContinuousInventory();
+		long timeout = System.currentTimeMillis() + 10000;
+		while (inventory.getFailure() == null && System.currentTimeMillis() < timeout)
+			Thread.sleep(10);
+
+		/* the failed inventory is kept, so it can be reported and restarted */
+		assertTrue(inventory.getFailure() instanceof IllegalStateException);
+		assertFalse(inventory.isRunning());
+		assertSame(inventory, shm.getContinuousInventory());
+		assertEquals(0, inventory.getRounds());
+
+		assertTrue(shm.restartContinuousInventory());
+		assertNull(inventory.getFailure());
+		while (inventory.getRounds() == 0 && System.currentTimeMillis() < timeout)
+			Thread.sleep(10);
+		assertTrue(inventory.isRunning());
+		assertTrue(observations.getPublished() > 0);
+
+		shm.stopContinuousInventory();
+		assertFalse(inventory.isRunning());
+		assertNull(inventory.getFailure());
 	}
 
 	@Test
@@ -485,8 +843,8 @@ public class StubHardwareManagerTest {
 		final Map<Short, ConnectType> connectTypeMap = new HashMap<>();
 		
 		new Expectations() {{
-			hwApi.getConnectedAntennaIDs();
-			result = Arrays.asList((short)1);
+			hwApi.getConnectedAntennas();
+			result = AntennaSet.of(1);
 		}};
 		
 		/*
@@ -568,6 +926,19 @@ public class StubHardwareManagerTest {
 		shm.setRegion(reg, null);
 
 		assertEquals(getField(shm, "regionId"), reg.getId());
+		assertNull(shm.getHopScheduler());
+
+		/* hop table of the region */
+		RegulatoryCapabilities capabilities = new RegulatoryCapabilities();
+		capabilities.setHopping(true);
+		capabilities.setFreqHopTable(new FreqHopTable());
+		FreqHopTableEntry entry = new FreqHopTableEntry();
+		entry.getFreqList().addAll(Arrays.asList(865700, 866300, 866900, 867500));
+		capabilities.getFreqHopTable().getEntryList().add(entry);
+		reg.setId("EU");
+		reg.setRegulatoryCapabilities(capabilities);
+		shm.setRegion(reg, null);
+		assertEquals(4, shm.getHopScheduler().getChannelCount());
 	}
 
 	@Test
@@ -581,8 +952,7 @@ public class StubHardwareManagerTest {
 		setField(Environment.class, "HARDWARE_MANAGER_ANTENNAS", antennasOverride);
 		
 		StubHardwareManager shm = new StubHardwareManager();
-		setField(shm, "connectedAntennas",
-				Arrays.asList(new Short[] { 1, 2, 3, 4 }));
+		setField(shm, "connectedAntennas", AntennaSet.of(1, 2, 3, 4));
 
 		List<Short> antennas = Arrays.asList(new Short[] { 1, 2, 3, 4 });
 		assertEquals(shm.getEffectiveAntennaList(antennas),
@@ -601,13 +971,12 @@ public class StubHardwareManagerTest {
 	public void testSetAntennaConfiguration(@Mocked final HardwareApi hwApi, @Mocked final RegulatoryCapabilities regulatoryCapabilities) throws ParameterException, ImplementationException {
 		
 		final StubHardwareManager nurHwMgr = new StubHardwareManager();		
-		final List<Short> connectedAntennas = new ArrayList<>();
-		setField(nurHwMgr, "connectedAntennas", connectedAntennas);		
+		setField(nurHwMgr, "connectedAntennas", AntennaSet.EMPTY);
 		setField(nurHwMgr, "hwApi", hwApi);
 		
 		new NonStrictExpectations() {{
-			hwApi.getConnectedAntennaIDs();
-			result = Arrays.asList((short)1);
+			hwApi.getConnectedAntennas();
+			result = AntennaSet.of(1);
 		}};
 		
 		final AntennaConfiguration antennaConfiguration1 = new AntennaConfiguration();
@@ -631,7 +1000,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration1, regulatoryCapabilities, false);
 		
 		new Verifications() {{
-			assertTrue(connectedAntennas.contains(antennaConfiguration1.getId()));			
+			assertTrue(getConnectedAntennas(nurHwMgr).contains(antennaConfiguration1.getId()));			
 		}};
 		
 		/* 
@@ -647,7 +1016,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration1, regulatoryCapabilities, false);
 		
 		new Verifications() {{
-			assertTrue(!connectedAntennas.contains(antennaConfiguration1.getId()));			
+			assertTrue(!getConnectedAntennas(nurHwMgr).contains(antennaConfiguration1.getId()));			
 		}};
 		
 		/* 
@@ -663,7 +1032,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration1, regulatoryCapabilities, false);
 		
 		new Verifications() {{
-			assertTrue(connectedAntennas.contains(antennaConfiguration1.getId()));			
+			assertTrue(getConnectedAntennas(nurHwMgr).contains(antennaConfiguration1.getId()));			
 			
 		}};
 		
@@ -680,7 +1049,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration2, regulatoryCapabilities, true);
 		
 		new Verifications() {{
-			assertTrue(connectedAntennas.contains(antennaConfiguration2.getId()));
+			assertTrue(getConnectedAntennas(nurHwMgr).contains(antennaConfiguration2.getId()));
 			
 		}};
 		
@@ -697,7 +1066,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration2, regulatoryCapabilities, true);
 		
 		new Verifications() {{
-			assertTrue(connectedAntennas.contains(antennaConfiguration2.getId()));
+			assertTrue(getConnectedAntennas(nurHwMgr).contains(antennaConfiguration2.getId()));
 		}};
 		
 		/* 
@@ -713,7 +1082,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration2, regulatoryCapabilities, false);
 		
 		new Verifications() {{
-			assertTrue(!connectedAntennas.contains(antennaConfiguration2.getId()));			
+			assertTrue(!getConnectedAntennas(nurHwMgr).contains(antennaConfiguration2.getId()));			
 		}};
 		
 		/* 
@@ -729,7 +1098,7 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration2, regulatoryCapabilities, true);
 		
 		new Verifications() {{
-			assertTrue(connectedAntennas.contains(antennaConfiguration2.getId()));			
+			assertTrue(getConnectedAntennas(nurHwMgr).contains(antennaConfiguration2.getId()));			
 		}};
 		
 		/* 
@@ -745,7 +1114,34 @@ public class StubHardwareManagerTest {
 		nurHwMgr.setAntennaConfiguration(antennaConfiguration2, regulatoryCapabilities, true);
 		
 		new Verifications() {{
-			assertTrue(!connectedAntennas.contains(antennaConfiguration2.getId()));
+			assertTrue(!getConnectedAntennas(nurHwMgr).contains(antennaConfiguration2.getId()));
 		}};
 	}
+
+	@Test
+	public void testAntennasOutOfRange(@Mocked final RegulatoryCapabilities regulatoryCapabilities)
+			throws ParameterException, ImplementationException {
+		StubHardwareManager shm = new StubHardwareManager();
+		setField(shm, "connectedAntennas", AntennaSet.of(1));
+
+		/* antennas out of range are ignored */
+		AntennaConfiguration antennaConfiguration = new AntennaConfiguration();
+		antennaConfiguration.setId((short) 200);
+		antennaConfiguration.setTransmitPower((short) 0);
+		antennaConfiguration.setConnect(ConnectType.TRUE);
+		shm.setAntennaConfiguration(antennaConfiguration, regulatoryCapabilities, false);
+		antennaConfiguration.setId((short) -1);
+		shm.setAntennaConfiguration(antennaConfiguration, regulatoryCapabilities, false);
+		assertEquals(AntennaSet.of(1), getConnectedAntennas(shm));
+
+		assertEquals(Arrays.asList((short) 1), shm.getEffectiveAntennaList(Arrays.asList((short) 1, (short) 200)));
+
+		HardwareApi hwApi = new RecordingApi(0) {
+			@Override
+			public List<Short> getConnectedAntennaIDs() {
+				return Arrays.asList((short) 1, (short) 128, (short) -2);
+			}
+		};
+		assertEquals(AntennaSet.of(1), hwApi.getConnectedAntennas());
+	}
 }
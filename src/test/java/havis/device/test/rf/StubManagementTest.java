@@ -0,0 +1,212 @@
+package havis.device.test.rf;
+
+import static mockit.Deencapsulation.getField;
+import static mockit.Deencapsulation.setField;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import havis.device.rf.tag.result.ReadResult;
+import havis.device.test.hardware.HardwareMgmt;
+import havis.device.test.hardware.RequestCreateTagType;
+import havis.device.test.rf.StubMetrics.Phase;
+import mockit.Mocked;
+
+public class StubManagementTest {
+
+	@Mocked
+	HardwareMgmt hwMgmt;
+
+	private String timingModel;
+	private long inventoryDelay;
+	private CommitMode commitMode;
+	private boolean parallelExecution;
+	private long parallelism;
+	private long window;
+
+	@Before
+	public void setup() {
+		StubHardwareManager.setHardwareMgmt(hwMgmt);
+		/* managers of other tests may not have been collected yet */
+		Set<?> managers = getField(StubManagement.class, "managers");
+		synchronized (managers) {
+			managers.clear();
+		}
+		timingModel = StubEnvironment.TIMING_MODEL;
+		inventoryDelay = StubEnvironment.TIMING_FIXED_DELAY;
+		commitMode = StubEnvironment.COMMIT_MODE;
+		parallelExecution = StubEnvironment.PARALLEL_EXECUTION;
+		parallelism = StubEnvironment.PARALLEL_EXECUTION_THREADS;
+		window = StubEnvironment.PARALLEL_EXECUTION_WINDOW;
+	}
+
+	@After
+	public void tearDown() {
+		StubEnvironment.TIMING_MODEL = timingModel;
+		StubEnvironment.TIMING_FIXED_DELAY = inventoryDelay;
+		StubEnvironment.COMMIT_MODE = commitMode;
+		StubEnvironment.PARALLEL_EXECUTION = parallelExecution;
+		StubEnvironment.PARALLEL_EXECUTION_THREADS = parallelism;
+		StubEnvironment.PARALLEL_EXECUTION_WINDOW = window;
+	}
+
+	private StubHardwareManager createManager() {
+		StubHardwareManager shm = new StubHardwareManager();
+		StubHardwareApi api = new StubHardwareApi(hwMgmt);
+		api.setTimingModel(new FixedDelayTimingModel(50));
+		setField(shm, "hwApi", api);
+		StubManagement.add(shm);
+		return shm;
+	}
+
+	@Test
+	public void testTunables() {
+		StubHardwareManager shm = createManager();
+		StubHardwareApi api = (StubHardwareApi) shm.getHardwareApi();
+		StubManagement management = new StubManagement();
+		assertEquals(1, management.getManagerCount());
+
+		management.setInventoryDelay(5);
+		assertEquals(5, management.getInventoryDelay());
+		assertEquals(5, ((FixedDelayTimingModel) api.getTimingModel()).getDelay());
+
+		/* the delay only applies to the fixed timing model */
+		management.setTimingModel(ZeroDelayTimingModel.NAME);
+		assertEquals(ZeroDelayTimingModel.NAME, management.getTimingModel());
+		assertTrue(api.getTimingModel() instanceof ZeroDelayTimingModel);
+		management.setInventoryDelay(7);
+		assertTrue(api.getTimingModel() instanceof ZeroDelayTimingModel);
+		try {
+			management.setInventoryDelay(-1);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		management.setCommitMode("BATCHED");
+		assertEquals("BATCHED", management.getCommitMode());
+		assertEquals(CommitMode.BATCHED, api.getCommitMode());
+		try {
+			management.setCommitMode("DEFERRED");
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		/* applies to existing and new managers */
+		management.setParallelExecution(true);
+		assertTrue(shm.isParallelExecution());
+		assertTrue(new StubHardwareManager().isParallelExecution());
+		management.setParallelExecution(false);
+		assertFalse(shm.isParallelExecution());
+
+		management.setParallelism(3);
+		assertEquals(3, management.getParallelism());
+		management.setParallelWindow(16);
+		assertEquals(16, management.getParallelWindow());
+		assertEquals(16, StubEnvironment.PARALLEL_EXECUTION_WINDOW);
+	}
+
+	@Test
+	public void testStatistics() {
+		StubHardwareManager shm = createManager();
+		StubManagement management = new StubManagement();
+		StubMetrics metrics = shm.getMetrics();
+		metrics.record(Phase.READ, metrics.start());
+		metrics.record(Phase.READ, metrics.start());
+		metrics.count(ReadResult.Result.SUCCESS);
+		metrics.count(ReadResult.Result.MEMORY_OVERRUN_ERROR);
+
+		assertEquals(2, management.getOperationCounts().get("READ").longValue());
+		assertEquals(0, management.getOperationCounts().get("WRITE").longValue());
+		assertEquals(1, management.getErrorCounts().get("ReadResult.MEMORY_OVERRUN_ERROR").longValue());
+		assertFalse(management.getErrorCounts().containsKey("ReadResult.SUCCESS"));
+		assertEquals(Phase.values().length, management.getMeanLatencies().size());
+
+		/* rates over the sample interval */
+		setField(management, "sampleTime", System.nanoTime() - TimeUnit.SECONDS.toNanos(2));
+		for (int i = 0; i < 4; i++) {
+			metrics.record(Phase.INVENTORY, metrics.start());
+			for (int j = 0; j < 10; j++)
+				metrics.record(Phase.TAG_DATA, metrics.start());
+		}
+		assertEquals(2, management.getRoundsPerSecond(), 0.1);
+		assertEquals(10, management.getTagsPerRound(), 0);
+
+		StubHardwareApi api = (StubHardwareApi) shm.getHardwareApi();
+		api.getTagCache().put(new ArrayList<RequestCreateTagType>());
+		api.getTagCache().get();
+		api.getTagCache().get();
+		api.getTagCache().invalidate();
+		api.getTagCache().get();
+		assertEquals(2 / 3.0, management.getCacheHitRate(), 0.001);
+
+		management.resetStatistics();
+		assertEquals(0, shm.getMetricsSnapshot().getLatency(Phase.READ).getCount());
+	}
+
+	@Test
+	public void testRatesOfRemovedManager() {
+		StubHardwareManager shm = createManager();
+		StubHardwareManager removed = createManager();
+		for (int i = 0; i < 10; i++) {
+			shm.getMetrics().record(Phase.INVENTORY, shm.getMetrics().start());
+			removed.getMetrics().record(Phase.INVENTORY, removed.getMetrics().start());
+		}
+		StubManagement management = new StubManagement();
+
+		/* the counts of a removed manager do not reduce the rates */
+		StubManagement.remove(removed);
+		assertEquals(1, management.getManagerCount());
+		setField(management, "sampleTime", System.nanoTime() - TimeUnit.SECONDS.toNanos(2));
+		for (int i = 0; i < 2; i++) {
+			shm.getMetrics().record(Phase.INVENTORY, shm.getMetrics().start());
+			shm.getMetrics().record(Phase.TAG_DATA, shm.getMetrics().start());
+		}
+		assertEquals(1, management.getRoundsPerSecond(), 0.1);
+		assertEquals(1, management.getTagsPerRound(), 0);
+
+		/* a manager added after the last sample is counted from zero */
+		StubHardwareManager added = createManager();
+		added.getMetrics().record(Phase.INVENTORY, added.getMetrics().start());
+		setField(management, "sampleTime", System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+		assertEquals(1, management.getRoundsPerSecond(), 0.1);
+		assertEquals(0, management.getTagsPerRound(), 0);
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(StubManagement.OBJECT_NAME);
+
+		/* managers do not register the bean */
+		new StubHardwareManager();
+		createManager();
+		assertFalse(server.isRegistered(name));
+
+		StubManagement.register();
+		assertTrue(server.isRegistered(name));
+
+		server.setAttribute(name, new Attribute("InventoryDelay", 10L));
+		assertEquals(10L, StubEnvironment.TIMING_FIXED_DELAY);
+		assertEquals(10L, server.getAttribute(name, "InventoryDelay"));
+		assertTrue(server.getAttribute(name, "OperationCounts") instanceof TabularData);
+		server.invoke(name, "resetStatistics", null, null);
+
+		StubManagement.unregister();
+		assertFalse(server.isRegistered(name));
+	}
+}
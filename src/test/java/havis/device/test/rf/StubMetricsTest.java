@@ -0,0 +1,63 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import havis.device.rf.tag.result.KillResult;
+import havis.device.rf.tag.result.LockResult;
+import havis.device.rf.tag.result.ReadResult;
+import havis.device.rf.tag.result.WriteResult;
+import havis.device.test.rf.StubMetrics.Phase;
+
+public class StubMetricsTest {
+
+	@Test
+	public void testRecord() {
+		StubMetrics metrics = new StubMetrics(true);
+		assertTrue(metrics.isEnabled());
+
+		long start = metrics.start();
+		metrics.record(Phase.READ, start);
+		metrics.record(Phase.READ, start);
+		metrics.record(Phase.COMMIT, start);
+		metrics.count(ReadResult.Result.SUCCESS);
+		metrics.count(WriteResult.Result.SUCCESS);
+		metrics.count(WriteResult.Result.SUCCESS);
+		metrics.count(LockResult.Result.MEMORY_LOCKED_ERROR);
+		metrics.count(null);
+		metrics.count(Phase.READ);
+
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(2, snapshot.getLatency(Phase.READ).getCount());
+		assertEquals(1, snapshot.getLatency(Phase.COMMIT).getCount());
+		assertEquals(0, snapshot.getLatency(Phase.INVENTORY).getCount());
+		assertEquals(Phase.values().length, snapshot.getLatencies().size());
+
+		/* result codes of different operations are counted separately */
+		assertEquals(1, snapshot.getResultCount(ReadResult.Result.SUCCESS));
+		assertEquals(2, snapshot.getResultCount(WriteResult.Result.SUCCESS));
+		assertEquals(0, snapshot.getResultCount(KillResult.Result.SUCCESS));
+		assertEquals(1, snapshot.getResultCount(LockResult.Result.MEMORY_LOCKED_ERROR));
+		assertEquals(0, snapshot.getResultCount(Phase.READ));
+		assertEquals(ReadResult.Result.values().length + WriteResult.Result.values().length
+				+ LockResult.Result.values().length + KillResult.Result.values().length,
+				snapshot.getResultCounts().size());
+	}
+
+	@Test
+	public void testDisabled() {
+		StubMetrics metrics = new StubMetrics(false);
+		assertFalse(metrics.isEnabled());
+		assertEquals(0, metrics.start());
+
+		metrics.record(Phase.READ, metrics.start());
+		metrics.count(ReadResult.Result.SUCCESS);
+
+		MetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(0, snapshot.getLatency(Phase.READ).getCount());
+		assertEquals(0, snapshot.getResultCount(ReadResult.Result.SUCCESS));
+	}
+}
@@ -0,0 +1,137 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class SyntheticTagSourceTest {
+
+	private static SyntheticTagSource createSource(long seed, int count) {
+		return new SyntheticTagSource(seed, count, "0000300030340000nnnnnnnn", "e280xxxxxxxx", "0000000011223344",
+				"", new int[] { 1, 2, 3, 4 }, 2, -70, -30);
+	}
+
+	private static String getBank(RequestCreateTagType tag, short bank) {
+		byte[] data = new TagMemory(tag).getBank(bank);
+		return data == null ? null : TagMemory.toHex(data);
+	}
+
+	@Test
+	public void testGetTag() {
+		SyntheticTagSource source = createSource(1, 1000);
+		assertEquals(1000, source.size());
+
+		RequestCreateTagType tag = source.getTag(42);
+		assertEquals("synthetic-42", tag.getTagId());
+		assertEquals("00003000303400000000002a", getBank(tag, RFUtils.BANK_EPC));
+		assertTrue(getBank(tag, RFUtils.BANK_TID).startsWith("e280"));
+		assertEquals(12, getBank(tag, RFUtils.BANK_TID).length());
+		assertEquals("0000000011223344", getBank(tag, RFUtils.BANK_PSW));
+		assertNull(getBank(tag, RFUtils.BANK_USR));
+		assertEquals(0x11223344, new TagMemory(tag).getAccessPassword());
+
+		/* consecutive antennas with RSSI in range */
+		assertEquals(2, tag.getAntennas().getAntenna().size());
+		int first = tag.getAntennas().getAntenna().get(0).getAntennaId();
+		assertEquals(first % 4 + 1, (int) tag.getAntennas().getAntenna().get(1).getAntennaId());
+		for (int i = 0; i < source.size(); i++)
+			for (RequestCreateTagAntennaType antenna : source.getTag(i).getAntennas().getAntenna()) {
+				assertTrue(antenna.getAntennaId() >= 1 && antenna.getAntennaId() <= 4);
+				assertTrue(antenna.getPeakRSSI() >= -70 && antenna.getPeakRSSI() <= -30);
+			}
+
+		try {
+			source.getTag(1000);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	@Test
+	public void testDeterminism() {
+		SyntheticTagSource source = createSource(1, 1000);
+
+		/* same tag on each visit, but a new instance */
+		RequestCreateTagType tag = source.getTag(7);
+		assertNotSame(tag, source.getTag(7));
+		assertEquals(getBank(tag, RFUtils.BANK_TID), getBank(source.getTag(7), RFUtils.BANK_TID));
+		assertEquals(getBank(tag, RFUtils.BANK_TID), getBank(createSource(1, 10).getTag(7), RFUtils.BANK_TID));
+		assertEquals(tag.getAntennas().getAntenna().get(0).getPeakRSSI(),
+				source.getTag(7).getAntennas().getAntenna().get(0).getPeakRSSI());
+
+		/* random digits differ between tags and seeds */
+		assertNotEquals(getBank(tag, RFUtils.BANK_TID), getBank(source.getTag(8), RFUtils.BANK_TID));
+		assertNotEquals(getBank(tag, RFUtils.BANK_TID), getBank(createSource(2, 1000).getTag(7), RFUtils.BANK_TID));
+	}
+
+	@Test
+	public void testIndexOf() {
+		SyntheticTagSource source = createSource(1, 1000);
+		assertEquals(0, source.indexOf("synthetic-0"));
+		assertEquals(999, source.indexOf("synthetic-999"));
+		assertEquals(-1, source.indexOf("synthetic-1000"));
+		assertEquals(-1, source.indexOf("synthetic-007"));
+		assertEquals(-1, source.indexOf("synthetic-x"));
+		assertEquals(-1, source.indexOf("tag1"));
+		assertEquals(-1, source.indexOf(null));
+	}
+
+	@Test
+	public void testUpdate() {
+		SyntheticTagSource source = createSource(1, 1000);
+		assertEquals(0, source.getChangedCount());
+
+		RequestCreateTagType tag = source.getTag(5);
+		tag.setKilled(Boolean.TRUE);
+		source.update(Collections.singletonList(tag));
+
+		/* only the changed tag is kept */
+		assertEquals(1, source.getChangedCount());
+		assertSame(tag, source.getTag(5));
+		assertNull(source.getTag(6).isKilled());
+
+		RequestCreateTagType unknown = new RequestCreateTagType();
+		unknown.setTagId("tag1");
+		try {
+			source.update(Collections.singletonList(unknown));
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testTemplates() {
+		/* random digits beyond 64 bits */
+		SyntheticTagSource source = new SyntheticTagSource(1, 10, "0000xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx", "", "",
+				"nnnn", new int[] { 1 }, 1, -50, -50);
+		String epcBank = getBank(source.getTag(3), RFUtils.BANK_EPC);
+		assertNotEquals(epcBank.substring(4, 20), epcBank.substring(20));
+		assertEquals("0003", getBank(source.getTag(3), RFUtils.BANK_USR));
+		assertNull(getBank(source.getTag(3), RFUtils.BANK_TID));
+		assertEquals(-50, (int) source.getTag(3).getAntennas().getAntenna().get(0).getPeakRSSI());
+
+		try {
+			new SyntheticTagSource(1, 10, "0000300g", "", "", "", new int[] { 1 }, 1, -50, -50);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			new SyntheticTagSource(1, 10, "", "", "", "", new int[] { 1 }, 2, -50, -50);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.addBank;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.test.hardware.MemoryBankNameEnumeration;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class TagMemoryTest {
+
+	private static RequestCreateTagType createTag() {
+		RequestCreateTagType tag = TestTags.createTag("1");
+		addBank(tag, MemoryBankNameEnumeration.PWD_BANK, "11223344aabbccdd");
+		addBank(tag, MemoryBankNameEnumeration.USER_BANK, "aaaabbbbccccddddeeeeffff");
+		return tag;
+	}
+
+	@Test
+	public void testGetBank() {
+		RequestCreateTagType tag = createTag();
+		TagMemory memory = new TagMemory(tag);
+		byte[] usr = memory.getBank(RFUtils.BANK_USR);
+		assertEquals("AAAABBBBCCCCDDDDEEEEFFFF", RFUtils.bytesToHex(usr));
+		assertSame(usr, memory.getBank(RFUtils.BANK_USR));
+		assertNull(memory.getBank(RFUtils.BANK_EPC));
+		assertNull(memory.getBank((short) 4));
+
+		/* replaced data is decoded again */
+		tag.getMemoryBanks().getMemoryBank().get(1).getData().setValue("0102");
+		assertEquals("0102", RFUtils.bytesToHex(memory.getBank(RFUtils.BANK_USR)));
+	}
+
+	@Test
+	public void testRead() {
+		TagMemory memory = new TagMemory(createTag());
+		assertEquals("CCCCDDDD", RFUtils.bytesToHex(memory.read(RFUtils.BANK_USR, 2, 2)));
+		assertEquals("EEEEFFFF", RFUtils.bytesToHex(memory.read(RFUtils.BANK_USR, 4, 0)));
+		assertEquals(0, memory.read(RFUtils.BANK_USR, 6, 0).length);
+		assertEquals(0, memory.read(RFUtils.BANK_EPC, 0, 0).length);
+		try {
+			memory.read(RFUtils.BANK_USR, 4, 3);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			memory.read(RFUtils.BANK_USR, 7, 0);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	@Test
+	public void testWrite() {
+		RequestCreateTagType tag = createTag();
+		TagMemory memory = new TagMemory(tag);
+
+		assertTrue(memory.write(RFUtils.BANK_USR, 2, RFUtils.hexToBytes("11112222")));
+		assertEquals("AAAABBBB11112222EEEEFFFF", RFUtils.bytesToHex(memory.getBank(RFUtils.BANK_USR)));
+		/* hex data is updated on flush only */
+		assertEquals("aaaabbbbccccddddeeeeffff", tag.getMemoryBanks().getMemoryBank().get(1).getData().getValue());
+
+		assertFalse(memory.write(RFUtils.BANK_USR, 5, RFUtils.hexToBytes("33334444")));
+
+		/* empty bank is filled up to the offset */
+		assertTrue(memory.write(RFUtils.BANK_EPC, 1, RFUtils.hexToBytes("3000")));
+
+		assertTrue(memory.flush());
+		assertFalse(memory.flush());
+		assertEquals("aaaabbbb11112222eeeeffff", tag.getMemoryBanks().getMemoryBank().get(1).getData().getValue());
+		assertEquals(MemoryBankNameEnumeration.EPC_BANK, tag.getMemoryBanks().getMemoryBank().get(2).getName());
+		assertEquals("00003000", tag.getMemoryBanks().getMemoryBank().get(2).getData().getValue());
+
+		/* flushed data is not decoded again */
+		byte[] usr = memory.getBank(RFUtils.BANK_USR);
+		assertSame(usr, memory.getBank(RFUtils.BANK_USR));
+		assertArrayEquals(RFUtils.hexToBytes("aaaabbbb11112222eeeeffff"), usr);
+	}
+
+	@Test
+	public void testPasswords() {
+		RequestCreateTagType tag = createTag();
+		TagMemory memory = new TagMemory(tag);
+		assertEquals(0x11223344, memory.getKillPassword());
+		assertEquals(0xaabbccdd, memory.getAccessPassword());
+
+		tag.getMemoryBanks().getMemoryBank().get(0).getData().setValue("11223344");
+		assertEquals(0x11223344, memory.getKillPassword());
+		assertEquals(0, memory.getAccessPassword());
+
+		tag.getMemoryBanks().getMemoryBank().get(0).setData(null);
+		assertEquals(0, memory.getKillPassword());
+		assertEquals(0, memory.getAccessPassword());
+	}
+
+	@Test
+	public void testToHex() {
+		assertEquals("", TagMemory.toHex(new byte[0]));
+		assertEquals("00017f80ff", TagMemory.toHex(new byte[] { 0, 1, 0x7f, (byte) 0x80, (byte) 0xff }));
+	}
+}
@@ -0,0 +1,128 @@
+package havis.device.test.rf;
+
+import static havis.device.test.rf.TestTags.createTag;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import havis.device.test.hardware.MemoryBanksType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+public class TagPopulationCacheTest {
+
+	@Test
+	public void testGetPut() {
+		TagPopulationCache cache = new TagPopulationCache(0);
+		assertNull(cache.get());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		tags.add(createTag("tag1"));
+		tags.add(createTag("tag2"));
+		cache.put(tags, 5);
+		assertEquals(5, cache.getVersion());
+
+		/* cached population is a copy */
+		tags.clear();
+		assertEquals(2, cache.get().size());
+		assertEquals(2, cache.get().size());
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(5, cache.getVersion());
+
+		/* the version only advances */
+		cache.setVersion(7);
+		assertEquals(7, cache.getVersion());
+		cache.setVersion(6);
+		assertEquals(7, cache.getVersion());
+
+		cache.invalidate();
+		assertNull(cache.get());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testMaxAge() throws InterruptedException {
+		TagPopulationCache cache = new TagPopulationCache(10);
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		tags.add(createTag("tag1"));
+		cache.put(tags);
+		assertEquals(1, cache.get().size());
+
+		Thread.sleep(20);
+		assertNull(cache.get());
+	}
+
+	@Test
+	public void testUpdate() {
+		TagPopulationCache cache = new TagPopulationCache(0);
+
+		/* nothing cached yet */
+		cache.update(createTag("tag1"));
+		assertNull(cache.get());
+
+		RequestCreateTagType tag1 = createTag("tag1");
+		RequestCreateTagType tag2 = createTag("tag2");
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		tags.add(tag1);
+		tags.add(tag2);
+		cache.put(tags, 5);
+
+		/* same instance: population is kept, version follows the commit */
+		TagPopulation population = cache.get();
+		cache.update(tag2, 6);
+		assertSame(population, cache.get());
+		assertSame(tag2, cache.get().getTags().get(1));
+		assertEquals(6, cache.getVersion());
+
+		/* commits of other hardware APIs in between have to be refreshed first */
+		cache.update(tag2, 8);
+		assertEquals(6, cache.getVersion());
+
+		/* other instance with known ID: tag is replaced */
+		RequestCreateTagType newTag2 = createTag("tag2");
+		cache.update(newTag2);
+		assertSame(tag1, cache.get().getTags().get(0));
+		assertSame(newTag2, cache.get().getTags().get(1));
+
+		/* unknown tag: population is invalidated */
+		cache.update(createTag("tag3"));
+		assertNull(cache.get());
+	}
+
+	@Test
+	public void testRefresh() {
+		TagPopulationCache cache = new TagPopulationCache(0);
+		RequestCreateTagType tag1 = createTag("tag1");
+		List<RequestCreateTagType> tags = new ArrayList<>();
+		tags.add(tag1);
+
+		/* nothing cached yet */
+		assertFalse(cache.refresh(createTag("tag1")));
+
+		cache.put(tags);
+		TagPopulation population = cache.get();
+
+		/* the state of the tag read again is copied to the cached instance */
+		RequestCreateTagType refreshed = createTag("tag1");
+		refreshed.setKilled(Boolean.TRUE);
+		refreshed.setMemoryBanks(new MemoryBanksType());
+		assertTrue(cache.refresh(refreshed));
+		assertSame(population, cache.get());
+		assertSame(tag1, cache.get().getTags().get(0));
+		assertEquals(Boolean.TRUE, tag1.isKilled());
+		assertSame(refreshed.getMemoryBanks(), tag1.getMemoryBanks());
+
+		/* unknown tag: population is invalidated */
+		assertFalse(cache.refresh(createTag("tag2")));
+		assertNull(cache.get());
+	}
+}
@@ -0,0 +1,74 @@
+package havis.device.test.rf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import mockit.Deencapsulation;
+
+public class TagVersionsTest {
+
+	@Test
+	public void testCommit() {
+		TagVersions versions = new TagVersions(2);
+		long origin = TagVersions.newOrigin();
+		long other = TagVersions.newOrigin();
+		assertTrue(origin != other);
+		assertEquals(0, versions.current());
+
+		assertEquals(1, versions.commit("tag1", origin));
+		assertEquals(2, versions.commit("tag2", other));
+		assertEquals(3, versions.commit("tag1", other));
+		assertEquals(3, versions.current());
+		assertEquals(3, versions.get("tag1").version);
+		assertEquals(other, versions.get("tag1").origin);
+
+		/* own commits are ignored, older commits are not known any more */
+		assertEquals(new HashSet<>(Arrays.asList("tag1", "tag2")), versions.getChanged(1, origin));
+		assertEquals(new HashSet<>(Arrays.asList("tag1")), versions.getChanged(2, origin));
+		assertTrue(versions.getChanged(1, other).isEmpty());
+		assertTrue(versions.getChanged(3, origin).isEmpty());
+		assertNull(versions.getChanged(0, origin));
+	}
+
+	@Test
+	public void testPrune() {
+		TagVersions versions = new TagVersions(2);
+		long origin = TagVersions.newOrigin();
+		Object reader = new Object();
+		versions.read(reader, 0);
+
+		/* kept while the reader holds tags read before the commits */
+		for (int i = 1; i <= 3; i++)
+			versions.commit("tag" + i, origin);
+		assertNotNull(versions.get("tag1"));
+		Map<String, TagVersions.Commit> tags = Deencapsulation.getField(versions, "tags");
+		assertEquals(3, tags.size());
+
+		/* dropped once read by all readers, except the recent commits */
+		for (int i = 4; i <= 6; i++)
+			versions.commit("tag" + i, origin);
+		versions.read(reader, 6);
+		versions.commit("tag7", origin);
+		assertEquals(new HashSet<>(Arrays.asList("tag6", "tag7")), tags.keySet());
+		assertNull(versions.get("tag1"));
+		assertEquals(7, versions.get("tag7").version);
+
+		/* without readers only the recent commits are kept */
+		versions.read(reader, 0);
+		for (int i = 8; i <= 14; i++)
+			versions.commit("tag" + i, origin);
+		assertEquals(9, tags.size());
+		versions.release(reader);
+		for (int i = 15; i <= 16; i++)
+			versions.commit("tag" + i, origin);
+		assertEquals(new HashSet<>(Arrays.asList("tag15", "tag16")), tags.keySet());
+	}
+}
@@ -0,0 +1,99 @@
+package havis.device.test.rf;
+
+import havis.device.rf.common.util.RFUtils;
+import havis.device.rf.tag.Filter;
+import havis.device.test.hardware.DataType;
+import havis.device.test.hardware.MemoryBankNameEnumeration;
+import havis.device.test.hardware.MemoryBankType;
+import havis.device.test.hardware.MemoryBanksType;
+import havis.device.test.hardware.RequestCreateTagAntennaType;
+import havis.device.test.hardware.RequestCreateTagAntennasType;
+import havis.device.test.hardware.RequestCreateTagType;
+
+/**
+ * Builders of the tags and filters used by the tests
+ */
+final class TestTags {
+
+	private TestTags() {
+	}
+
+	/**
+	 * @param tagId
+	 *            the tag ID or null
+	 * @return a tag without memory banks and antennas
+	 */
+	static RequestCreateTagType createTag(String tagId) {
+		RequestCreateTagType tag = new RequestCreateTagType();
+		tag.setTagId(tagId);
+		tag.setMemoryBanks(new MemoryBanksType());
+		return tag;
+	}
+
+	/**
+	 * @param tagId
+	 *            the tag ID or null
+	 * @param epcBank
+	 *            the hex data of the EPC bank or null
+	 * @param antennaRssi
+	 *            pairs of antenna ID and peak RSSI
+	 * @return the tag
+	 */
+	static RequestCreateTagType createTag(String tagId, String epcBank, int... antennaRssi) {
+		RequestCreateTagType tag = addBank(createTag(tagId), RFUtils.BANK_EPC, epcBank);
+		tag.setAntennas(new RequestCreateTagAntennasType());
+		for (int i = 0; i < antennaRssi.length; i += 2) {
+			RequestCreateTagAntennaType antenna = new RequestCreateTagAntennaType();
+			antenna.setAntennaId(antennaRssi[i]);
+			antenna.setPeakRSSI(antennaRssi[i + 1]);
+			tag.getAntennas().getAntenna().add(antenna);
+		}
+		return tag;
+	}
+
+	/**
+	 * Adds a memory bank to a tag
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param bank
+	 *            the bank index
+	 * @param data
+	 *            the hex data or null to add no bank
+	 * @return the tag
+	 */
+	static RequestCreateTagType addBank(RequestCreateTagType tag, short bank, String data) {
+		return data == null ? tag : addBank(tag, TagMemory.toBankName(bank), data);
+	}
+
+	/**
+	 * Adds a memory bank to a tag
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param name
+	 *            the bank name
+	 * @param data
+	 *            the hex data
+	 * @return the tag
+	 */
+	static RequestCreateTagType addBank(RequestCreateTagType tag, MemoryBankNameEnumeration name, String data) {
+		MemoryBankType bank = new MemoryBankType();
+		bank.setName(name);
+		bank.setData(new DataType());
+		bank.getData().setValue(data);
+		tag.getMemoryBanks().getMemoryBank().add(bank);
+		return tag;
+	}
+
+	static Filter createFilter(short bank, int bitOffset, int bitLength, String data, String mask, boolean match) {
+		Filter filter = new Filter();
+		filter.setBank(bank);
+		filter.setBitOffset((short) bitOffset);
+		filter.setBitLength((short) bitLength);
+		filter.setData(RFUtils.hexToBytes(data));
+		filter.setMask(RFUtils.hexToBytes(mask));
+		filter.setMatch(match);
+		return filter;
+	}
+}
@@ -4,12 +4,37 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import havis.device.test.rf.AntennaIndexTest;
+import havis.device.test.rf.AntennaSetTest;
+import havis.device.test.rf.BankStoreTest;
+import havis.device.test.rf.EpcIndexTest;
+import havis.device.test.rf.FilterMatcherTest;
+import havis.device.test.rf.HopSchedulerTest;
+import havis.device.test.rf.InventoriedFlagsTest;
+import havis.device.test.rf.InventoryTimingModelTest;
+import havis.device.test.rf.LatencyHistogramTest;
+import havis.device.test.rf.MappedTagSourceTest;
+import havis.device.test.rf.ObservationRingBufferTest;
+import havis.device.test.rf.PropagationModelTest;
 import havis.device.test.rf.RFCErrorTest;
 import havis.device.test.rf.StubHardwareApiTest;
 import havis.device.test.rf.StubHardwareManagerTest;
+import havis.device.test.rf.StubManagementTest;
+import havis.device.test.rf.StubMetricsTest;
+import havis.device.test.rf.SyntheticTagSourceTest;
+import havis.device.test.rf.TagMemoryTest;
+import havis.device.test.rf.TagPopulationCacheTest;
+import havis.device.test.rf.TagVersionsTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ StubHardwareManagerTest.class, StubHardwareApiTest.class, RFCErrorTest.class })
+@SuiteClasses({ StubHardwareManagerTest.class, StubHardwareApiTest.class, RFCErrorTest.class,
+		TagPopulationCacheTest.class, InventoryTimingModelTest.class,
+		AntennaIndexTest.class, FilterMatcherTest.class, TagMemoryTest.class, ObservationRingBufferTest.class,
+		EpcIndexTest.class, SyntheticTagSourceTest.class,
+		MappedTagSourceTest.class, LatencyHistogramTest.class, StubMetricsTest.class,
+		StubManagementTest.class, InventoriedFlagsTest.class,
+		PropagationModelTest.class, HopSchedulerTest.class,
+		AntennaSetTest.class, BankStoreTest.class, TagVersionsTest.class })
 public class TestSuite {
 
 }